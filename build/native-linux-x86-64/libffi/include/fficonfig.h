@@ -0,0 +1,29 @@
+#define STDC_HEADERS 1
+#define HAVE_MEMCPY 1
+#define HAVE_MMAP 1
+#define HAVE_MMAP_ANON 1
+#define HAVE_MMAP_FILE 1
+#define HAVE_DLFCN_H 1
+#define HAVE_STDINT_H 1
+#define HAVE_INTTYPES_H 1
+#define HAVE_SYS_MMAN_H 1
+#define HAVE_ALLOCA_H 1
+#define HAVE_ALLOCA 1
+#define HAVE_LONG_DOUBLE 1
+#define HAVE_AS_X86_PCREL 1
+#define HAVE_AS_CFI_PSEUDO_OP 1
+#define HAVE_AS_X86_64_UNWIND_SECTION_TYPE 1
+#define HAVE_HIDDEN_VISIBILITY_ATTRIBUTE 1
+#define HAVE_RO_EH_FRAME 1
+#define EH_FRAME_FLAGS "a"
+#define SIZEOF_DOUBLE 8
+#define SIZEOF_LONG_DOUBLE 16
+#define SIZEOF_SIZE_T 8
+#define FFI_MMAP_EXEC_WRIT 1
+
+#ifdef LIBFFI_ASM
+#define FFI_HIDDEN(name) .hidden name
+#endif
+#ifndef LIBFFI_ASM
+#define FFI_HIDDEN __attribute__ ((visibility ("hidden")))
+#endif
@@ -47,6 +47,14 @@
 
 #include "dispatch.h"
 
+#if defined(_MSC_VER)
+#  define ATOMIC_INCREMENT(PTR) InterlockedIncrement64(PTR)
+#elif defined(__GNUC__)
+#  define ATOMIC_INCREMENT(PTR) __sync_fetch_and_add(PTR, 1)
+#else
+#  define ATOMIC_INCREMENT(PTR) (++*(PTR))
+#endif
+
 #ifdef __cplusplus
 extern "C" {
 #endif
@@ -99,6 +107,13 @@ typedef struct _tls {
   char name[256];
 } thread_storage;
 
+// Whether native threads without an initializer stay attached after a
+// callback, until they terminate
+static volatile jboolean keep_attached = JNI_FALSE;
+// Number of native threads attached to and detached from the VM for callbacks
+static volatile jlong attach_count = 0;
+static volatile jlong detach_count = 0;
+
 static void dispatch_callback(ffi_cif*, void*, void**, void*);
 static jclass classObject;
 
@@ -138,6 +153,7 @@ create_callback(JNIEnv* env, jobject obj, jobject method,
   cb->saved_x_closure = cb->x_closure;
   cb->object = (*env)->NewWeakGlobalRef(env, obj);
   cb->methodID = (*env)->FromReflectedMethod(env, method);
+  cb->behavior_flags = 0;
 
   cb->vm = vm;
   cb->arg_types = (ffi_type**)malloc(sizeof(ffi_type*) * argc);
@@ -314,7 +330,9 @@ create_callback(JNIEnv* env, jobject obj, jobject method,
 void 
 free_callback(JNIEnv* env, callback *cb) {
   int i;
-  (*env)->DeleteWeakGlobalRef(env, cb->object);
+  if (cb->object) {
+    (*env)->DeleteWeakGlobalRef(env, cb->object);
+  }
   ffi_closure_free(cb->closure);
   free(cb->arg_types);
   if (cb->arg_classes) {
@@ -342,6 +360,17 @@ free_callback(JNIEnv* env, callback *cb) {
   free(cb);
 }
 
+/** Direct an existing callback to a different Java object, which must be
+    compatible with the one the callback was created for. */
+void
+rebind_callback(JNIEnv* env, callback *cb, jobject obj) {
+  if (cb->object) {
+    (*env)->DeleteWeakGlobalRef(env, cb->object);
+  }
+  cb->object = obj ? (*env)->NewWeakGlobalRef(env, obj) : NULL;
+  cb->behavior_flags = 0;
+}
+
 static int
 handle_exception(JNIEnv* env, jobject cb, jthrowable throwable) {
 #define HANDLER_TYPE "com/sun/jna/Callback$UncaughtExceptionHandler"
@@ -577,6 +606,9 @@ static void dispose_thread_data(void* data) {
       fprintf(stderr, "JNA: could not detach native thread (automatic)\n");
       detached = JNI_FALSE;
     }
+    else if (!tls->jvm_thread) {
+      ATOMIC_INCREMENT(&detach_count);
+    }
   }
   if (tls->termination_flag && detached) {
     *(tls->termination_flag) = JNI_TRUE;
@@ -653,6 +685,23 @@ JNA_get_last_error(JNIEnv* env) {
   return 0;
 }
 
+/** Set whether native threads stay attached to the VM after a callback. */
+void
+JNA_set_keep_attached(jboolean keep) {
+  keep_attached = keep;
+}
+
+jboolean
+JNA_get_keep_attached() {
+  return keep_attached;
+}
+
+/** Number of native threads attached (or detached) for callbacks so far. */
+jlong
+JNA_get_attach_count(jboolean detached) {
+  return detached ? detach_count : attach_count;
+}
+
 static void
 dispatch_callback(ffi_cif* cif, void* resp, void** cbargs, void* user_data) {
   callback* cb = ((callback *)user_data); 
@@ -680,6 +729,11 @@ dispatch_callback(ffi_cif* cif, void* resp, void** cbargs, void* user_data) {
       needs_detach = options.detach ? JNI_TRUE : JNI_FALSE;
       args.name = options.name;
     }
+    else if (keep_attached) {
+      // Threads kept attached must not prevent VM shutdown
+      daemon = JNI_TRUE;
+      needs_detach = JNI_FALSE;
+    }
     if (daemon) {
       attach_status = (*jvm)->AttachCurrentThreadAsDaemon(jvm, (void*)&env, &args);
     }
@@ -698,6 +752,7 @@ dispatch_callback(ffi_cif* cif, void* resp, void** cbargs, void* user_data) {
       fprintf(stderr, "JNA: Can't attach native thread to VM for callback: %d\n", attach_status);
       return;
     }
+    ATOMIC_INCREMENT(&attach_count);
     if (args.group) {
       (*env)->DeleteWeakGlobalRef(env, args.group);
     }
@@ -724,6 +779,9 @@ dispatch_callback(ffi_cif* cif, void* resp, void** cbargs, void* user_data) {
     if ((*jvm)->DetachCurrentThread(jvm) != 0) {
       fprintf(stderr, "JNA: could not detach thread\n");
     }
+    else {
+      ATOMIC_INCREMENT(&detach_count);
+    }
   }
 }
 
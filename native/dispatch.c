@@ -437,10 +437,122 @@ ffi_error(JNIEnv* env, const char* op, ffi_status status) {
   }
 }
 
+/** Call interface prepared once for a given function signature. */
+typedef struct _call_interface {
+  ffi_cif cif;
+  int nargs;
+  ffi_type** arg_types;
+  /* Expected Java argument kind for each slot, or zero if unknown */
+  char* arg_kinds;
+} call_interface;
+
+/** Map a JNA calling convention onto the corresponding libffi ABI.
+ * Returns JNI_FALSE if the convention is not recognized.
+ */
+static jboolean
+get_ffi_abi(callconv_t callconv, ffi_abi* abi) {
+  switch (callconv) {
+  case CALLCONV_C:
+    *abi = FFI_DEFAULT_ABI;
+    return JNI_TRUE;
+#ifdef _WIN32
+  case CALLCONV_STDCALL:
+#if defined(_WIN64) || defined(_WIN32_WCE)
+    // Ignore requests for stdcall on win64/wince
+    *abi = FFI_DEFAULT_ABI;
+#else
+    *abi = FFI_STDCALL;
+#endif
+    return JNI_TRUE;
+#endif // _WIN32
+  default:
+    *abi = (int)callconv;
+    return (*abi > FFI_FIRST_ABI && *abi < FFI_LAST_ABI) ? JNI_TRUE : JNI_FALSE;
+  }
+}
+
+/** Convert an argument of the expected kind without walking the full
+ * type check chain.  Returns JNI_FALSE if the argument is not of the
+ * expected kind, in which case the generic conversion must be used.
+ */
+static jboolean
+convert_prepared_arg(JNIEnv* env, char kind, jobject arg, jvalue* c_arg,
+                     ffi_type** arg_type, void** arg_value) {
+  switch(kind) {
+  case 'B':
+    if (!(*env)->IsInstanceOf(env, arg, classByte)) return JNI_FALSE;
+    c_arg->b = (*env)->GetByteField(env, arg, FID_Byte_value);
+    *arg_type = &ffi_type_sint8;
+    *arg_value = &c_arg->b;
+    return JNI_TRUE;
+  case 'S':
+    if (!(*env)->IsInstanceOf(env, arg, classShort)) return JNI_FALSE;
+    c_arg->s = (*env)->GetShortField(env, arg, FID_Short_value);
+    *arg_type = &ffi_type_sint16;
+    *arg_value = &c_arg->s;
+    return JNI_TRUE;
+  case 'C':
+    if (!(*env)->IsInstanceOf(env, arg, classCharacter)) return JNI_FALSE;
+    if (sizeof(wchar_t) == 2) {
+      c_arg->c = (*env)->GetCharField(env, arg, FID_Character_value);
+      *arg_type = &ffi_type_uint16;
+      *arg_value = &c_arg->c;
+      return JNI_TRUE;
+    }
+    if (sizeof(wchar_t) == 4) {
+      c_arg->i = (*env)->GetCharField(env, arg, FID_Character_value);
+      *arg_type = &ffi_type_uint32;
+      *arg_value = &c_arg->i;
+      return JNI_TRUE;
+    }
+    return JNI_FALSE;
+  case 'I':
+    if (!(*env)->IsInstanceOf(env, arg, classInteger)) return JNI_FALSE;
+    c_arg->i = (*env)->GetIntField(env, arg, FID_Integer_value);
+    *arg_type = &ffi_type_sint32;
+    *arg_value = &c_arg->i;
+    return JNI_TRUE;
+  case 'J':
+    if (!(*env)->IsInstanceOf(env, arg, classLong)) return JNI_FALSE;
+    c_arg->j = (*env)->GetLongField(env, arg, FID_Long_value);
+    *arg_type = &ffi_type_sint64;
+    *arg_value = &c_arg->j;
+    return JNI_TRUE;
+  case 'F':
+    if (!(*env)->IsInstanceOf(env, arg, classFloat)) return JNI_FALSE;
+    c_arg->f = (*env)->GetFloatField(env, arg, FID_Float_value);
+    *arg_type = &ffi_type_float;
+    *arg_value = &c_arg->f;
+    return JNI_TRUE;
+  case 'D':
+    if (!(*env)->IsInstanceOf(env, arg, classDouble)) return JNI_FALSE;
+    c_arg->d = (*env)->GetDoubleField(env, arg, FID_Double_value);
+    *arg_type = &ffi_type_double;
+    *arg_value = &c_arg->d;
+    return JNI_TRUE;
+  case 'P':
+    if (!(*env)->IsInstanceOf(env, arg, classPointer)) return JNI_FALSE;
+    c_arg->l = getNativeAddress(env, arg);
+    *arg_type = &ffi_type_pointer;
+    *arg_value = &c_arg->l;
+    return JNI_TRUE;
+  case 'T':
+    if (!(*env)->IsInstanceOf(env, arg, classStructure)) return JNI_FALSE;
+    // Leave lazy type info initialization to the generic conversion
+    *arg_type = (ffi_type*)L2A((*env)->GetLongField(env, arg, FID_Structure_typeInfo));
+    if (*arg_type == NULL) return JNI_FALSE;
+    c_arg->l = getStructureAddress(env, arg);
+    *arg_value = c_arg->l;
+    return JNI_TRUE;
+  default:
+    return JNI_FALSE;
+  }
+}
+
 /* invoke the real native function */
 static void
 dispatch(JNIEnv *env, void* func, jint flags, jobjectArray args,
-         ffi_type *return_type, void *presult)
+         ffi_type *return_type, void *presult, call_interface* ci)
 {
   int i, nargs;
   jvalue* c_args;
@@ -452,6 +564,7 @@ dispatch(JNIEnv *env, void* func, jint flags, jobjectArray args,
   } *array_elements;
   volatile int array_count = 0;
   ffi_cif cif;
+  ffi_cif* pcif;
   ffi_type** arg_types;
   void** arg_values;
   ffi_abi abi;
@@ -476,9 +589,18 @@ dispatch(JNIEnv *env, void* func, jint flags, jobjectArray args,
   arg_types = (ffi_type**)alloca(nargs * sizeof(ffi_type*));
   arg_values = (void**)alloca(nargs * sizeof(void*));
 
+  if (ci != NULL && ci->nargs != nargs) {
+    ci = NULL;
+  }
+
   for (i = 0; i < nargs; i++) {
     jobject arg = (*env)->GetObjectArrayElement(env, args, i);
 
+    if (ci != NULL && arg != NULL && ci->arg_kinds[i]
+        && convert_prepared_arg(env, ci->arg_kinds[i], arg, &c_args[i],
+                                &arg_types[i], &arg_values[i])) {
+      continue;
+    }
     if (arg == NULL) {
       c_args[i].l = NULL;
       arg_types[i] = &ffi_type_pointer;
@@ -614,41 +736,33 @@ dispatch(JNIEnv *env, void* func, jint flags, jobjectArray args,
     }
   }
 
-  switch (callconv) {
-  case CALLCONV_C:
-    abi = FFI_DEFAULT_ABI;
-    break;
-#ifdef _WIN32
-  case CALLCONV_STDCALL:
-#if defined(_WIN64) || defined(_WIN32_WCE)
-    // Ignore requests for stdcall on win64/wince
-    abi = FFI_DEFAULT_ABI;
-#else
-    abi = FFI_STDCALL;
-#endif
-    break;
-#endif // _WIN32
-  default:
-    abi = (int)callconv;
-    if (!(abi > FFI_FIRST_ABI && abi < FFI_LAST_ABI)) {
+  // Re-use the prepared call interface only if the actual argument types
+  // are exactly those it was prepared with
+  if (ci != NULL && ci->cif.rtype == return_type
+      && (nargs == 0
+          || memcmp(ci->arg_types, arg_types, nargs * sizeof(ffi_type*)) == 0)) {
+    pcif = &ci->cif;
+    status = FFI_OK;
+  }
+  else {
+    if (!get_ffi_abi(callconv, &abi)) {
       snprintf(msg, sizeof(msg),
-               "Unrecognized calling convention: %d", abi);
+               "Unrecognized calling convention: %d", (int)callconv);
       throw_type = EIllegalArgument;
       throw_msg = msg;
       goto cleanup;
     }
-    break;
+    pcif = &cif;
+    status = fixed_args
+      ? ffi_prep_cif_var(&cif, abi, fixed_args, nargs, return_type, arg_types)
+      : ffi_prep_cif(&cif, abi, nargs, return_type, arg_types);
   }
-
-  status = fixed_args
-    ? ffi_prep_cif_var(&cif, abi, fixed_args, nargs, return_type, arg_types)
-    : ffi_prep_cif(&cif, abi, nargs, return_type, arg_types);
   if (!ffi_error(env, "Native call setup", status)) {
     PSTART();
     if ((flags & THROW_LAST_ERROR) != 0) {
       SET_LAST_ERROR(0);
     }
-    ffi_call(&cif, FFI_FN(func), presult, arg_values);
+    ffi_call(pcif, FFI_FN(func), presult, arg_values);
     {
       int err = GET_LAST_ERROR();
       JNA_set_last_error(env, err);
@@ -677,6 +791,96 @@ dispatch(JNIEnv *env, void* func, jint flags, jobjectArray args,
   }
 }
 
+/* Invoke the native function with primitive arguments only, using a
+ * prepared call interface.  Arguments are passed as raw 64-bit values,
+ * floating point values as their IEEE bit patterns.
+ */
+static void
+dispatch_primitive(JNIEnv *env, void* func, jint flags, call_interface* ci,
+                   jlong* args, void *presult)
+{
+  int i;
+  jvalue c_args[MAX_PRIMITIVE_NARGS];
+  void* arg_values[MAX_PRIMITIVE_NARGS];
+  char msg[MSG_SIZE];
+  const char* volatile throw_type = NULL;
+  const char* volatile throw_msg = NULL;
+
+  if (ci == NULL || ci->nargs > MAX_PRIMITIVE_NARGS) {
+    throwByName(env, EIllegalArgument, "Invalid call interface for primitive arguments");
+    return;
+  }
+
+  for (i=0;i < ci->nargs;i++) {
+    switch(ci->arg_kinds[i]) {
+    case 'B':
+      c_args[i].b = (jbyte)args[i];
+      arg_values[i] = &c_args[i].b;
+      break;
+    case 'S':
+      c_args[i].s = (jshort)args[i];
+      arg_values[i] = &c_args[i].s;
+      break;
+    case 'C':
+      if (sizeof(wchar_t) == 2) {
+        c_args[i].c = (jchar)args[i];
+        arg_values[i] = &c_args[i].c;
+      }
+      else {
+        c_args[i].i = (jchar)args[i];
+        arg_values[i] = &c_args[i].i;
+      }
+      break;
+    case 'I':
+      c_args[i].i = (jint)args[i];
+      arg_values[i] = &c_args[i].i;
+      break;
+    case 'J':
+      c_args[i].j = args[i];
+      arg_values[i] = &c_args[i].j;
+      break;
+    case 'F': {
+      jint bits = (jint)args[i];
+      memcpy(&c_args[i].f, &bits, sizeof(jfloat));
+      arg_values[i] = &c_args[i].f;
+      break;
+    }
+    case 'D':
+      memcpy(&c_args[i].d, &args[i], sizeof(jdouble));
+      arg_values[i] = &c_args[i].d;
+      break;
+    default:
+      snprintf(msg, sizeof(msg), "Non-primitive argument %d in primitive call", i);
+      throwByName(env, EIllegalArgument, msg);
+      return;
+    }
+  }
+
+  {
+    PSTART();
+    if ((flags & THROW_LAST_ERROR) != 0) {
+      SET_LAST_ERROR(0);
+    }
+    ffi_call(&ci->cif, FFI_FN(func), presult, arg_values);
+    {
+      int err = GET_LAST_ERROR();
+      JNA_set_last_error(env, err);
+      if ((flags & THROW_LAST_ERROR) && err) {
+        char emsg[MSG_SIZE];
+        snprintf(msg, sizeof(msg), "[%d] %s", err, STR_ERROR(err, emsg, sizeof(emsg)));
+        throw_type = ELastError;
+        throw_msg = msg;
+      }
+    }
+
+    PROTECTED_END(do { throw_type=EError;throw_msg="Invalid memory access";} while(0));
+  }
+
+  if (throw_type) {
+    throwByName(env, throw_type, throw_msg);
+  }
+}
+
 /** Copy characters from the Java character array into native memory. */
 static void
 getChars(JNIEnv* env, wchar_t* volatile dst, jcharArray chars, volatile jint off, volatile jint len) {
@@ -2055,15 +2259,16 @@ closure_handler(ffi_cif* cif, void* resp, void** argp, void *cdata)
 /*
  * Class:     com_sun_jna_Native
  * Method:    invokePointer
- * Signature: (Lcom/sun/jna/Function;JI[Ljava/lang/Object;)J
+ * Signature: (Lcom/sun/jna/Function;JI[Ljava/lang/Object;J)J
  */
 JNIEXPORT jlong JNICALL 
 Java_com_sun_jna_Native_invokePointer (JNIEnv *env, jclass UNUSED(cls),
                                        jobject UNUSED(function), jlong fp,
-                                       jint callconv, jobjectArray arr)
+                                       jint callconv, jobjectArray arr,
+                                       jlong call_interface)
 {
     jvalue result;
-    dispatch(env, L2A(fp), callconv, arr, &ffi_type_pointer, &result);
+    dispatch(env, L2A(fp), callconv, arr, &ffi_type_pointer, &result, L2A(call_interface));
     return A2L(result.l);
 }
 
@@ -2071,15 +2276,16 @@ Java_com_sun_jna_Native_invokePointer (JNIEnv *env, jclass UNUSED(cls),
 /*
  * Class:     com_sun_jna_Native
  * Method:    invokeObject
- * Signature: (Lcom/sun/jna/Function;JI[Ljava/lang/Object;)Ljava/lang/Object;
+ * Signature: (Lcom/sun/jna/Function;JI[Ljava/lang/Object;J)Ljava/lang/Object;
  */
 JNIEXPORT jobject 
 JNICALL Java_com_sun_jna_Native_invokeObject(JNIEnv *env, jclass UNUSED(cls),
                                              jobject UNUSED(function), jlong fp,
-                                             jint callconv, jobjectArray arr)
+                                             jint callconv, jobjectArray arr,
+                                             jlong call_interface)
 {
     jvalue result;
-    dispatch(env, L2A(fp), callconv, arr, &ffi_type_pointer, &result);
+    dispatch(env, L2A(fp), callconv, arr, &ffi_type_pointer, &result, L2A(call_interface));
     return result.l;
 }
 
@@ -2087,95 +2293,192 @@ JNICALL Java_com_sun_jna_Native_invokeObject(JNIEnv *env, jclass UNUSED(cls),
 /*
  * Class:     com_sun_jna_Native
  * Method:    invokeStructure
- * Signature: (Lcom/sun/jna/Function;JI[Ljava/lang/Object;JJ)V
+ * Signature: (Lcom/sun/jna/Function;JI[Ljava/lang/Object;JJJ)V
  */
 JNIEXPORT void JNICALL 
 Java_com_sun_jna_Native_invokeStructure(JNIEnv *env, jclass UNUSED(cls), 
                                         jobject UNUSED(function), jlong fp,
                                         jint callconv, jobjectArray arr,
-                                        jlong memory, jlong type_info)
+                                        jlong memory, jlong type_info,
+                                        jlong call_interface)
 {
   ffi_type* rtype = (ffi_type*)L2A(type_info);
   if (!rtype) {
     throwByName(env, EIllegalState, "Return structure type info not initialized");
   }
   else {
-    dispatch(env, L2A(fp), callconv, arr, rtype, L2A(memory));
+    dispatch(env, L2A(fp), callconv, arr, rtype, L2A(memory), L2A(call_interface));
   }
 }
 
 /*
  * Class:     com_sun_jna_Native
  * Method:    invokeDouble
- * Signature: (Lcom/sun/jna/Function;JI[Ljava/lang/Object;)D
+ * Signature: (Lcom/sun/jna/Function;JI[Ljava/lang/Object;J)D
  */
 JNIEXPORT jdouble JNICALL
 Java_com_sun_jna_Native_invokeDouble(JNIEnv *env, jclass UNUSED(cls), 
                                      jobject UNUSED(function), jlong fp, 
-                                     jint callconv, jobjectArray arr)
+                                     jint callconv, jobjectArray arr,
+                                     jlong call_interface)
 {
     jvalue result;
-    dispatch(env, L2A(fp), callconv, arr, &ffi_type_double, &result);
+    dispatch(env, L2A(fp), callconv, arr, &ffi_type_double, &result, L2A(call_interface));
     return result.d;
 }
 
 /*
  * Class:     com_sun_jna_Native
  * Method:    invokeFloat
- * Signature: (Lcom/sun/jna/Function;JI[Ljava/lang/Object;)F
+ * Signature: (Lcom/sun/jna/Function;JI[Ljava/lang/Object;J)F
  */
 JNIEXPORT jfloat JNICALL
 Java_com_sun_jna_Native_invokeFloat(JNIEnv *env, jclass UNUSED(cls), 
                                     jobject UNUSED(function), jlong fp,
-                                    jint callconv, jobjectArray arr)
+                                    jint callconv, jobjectArray arr,
+                                    jlong call_interface)
 {
     jvalue result;
-    dispatch(env, L2A(fp), callconv, arr, &ffi_type_float, &result);
+    dispatch(env, L2A(fp), callconv, arr, &ffi_type_float, &result, L2A(call_interface));
     return result.f;
 }
 
 /*
  * Class:     com_sun_jna_Native
  * Method:    invokeInt
- * Signature: (Lcom/sun/jna/Function;JI[Ljava/lang/Object;)I
+ * Signature: (Lcom/sun/jna/Function;JI[Ljava/lang/Object;J)I
  */
 JNIEXPORT jint JNICALL
 Java_com_sun_jna_Native_invokeInt(JNIEnv *env, jclass UNUSED(cls), 
                                   jobject UNUSED(function), jlong fp, jint callconv,
-                                  jobjectArray arr)
+                                  jobjectArray arr, jlong call_interface)
 {
     ffi_arg result;
-    dispatch(env, L2A(fp), callconv, arr, &ffi_type_sint32, &result);
+    dispatch(env, L2A(fp), callconv, arr, &ffi_type_sint32, &result, L2A(call_interface));
     return (jint)result;
 }
 
 /*
  * Class:     com_sun_jna_Native
  * Method:    invokeLong
- * Signature: (Lcom/sun/jna/Function;JI[Ljava/lang/Object;)J
+ * Signature: (Lcom/sun/jna/Function;JI[Ljava/lang/Object;J)J
  */
 JNIEXPORT jlong JNICALL
 Java_com_sun_jna_Native_invokeLong(JNIEnv *env, jclass UNUSED(cls),
                                    jobject UNUSED(function), jlong fp, jint callconv,
-                                   jobjectArray arr)
+                                   jobjectArray arr, jlong call_interface)
 {
     jvalue result;
-    dispatch(env, L2A(fp), callconv, arr, &ffi_type_sint64, &result);
+    dispatch(env, L2A(fp), callconv, arr, &ffi_type_sint64, &result, L2A(call_interface));
     return result.j;
 }
 
 /*
  * Class:     com_sun_jna_Native
  * Method:    invokeVoid
- * Signature: (Lcom/sun/jna/Function;JI[Ljava/lang/Object;)V
+ * Signature: (Lcom/sun/jna/Function;JI[Ljava/lang/Object;J)V
  */
 JNIEXPORT void JNICALL
 Java_com_sun_jna_Native_invokeVoid(JNIEnv *env, jclass UNUSED(cls),
                                    jobject UNUSED(function), jlong fp, jint callconv,
-                                   jobjectArray arr)
+                                   jobjectArray arr, jlong call_interface)
+{
+    jvalue result;
+    dispatch(env, L2A(fp), callconv, arr, &ffi_type_void, &result, L2A(call_interface));
+}
+
+/*
+ * Class:     com_sun_jna_Native
+ * Method:    invokeIntPrimitive
+ * Signature: (Lcom/sun/jna/Function;JIJJJJJJJ)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_sun_jna_Native_invokeIntPrimitive(JNIEnv *env, jclass UNUSED(cls),
+                                           jobject UNUSED(function), jlong fp, jint callconv,
+                                           jlong call_interface, jlong a0, jlong a1, jlong a2,
+                                           jlong a3, jlong a4, jlong a5)
+{
+    ffi_arg result;
+    jlong args[MAX_PRIMITIVE_NARGS];
+    args[0] = a0; args[1] = a1; args[2] = a2;
+    args[3] = a3; args[4] = a4; args[5] = a5;
+    dispatch_primitive(env, L2A(fp), callconv, L2A(call_interface), args, &result);
+    return (jint)result;
+}
+
+/*
+ * Class:     com_sun_jna_Native
+ * Method:    invokeLongPrimitive
+ * Signature: (Lcom/sun/jna/Function;JIJJJJJJJ)J
+ */
+JNIEXPORT jlong JNICALL
+Java_com_sun_jna_Native_invokeLongPrimitive(JNIEnv *env, jclass UNUSED(cls),
+                                            jobject UNUSED(function), jlong fp, jint callconv,
+                                            jlong call_interface, jlong a0, jlong a1, jlong a2,
+                                            jlong a3, jlong a4, jlong a5)
+{
+    jvalue result;
+    jlong args[MAX_PRIMITIVE_NARGS];
+    args[0] = a0; args[1] = a1; args[2] = a2;
+    args[3] = a3; args[4] = a4; args[5] = a5;
+    dispatch_primitive(env, L2A(fp), callconv, L2A(call_interface), args, &result);
+    return result.j;
+}
+
+/*
+ * Class:     com_sun_jna_Native
+ * Method:    invokeFloatPrimitive
+ * Signature: (Lcom/sun/jna/Function;JIJJJJJJJ)F
+ */
+JNIEXPORT jfloat JNICALL
+Java_com_sun_jna_Native_invokeFloatPrimitive(JNIEnv *env, jclass UNUSED(cls),
+                                             jobject UNUSED(function), jlong fp, jint callconv,
+                                             jlong call_interface, jlong a0, jlong a1, jlong a2,
+                                             jlong a3, jlong a4, jlong a5)
+{
+    jvalue result;
+    jlong args[MAX_PRIMITIVE_NARGS];
+    args[0] = a0; args[1] = a1; args[2] = a2;
+    args[3] = a3; args[4] = a4; args[5] = a5;
+    dispatch_primitive(env, L2A(fp), callconv, L2A(call_interface), args, &result);
+    return result.f;
+}
+
+/*
+ * Class:     com_sun_jna_Native
+ * Method:    invokeDoublePrimitive
+ * Signature: (Lcom/sun/jna/Function;JIJJJJJJJ)D
+ */
+JNIEXPORT jdouble JNICALL
+Java_com_sun_jna_Native_invokeDoublePrimitive(JNIEnv *env, jclass UNUSED(cls),
+                                              jobject UNUSED(function), jlong fp, jint callconv,
+                                              jlong call_interface, jlong a0, jlong a1, jlong a2,
+                                              jlong a3, jlong a4, jlong a5)
+{
+    jvalue result;
+    jlong args[MAX_PRIMITIVE_NARGS];
+    args[0] = a0; args[1] = a1; args[2] = a2;
+    args[3] = a3; args[4] = a4; args[5] = a5;
+    dispatch_primitive(env, L2A(fp), callconv, L2A(call_interface), args, &result);
+    return result.d;
+}
+
+/*
+ * Class:     com_sun_jna_Native
+ * Method:    invokeVoidPrimitive
+ * Signature: (Lcom/sun/jna/Function;JIJJJJJJJ)V
+ */
+JNIEXPORT void JNICALL
+Java_com_sun_jna_Native_invokeVoidPrimitive(JNIEnv *env, jclass UNUSED(cls),
+                                            jobject UNUSED(function), jlong fp, jint callconv,
+                                            jlong call_interface, jlong a0, jlong a1, jlong a2,
+                                            jlong a3, jlong a4, jlong a5)
 {
     jvalue result;
-    dispatch(env, L2A(fp), callconv, arr, &ffi_type_void, &result);
+    jlong args[MAX_PRIMITIVE_NARGS];
+    args[0] = a0; args[1] = a1; args[2] = a2;
+    args[3] = a3; args[4] = a4; args[5] = a5;
+    dispatch_primitive(env, L2A(fp), callconv, L2A(call_interface), args, &result);
 }
 
 JNIEXPORT jlong JNICALL
@@ -2202,6 +2505,14 @@ Java_com_sun_jna_Native_freeNativeCallback(JNIEnv *env,
   free_callback(env, (callback*)L2A(ptr));
 }
 
+JNIEXPORT void JNICALL
+Java_com_sun_jna_Native_rebindNativeCallback(JNIEnv *env,
+                                             jclass UNUSED(cls),
+                                             jlong ptr,
+                                             jobject obj) {
+  rebind_callback(env, (callback*)L2A(ptr), obj);
+}
+
 /*
  * Class:     Native
  * Method:    open
@@ -3514,6 +3825,78 @@ Java_com_sun_jna_Native_ffi_1prep_1cif(JNIEnv *env, jclass UNUSED(cls), jint abi
   return A2L(cif);
 }
 
+/*
+ * Class:     com_sun_jna_Native
+ * Method:    prepareCallInterface
+ * Signature: (IJ[J[C)J
+ */
+JNIEXPORT jlong JNICALL
+Java_com_sun_jna_Native_prepareCallInterface(JNIEnv *env, jclass UNUSED(cls),
+                                             jint flags, jlong return_type,
+                                             jlongArray arg_types,
+                                             jcharArray arg_kinds)
+{
+  int i;
+  int nargs = (*env)->GetArrayLength(env, arg_types);
+  int fixed_args = (flags & USE_VARARGS) >> 7;
+  jlong* types;
+  jchar* kinds;
+  ffi_abi abi;
+  ffi_status status;
+  call_interface* ci;
+  char msg[MSG_SIZE];
+
+  if (nargs > MAX_NARGS || (*env)->GetArrayLength(env, arg_kinds) != nargs) {
+    throwByName(env, EIllegalArgument, "Invalid call interface argument count");
+    return 0;
+  }
+  if (!get_ffi_abi(flags & MASK_CC, &abi)) {
+    snprintf(msg, sizeof(msg),
+             "Unrecognized calling convention: %d", (int)(flags & MASK_CC));
+    throwByName(env, EIllegalArgument, msg);
+    return 0;
+  }
+
+  ci = (call_interface*)malloc(sizeof(call_interface)
+                               + nargs * sizeof(ffi_type*) + nargs);
+  if (ci == NULL) {
+    throwByName(env, EOutOfMemory, "Can't allocate call interface");
+    return 0;
+  }
+  ci->nargs = nargs;
+  ci->arg_types = (ffi_type**)(ci + 1);
+  ci->arg_kinds = (char*)(ci->arg_types + nargs);
+
+  types = (jlong*)alloca(nargs * sizeof(jlong));
+  kinds = (jchar*)alloca(nargs * sizeof(jchar));
+  (*env)->GetLongArrayRegion(env, arg_types, 0, nargs, types);
+  (*env)->GetCharArrayRegion(env, arg_kinds, 0, nargs, kinds);
+  for (i=0;i < nargs;i++) {
+    ci->arg_types[i] = (ffi_type*)L2A(types[i]);
+    ci->arg_kinds[i] = (char)kinds[i];
+  }
+
+  status = fixed_args
+    ? ffi_prep_cif_var(&ci->cif, abi, fixed_args, nargs, L2A(return_type), ci->arg_types)
+    : ffi_prep_cif(&ci->cif, abi, nargs, L2A(return_type), ci->arg_types);
+  if (ffi_error(env, "ffi_prep_cif", status)) {
+    free(ci);
+    return 0;
+  }
+  return A2L(ci);
+}
+
+/*
+ * Class:     com_sun_jna_Native
+ * Method:    freeCallInterface
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL
+Java_com_sun_jna_Native_freeCallInterface(JNIEnv *UNUSED(env), jclass UNUSED(cls), jlong call_interface)
+{
+  free(L2A(call_interface));
+}
+
 JNIEXPORT jlong JNICALL
 Java_com_sun_jna_Native_ffi_1prep_1closure(JNIEnv *env, jclass UNUSED(cls), jlong cif, jobject obj)
 {
@@ -3561,6 +3944,21 @@ Java_com_sun_jna_Native_setDetachState(JNIEnv* env, jclass UNUSED(cls), jboolean
   JNA_detach(env, d, L2A(flag));
 }
 
+JNIEXPORT void JNICALL
+Java_com_sun_jna_Native_setKeepCallbackThreadsAttached(JNIEnv* UNUSED_ENV(env), jclass UNUSED(cls), jboolean keep) {
+  JNA_set_keep_attached(keep);
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_sun_jna_Native_isKeepCallbackThreadsAttached(JNIEnv* UNUSED_ENV(env), jclass UNUSED(cls)) {
+  return JNA_get_keep_attached();
+}
+
+JNIEXPORT jlong JNICALL
+Java_com_sun_jna_Native_getCallbackThreadCount(JNIEnv* UNUSED_ENV(env), jclass UNUSED(cls), jboolean detached) {
+  return JNA_get_attach_count(detached);
+}
+
 #ifdef __cplusplus
 }
 #endif
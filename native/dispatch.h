@@ -87,6 +87,7 @@ typedef enum _callconv {
 
 /* Maximum number of allowed arguments in libffi. */
 #define MAX_NARGS com_sun_jna_Function_MAX_NARGS
+#define MAX_PRIMITIVE_NARGS com_sun_jna_Function_MAX_PRIMITIVE_NARGS
 
 enum {
   CVT_DEFAULT = com_sun_jna_Native_CVT_DEFAULT,
@@ -210,10 +211,14 @@ extern void JNA_set_last_error(JNIEnv*,int);
 extern int JNA_get_last_error(JNIEnv*);
 extern void JNA_callback_dispose(JNIEnv*);
 extern void JNA_detach(JNIEnv*,jboolean,void*);
+extern void JNA_set_keep_attached(jboolean);
+extern jboolean JNA_get_keep_attached(void);
+extern jlong JNA_get_attach_count(jboolean);
 extern callback* create_callback(JNIEnv*, jobject, jobject,
                                  jobjectArray, jclass,
                                  callconv_t, jint, jstring);
 extern void free_callback(JNIEnv*, callback*);
+extern void rebind_callback(JNIEnv*, callback*, jobject);
 extern void extract_value(JNIEnv*, jobject, void*, size_t, jboolean, const char*);
 extern jobject new_object(JNIEnv*, char, void*, jboolean, const char*);
 extern jboolean is_protected();
@@ -668,7 +668,9 @@ static THREAD_FUNC(thread_function, arg) {
 
   for (i=0;i < td.repeat_count;i++) {
     func();
-    SLEEP(td.sleep_time);
+    if (td.sleep_time > 0) {
+      SLEEP(td.sleep_time);
+    }
   }
   free((void*)arg);
   THREAD_EXIT();
@@ -0,0 +1,92 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.util.concurrent.Executor;
+
+/** Delivers the callbacks it is registered for asynchronously.  Instead of
+ * running the callback on the native thread which invoked it, its arguments
+ * are converted and placed in a fixed-capacity queue, and the native call
+ * returns immediately.  Queued calls are run in order, in batches, by tasks
+ * submitted to the given {@link Executor}, so that a slow handler does not
+ * stall the native library's event thread.
+ * <pre>
+ * Native.setCallbackThreadInitializer(listener,
+ *     new AsyncCallbackInitializer(Executors.newSingleThreadExecutor()));
+ * lib.setListener(listener);
+ * </pre>
+ * <p>The initializer must be registered with
+ * {@link Native#setCallbackThreadInitializer} before the callback is first
+ * passed to native code, and only applies to callbacks whose method returns
+ * <code>void</code> and which are not themselves a {@link CallbackProxy}.
+ * Native threads invoking the callback are kept attached to the VM as daemon
+ * threads.</p>
+ * <p>Arguments are converted while the native call is in progress:
+ * strings are copied and {@link Structure} arguments are copied into memory
+ * of their own, so that changes to a structure are not written back to the
+ * native caller.  {@link Pointer} arguments are passed as is, and the memory
+ * they point to may no longer be valid once the callback runs.</p>
+ * <p>If the queue is full, the native thread waits until there is room, so
+ * that no calls are lost.  Exceptions thrown by the callback, or by the
+ * executor when rejecting a task, are passed to the
+ * {@link Native#getCallbackExceptionHandler callback exception handler}.
+ * Calls whose delivery was rejected stay queued, and are delivered by the
+ * next task the executor accepts.</p>
+ */
+public class AsyncCallbackInitializer extends CallbackThreadInitializer {
+
+    /** Default number of calls which may be queued for a callback. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final Executor executor;
+    private final int capacity;
+
+    /** Queue up to {@link #DEFAULT_CAPACITY} calls per callback. */
+    public AsyncCallbackInitializer(Executor executor) {
+        this(executor, DEFAULT_CAPACITY);
+    }
+
+    /** Queue up to the given number of calls per callback. */
+    public AsyncCallbackInitializer(Executor executor, int capacity) {
+        this(executor, capacity, null, null);
+    }
+
+    /** Specify the executor, queue capacity, and the name and group of
+     * native threads attached to invoke the callback.
+     */
+    public AsyncCallbackInitializer(Executor executor, int capacity, String name, ThreadGroup group) {
+        super(true, false, name, group);
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor must not be null");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    /** Returns the executor which runs the queued calls of the callback. */
+    public Executor getExecutor(Callback cb) { return executor; }
+    /** Returns the maximum number of queued calls of the callback. */
+    public int getCapacity(Callback cb) { return capacity; }
+}
@@ -0,0 +1,114 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fixed-capacity queue of the calls of one asynchronous callback, see
+ * {@link AsyncCallbackInitializer}.  Any thread may add calls; at most one
+ * task at a time is submitted to the executor, which delivers the calls
+ * queued so far in order and resubmits itself if more have arrived.
+ */
+final class AsyncCallbackQueue implements Runnable {
+
+    /** Receives the queued calls. */
+    interface Handler {
+        /** Deliver one call; must not throw. */
+        void deliver(Object[] args);
+        /** Report a failure to schedule delivery of the remaining calls. */
+        void rejected(RuntimeException e);
+    }
+
+    private final Handler handler;
+    private final Executor executor;
+    private final BlockingQueue<Object[]> calls;
+    private final List<Object[]> batch;
+    private final int capacity;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    AsyncCallbackQueue(Handler handler, Executor executor, int capacity) {
+        this.handler = handler;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.calls = new ArrayBlockingQueue<Object[]>(capacity);
+        this.batch = new ArrayList<Object[]>(capacity);
+    }
+
+    /** Queue a call, waiting for room if the queue is full, and make sure
+     * a task is scheduled to deliver it.
+     */
+    void put(Object[] args) throws InterruptedException {
+        calls.put(args);
+        schedule();
+    }
+
+    /** Number of calls waiting to be delivered. */
+    int size() {
+        return calls.size();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            boolean submitted = false;
+            try {
+                executor.execute(this);
+                submitted = true;
+            }
+            finally {
+                if (!submitted) {
+                    // Retried by the next call
+                    scheduled.set(false);
+                }
+            }
+        }
+    }
+
+    /** Deliver the calls queued so far. */
+    @Override
+    public void run() {
+        try {
+            calls.drainTo(batch, capacity);
+            for (Object[] args : batch) {
+                handler.deliver(args);
+            }
+        }
+        finally {
+            batch.clear();
+            scheduled.set(false);
+            if (!calls.isEmpty()) {
+                try {
+                    schedule();
+                }
+                catch(RuntimeException e) {
+                    // The calls stay queued for the next attempt
+                    handler.rejected(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+/** Base class of the invokers generated for callback methods.  A generated
+ * invoker calls the callback method with its arguments cast and unboxed
+ * from an array, with a plain interface call instead of
+ * {@link java.lang.reflect.Method#invoke}, so that calls from native code
+ * need neither access checks nor exception wrapping.
+ * <p>
+ * This class is an implementation detail and should not be extended.
+ */
+public abstract class CallbackInvoker {
+
+    protected CallbackInvoker() { }
+
+    /** Call the callback method of the given callback.
+     * @param cb callback to call
+     * @param args arguments converted to the parameter types of the
+     * callback method, primitives boxed
+     * @return the result, boxed if primitive, or <code>null</code> if the
+     * method returns <code>void</code>
+     * @throws Throwable anything thrown by the callback method
+     */
+    protected abstract Object invoke(Callback cb, Object[] args) throws Throwable;
+}
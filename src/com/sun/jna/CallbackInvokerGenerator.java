@@ -0,0 +1,128 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+/** Generates {@link CallbackInvoker} subclasses for callback methods. */
+final class CallbackInvokerGenerator {
+
+    private static final ClassFileWriter.GeneratedCache<Method, CallbackInvoker> invokers =
+        new ClassFileWriter.GeneratedCache<Method, CallbackInvoker>() {
+            @Override
+            protected CallbackInvoker generate(Class<?> type, Method method) throws Exception {
+                return isAccessible(method) ? CallbackInvokerGenerator.generate(method) : null;
+            }
+        };
+
+    private static final String SUPERCLASS = "com/sun/jna/CallbackInvoker";
+    private static final String INVOKE_DESC =
+        "(Lcom/sun/jna/Callback;[Ljava/lang/Object;)Ljava/lang/Object;";
+
+    private CallbackInvokerGenerator() { }
+
+    /** Returns the invoker for the given callback method, or
+     * <code>null</code> if the method can't be called from a generated
+     * class.  A callback class has a single callback method, so invokers are
+     * cached by the class declaring the method.
+     */
+    static CallbackInvoker getInvoker(Method method) {
+        return invokers.get(method.getDeclaringClass(), method);
+    }
+
+    private static boolean isAccessible(Method method) {
+        if (!ClassFileWriter.isAccessible(method.getDeclaringClass())) {
+            return false;
+        }
+        for (Class<?> type : method.getParameterTypes()) {
+            if (!type.isPrimitive() && !ClassFileWriter.isAccessible(type)) {
+                return false;
+            }
+        }
+        Class<?> returnType = method.getReturnType();
+        return returnType.isPrimitive() || ClassFileWriter.isAccessible(returnType);
+    }
+
+    private static CallbackInvoker generate(Method method) throws Exception {
+        Class<?> type = method.getDeclaringClass();
+        String name = ClassFileWriter.newClassName(type);
+        byte[] b = new ClassWriter().write(name.replace('.', '/'), method);
+        ClassFileWriter.GeneratedClassLoader loader = new ClassFileWriter.GeneratedClassLoader(
+            type.getClassLoader(), CallbackInvoker.class, Callback.class);
+        return (CallbackInvoker)loader.newInstance(name, b);
+    }
+
+    /** Writes the generated invoker classes. */
+    private static final class ClassWriter extends ClassFileWriter {
+
+        byte[] write(String className, Method method) throws IOException {
+            Code ctor = new Code();
+            ctor.op(ALOAD, 0);
+            ctor.op(INVOKESPECIAL).u2(methodRef(SUPERCLASS, "<init>", "()V"));
+            ctor.op(RETURN);
+            addMethod(ACC_PUBLIC, "<init>", "()V", ctor, 1, 1);
+
+            // invoke: return ((Type)cb).method((T0)args[0], ...);
+            Class<?> type = method.getDeclaringClass();
+            String owner = getInternalName(type);
+            Class<?>[] types = method.getParameterTypes();
+            Code c = new Code();
+            c.op(ALOAD, 1).op(CHECKCAST).u2(classRef(owner));
+            int size = 1;
+            for (int i=0;i < types.length;i++) {
+                Class<?> ptype = types[i];
+                c.op(ALOAD, 2);
+                pushInt(c, i);
+                c.op(AALOAD);
+                if (ptype.isPrimitive()) {
+                    String box = getInternalName(Function.ArgumentConverter.boxedType(ptype));
+                    c.op(CHECKCAST).u2(classRef(box));
+                    c.op(INVOKEVIRTUAL).u2(methodRef(box, ptype.getName() + "Value", "()" + getDescriptor(ptype)));
+                } else if (ptype != Object.class) {
+                    c.op(CHECKCAST).u2(classRef(getInternalName(ptype)));
+                }
+                size += ptype == long.class || ptype == double.class ? 2 : 1;
+            }
+            Class<?> returnType = method.getReturnType();
+            String desc = LibraryProxyGenerator.getParametersDescriptor(types)
+                + getDescriptor(returnType);
+            if (type.isInterface()) {
+                c.op(INVOKEINTERFACE).u2(interfaceMethodRef(owner, method.getName(), desc));
+                c.u1(size).u1(0);
+            } else {
+                c.op(INVOKEVIRTUAL).u2(methodRef(owner, method.getName(), desc));
+            }
+            if (returnType == void.class) {
+                c.op(ACONST_NULL);
+            } else if (returnType.isPrimitive()) {
+                String box = getInternalName(Function.ArgumentConverter.boxedType(returnType));
+                c.op(INVOKESTATIC).u2(methodRef(box, "valueOf", "(" + getDescriptor(returnType) + ")L" + box + ";"));
+            }
+            c.op(ARETURN);
+            // Arguments plus the array and index of the one being loaded
+            addMethod(ACC_PUBLIC | ACC_FINAL, "invoke", INVOKE_DESC, c, size + 2, 3);
+
+            return toByteArray(className, SUPERCLASS);
+        }
+    }
+}
@@ -24,6 +24,7 @@
 package com.sun.jna;
 
 import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
@@ -31,7 +32,6 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -40,6 +40,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.sun.jna.win32.DLLCallback;
 
@@ -49,14 +51,24 @@ import com.sun.jna.win32.DLLCallback;
 
 public class CallbackReference extends WeakReference<Callback> {
 
-    static final Map<Callback, CallbackReference> callbackMap = new WeakHashMap<Callback, CallbackReference>();
-    static final Map<Callback, CallbackReference> directCallbackMap = new WeakHashMap<Callback, CallbackReference>();
-    static final Map<Pointer, Reference<Callback>> pointerCallbackMap = new WeakHashMap<Pointer, Reference<Callback>>();
+    // Registries are looked up without locking; entries are only added
+    // while holding the pointerCallbackMap lock
+    static final Map<Callback, CallbackReference> callbackMap = new WeakIdentityMap<Callback, CallbackReference>();
+    static final Map<Callback, CallbackReference> directCallbackMap = new WeakIdentityMap<Callback, CallbackReference>();
+    // Callbacks by function pointer address
+    private static final ConcurrentMap<Long, AddressReference> pointerCallbackMap = new ConcurrentHashMap<Long, AddressReference>();
+    private static final ReferenceQueue<Callback> pointerCallbackQueue = new ReferenceQueue<Callback>();
     // Track memory allocations associated with this closure (usually String args)
-    static final Map<Object, Object> allocations = new WeakHashMap<Object, Object>();
+    static final Map<Object, Object> allocations = new WeakIdentityMap<Object, Object>();
     // Global map of allocated closures to facilitate centralized cleanup
     private static final Map<CallbackReference, Reference<CallbackReference>> allocatedMemory =
-            Collections.synchronizedMap(new WeakHashMap<CallbackReference, Reference<CallbackReference>>());
+            new WeakIdentityMap<CallbackReference, Reference<CallbackReference>>();
+    /** Maximum number of released native closures kept for reuse per
+     * callback signature.
+     */
+    static final int MAX_POOLED_CLOSURES = 16;
+    // Native closures released for reuse, by callback signature
+    private static final Map<Signature, LinkedList<Long>> closurePool = new HashMap<Signature, LinkedList<Long>>();
     private static final Method PROXY_CALLBACK_METHOD;
 
     static {
@@ -139,18 +151,14 @@ public class CallbackReference extends WeakReference<Callback> {
         if (!type.isInterface())
             throw new IllegalArgumentException("Callback type must be an interface");
         Map<Callback, CallbackReference> map = direct ? directCallbackMap : callbackMap;
+        Callback cb = lookupCallback(p);
+        if (cb != null) {
+            return checkCallbackType(type, p, cb);
+        }
         synchronized(pointerCallbackMap) {
-            Callback cb = null;
-            Reference<Callback> ref = pointerCallbackMap.get(p);
-            if (ref != null) {
-                cb = ref.get();
-                if (cb != null && !type.isAssignableFrom(cb.getClass())) {
-                    throw new IllegalStateException("Pointer " + p + " already mapped to " + cb
-                                                    + ".\nNative code may be re-using a default function pointer"
-                                                    + ", in which case you may need to use a common Callback class"
-                                                    + " wherever the function pointer is reused.");
-                }
-                return cb;
+            cb = lookupCallback(p);
+            if (cb != null) {
+                return checkCallbackType(type, p, cb);
             }
             int ctype = AltCallingConvention.class.isAssignableFrom(type)
                 ? Function.ALT_CONVENTION : Function.C_CONVENTION;
@@ -160,17 +168,63 @@ public class CallbackReference extends WeakReference<Callback> {
             cb = (Callback)Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, h);
             // No CallbackReference for this callback
             map.remove(cb);
-            pointerCallbackMap.put(p, new WeakReference<Callback>(cb));
+            registerCallback(p, cb);
             return cb;
         }
     }
 
+    private static Callback checkCallbackType(Class<?> type, Pointer p, Callback cb) {
+        if (!type.isAssignableFrom(cb.getClass())) {
+            throw new IllegalStateException("Pointer " + p + " already mapped to " + cb
+                                            + ".\nNative code may be re-using a default function pointer"
+                                            + ", in which case you may need to use a common Callback class"
+                                            + " wherever the function pointer is reused.");
+        }
+        return cb;
+    }
+
+    /** Returns the callback registered for the given function pointer. */
+    private static Callback lookupCallback(Pointer p) {
+        expungeCallbacks();
+        Reference<Callback> ref = pointerCallbackMap.get(Long.valueOf(Pointer.nativeValue(p)));
+        return ref != null ? ref.get() : null;
+    }
+
+    private static void registerCallback(Pointer p, Callback cb) {
+        expungeCallbacks();
+        Long address = Long.valueOf(Pointer.nativeValue(p));
+        pointerCallbackMap.put(address, new AddressReference(address, cb, pointerCallbackQueue));
+    }
+
+    /** Remove the entries of collected callbacks, unless the address has
+     * since been reused.
+     */
+    private static void expungeCallbacks() {
+        AddressReference ref;
+        while ((ref = (AddressReference)pointerCallbackQueue.poll()) != null) {
+            pointerCallbackMap.remove(ref.address, ref);
+        }
+    }
+
+    /** Weak reference to the callback for a function pointer address. */
+    private static final class AddressReference extends WeakReference<Callback> {
+        final Long address;
+
+        AddressReference(Long address, Callback cb, ReferenceQueue<Callback> queue) {
+            super(cb, queue);
+            this.address = address;
+        }
+    }
+
     Pointer cbstruct;
     Pointer trampoline;
     // Keep a reference to the proxy to avoid premature GC of it
     CallbackProxy proxy;
     Method method;
     int callingConvention;
+    // Signature of the native closure, under which it is pooled on release;
+    // null for closures which are never pooled
+    private Signature signature;
     private CallbackReference(Callback callback, int callingConvention, boolean direct) {
         super(callback);
         TypeMapper mapper = Native.getTypeMapper(callback.getClass());
@@ -178,9 +232,23 @@ public class CallbackReference extends WeakReference<Callback> {
         Class<?>[] nativeParamTypes;
         Class<?> returnType;
 
+        AsyncCallbackInitializer async = null;
+        if (!(callback instanceof CallbackProxy)) {
+            synchronized(initializers) {
+                CallbackThreadInitializer init = initializers.get(callback);
+                if (init instanceof AsyncCallbackInitializer) {
+                    async = (AsyncCallbackInitializer)init;
+                }
+            }
+        }
+
         // Check whether direct mapping may be used, or whether
         // we need to fall back to conventional mapping
         boolean ppc = Platform.isPPC();
+        // Asynchronous delivery requires a proxy to queue the call
+        if (direct && async != null) {
+            direct = false;
+        }
         if (direct) {
             Method m = getCallbackMethod(callback);
             Class<?>[] ptypes = m.getParameterTypes();
@@ -215,16 +283,15 @@ public class CallbackReference extends WeakReference<Callback> {
             if (callback instanceof DLLCallback) {
                 flags |= Native.CB_OPTION_IN_DLL;
             }
-            peer = Native.createNativeCallback(callback, method,
-                                               nativeParamTypes, returnType,
-                                               callingConvention, flags,
-                                               encoding);
+            peer = createNativeCallback(callback, method,
+                                        nativeParamTypes, returnType,
+                                        flags, encoding);
         } else {
             if (callback instanceof CallbackProxy) {
                 proxy = (CallbackProxy)callback;
             }
             else {
-                proxy = new DefaultCallbackProxy(getCallbackMethod(callback), mapper, encoding);
+                proxy = new DefaultCallbackProxy(getCallbackMethod(callback), mapper, encoding, async);
             }
             nativeParamTypes = proxy.getParameterTypes();
             returnType = proxy.getReturnType();
@@ -260,15 +327,43 @@ public class CallbackReference extends WeakReference<Callback> {
             }
             int flags = callback instanceof DLLCallback
                 ? Native.CB_OPTION_IN_DLL : 0;
-            peer = Native.createNativeCallback(proxy, PROXY_CALLBACK_METHOD,
-                                               nativeParamTypes, returnType,
-                                               callingConvention, flags,
-                                               encoding);
+            peer = createNativeCallback(proxy, PROXY_CALLBACK_METHOD,
+                                        nativeParamTypes, returnType,
+                                        flags, encoding);
         }
         cbstruct = peer != 0 ? new Pointer(peer) : null;
         allocatedMemory.put(this, new WeakReference<CallbackReference>(this));
     }
 
+    /** Create a native closure calling the given object, or reuse one
+     * released by a callback with the same signature.
+     */
+    private long createNativeCallback(Callback target, Method method,
+                                      Class<?>[] parameterTypes, Class<?> returnType,
+                                      int flags, String encoding) {
+        if ((flags & Native.CB_OPTION_IN_DLL) != 0) {
+            // Pooled closures would hold on to the limited DLL callback slots
+            return Native.createNativeCallback(target, method, parameterTypes, returnType,
+                                               callingConvention, flags, encoding);
+        }
+        Signature sig = new Signature(method, parameterTypes, returnType,
+                                      callingConvention, flags, encoding);
+        signature = sig;
+        Long pooled = null;
+        synchronized(closurePool) {
+            LinkedList<Long> closures = closurePool.get(sig);
+            if (closures != null && !closures.isEmpty()) {
+                pooled = closures.removeFirst();
+            }
+        }
+        if (pooled != null) {
+            Native.rebindNativeCallback(pooled.longValue(), target);
+            return pooled.longValue();
+        }
+        return Native.createNativeCallback(target, method, parameterTypes, returnType,
+                                           callingConvention, flags, encoding);
+    }
+
     private Class<?> getNativeType(Class<?> cls) {
         if (Structure.class.isAssignableFrom(cls)) {
             // Make sure we can instantiate an argument of this type
@@ -327,8 +422,16 @@ public class CallbackReference extends WeakReference<Callback> {
         return type;
     }
 
+    // Callback method by callback implementation class
+    private static final ClassCache<Method> callbackMethods = new ClassCache<Method>();
+
     private static Method getCallbackMethod(Callback callback) {
-        return getCallbackMethod(findCallbackClass(callback.getClass()));
+        Class<?> cls = callback.getClass();
+        Method m = callbackMethods.get(cls);
+        if (m == null) {
+            m = callbackMethods.putIfAbsent(cls, getCallbackMethod(findCallbackClass(cls)));
+        }
+        return m;
     }
 
     private static Method getCallbackMethod(Class<?> cls) {
@@ -393,6 +496,107 @@ public class CallbackReference extends WeakReference<Callback> {
         }
     }
 
+    /** Everything a native closure is created from, other than the object
+     * it calls.
+     */
+    private static final class Signature {
+        private final Object[] parts;
+        private final int hash;
+
+        Signature(Method method, Class<?>[] parameterTypes, Class<?> returnType,
+                  int callingConvention, int flags, String encoding) {
+            parts = new Object[parameterTypes.length + 5];
+            System.arraycopy(parameterTypes, 0, parts, 0, parameterTypes.length);
+            int i = parameterTypes.length;
+            parts[i++] = returnType;
+            parts[i++] = method;
+            parts[i++] = Integer.valueOf(callingConvention);
+            parts[i++] = Integer.valueOf(flags);
+            parts[i] = encoding;
+            hash = Arrays.hashCode(parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Signature
+                && ((Signature)o).hash == hash
+                && Arrays.equals(((Signature)o).parts, parts);
+        }
+    }
+
+    /** Release the native closure of this callback for reuse by another
+     * callback with the same signature, or free it if enough closures are
+     * already pooled.
+     */
+    private synchronized void recycle() {
+        if (cbstruct == null) {
+            return;
+        }
+        long peer = cbstruct.peer;
+        cbstruct.peer = 0;
+        cbstruct = null;
+        allocatedMemory.remove(this);
+        if (signature == null) {
+            // Not pooled
+            Native.freeNativeCallback(peer);
+            return;
+        }
+        // Calls through a stale pointer find no callback object
+        Native.rebindNativeCallback(peer, null);
+        synchronized(closurePool) {
+            LinkedList<Long> closures = closurePool.get(signature);
+            if (closures == null) {
+                closures = new LinkedList<Long>();
+                closurePool.put(signature, closures);
+            }
+            if (closures.size() < MAX_POOLED_CLOSURES) {
+                closures.addFirst(Long.valueOf(peer));
+                return;
+            }
+        }
+        Native.freeNativeCallback(peer);
+    }
+
+    /** Release the native function pointer of the given callback without
+     * waiting for the callback to be garbage collected.  The native closure
+     * behind it is kept for reuse by the next callback with the same
+     * signature, so code which creates a callback per request can release
+     * it after each request instead of allocating a new closure every time.
+     * <p>
+     * Native code must no longer call the released function pointer.  If
+     * the callback is passed to native code again, it gets a new function
+     * pointer.
+     * @param cb callback to release
+     * @return whether the callback had a native function pointer
+     */
+    public static boolean release(Callback cb) {
+        if (cb == null) {
+            return false;
+        }
+        synchronized(pointerCallbackMap) {
+            boolean released = release(cb, callbackMap.remove(cb));
+            return release(cb, directCallbackMap.remove(cb)) || released;
+        }
+    }
+
+    private static boolean release(Callback cb, CallbackReference ref) {
+        if (ref == null) {
+            return false;
+        }
+        Long address = Long.valueOf(Pointer.nativeValue(ref.getTrampoline()));
+        AddressReference aref = pointerCallbackMap.get(address);
+        if (aref != null && aref.get() == cb) {
+            pointerCallbackMap.remove(address, aref);
+        }
+        ref.recycle();
+        return true;
+    }
+
     /** Dispose of all memory allocated for callbacks. */
     static void disposeAll() {
         // use a copy since dispose() modifes the map
@@ -400,6 +604,14 @@ public class CallbackReference extends WeakReference<Callback> {
         for (CallbackReference r : refs) {
             r.dispose();
         }
+        synchronized(closurePool) {
+            for (List<Long> closures : closurePool.values()) {
+                for (Long peer : closures) {
+                    Native.freeNativeCallback(peer.longValue());
+                }
+            }
+            closurePool.clear();
+        }
     }
 
     private Callback getCallback() {
@@ -432,6 +644,11 @@ public class CallbackReference extends WeakReference<Callback> {
         if (cb == null) {
             return null;
         }
+        Map<Callback, CallbackReference> map = direct ? directCallbackMap : callbackMap;
+        CallbackReference cbref = map.get(cb);
+        if (cbref != null) {
+            return cbref.getTrampoline();
+        }
         if ((fp = getNativeFunctionPointer(cb)) != null) {
             return fp;
         }
@@ -442,31 +659,48 @@ public class CallbackReference extends WeakReference<Callback> {
                ? ((Integer)options.get(Library.OPTION_CALLING_CONVENTION)).intValue()
                : Function.C_CONVENTION);
 
-        Map<Callback, CallbackReference> map = direct ? directCallbackMap : callbackMap;
         synchronized(pointerCallbackMap) {
-            CallbackReference cbref = map.get(cb);
+            cbref = map.get(cb);
             if (cbref == null) {
                 cbref = new CallbackReference(cb, callingConvention, direct);
-                map.put(cb, cbref);
-                pointerCallbackMap.put(cbref.getTrampoline(), new WeakReference<Callback>(cb));
-                if (initializers.containsKey(cb)) {
+                Pointer trampoline = cbref.getTrampoline();
+                boolean hasInitializer;
+                synchronized(initializers) {
+                    hasInitializer = initializers.containsKey(cb);
+                }
+                if (hasInitializer) {
                     cbref.setCallbackOptions(Native.CB_HAS_INITIALIZER);
                 }
+                registerCallback(trampoline, cb);
+                // Publish only once fully initialized
+                map.put(cb, cbref);
             }
             return cbref.getTrampoline();
         }
     }
 
-    private class DefaultCallbackProxy implements CallbackProxy {
+    private class DefaultCallbackProxy implements CallbackProxy, AsyncCallbackQueue.Handler {
         private final Method callbackMethod;
+        private final Class<?>[] paramTypes;
         private ToNativeConverter toNative;
         private final FromNativeConverter[] fromNative;
         private final String encoding;
-        public DefaultCallbackProxy(Method callbackMethod, TypeMapper mapper, String encoding) {
+        /** Generated invoker, or <code>null</code> to use reflection. */
+        private final CallbackInvoker invoker;
+        /** Which arguments need converting from their native type. */
+        private final boolean[] convert;
+        private final boolean convertArgs;
+        private final boolean autoWriteArgs;
+        private final boolean convertResult;
+        /** Queue of calls to deliver asynchronously, or <code>null</code>. */
+        private final AsyncCallbackQueue queue;
+        public DefaultCallbackProxy(Method callbackMethod, TypeMapper mapper, String encoding,
+                                    AsyncCallbackInitializer async) {
             this.callbackMethod = callbackMethod;
             this.encoding = encoding;
             Class<?>[] argTypes = callbackMethod.getParameterTypes();
             Class<?> returnType = callbackMethod.getReturnType();
+            paramTypes = argTypes;
             fromNative = new FromNativeConverter[argTypes.length];
             if (NativeMapped.class.isAssignableFrom(returnType)) {
                 toNative = NativeMappedConverter.getInstance(returnType);
@@ -474,6 +708,9 @@ public class CallbackReference extends WeakReference<Callback> {
             else if (mapper != null) {
                 toNative = mapper.getToNativeConverter(returnType);
             }
+            convert = new boolean[argTypes.length];
+            boolean convertArgs = false;
+            boolean autoWriteArgs = false;
             for (int i=0;i < fromNative.length;i++) {
                 if (NativeMapped.class.isAssignableFrom(argTypes[i])) {
                     fromNative[i] = new NativeMappedConverter(argTypes[i]);
@@ -481,8 +718,29 @@ public class CallbackReference extends WeakReference<Callback> {
                 else if (mapper != null) {
                     fromNative[i] = mapper.getFromNativeConverter(argTypes[i]);
                 }
+                convert[i] = fromNative[i] != null || needsConversion(argTypes[i]);
+                convertArgs |= convert[i];
+                autoWriteArgs |= Structure.class.isAssignableFrom(argTypes[i])
+                    && !Structure.ByValue.class.isAssignableFrom(argTypes[i]);
             }
-            if (!callbackMethod.isAccessible()) {
+            if (async != null) {
+                if (returnType != void.class) {
+                    throw new IllegalArgumentException("Asynchronous callback method must return void: " + callbackMethod);
+                }
+                Callback cb = CallbackReference.this.getCallback();
+                queue = new AsyncCallbackQueue(this, async.getExecutor(cb), async.getCapacity(cb));
+            }
+            else {
+                queue = null;
+            }
+            this.convertArgs = convertArgs;
+            // A type mapper may also produce structures.  Structures of
+            // asynchronous calls are copies, so are not written back.
+            this.autoWriteArgs = queue == null && (autoWriteArgs || mapper != null);
+            this.convertResult = toNative != null || !returnType.isPrimitive()
+                || returnType == boolean.class;
+            invoker = CallbackInvokerGenerator.getInvoker(callbackMethod);
+            if (invoker == null && !callbackMethod.isAccessible()) {
                 try {
                     callbackMethod.setAccessible(true);
                 }
@@ -496,44 +754,69 @@ public class CallbackReference extends WeakReference<Callback> {
             return CallbackReference.this.getCallback();
         }
 
-        private Object invokeCallback(Object[] args) {
-            Class<?>[] paramTypes = callbackMethod.getParameterTypes();
-            Object[] callbackArgs = new Object[args.length];
-
-            // convert basic supported types to appropriate Java parameter types
-            for (int i=0;i < args.length;i++) {
-                Class<?> type = paramTypes[i];
-                Object arg = args[i];
-                if (fromNative[i] != null) {
-                    FromNativeContext context =
-                        new CallbackParameterContext(type, callbackMethod, args, i);
-                    callbackArgs[i] = fromNative[i].fromNative(arg, context);
-                } else {
-                    callbackArgs[i] = convertArgument(arg, type);
+        /** Convert the native arguments to the callback method's types. */
+        private Object[] convertArguments(Object[] args) {
+            Object[] callbackArgs = args;
+            if (convertArgs) {
+                callbackArgs = new Object[args.length];
+                // convert basic supported types to appropriate Java parameter types
+                for (int i=0;i < args.length;i++) {
+                    Class<?> type = paramTypes[i];
+                    Object arg = args[i];
+                    if (!convert[i]) {
+                        callbackArgs[i] = arg;
+                    } else if (fromNative[i] != null) {
+                        FromNativeContext context =
+                            new CallbackParameterContext(type, callbackMethod, args, i);
+                        callbackArgs[i] = fromNative[i].fromNative(arg, context);
+                    } else {
+                        callbackArgs[i] = convertArgument(arg, type);
+                    }
                 }
             }
+            return callbackArgs;
+        }
 
+        private Object invokeCallback(Object[] callbackArgs) {
             Object result = null;
             Callback cb = DefaultCallbackProxy.this.getCallback();
             if (cb != null) {
-                try {
-                    result = convertResult(callbackMethod.invoke(cb, callbackArgs));
-                }
-                catch (IllegalArgumentException e) {
-                    Native.getCallbackExceptionHandler().uncaughtException(cb, e);
-                }
-                catch (IllegalAccessException e) {
-                    Native.getCallbackExceptionHandler().uncaughtException(cb, e);
+                if (invoker != null) {
+                    try {
+                        result = invoker.invoke(cb, callbackArgs);
+                        if (convertResult) {
+                            result = convertResult(result);
+                        }
+                    }
+                    catch (Throwable t) {
+                        Native.getCallbackExceptionHandler().uncaughtException(cb, t);
+                    }
                 }
-                catch (InvocationTargetException e) {
-                    Native.getCallbackExceptionHandler().uncaughtException(cb, e.getTargetException());
+                else {
+                    try {
+                        result = callbackMethod.invoke(cb, callbackArgs);
+                        if (convertResult) {
+                            result = convertResult(result);
+                        }
+                    }
+                    catch (IllegalArgumentException e) {
+                        Native.getCallbackExceptionHandler().uncaughtException(cb, e);
+                    }
+                    catch (IllegalAccessException e) {
+                        Native.getCallbackExceptionHandler().uncaughtException(cb, e);
+                    }
+                    catch (InvocationTargetException e) {
+                        Native.getCallbackExceptionHandler().uncaughtException(cb, e.getTargetException());
+                    }
                 }
             }
             // Synch any structure arguments back to native memory
-            for (int i=0;i < callbackArgs.length;i++) {
-                if (callbackArgs[i] instanceof Structure
-                    && !(callbackArgs[i] instanceof Structure.ByValue)) {
-                    ((Structure)callbackArgs[i]).autoWrite();
+            if (autoWriteArgs) {
+                for (int i=0;i < callbackArgs.length;i++) {
+                    if (callbackArgs[i] instanceof Structure
+                        && !(callbackArgs[i] instanceof Structure.ByValue)) {
+                        ((Structure)callbackArgs[i]).autoWrite();
+                    }
                 }
             }
 
@@ -548,7 +831,11 @@ public class CallbackReference extends WeakReference<Callback> {
         @Override
         public Object callback(Object[] args) {
             try {
-                return invokeCallback(args);
+                if (queue != null) {
+                    queue.put(convertArguments(args));
+                    return null;
+                }
+                return invokeCallback(convertArguments(args));
             }
             catch (Throwable t) {
                 Native.getCallbackExceptionHandler().uncaughtException(getCallback(), t);
@@ -556,6 +843,41 @@ public class CallbackReference extends WeakReference<Callback> {
             }
         }
 
+        /** Called from the executor with the converted arguments of a
+         * queued call.
+         */
+        @Override
+        public void deliver(Object[] args) {
+            try {
+                invokeCallback(args);
+            }
+            catch (Throwable t) {
+                Native.getCallbackExceptionHandler().uncaughtException(getCallback(), t);
+            }
+        }
+
+        /** Called when the executor refuses to deliver the remaining
+         * queued calls.
+         */
+        @Override
+        public void rejected(RuntimeException e) {
+            Native.getCallbackExceptionHandler().uncaughtException(getCallback(), e);
+        }
+
+        /** Whether {@link #convertArgument} may change an argument of the
+         * given type.
+         */
+        private boolean needsConversion(Class<?> dstType) {
+            return dstType == String.class
+                || dstType == WString.class
+                || dstType == String[].class
+                || dstType == WString[].class
+                || Callback.class.isAssignableFrom(dstType)
+                || Structure.class.isAssignableFrom(dstType)
+                || dstType == boolean.class
+                || dstType == Boolean.class;
+        }
+
         /** Convert argument from its basic native type to the given
          * Java parameter type.
          */
@@ -579,7 +901,7 @@ public class CallbackReference extends WeakReference<Callback> {
                 else if (Structure.class.isAssignableFrom(dstType)) {
                     // If passed by value, don't hold onto the pointer, which
                     // is only valid for the duration of the callback call
-                    if (Structure.ByValue.class.isAssignableFrom(dstType)) {
+                    if (queue != null || Structure.ByValue.class.isAssignableFrom(dstType)) {
                         Structure s = Structure.newInstance((Class<? extends Structure>) dstType);
                         byte[] buf = new byte[s.size()];
                         ((Pointer)value).read(0, buf, 0, buf.length);
@@ -633,7 +955,7 @@ public class CallbackReference extends WeakReference<Callback> {
         }
         @Override
         public Class<?>[] getParameterTypes() {
-            return callbackMethod.getParameterTypes();
+            return paramTypes.clone();
         }
         @Override
         public Class<?> getReturnType() {
@@ -0,0 +1,104 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+
+/** Concurrent cache of values computed per class, in the spirit of
+ * <code>java.lang.ClassValue</code> (which is not available on all
+ * supported platforms).  Lookups do not lock.
+ * <p>
+ * Classes are held weakly and values softly, so that a cached value which
+ * refers back to its class (e.g. through reflection objects) does not keep
+ * the class from being unloaded.  A value may therefore disappear under
+ * memory pressure, in which case callers compute it again.  Values which
+ * must live as long as their class, and do not refer back to it, may be
+ * held strongly instead.
+ */
+final class ClassCache<V> {
+
+    private final WeakIdentityMap<Class<?>, Object> map = new WeakIdentityMap<Class<?>, Object>();
+    private final boolean softValues;
+
+    /** Create a cache which holds values softly. */
+    ClassCache() {
+        this(true);
+    }
+
+    /** Create a cache.
+     * @param softValues whether values are held softly rather than strongly
+     */
+    ClassCache(boolean softValues) {
+        this.softValues = softValues;
+    }
+
+    /** Returns the value cached for the class, or <code>null</code>. */
+    V get(Class<?> cls) {
+        return unwrap(map.get(cls));
+    }
+
+    /** Cache the value for the class, replacing any existing value. */
+    void put(Class<?> cls, V value) {
+        map.put(cls, wrap(value));
+    }
+
+    /** Cache the value for the class unless another value is already
+     * cached.
+     * @return the cached value
+     */
+    V putIfAbsent(Class<?> cls, V value) {
+        Object ref = wrap(value);
+        for (;;) {
+            Object existing = map.putIfAbsent(cls, ref);
+            if (existing == null) {
+                return value;
+            }
+            V v = unwrap(existing);
+            if (v != null) {
+                return v;
+            }
+            if (map.replace(cls, existing, ref)) {
+                return value;
+            }
+        }
+    }
+
+    private Object wrap(V value) {
+        return softValues ? new SoftReference<V>(value) : value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V unwrap(Object ref) {
+        if (ref == null) {
+            return null;
+        }
+        return softValues ? ((Reference<V>)ref).get() : (V)ref;
+    }
+
+    /** Returns the number of cached classes, including any whose value has
+     * been cleared.
+     */
+    int size() {
+        return map.size();
+    }
+}
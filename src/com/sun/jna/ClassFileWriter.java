@@ -0,0 +1,366 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Minimal class file writer for the classes JNA generates at runtime.
+ * Generated code contains no branches, so classes use class file version 49
+ * and need no stack map frames.
+ */
+class ClassFileWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+    static final int ACC_SYNTHETIC = 0x1000;
+
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int LCONST_0 = 0x09;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int LLOAD = 0x16;
+    static final int FLOAD = 0x17;
+    static final int DLOAD = 0x18;
+    static final int ALOAD = 0x19;
+    static final int IALOAD = 0x2e;
+    static final int AALOAD = 0x32;
+    static final int ASTORE = 0x3a;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int INEG = 0x74;
+    static final int I2L = 0x85;
+    static final int I2B = 0x91;
+    static final int I2C = 0x92;
+    static final int I2S = 0x93;
+    static final int IRETURN = 0xac;
+    static final int LRETURN = 0xad;
+    static final int FRETURN = 0xae;
+    static final int DRETURN = 0xaf;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETFIELD = 0xb4;
+    static final int PUTFIELD = 0xb5;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int INVOKEINTERFACE = 0xb9;
+    static final int ANEWARRAY = 0xbd;
+    static final int CHECKCAST = 0xc0;
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> entries = new HashMap<String, Integer>();
+    private int poolCount = 1;
+
+    private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+    private final DataOutputStream methods = new DataOutputStream(methodBytes);
+    private int methodCount;
+
+    private int entry(String key, int tag, String... data) throws IOException {
+        Integer index = entries.get(key);
+        if (index != null) {
+            return index.intValue();
+        }
+        int[] refs = new int[data.length];
+        if (tag != 1 && tag != 3) {
+            for (int i=0;i < data.length;i++) {
+                refs[i] = data[i].indexOf(':') != -1
+                    ? nameAndType(data[i]) : (tag == 7 || tag == 8 ? utf8(data[i]) : classRef(data[i]));
+            }
+        }
+        pool.writeByte(tag);
+        switch(tag) {
+        case 1: pool.writeUTF(data[0]); break;
+        case 3: pool.writeInt(Integer.parseInt(data[0])); break;
+        case 7:
+        case 8: pool.writeShort(refs[0]); break;
+        default:
+            pool.writeShort(refs[0]);
+            pool.writeShort(refs[1]);
+        }
+        int i = poolCount++;
+        entries.put(key, Integer.valueOf(i));
+        return i;
+    }
+
+    int utf8(String s) throws IOException {
+        return entry("U" + s, 1, s);
+    }
+
+    int integer(int value) throws IOException {
+        return entry("I" + value, 3, String.valueOf(value));
+    }
+
+    int classRef(String internalName) throws IOException {
+        return entry("C" + internalName, 7, internalName);
+    }
+
+    private int nameAndType(String nameAndType) throws IOException {
+        Integer index = entries.get("N" + nameAndType);
+        if (index != null) {
+            return index.intValue();
+        }
+        int sep = nameAndType.indexOf(':');
+        int name = utf8(nameAndType.substring(0, sep));
+        int desc = utf8(nameAndType.substring(sep + 1));
+        pool.writeByte(12);
+        pool.writeShort(name);
+        pool.writeShort(desc);
+        int i = poolCount++;
+        entries.put("N" + nameAndType, Integer.valueOf(i));
+        return i;
+    }
+
+    int fieldRef(String owner, String name, String desc) throws IOException {
+        return entry("F" + owner + "." + name + ":" + desc, 9, owner, name + ":" + desc);
+    }
+
+    int methodRef(String owner, String name, String desc) throws IOException {
+        return entry("M" + owner + "." + name + desc, 10, owner, name + ":" + desc);
+    }
+
+    int interfaceMethodRef(String owner, String name, String desc) throws IOException {
+        return entry("IM" + owner + "." + name + desc, 11, owner, name + ":" + desc);
+    }
+
+    void addMethod(int access, String name, String desc,
+                   Code c, int maxStack, int maxLocals) throws IOException {
+        methods.writeShort(access);
+        methods.writeShort(utf8(name));
+        methods.writeShort(utf8(desc));
+        methods.writeShort(1);
+        methods.writeShort(utf8("Code"));
+        byte[] b = c.toByteArray();
+        methods.writeInt(12 + b.length);
+        methods.writeShort(maxStack);
+        methods.writeShort(maxLocals);
+        methods.writeInt(b.length);
+        methods.write(b);
+        methods.writeShort(0); // exception table
+        methods.writeShort(0); // attributes
+        ++methodCount;
+    }
+
+    /** Assemble the class from the methods added so far. */
+    byte[] toByteArray(String className, String superName, String... interfaceNames) throws IOException {
+        int thisClass = classRef(className);
+        int superClass = classRef(superName);
+        int[] ifaces = new int[interfaceNames.length];
+        for (int i=0;i < ifaces.length;i++) {
+            ifaces[i] = classRef(interfaceNames[i]);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream cls = new DataOutputStream(bytes);
+        cls.writeInt(0xCAFEBABE);
+        cls.writeShort(0);
+        cls.writeShort(49);
+        cls.writeShort(poolCount);
+        pool.flush();
+        poolBytes.writeTo(cls);
+        cls.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC);
+        cls.writeShort(thisClass);
+        cls.writeShort(superClass);
+        cls.writeShort(ifaces.length);
+        for (int iface : ifaces) {
+            cls.writeShort(iface);
+        }
+        cls.writeShort(0); // fields
+        cls.writeShort(methodCount);
+        methods.flush();
+        methodBytes.writeTo(cls);
+        cls.writeShort(0); // attributes
+        cls.flush();
+        return bytes.toByteArray();
+    }
+
+    void pushInt(Code c, int value) throws IOException {
+        if (value <= 5) {
+            c.op(ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            c.op(BIPUSH).u1(value);
+        } else if (value <= Short.MAX_VALUE) {
+            c.op(SIPUSH).u2(value);
+        } else {
+            c.op(LDC_W).u2(integer(value));
+        }
+    }
+
+    static String getDescriptor(Class<?> type) {
+        if (type == void.class) return "V";
+        if (type == boolean.class) return "Z";
+        if (type == byte.class) return "B";
+        if (type == short.class) return "S";
+        if (type == char.class) return "C";
+        if (type == int.class) return "I";
+        if (type == long.class) return "J";
+        if (type == float.class) return "F";
+        if (type == double.class) return "D";
+        if (type.isArray()) return type.getName().replace('.', '/');
+        return "L" + type.getName().replace('.', '/') + ";";
+    }
+
+    /** Whether the class can be referred to from a generated class. */
+    static boolean isAccessible(Class<?> cls) {
+        while (cls.isArray()) {
+            cls = cls.getComponentType();
+        }
+        for (Class<?> c = cls; c != null; c = c.getDeclaringClass()) {
+            if (!Modifier.isPublic(c.getModifiers())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns a unique name for a class generated for the given type. */
+    static String newClassName(Class<?> type) {
+        return type.getName() + "$$JNA$" + COUNTER.incrementAndGet();
+    }
+
+    static String getInternalName(Class<?> type) {
+        return type.isArray() ? getDescriptor(type) : type.getName().replace('.', '/');
+    }
+
+    /** Bytecode of a single method. */
+    static final class Code {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Code op(int opcode) {
+            bytes.write(opcode);
+            return this;
+        }
+
+        /** Local variable instruction; uses the wide form where needed. */
+        Code op(int opcode, int local) {
+            if (local > 0xFF) {
+                bytes.write(0xc4);
+                bytes.write(opcode);
+                return u2(local);
+            }
+            bytes.write(opcode);
+            return u1(local);
+        }
+
+        Code u1(int value) {
+            bytes.write(value);
+            return this;
+        }
+
+        Code u2(int value) {
+            bytes.write(value >> 8);
+            bytes.write(value);
+            return this;
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    /** Caches an instance of a class generated per type, such as a
+     * structure or callback class.  Types for which no class can be
+     * generated are cached as well, and yield <code>null</code>, so that
+     * callers fall back to reflection.
+     * @param <S> what the class is generated from
+     * @param <T> the generated instance
+     */
+    abstract static class GeneratedCache<S, T> {
+        /** Cached for types which can't have a generated class. */
+        private static final Object NONE = new Object();
+
+        private final ClassCache<Object> instances = new ClassCache<Object>();
+
+        /** Returns the generated instance for the given type, or
+         * <code>null</code> if none can be generated.
+         */
+        @SuppressWarnings("unchecked")
+        T get(Class<?> type, S source) {
+            Object instance = instances.get(type);
+            if (instance == null) {
+                T generated;
+                try {
+                    generated = generate(type, source);
+                } catch(Exception e) {
+                    generated = null;
+                } catch(LinkageError e) {
+                    generated = null;
+                }
+                // Concurrent lookups may generate several classes, but only
+                // one is used
+                instance = instances.putIfAbsent(type, generated != null ? generated : NONE);
+            }
+            return instance != NONE ? (T)instance : null;
+        }
+
+        /** Generate the instance for the given type.
+         * @return the instance, or <code>null</code> if the type isn't
+         * suitable for a generated class
+         */
+        protected abstract T generate(Class<?> type, S source) throws Exception;
+    }
+
+    /** Defines a single generated class.  User classes are loaded through
+     * the given parent loader, while the JNA classes the generated code
+     * refers to are always those of this JNA instance.
+     */
+    static class GeneratedClassLoader extends ClassLoader {
+        private final Class<?>[] jnaClasses;
+
+        GeneratedClassLoader(ClassLoader parent, Class<?>... jnaClasses) {
+            super(parent);
+            this.jnaClasses = jnaClasses;
+        }
+
+        Class<?> define(String name, byte[] b) {
+            return defineClass(name, b, 0, b.length, ClassFileWriter.class.getProtectionDomain());
+        }
+
+        /** Define the class and create an instance with its no-argument
+         * constructor.
+         */
+        Object newInstance(String name, byte[] b) throws InstantiationException, IllegalAccessException {
+            return define(name, b).newInstance();
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            for (Class<?> cls : jnaClasses) {
+                if (cls.getName().equals(name)) {
+                    return cls;
+                }
+            }
+            return super.loadClass(name, resolve);
+        }
+    }
+}
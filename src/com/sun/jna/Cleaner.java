@@ -0,0 +1,155 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs cleanup actions once their owning object becomes phantom reachable,
+ * as a replacement for {@link Object#finalize}.  Registered references are
+ * tracked in a concurrent set, so registration and explicit cleanup do not
+ * contend on a global lock.
+ *
+ * <p>A single daemon thread processes the reference queue.  It exits after
+ * a period without registrations so that it does not pin the defining
+ * class loader, and is restarted by the next registration.
+ */
+final class Cleaner {
+
+    /** Handle to a registered cleanup action. */
+    interface Cleanable {
+        /** Run the cleanup action now, unless it has already run.  The
+         * action runs at most once, regardless of how many times or from
+         * how many threads this is called.
+         */
+        void clean();
+    }
+
+    private static final Logger LOG = Logger.getLogger(Cleaner.class.getName());
+    private static final long IDLE_TIMEOUT = 30000;
+    private static final Cleaner INSTANCE = new Cleaner();
+
+    static Cleaner getCleaner() {
+        return INSTANCE;
+    }
+
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+    private final Set<CleanerRef> refs =
+        Collections.newSetFromMap(new ConcurrentHashMap<CleanerRef, Boolean>());
+    private volatile Thread thread;
+
+    private Cleaner() { }
+
+    /** Register the given action to be run once <code>obj</code> becomes
+     * phantom reachable.  The action must not refer to <code>obj</code>,
+     * or it will never become unreachable.
+     */
+    Cleanable register(Object obj, Runnable action) {
+        CleanerRef ref = new CleanerRef(this, obj, queue, action);
+        refs.add(ref);
+        if (thread == null) {
+            start();
+        }
+        return ref;
+    }
+
+    /** Number of registered actions which have not yet run. */
+    int size() {
+        return refs.size();
+    }
+
+    private synchronized void start() {
+        if (thread == null) {
+            Thread t = new Thread("JNA Cleaner") {
+                @Override
+                public void run() {
+                    processQueue();
+                }
+            };
+            t.setDaemon(true);
+            t.setPriority(Thread.MAX_PRIORITY);
+            thread = t;
+            t.start();
+        }
+    }
+
+    private void processQueue() {
+        while (true) {
+            try {
+                Reference<?> ref = queue.remove(IDLE_TIMEOUT);
+                if (ref instanceof CleanerRef) {
+                    ((CleanerRef)ref).clean();
+                }
+                else if (ref == null && stopIfIdle()) {
+                    return;
+                }
+            }
+            catch(InterruptedException e) {
+                // Only stop once everything registered has been cleaned
+                if (stopIfIdle()) {
+                    return;
+                }
+            }
+            catch(Throwable t) {
+                LOG.log(Level.WARNING, "Cleanup action failed", t);
+            }
+        }
+    }
+
+    /** Stop processing if nothing is registered.  A concurrent registration
+     * either sees the cleared thread and starts a new one, or is seen here.
+     */
+    private synchronized boolean stopIfIdle() {
+        thread = null;
+        if (refs.isEmpty()) {
+            return true;
+        }
+        thread = Thread.currentThread();
+        return false;
+    }
+
+    private static final class CleanerRef extends PhantomReference<Object> implements Cleanable {
+        private final Cleaner cleaner;
+        private final Runnable action;
+
+        CleanerRef(Cleaner cleaner, Object referent, ReferenceQueue<Object> queue, Runnable action) {
+            super(referent, queue);
+            this.cleaner = cleaner;
+            this.action = action;
+        }
+
+        @Override
+        public void clean() {
+            if (cleaner.refs.remove(this)) {
+                clear();
+                action.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a parameter of a library interface method as not modified by the
+ * native function, like a <code>const</code> pointer in C.  Arguments which
+ * would normally be read back from native memory after the call, such as
+ * <code>String[]</code>, <code>Pointer[]</code>, {@link Structure} or
+ * <code>Structure[]</code>, are left unchanged instead.
+ * <pre>
+ * int execv(String path, &#64;Const String[] argv);
+ * </pre>
+ * A {@link Structure} class may also be marked, for input-only structures
+ * which are never read back after being passed by reference to a library
+ * interface method.
+ * <pre>
+ * &#64;Const
+ * public class Config extends Structure { ... }
+ * </pre>
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.PARAMETER, ElementType.TYPE })
+public @interface Const {
+}
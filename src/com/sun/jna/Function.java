@@ -21,9 +21,14 @@
  */
 package com.sun.jna;
 
+import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * <p>An abstraction for a native function pointer.  An instance of
@@ -62,6 +67,11 @@ public class Function extends Pointer {
     /** Maximum number of arguments supported by a JNA function call. */
     public static final int MAX_NARGS = 256;
 
+    /** Maximum number of arguments of functions invoked through the
+     * primitive native entry points.
+     */
+    static final int MAX_PRIMITIVE_NARGS = 6;
+
     /** Standard C calling convention. */
     public static final int C_CONVENTION = 0;
     /** First alternate convention (currently used only for w32 stdcall). */
@@ -201,6 +211,9 @@ public class Function extends Pointer {
     final String encoding;
     final int callFlags;
     final Map<String, ?> options;
+    // Call interfaces prepared for invocations from mapped methods
+    private final ConcurrentMap<CallSignature, CallInterface> callInterfaces =
+        new ConcurrentHashMap<CallSignature, CallInterface>();
 
     /** For internal JNA use. */
     static final String OPTION_INVOKING_METHOD = "invoking-method";
@@ -314,6 +327,39 @@ public class Function extends Pointer {
      * the method has to be in the options under key {@link Function#OPTION_INVOKING_METHOD}.
      */
     Object invoke(Method invokingMethod, Class<?>[] paramTypes, Class<?> returnType, Object[] inArgs, Map<String, ?> options) {
+        return invoke(invokingMethod, paramTypes, returnType, inArgs, options, null);
+    }
+
+    /** Invoke the native function using an invocation plan previously
+     * obtained from {@link #getInvocationPlan} for the invoking method.
+     */
+    Object invoke(Method invokingMethod, Class<?>[] paramTypes, Class<?> returnType, Object[] inArgs, Map<String, ?> options,
+                  InvocationPlan plan) {
+        if (plan != null
+            && (plan.returnType != returnType
+                || plan.converters.length != (inArgs != null ? inArgs.length : 0))) {
+            plan = null;
+        }
+        if (plan != null && plan.primitiveKinds != null) {
+            return invokePrimitive(plan, inArgs);
+        }
+
+        // String arguments converted during this call are allocated from
+        // scratch memory and released once the call has returned
+        ScratchMemory scratch = plan == null || plan.stringArguments ? ScratchMemory.get() : null;
+        int mark = scratch != null ? scratch.enter() : 0;
+        try {
+            return convertAndInvoke(invokingMethod, paramTypes, returnType, inArgs, options, plan);
+        }
+        finally {
+            if (scratch != null) {
+                scratch.exit(mark);
+            }
+        }
+    }
+
+    private Object convertAndInvoke(Method invokingMethod, Class<?>[] paramTypes, Class<?> returnType,
+                                    Object[] inArgs, Map<String, ?> options, InvocationPlan plan) {
         // Clone the argument array to obtain a scratch space for modified
         // types/values
         Object[] args = { };
@@ -325,33 +371,53 @@ public class Function extends Pointer {
             System.arraycopy(inArgs, 0, args, 0, args.length);
         }
 
-        TypeMapper mapper = (TypeMapper)options.get(Library.OPTION_TYPE_MAPPER);
-        boolean allowObjects = Boolean.TRUE.equals(options.get(Library.OPTION_ALLOW_OBJECTS));
-        boolean isVarArgs = args.length > 0 && invokingMethod != null ? isVarArgs(invokingMethod) : false;
-        int fixedArgs = args.length > 0 && invokingMethod != null ? fixedArgs(invokingMethod) : 0;
-        for (int i=0; i < args.length; i++) {
-            Class<?> paramType = invokingMethod != null
-                ? (isVarArgs && i >= paramTypes.length-1
-                   ? paramTypes[paramTypes.length-1].getComponentType()
-                   : paramTypes[i])
-                : null;
-            args[i] = convertArgument(args, i, invokingMethod, mapper, allowObjects, paramType);
-        }
-
-        Class<?> nativeReturnType = returnType;
-        FromNativeConverter resultConverter = null;
-        if (NativeMapped.class.isAssignableFrom(returnType)) {
-            NativeMappedConverter tc = NativeMappedConverter.getInstance(returnType);
-            resultConverter = tc;
-            nativeReturnType = tc.nativeType();
-        } else if (mapper != null) {
-            resultConverter = mapper.getFromNativeConverter(returnType);
-            if (resultConverter != null) {
-                nativeReturnType = resultConverter.nativeType();
+        ArgumentConverter[] converters = null;
+
+        TypeMapper mapper;
+        boolean allowObjects;
+        int fixedArgs;
+        Class<?> nativeReturnType;
+        FromNativeConverter resultConverter;
+        if (plan != null) {
+            mapper = plan.mapper;
+            allowObjects = plan.allowObjects;
+            fixedArgs = 0;
+            converters = plan.converters;
+            for (int i=0; i < args.length; i++) {
+                args[i] = converters[i].convert(this, args, i, invokingMethod);
+            }
+            nativeReturnType = plan.nativeReturnType;
+            resultConverter = plan.resultConverter;
+        } else {
+            mapper = (TypeMapper)options.get(Library.OPTION_TYPE_MAPPER);
+            allowObjects = Boolean.TRUE.equals(options.get(Library.OPTION_ALLOW_OBJECTS));
+            boolean isVarArgs = args.length > 0 && invokingMethod != null ? isVarArgs(invokingMethod) : false;
+            fixedArgs = args.length > 0 && invokingMethod != null ? fixedArgs(invokingMethod) : 0;
+            for (int i=0; i < args.length; i++) {
+                Class<?> paramType = invokingMethod != null
+                    ? (isVarArgs && i >= paramTypes.length-1
+                       ? paramTypes[paramTypes.length-1].getComponentType()
+                       : paramTypes[i])
+                    : null;
+                args[i] = convertArgument(args, i, invokingMethod, mapper, allowObjects, paramType);
+            }
+
+            nativeReturnType = returnType;
+            resultConverter = null;
+            if (NativeMapped.class.isAssignableFrom(returnType)) {
+                NativeMappedConverter tc = NativeMappedConverter.getInstance(returnType);
+                resultConverter = tc;
+                nativeReturnType = tc.nativeType();
+            } else if (mapper != null) {
+                resultConverter = mapper.getFromNativeConverter(returnType);
+                if (resultConverter != null) {
+                    nativeReturnType = resultConverter.nativeType();
+                }
             }
         }
 
-        Object result = invoke(args, nativeReturnType, allowObjects, fixedArgs);
+        Object result = invoke(args, nativeReturnType, allowObjects, fixedArgs,
+                               plan != null ? plan.callInterface : null);
         // Convert the result to a custom value/type if appropriate
         if (resultConverter != null) {
             FromNativeContext context;
@@ -367,10 +433,12 @@ public class Function extends Pointer {
         if (inArgs != null) {
             for (int i=0; i < inArgs.length; i++) {
                 Object inArg = inArgs[i];
-                if (inArg == null)
+                if (inArg == null
+                    || (converters != null && !converters[i].postCallRead))
                     continue;
                 if (inArg instanceof Structure) {
-                    if (!(inArg instanceof Structure.ByValue)) {
+                    if (!(inArg instanceof Structure.ByValue)
+                        && !((Structure)inArg).isConst()) {
                         ((Structure)inArg).autoRead();
                     }
                 } else if (args[i] instanceof PostCallRead) {
@@ -388,6 +456,8 @@ public class Function extends Pointer {
                     }
                 } else if (Structure[].class.isAssignableFrom(inArg.getClass())) {
                     Structure.autoRead((Structure[])inArg);
+                } else if (inArg instanceof StructureArray) {
+                    ((StructureArray<?>)inArg).autoRead();
                 }
             }
         }
@@ -395,6 +465,595 @@ public class Function extends Pointer {
         return result;
     }
 
+    /** Return the invocation plan for calls through the given method, or
+     * <code>null</code> if the method can't use one (varargs methods).
+     * The plan should be computed once per method and passed to
+     * {@link #invoke(Method,Class[],Class,Object[],Map,InvocationPlan)}.
+     */
+    InvocationPlan getInvocationPlan(Method invokingMethod, Class<?>[] paramTypes, Class<?> returnType,
+                                     Map<String, ?> options) {
+        if (invokingMethod == null || isVarArgs(invokingMethod)) {
+            return null;
+        }
+        TypeMapper mapper = (TypeMapper)options.get(Library.OPTION_TYPE_MAPPER);
+        boolean allowObjects = Boolean.TRUE.equals(options.get(Library.OPTION_ALLOW_OBJECTS));
+        ArgumentConverter[] converters = new ArgumentConverter[paramTypes.length];
+        Annotation[][] annotations = invokingMethod.getParameterAnnotations();
+        for (int i=0;i < paramTypes.length;i++) {
+            converters[i] = ArgumentConverter.create(paramTypes[i], mapper, allowObjects);
+            if (converters[i].postCallRead
+                && (isConst(annotations[i]) || paramTypes[i].isAnnotationPresent(Const.class))) {
+                converters[i] = new ConstArgument(converters[i]);
+            }
+        }
+        FromNativeConverter resultConverter = getResultConverter(returnType, mapper);
+        Class<?> nativeReturnType = resultConverter != null ? resultConverter.nativeType() : returnType;
+        CallInterface callInterface = getCallInterface(invokingMethod, paramTypes, returnType, options);
+        char[] primitiveKinds = null;
+        if (callInterface != null && resultConverter == null
+            && returnType.isPrimitive() && paramTypes.length <= MAX_PRIMITIVE_NARGS) {
+            primitiveKinds = getPrimitiveKinds(paramTypes, converters);
+        }
+        boolean stringArguments = false;
+        for (ArgumentConverter converter : converters) {
+            stringArguments |= converter.stringArgument;
+        }
+        return new InvocationPlan(returnType, nativeReturnType, resultConverter,
+                                  converters, mapper, allowObjects, callInterface,
+                                  primitiveKinds, stringArguments);
+    }
+
+    private static boolean isConst(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof Const) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the primitive kind of each parameter, or <code>null</code>
+     * if any of them is not a primitive passed without conversion.
+     */
+    private static char[] getPrimitiveKinds(Class<?>[] paramTypes, ArgumentConverter[] converters) {
+        char[] kinds = new char[paramTypes.length];
+        for (int i=0;i < paramTypes.length;i++) {
+            Class<?> type = paramTypes[i];
+            if (!type.isPrimitive()
+                || !(converters[i] instanceof PassThroughArgument
+                     || converters[i] instanceof BooleanArgument)) {
+                return null;
+            }
+            if (type == boolean.class) kinds[i] = 'Z';
+            else if (type == byte.class) kinds[i] = 'B';
+            else if (type == short.class) kinds[i] = 'S';
+            else if (type == char.class) kinds[i] = 'C';
+            else if (type == int.class) kinds[i] = 'I';
+            else if (type == long.class) kinds[i] = 'J';
+            else if (type == float.class) kinds[i] = 'F';
+            else if (type == double.class) kinds[i] = 'D';
+            else return null;
+        }
+        return kinds;
+    }
+
+    /** Convert a boxed primitive argument to the raw 64-bit value expected
+     * by the primitive native entry points.
+     */
+    static long toPrimitiveArgument(char kind, Object arg) {
+        switch(kind) {
+        case 'Z': return ((Boolean)arg).booleanValue() ? INTEGER_TRUE.intValue() : INTEGER_FALSE.intValue();
+        case 'B': return ((Byte)arg).byteValue();
+        case 'S': return ((Short)arg).shortValue();
+        case 'C': return ((Character)arg).charValue();
+        case 'I': return ((Integer)arg).intValue();
+        case 'J': return ((Long)arg).longValue();
+        case 'F': return Float.floatToRawIntBits(((Float)arg).floatValue());
+        case 'D': return Double.doubleToRawLongBits(((Double)arg).doubleValue());
+        default: throw new IllegalArgumentException("Unsupported primitive kind " + kind);
+        }
+    }
+
+    /** Invoke a function whose parameters and return type are all
+     * primitives, bypassing argument conversion and passing the values
+     * directly to the native call.
+     */
+    private Object invokePrimitive(InvocationPlan plan, Object[] args) {
+        char[] kinds = plan.primitiveKinds;
+        int nargs = kinds.length;
+        long a0 = nargs > 0 ? toPrimitiveArgument(kinds[0], args[0]) : 0;
+        long a1 = nargs > 1 ? toPrimitiveArgument(kinds[1], args[1]) : 0;
+        long a2 = nargs > 2 ? toPrimitiveArgument(kinds[2], args[2]) : 0;
+        long a3 = nargs > 3 ? toPrimitiveArgument(kinds[3], args[3]) : 0;
+        long a4 = nargs > 4 ? toPrimitiveArgument(kinds[4], args[4]) : 0;
+        long a5 = nargs > 5 ? toPrimitiveArgument(kinds[5], args[5]) : 0;
+        long ci = plan.callInterface.peer;
+        Class<?> returnType = plan.returnType;
+        if (returnType == void.class) {
+            Native.invokeVoidPrimitive(this, this.peer, callFlags, ci, a0, a1, a2, a3, a4, a5);
+            return null;
+        } else if (returnType == boolean.class) {
+            return valueOf(Native.invokeIntPrimitive(this, this.peer, callFlags, ci, a0, a1, a2, a3, a4, a5) != 0);
+        } else if (returnType == byte.class) {
+            return Byte.valueOf((byte)Native.invokeIntPrimitive(this, this.peer, callFlags, ci, a0, a1, a2, a3, a4, a5));
+        } else if (returnType == short.class) {
+            return Short.valueOf((short)Native.invokeIntPrimitive(this, this.peer, callFlags, ci, a0, a1, a2, a3, a4, a5));
+        } else if (returnType == char.class) {
+            return Character.valueOf((char)Native.invokeIntPrimitive(this, this.peer, callFlags, ci, a0, a1, a2, a3, a4, a5));
+        } else if (returnType == int.class) {
+            return Integer.valueOf(Native.invokeIntPrimitive(this, this.peer, callFlags, ci, a0, a1, a2, a3, a4, a5));
+        } else if (returnType == long.class) {
+            return Long.valueOf(Native.invokeLongPrimitive(this, this.peer, callFlags, ci, a0, a1, a2, a3, a4, a5));
+        } else if (returnType == float.class) {
+            return Float.valueOf(Native.invokeFloatPrimitive(this, this.peer, callFlags, ci, a0, a1, a2, a3, a4, a5));
+        }
+        return Double.valueOf(Native.invokeDoublePrimitive(this, this.peer, callFlags, ci, a0, a1, a2, a3, a4, a5));
+    }
+
+    private static FromNativeConverter getResultConverter(Class<?> returnType, TypeMapper mapper) {
+        if (NativeMapped.class.isAssignableFrom(returnType)) {
+            return NativeMappedConverter.getInstance(returnType);
+        }
+        return mapper != null ? mapper.getFromNativeConverter(returnType) : null;
+    }
+
+    /** Everything about invoking this function through a given method
+     * that can be decided from the method signature alone.
+     */
+    static final class InvocationPlan {
+        final Class<?> returnType;
+        final Class<?> nativeReturnType;
+        final FromNativeConverter resultConverter;
+        final ArgumentConverter[] converters;
+        final TypeMapper mapper;
+        final boolean allowObjects;
+        final CallInterface callInterface;
+        /** Kind of each parameter if all parameters and the return type
+         * are primitives passed without conversion, <code>null</code>
+         * otherwise.
+         */
+        final char[] primitiveKinds;
+        /** Whether any argument may be converted to a native string. */
+        final boolean stringArguments;
+
+        InvocationPlan(Class<?> returnType, Class<?> nativeReturnType, FromNativeConverter resultConverter,
+                       ArgumentConverter[] converters, TypeMapper mapper, boolean allowObjects,
+                       CallInterface callInterface, char[] primitiveKinds, boolean stringArguments) {
+            this.returnType = returnType;
+            this.nativeReturnType = nativeReturnType;
+            this.resultConverter = resultConverter;
+            this.converters = converters;
+            this.mapper = mapper;
+            this.allowObjects = allowObjects;
+            this.callInterface = callInterface;
+            this.primitiveKinds = primitiveKinds;
+            this.stringArguments = stringArguments;
+        }
+    }
+
+    /** Converts a single argument based on the declared parameter type.
+     * Conversions specialized for the declared type defer to the generic
+     * conversion whenever the actual argument is of a different class, so
+     * the result is always the same as that of the generic conversion.
+     */
+    abstract static class ArgumentConverter {
+        /** Declared parameter type. */
+        final Class<?> paramType;
+        /** Class of arguments handled by the specialized conversion. */
+        final Class<?> argType;
+        final TypeMapper mapper;
+        final boolean allowObjects;
+        /** Whether the argument may need synchronizing after the call. */
+        final boolean postCallRead;
+        /** Whether the argument may be converted to a native string. */
+        final boolean stringArgument;
+
+        ArgumentConverter(Class<?> paramType, TypeMapper mapper, boolean allowObjects, boolean postCallRead) {
+            this(paramType, mapper, allowObjects, postCallRead, true);
+        }
+
+        ArgumentConverter(Class<?> paramType, TypeMapper mapper, boolean allowObjects, boolean postCallRead,
+                          boolean stringArgument) {
+            this.paramType = paramType;
+            this.argType = boxedType(paramType);
+            this.mapper = mapper;
+            this.allowObjects = allowObjects;
+            this.postCallRead = postCallRead;
+            this.stringArgument = stringArgument;
+        }
+
+        abstract Object convert(Function f, Object[] args, int index, Method invokingMethod);
+
+        final Object convertGeneric(Function f, Object[] args, int index, Method invokingMethod) {
+            return f.convertArgument(args, index, invokingMethod, mapper, allowObjects, paramType);
+        }
+
+        static ArgumentConverter create(Class<?> paramType, TypeMapper mapper, boolean allowObjects) {
+            Class<?> type = boxedType(paramType);
+            if (NativeMapped.class.isAssignableFrom(type)) {
+                return new NativeMappedArgument(paramType, mapper, allowObjects);
+            }
+            if (mapper != null) {
+                ToNativeConverter converter = mapper.getToNativeConverter(type);
+                if (converter != null) {
+                    return new TypeMappedArgument(paramType, mapper, allowObjects, converter);
+                }
+            }
+            if (type == Boolean.class) {
+                return new BooleanArgument(paramType, mapper, allowObjects);
+            }
+            if (type == String.class || type == WString.class) {
+                return new StringArgument(paramType, mapper, allowObjects);
+            }
+            if (type.isArray() && type.getComponentType().isPrimitive()
+                || type == Pointer.class
+                || type == Byte.class || type == Short.class
+                || type == Character.class || type == Integer.class
+                || type == Long.class || type == Float.class
+                || type == Double.class) {
+                return new PassThroughArgument(paramType, mapper, allowObjects);
+            }
+            if (Structure.class.isAssignableFrom(type)) {
+                return new StructureArgument(paramType, mapper, allowObjects);
+            }
+            if (Callback.class.isAssignableFrom(type) && mapper == null) {
+                return new CallbackArgument(paramType, mapper, allowObjects);
+            }
+            return new GenericArgument(paramType, mapper, allowObjects);
+        }
+
+        static Class<?> boxedType(Class<?> type) {
+            if (!type.isPrimitive()) return type;
+            if (type == boolean.class) return Boolean.class;
+            if (type == byte.class) return Byte.class;
+            if (type == short.class) return Short.class;
+            if (type == char.class) return Character.class;
+            if (type == int.class) return Integer.class;
+            if (type == long.class) return Long.class;
+            if (type == float.class) return Float.class;
+            if (type == double.class) return Double.class;
+            return type;
+        }
+    }
+
+    /** Arguments passed to native code unchanged. */
+    private static final class PassThroughArgument extends ArgumentConverter {
+        PassThroughArgument(Class<?> paramType, TypeMapper mapper, boolean allowObjects) {
+            super(paramType, mapper, allowObjects, false, false);
+        }
+        @Override
+        Object convert(Function f, Object[] args, int index, Method invokingMethod) {
+            Object arg = args[index];
+            if (arg == null || arg.getClass() == argType) {
+                return arg;
+            }
+            return convertGeneric(f, args, index, invokingMethod);
+        }
+    }
+
+    private static final class BooleanArgument extends ArgumentConverter {
+        BooleanArgument(Class<?> paramType, TypeMapper mapper, boolean allowObjects) {
+            super(paramType, mapper, allowObjects, false, false);
+        }
+        @Override
+        Object convert(Function f, Object[] args, int index, Method invokingMethod) {
+            Object arg = args[index];
+            if (arg == null) {
+                return null;
+            }
+            if (!(arg instanceof Boolean)) {
+                return convertGeneric(f, args, index, invokingMethod);
+            }
+            return Boolean.TRUE.equals(arg) ? INTEGER_TRUE : INTEGER_FALSE;
+        }
+    }
+
+    private static final class StringArgument extends ArgumentConverter {
+        StringArgument(Class<?> paramType, TypeMapper mapper, boolean allowObjects) {
+            super(paramType, mapper, allowObjects, false);
+        }
+        @Override
+        Object convert(Function f, Object[] args, int index, Method invokingMethod) {
+            Object arg = args[index];
+            if (arg == null) {
+                return null;
+            }
+            if (arg.getClass() != argType) {
+                return convertGeneric(f, args, index, invokingMethod);
+            }
+            return toNativeString(arg.toString(), argType == WString.class);
+        }
+    }
+
+    /** Arguments declared {@link Const}, which are never read back after
+     * the call.
+     */
+    private static final class ConstArgument extends ArgumentConverter {
+        private final ArgumentConverter converter;
+        ConstArgument(ArgumentConverter converter) {
+            super(converter.paramType, converter.mapper, converter.allowObjects, false,
+                  converter.stringArgument);
+            this.converter = converter;
+        }
+        @Override
+        Object convert(Function f, Object[] args, int index, Method invokingMethod) {
+            return converter.convert(f, args, index, invokingMethod);
+        }
+    }
+
+    private static final class NativeMappedArgument extends ArgumentConverter {
+        NativeMappedArgument(Class<?> paramType, TypeMapper mapper, boolean allowObjects) {
+            super(paramType, mapper, allowObjects, true);
+        }
+        @Override
+        Object convert(Function f, Object[] args, int index, Method invokingMethod) {
+            Object arg = args[index];
+            if (arg == null) {
+                return null;
+            }
+            // Same as NativeMappedConverter.toNative for non-null values
+            return f.convertNativeArgument(((NativeMapped)arg).toNative(), index,
+                                           invokingMethod, allowObjects, paramType);
+        }
+    }
+
+    private static final class TypeMappedArgument extends ArgumentConverter {
+        private final ToNativeConverter converter;
+        TypeMappedArgument(Class<?> paramType, TypeMapper mapper, boolean allowObjects,
+                           ToNativeConverter converter) {
+            super(paramType, mapper, allowObjects, true);
+            this.converter = converter;
+        }
+        @Override
+        Object convert(Function f, Object[] args, int index, Method invokingMethod) {
+            Object arg = args[index];
+            if (arg == null || arg.getClass() != argType) {
+                return convertGeneric(f, args, index, invokingMethod);
+            }
+            // Custom converters may make use of the context
+            ToNativeContext context = new MethodParameterContext(f, args, index, invokingMethod);
+            return f.convertNativeArgument(converter.toNative(arg, context), index,
+                                           invokingMethod, allowObjects, paramType);
+        }
+    }
+
+    private static final class StructureArgument extends ArgumentConverter {
+        private final boolean byValue;
+        StructureArgument(Class<?> paramType, TypeMapper mapper, boolean allowObjects) {
+            super(paramType, mapper, allowObjects, true, false);
+            this.byValue = Structure.ByValue.class.isAssignableFrom(paramType);
+        }
+        @Override
+        Object convert(Function f, Object[] args, int index, Method invokingMethod) {
+            Object arg = args[index];
+            if (arg == null) {
+                return null;
+            }
+            if (arg.getClass() != argType) {
+                return convertGeneric(f, args, index, invokingMethod);
+            }
+            Structure struct = (Structure)arg;
+            struct.autoWrite();
+            return byValue ? struct : struct.getPointer();
+        }
+    }
+
+    private static final class CallbackArgument extends ArgumentConverter {
+        CallbackArgument(Class<?> paramType, TypeMapper mapper, boolean allowObjects) {
+            super(paramType, mapper, allowObjects, false, false);
+        }
+        @Override
+        Object convert(Function f, Object[] args, int index, Method invokingMethod) {
+            Object arg = args[index];
+            if (arg == null) {
+                return null;
+            }
+            if (arg instanceof NativeMapped || arg instanceof Structure) {
+                return convertGeneric(f, args, index, invokingMethod);
+            }
+            return CallbackReference.getFunctionPointer((Callback)arg);
+        }
+    }
+
+    private static final class GenericArgument extends ArgumentConverter {
+        GenericArgument(Class<?> paramType, TypeMapper mapper, boolean allowObjects) {
+            super(paramType, mapper, allowObjects, true);
+        }
+        @Override
+        Object convert(Function f, Object[] args, int index, Method invokingMethod) {
+            return convertGeneric(f, args, index, invokingMethod);
+        }
+    }
+
+    /** Return the call interface for invocations through the given method,
+     * preparing it if no method with the same native signature has been
+     * seen yet.  Returns <code>null</code> if the signature can not be
+     * determined in advance, e.g. for varargs methods or parameters of
+     * unknown native type.
+     */
+    CallInterface getCallInterface(Method invokingMethod, Class<?>[] paramTypes, Class<?> returnType,
+                                   Map<String, ?> options) {
+        if (invokingMethod == null || isVarArgs(invokingMethod)) {
+            return null;
+        }
+        TypeMapper mapper = (TypeMapper)options.get(Library.OPTION_TYPE_MAPPER);
+        Class<?>[] nativeTypes = new Class<?>[paramTypes.length];
+        for (int i=0;i < paramTypes.length;i++) {
+            nativeTypes[i] = getNativeArgumentType(paramTypes[i], mapper);
+        }
+        FromNativeConverter resultConverter = getResultConverter(returnType, mapper);
+        Class<?> nativeReturnType = resultConverter != null ? resultConverter.nativeType() : returnType;
+        CallSignature key = new CallSignature(nativeTypes, nativeReturnType);
+        CallInterface ci = callInterfaces.get(key);
+        if (ci == null) {
+            ci = CallInterface.prepare(callFlags, nativeTypes, nativeReturnType);
+            CallInterface existing = callInterfaces.putIfAbsent(key, ci);
+            if (existing != null) {
+                ci = existing;
+            }
+        }
+        return ci == CallInterface.NONE ? null : ci;
+    }
+
+    private static Class<?> getNativeArgumentType(Class<?> type, TypeMapper mapper) {
+        if (NativeMapped.class.isAssignableFrom(type)) {
+            return NativeMappedConverter.getInstance(type).nativeType();
+        }
+        if (mapper != null) {
+            ToNativeConverter converter = mapper.getToNativeConverter(type);
+            if (converter != null) {
+                return converter.nativeType();
+            }
+        }
+        return type;
+    }
+
+    /** Native argument and return types identifying a call interface. */
+    private static final class CallSignature {
+        private final Class<?>[] argTypes;
+        private final Class<?> returnType;
+        private final int hashCode;
+
+        CallSignature(Class<?>[] argTypes, Class<?> returnType) {
+            this.argTypes = argTypes;
+            this.returnType = returnType;
+            this.hashCode = 31 * Arrays.hashCode(argTypes) + returnType.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CallSignature)) {
+                return false;
+            }
+            CallSignature other = (CallSignature)o;
+            return returnType == other.returnType
+                && Arrays.equals(argTypes, other.argTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /** Native call interface (<code>ffi_cif</code>) prepared once for a
+     * given native signature, along with the expected kind of Java object
+     * for each argument slot.  The native dispatch falls back to preparing
+     * a call interface per call if the actual arguments don't match.
+     */
+    static final class CallInterface {
+        /** Marks signatures for which no call interface can be prepared. */
+        static final CallInterface NONE = new CallInterface(0, null);
+
+        final long peer;
+        // Keep structure type information alive while in use
+        private final Pointer[] types;
+
+        private CallInterface(long peer, Pointer[] types) {
+            this.peer = peer;
+            this.types = types;
+            if (peer != 0) {
+                Cleaner.getCleaner().register(this, new CallInterfaceDisposer(peer));
+            }
+        }
+
+        /** Frees the native call interface once its owner is unreachable.
+         * Must not refer to the owning object.
+         */
+        private static final class CallInterfaceDisposer implements Runnable {
+            private final long peer;
+
+            CallInterfaceDisposer(long peer) {
+                this.peer = peer;
+            }
+
+            @Override
+            public void run() {
+                Native.freeCallInterface(peer);
+            }
+        }
+
+        static CallInterface prepare(int callFlags, Class<?>[] argTypes, Class<?> returnType) {
+            try {
+                Pointer[] types = new Pointer[argTypes.length + 1];
+                long[] typePeers = new long[argTypes.length];
+                char[] kinds = new char[argTypes.length];
+                for (int i=0;i < argTypes.length;i++) {
+                    Class<?> type = argTypes[i];
+                    if (type == boolean.class || type == Boolean.class) {
+                        // Booleans are passed as integers
+                        type = int.class;
+                    }
+                    kinds[i] = getArgumentKind(type);
+                    if (kinds[i] == 'T') {
+                        types[i] = Structure.FFIType.get(type);
+                    } else if (kinds[i] == 'P' || type.isArray()
+                               || (Platform.HAS_BUFFERS && Buffer.class.isAssignableFrom(type))) {
+                        types[i] = Structure.FFIType.get(Pointer.class);
+                    } else if (kinds[i] != 0) {
+                        types[i] = Structure.FFIType.get(type);
+                    } else {
+                        return NONE;
+                    }
+                    typePeers[i] = types[i].peer;
+                }
+                types[argTypes.length] = getReturnTypeInfo(returnType);
+                long peer = Native.prepareCallInterface(callFlags, types[argTypes.length].peer, typePeers, kinds);
+                return peer != 0 ? new CallInterface(peer, types) : NONE;
+            } catch(RuntimeException e) {
+                // Signature can't be determined in advance; types will be
+                // determined on each call instead
+                return NONE;
+            }
+        }
+
+        private static char getArgumentKind(Class<?> type) {
+            if (type == byte.class || type == Byte.class) return 'B';
+            if (type == short.class || type == Short.class) return 'S';
+            if (type == char.class || type == Character.class) return 'C';
+            if (type == int.class || type == Integer.class) return 'I';
+            if (type == long.class || type == Long.class) return 'J';
+            if (type == float.class || type == Float.class) return 'F';
+            if (type == double.class || type == Double.class) return 'D';
+            if (Structure.ByValue.class.isAssignableFrom(type)) return 'T';
+            // Converted to a native pointer prior to the call
+            if (Pointer.class.isAssignableFrom(type)
+                || Structure.class.isAssignableFrom(type)
+                || StructureArray.class.isAssignableFrom(type)
+                || Callback.class.isAssignableFrom(type)
+                || type == String.class
+                || type == WString.class
+                || (type.isArray() && !type.getComponentType().isPrimitive())) {
+                return 'P';
+            }
+            // Primitive arrays and buffers are handled by the generic
+            // conversion
+            return 0;
+        }
+
+        private static Pointer getReturnTypeInfo(Class<?> type) {
+            if (type == void.class || type == Void.class) {
+                return Structure.FFIType.get(void.class);
+            }
+            if (type == boolean.class || type == Boolean.class
+                || type == byte.class || type == Byte.class
+                || type == short.class || type == Short.class
+                || type == char.class || type == Character.class) {
+                return Structure.FFIType.get(int.class);
+            }
+            if (type == int.class || type == Integer.class
+                || type == long.class || type == Long.class
+                || type == float.class || type == Float.class
+                || type == double.class || type == Double.class) {
+                return Structure.FFIType.get(type);
+            }
+            if (Structure.ByValue.class.isAssignableFrom(type)) {
+                return Structure.FFIType.get(type);
+            }
+            return Structure.FFIType.get(Pointer.class);
+        }
+    }
+
     /* @see NativeLibrary#NativeLibrary(String,String,long,Map) implementation */
     Object invoke(Object[] args, Class<?> returnType, boolean allowObjects) {
 	return invoke(args, returnType, allowObjects, 0);
@@ -402,45 +1061,51 @@ public class Function extends Pointer {
 
     /* @see NativeLibrary#NativeLibrary(String,String,long,Map) implementation */
     Object invoke(Object[] args, Class<?> returnType, boolean allowObjects, int fixedArgs) {
+        return invoke(args, returnType, allowObjects, fixedArgs, null);
+    }
+
+    private Object invoke(Object[] args, Class<?> returnType, boolean allowObjects, int fixedArgs,
+                          CallInterface callInterface) {
         Object result = null;
 	int callFlags = this.callFlags | ((fixedArgs & 0x3) << 7);
+        long ci = callInterface != null ? callInterface.peer : 0;
         if (returnType == null || returnType==void.class || returnType==Void.class) {
-            Native.invokeVoid(this, this.peer, callFlags, args);
+            Native.invokeVoid(this, this.peer, callFlags, args, ci);
             result = null;
         } else if (returnType==boolean.class || returnType==Boolean.class) {
-            result = valueOf(Native.invokeInt(this, this.peer, callFlags, args) != 0);
+            result = valueOf(Native.invokeInt(this, this.peer, callFlags, args, ci) != 0);
         } else if (returnType==byte.class || returnType==Byte.class) {
-            result = Byte.valueOf((byte)Native.invokeInt(this, this.peer, callFlags, args));
+            result = Byte.valueOf((byte)Native.invokeInt(this, this.peer, callFlags, args, ci));
         } else if (returnType==short.class || returnType==Short.class) {
-            result = Short.valueOf((short)Native.invokeInt(this, this.peer, callFlags, args));
+            result = Short.valueOf((short)Native.invokeInt(this, this.peer, callFlags, args, ci));
         } else if (returnType==char.class || returnType==Character.class) {
-            result = Character.valueOf((char)Native.invokeInt(this, this.peer, callFlags, args));
+            result = Character.valueOf((char)Native.invokeInt(this, this.peer, callFlags, args, ci));
         } else if (returnType==int.class || returnType==Integer.class) {
-            result = Integer.valueOf(Native.invokeInt(this, this.peer, callFlags, args));
+            result = Integer.valueOf(Native.invokeInt(this, this.peer, callFlags, args, ci));
         } else if (returnType==long.class || returnType==Long.class) {
-            result = Long.valueOf(Native.invokeLong(this, this.peer, callFlags, args));
+            result = Long.valueOf(Native.invokeLong(this, this.peer, callFlags, args, ci));
         } else if (returnType==float.class || returnType==Float.class) {
-            result = Float.valueOf(Native.invokeFloat(this, this.peer, callFlags, args));
+            result = Float.valueOf(Native.invokeFloat(this, this.peer, callFlags, args, ci));
         } else if (returnType==double.class || returnType==Double.class) {
-            result = Double.valueOf(Native.invokeDouble(this, this.peer, callFlags, args));
+            result = Double.valueOf(Native.invokeDouble(this, this.peer, callFlags, args, ci));
         } else if (returnType==String.class) {
-            result = invokeString(callFlags, args, false);
+            result = invokeString(callFlags, args, ci, false);
         } else if (returnType==WString.class) {
-            String s = invokeString(callFlags, args, true);
+            String s = invokeString(callFlags, args, ci, true);
             if (s != null) {
                 result = new WString(s);
             }
         } else if (Pointer.class.isAssignableFrom(returnType)) {
-            return invokePointer(callFlags, args);
+            return invokePointer(callFlags, args, ci);
         } else if (Structure.class.isAssignableFrom(returnType)) {
             if (Structure.ByValue.class.isAssignableFrom(returnType)) {
                 Structure s =
-                    Native.invokeStructure(this, this.peer, callFlags, args,
+                    Native.invokeStructure(this, this.peer, callFlags, args, ci,
                                            Structure.newInstance((Class<? extends Structure>)returnType));
                 s.autoRead();
                 result = s;
             } else {
-                result = invokePointer(callFlags, args);
+                result = invokePointer(callFlags, args, ci);
                 if (result != null) {
                     Structure s = Structure.newInstance((Class<? extends Structure>)returnType, (Pointer)result);
                     s.conditionalAutoRead();
@@ -448,17 +1113,17 @@ public class Function extends Pointer {
                 }
             }
         } else if (Callback.class.isAssignableFrom(returnType)) {
-            result = invokePointer(callFlags, args);
+            result = invokePointer(callFlags, args, ci);
             if (result != null) {
                 result = CallbackReference.getCallback(returnType, (Pointer)result);
             }
         } else if (returnType==String[].class) {
-            Pointer p = invokePointer(callFlags, args);
+            Pointer p = invokePointer(callFlags, args, ci);
             if (p != null) {
                 result = p.getStringArray(0, encoding);
             }
         } else if (returnType==WString[].class) {
-            Pointer p = invokePointer(callFlags, args);
+            Pointer p = invokePointer(callFlags, args, ci);
             if (p != null) {
                 String[] arr = p.getWideStringArray(0);
                 WString[] warr = new WString[arr.length];
@@ -468,12 +1133,12 @@ public class Function extends Pointer {
                 result = warr;
             }
         } else if (returnType==Pointer[].class) {
-            Pointer p = invokePointer(callFlags, args);
+            Pointer p = invokePointer(callFlags, args, ci);
             if (p != null) {
                 result = p.getPointerArray(0);
             }
         } else if (allowObjects) {
-            result = Native.invokeObject(this, this.peer, callFlags, args);
+            result = Native.invokeObject(this, this.peer, callFlags, args, ci);
             if (result != null
                 && !returnType.isAssignableFrom(result.getClass())) {
                 throw new ClassCastException("Return type " + returnType
@@ -486,8 +1151,8 @@ public class Function extends Pointer {
         return result;
     }
 
-    private Pointer invokePointer(int callFlags, Object[] args) {
-        long ptr = Native.invokePointer(this, this.peer, callFlags, args);
+    private Pointer invokePointer(int callFlags, Object[] args, long ci) {
+        long ptr = Native.invokePointer(this, this.peer, callFlags, args, ci);
         return ptr == 0 ? null : new Pointer(ptr);
     }
 
@@ -514,6 +1179,26 @@ public class Function extends Pointer {
                 arg = converter.toNative(arg, context);
             }
         }
+        return convertNativeArgument(arg, index, invokingMethod, allowObjects, expectedType);
+    }
+
+    /** Copy a string argument to native memory which remains valid until
+     * the current call returns, using the thread's scratch memory unless
+     * the string is too large.
+     */
+    private static Pointer toNativeString(String s, boolean wide) {
+        ScratchMemory scratch = ScratchMemory.get();
+        Pointer p = wide
+            ? scratch.putWideString(s)
+            : scratch.putString(s, Native.getDefaultStringEncoding());
+        return p != null ? p : new NativeString(s, wide).getPointer();
+    }
+
+    /** Convert an argument which has already had any custom conversion
+     * applied to a type understood by the native dispatch.
+     */
+    private Object convertNativeArgument(Object arg, int index, Method invokingMethod,
+                                         boolean allowObjects, Class<?> expectedType) {
         if (arg == null || isPrimitiveArray(arg.getClass())) {
             return arg;
         }
@@ -546,6 +1231,10 @@ public class Function extends Pointer {
                 }
             }
             return struct.getPointer();
+        } else if (arg instanceof StructureArray) {
+            StructureArray<?> array = (StructureArray<?>)arg;
+            array.autoWrite();
+            return array.getPointer();
         } else if (arg instanceof Callback) {
             // Convert Callback to Pointer
             return CallbackReference.getFunctionPointer((Callback)arg);
@@ -554,10 +1243,10 @@ public class Function extends Pointer {
             // than in native code so that the values will be valid until
             // this method returns.
             // Convert String to native pointer (const)
-            return new NativeString((String)arg, false).getPointer();
+            return toNativeString((String)arg, false);
         } else if (arg instanceof WString) {
             // Convert WString to native pointer (const)
-            return new NativeString(arg.toString(), true).getPointer();
+            return toNativeString(arg.toString(), true);
         } else if (arg instanceof Boolean) {
             // Default conversion of boolean to int; if you want something
             // different, use a ToNativeConverter
@@ -646,12 +1335,13 @@ public class Function extends Pointer {
      * @param   callFlags calling convention to be used
      * @param	args
      *			Arguments to pass to the native function
+     * @param   ci prepared call interface, or zero
      * @param   wide whether the native string uses <code>wchar_t</code>;
      * if false, <code>char</code> is assumed
      * @return	The value returned by the target native function, as a String
      */
-    private String invokeString(int callFlags, Object[] args, boolean wide) {
-        Pointer ptr = invokePointer(callFlags, args);
+    private String invokeString(int callFlags, Object[] args, long ci, boolean wide) {
+        Pointer ptr = invokePointer(callFlags, args, ci);
         String s = null;
         if (ptr != null) {
             if (wide) {
@@ -26,7 +26,8 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /** Derive from this interface for all native library definitions.
  *
@@ -111,6 +112,16 @@ public interface Library {
      * conflict.
      */
     String OPTION_CLASSLOADER = "classloader";
+    /** <p>Option key for a boolean flag to implement the library interface
+     * with a class generated at load time instead of a
+     * {@link java.lang.reflect.Proxy}.  Calls through the generated class
+     * bypass the reflective {@link InvocationHandler} dispatch and pass
+     * primitive arguments without boxing.</p>
+     * If the interface or one of its return types is not public, the
+     * library falls back to a {@link java.lang.reflect.Proxy}.
+     * @see LibraryProxy
+     */
+    String OPTION_GENERATE_PROXY = "generate-proxy";
 
     static class Handler implements InvocationHandler {
 
@@ -131,21 +142,24 @@ public interface Library {
         /**
          * FunctionInfo has to be immutable to to make the object visible
          * to other threads fully initialized. This is a prerequisite for
-         * using the class in the double checked locking scenario of {@link Handler#invoke(Object, Method, Object[])}
+         * publishing it through the lock-free lookup in {@link Handler#invoke(Object, Method, Object[])}
          */
-        private static final class FunctionInfo {
+        static final class FunctionInfo {
             final InvocationHandler handler;
             final Function function;
             final boolean isVarArgs;
             final Map<String, ?> options;
             final Class<?>[] parameterTypes;
+            final Function.InvocationPlan plan;
 
-            FunctionInfo(InvocationHandler handler, Function function, Class<?>[] parameterTypes, boolean isVarArgs, Map<String, ?> options) {
+            FunctionInfo(InvocationHandler handler, Function function, Class<?>[] parameterTypes, boolean isVarArgs, Map<String, ?> options,
+                         Function.InvocationPlan plan) {
                 this.handler = handler;
                 this.function = function;
                 this.isVarArgs = isVarArgs;
                 this.options = options;
                 this.parameterTypes = parameterTypes;
+                this.plan = plan;
             }
         }
 
@@ -154,7 +168,9 @@ public interface Library {
         // Library invocation options
         private final Map<String, Object> options;
         private final InvocationMapper invocationMapper;
-        private final Map<Method, FunctionInfo> functions = new WeakHashMap<Method, FunctionInfo>();
+        // Proxy methods are owned by the proxy class, so they can be held
+        // strongly for the lifetime of this handler
+        private final ConcurrentMap<Method, FunctionInfo> functions = new ConcurrentHashMap<Method, FunctionInfo>();
         public Handler(String libname, Class<?> interfaceClass, Map<String, ?> options) {
 
             if (libname != null && "".equals(libname.trim())) {
@@ -192,6 +208,27 @@ public interface Library {
             return interfaceClass;
         }
 
+        private FunctionInfo createFunctionInfo(Method method) {
+            boolean isVarArgs = Function.isVarArgs(method);
+            InvocationHandler handler = null;
+            if (invocationMapper != null) {
+                handler = invocationMapper.getInvocationHandler(nativeLibrary, method);
+            }
+            Function function = null;
+            Class<?>[] parameterTypes = null;
+            Map<String, Object> options = null;
+            Function.InvocationPlan plan = null;
+            if (handler == null) {
+                // Find the function to invoke
+                function = nativeLibrary.getFunction(method.getName(), method);
+                parameterTypes = method.getParameterTypes();
+                options = new HashMap<String, Object>(this.options);
+                options.put(Function.OPTION_INVOKING_METHOD, method);
+                plan = function.getInvocationPlan(method, parameterTypes, method.getReturnType(), options);
+            }
+            return new FunctionInfo(handler, function, parameterTypes, isVarArgs, options, plan);
+        }
+
         @Override
         public Object invoke(Object proxy, Method method, Object[] inArgs)
             throws Throwable {
@@ -209,39 +246,31 @@ public interface Library {
                 return Boolean.FALSE;
             }
 
-            // Using the double-checked locking pattern to speed up function calls
+            return invoke(proxy, method, getFunctionInfo(method), inArgs);
+        }
+
+        FunctionInfo getFunctionInfo(Method method) {
+            // Lock-free lookup; concurrent first calls may each build an
+            // equivalent FunctionInfo, but only one is published
             FunctionInfo f = functions.get(method);
-            if(f == null) {
-                synchronized(functions) {
-                    f = functions.get(method);
-                    if (f == null) {
-                        boolean isVarArgs = Function.isVarArgs(method);
-                        InvocationHandler handler = null;
-                        if (invocationMapper != null) {
-                            handler = invocationMapper.getInvocationHandler(nativeLibrary, method);
-                        }
-                        Function function = null;
-                        Class<?>[] parameterTypes = null;
-                        Map<String, Object> options = null;
-                        if (handler == null) {
-                            // Find the function to invoke
-                            function = nativeLibrary.getFunction(method.getName(), method);
-                            parameterTypes = method.getParameterTypes();
-                            options = new HashMap<String, Object>(this.options);
-                            options.put(Function.OPTION_INVOKING_METHOD, method);
-                        }
-                        f = new FunctionInfo(handler, function, parameterTypes, isVarArgs, options);
-                        functions.put(method, f);
-                    }
+            if (f == null) {
+                f = createFunctionInfo(method);
+                FunctionInfo existing = functions.putIfAbsent(method, f);
+                if (existing != null) {
+                    f = existing;
                 }
             }
+            return f;
+        }
+
+        Object invoke(Object proxy, Method method, FunctionInfo f, Object[] inArgs) throws Throwable {
             if (f.isVarArgs) {
                 inArgs = Function.concatenateVarArgs(inArgs);
             }
             if (f.handler != null) {
                 return f.handler.invoke(proxy, method, inArgs);
             }
-            return f.function.invoke(method, f.parameterTypes, method.getReturnType(), inArgs, f.options);
+            return f.function.invoke(method, f.parameterTypes, method.getReturnType(), inArgs, f.options, f.plan);
         }
     }
 }
@@ -0,0 +1,228 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+
+/** Base class of library interface implementations generated at load time
+ * when the {@link Library#OPTION_GENERATE_PROXY} option is set.  Each
+ * interface method of the generated class calls one of the
+ * <code>invoke</code> methods with the index of the method, which resolves
+ * the native function on first use and then calls it directly.  Methods
+ * taking at most six primitive arguments and returning a primitive are
+ * passed their arguments as raw values, so they neither box arguments nor
+ * allocate an argument array.
+ * <p>
+ * Calls are otherwise handled exactly as by the {@link Library.Handler}
+ * backing a {@link java.lang.reflect.Proxy}, including any
+ * {@link InvocationMapper}; the mapped {@link java.lang.reflect.InvocationHandler}
+ * receives the generated instance as its proxy argument.
+ * <p>
+ * This class is an implementation detail and should not be extended.
+ */
+public abstract class LibraryProxy {
+
+    private final Library.Handler handler;
+    private final Method[] methods;
+    private final Library.Handler.FunctionInfo[] functions;
+
+    protected LibraryProxy(Library.Handler handler, Method[] methods) {
+        this.handler = handler;
+        this.methods = methods;
+        this.functions = new Library.Handler.FunctionInfo[methods.length];
+    }
+
+    Library.Handler getHandler() {
+        return handler;
+    }
+
+    private Library.Handler.FunctionInfo getFunctionInfo(int index) {
+        // Racy publication is fine, FunctionInfo is immutable
+        Library.Handler.FunctionInfo f = functions[index];
+        if (f == null) {
+            f = handler.getFunctionInfo(methods[index]);
+            functions[index] = f;
+        }
+        return f;
+    }
+
+    /** Invoke the interface method at the given index with boxed arguments
+     * (<code>null</code> if the method has none).
+     */
+    protected final Object invoke(int index, Object[] args) {
+        Method method = methods[index];
+        try {
+            return handler.invoke(this, method, getFunctionInfo(index), args);
+        } catch(RuntimeException e) {
+            throw e;
+        } catch(Error e) {
+            throw e;
+        } catch(Throwable t) {
+            // Same contract as java.lang.reflect.Proxy
+            Class<?>[] declared = method.getExceptionTypes();
+            for (int i=0;i < declared.length;i++) {
+                if (declared[i].isInstance(t)) {
+                    LibraryProxy.<RuntimeException>throwUnchecked(t);
+                }
+            }
+            throw new UndeclaredThrowableException(t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Throwable> void throwUnchecked(Throwable t) throws T {
+        throw (T)t;
+    }
+
+    /** Returns the plan of the interface method at the given index if it
+     * can be called through the primitive native entry points.
+     */
+    private Function.InvocationPlan getPrimitivePlan(Library.Handler.FunctionInfo f) {
+        Function.InvocationPlan plan = f.plan;
+        return plan != null && plan.primitiveKinds != null ? plan : null;
+    }
+
+    /** Box raw primitive arguments for methods which can't use the
+     * primitive native entry points, e.g. because of an
+     * {@link InvocationMapper}.
+     */
+    private Object[] box(int index, long a0, long a1, long a2, long a3, long a4, long a5) {
+        Class<?>[] types = methods[index].getParameterTypes();
+        if (types.length == 0) {
+            return null;
+        }
+        long[] raw = { a0, a1, a2, a3, a4, a5 };
+        Object[] args = new Object[types.length];
+        for (int i=0;i < args.length;i++) {
+            Class<?> type = types[i];
+            long value = raw[i];
+            if (type == boolean.class) {
+                args[i] = Function.valueOf(value != 0);
+            } else if (type == byte.class) {
+                args[i] = Byte.valueOf((byte)value);
+            } else if (type == short.class) {
+                args[i] = Short.valueOf((short)value);
+            } else if (type == char.class) {
+                args[i] = Character.valueOf((char)value);
+            } else if (type == int.class) {
+                args[i] = Integer.valueOf((int)value);
+            } else if (type == long.class) {
+                args[i] = Long.valueOf(value);
+            } else if (type == float.class) {
+                args[i] = Float.valueOf(Float.intBitsToFloat((int)value));
+            } else {
+                args[i] = Double.valueOf(Double.longBitsToDouble(value));
+            }
+        }
+        return args;
+    }
+
+    protected final void invokeVoid(int index, long a0, long a1, long a2, long a3, long a4, long a5) {
+        Library.Handler.FunctionInfo f = getFunctionInfo(index);
+        Function.InvocationPlan plan = getPrimitivePlan(f);
+        if (plan == null) {
+            invoke(index, box(index, a0, a1, a2, a3, a4, a5));
+            return;
+        }
+        Function function = f.function;
+        Native.invokeVoidPrimitive(function, function.peer, function.callFlags, plan.callInterface.peer,
+                                   a0, a1, a2, a3, a4, a5);
+    }
+
+    protected final boolean invokeBoolean(int index, long a0, long a1, long a2, long a3, long a4, long a5) {
+        Library.Handler.FunctionInfo f = getFunctionInfo(index);
+        Function.InvocationPlan plan = getPrimitivePlan(f);
+        if (plan == null) {
+            return ((Boolean)invoke(index, box(index, a0, a1, a2, a3, a4, a5))).booleanValue();
+        }
+        Function function = f.function;
+        return Native.invokeIntPrimitive(function, function.peer, function.callFlags, plan.callInterface.peer,
+                                         a0, a1, a2, a3, a4, a5) != 0;
+    }
+
+    /** Used for <code>byte</code>, <code>short</code>, <code>char</code>
+     * and <code>int</code> results; the generated caller narrows the value.
+     */
+    protected final int invokeInt(int index, long a0, long a1, long a2, long a3, long a4, long a5) {
+        Library.Handler.FunctionInfo f = getFunctionInfo(index);
+        Function.InvocationPlan plan = getPrimitivePlan(f);
+        if (plan == null) {
+            Object result = invoke(index, box(index, a0, a1, a2, a3, a4, a5));
+            if (result instanceof Character) {
+                return ((Character)result).charValue();
+            }
+            return ((Number)result).intValue();
+        }
+        Function function = f.function;
+        return Native.invokeIntPrimitive(function, function.peer, function.callFlags, plan.callInterface.peer,
+                                         a0, a1, a2, a3, a4, a5);
+    }
+
+    protected final long invokeLong(int index, long a0, long a1, long a2, long a3, long a4, long a5) {
+        Library.Handler.FunctionInfo f = getFunctionInfo(index);
+        Function.InvocationPlan plan = getPrimitivePlan(f);
+        if (plan == null) {
+            return ((Long)invoke(index, box(index, a0, a1, a2, a3, a4, a5))).longValue();
+        }
+        Function function = f.function;
+        return Native.invokeLongPrimitive(function, function.peer, function.callFlags, plan.callInterface.peer,
+                                          a0, a1, a2, a3, a4, a5);
+    }
+
+    protected final float invokeFloat(int index, long a0, long a1, long a2, long a3, long a4, long a5) {
+        Library.Handler.FunctionInfo f = getFunctionInfo(index);
+        Function.InvocationPlan plan = getPrimitivePlan(f);
+        if (plan == null) {
+            return ((Float)invoke(index, box(index, a0, a1, a2, a3, a4, a5))).floatValue();
+        }
+        Function function = f.function;
+        return Native.invokeFloatPrimitive(function, function.peer, function.callFlags, plan.callInterface.peer,
+                                           a0, a1, a2, a3, a4, a5);
+    }
+
+    protected final double invokeDouble(int index, long a0, long a1, long a2, long a3, long a4, long a5) {
+        Library.Handler.FunctionInfo f = getFunctionInfo(index);
+        Function.InvocationPlan plan = getPrimitivePlan(f);
+        if (plan == null) {
+            return ((Double)invoke(index, box(index, a0, a1, a2, a3, a4, a5))).doubleValue();
+        }
+        Function function = f.function;
+        return Native.invokeDoublePrimitive(function, function.peer, function.callFlags, plan.callInterface.peer,
+                                            a0, a1, a2, a3, a4, a5);
+    }
+
+    @Override
+    public String toString() {
+        return "Proxy interface to " + handler.getNativeLibrary();
+    }
+
+    @Override
+    public int hashCode() {
+        return handler.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof LibraryProxy && ((LibraryProxy)o).handler == handler;
+    }
+}
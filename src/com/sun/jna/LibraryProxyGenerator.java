@@ -0,0 +1,324 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/** Generates {@link LibraryProxy} subclasses implementing library
+ * interfaces.  The class files are written directly by a
+ * {@link ClassFileWriter}, without any bytecode library.
+ */
+final class LibraryProxyGenerator {
+
+    private static final Map<Class<?>, Reference<Class<?>>> proxyClasses =
+        new WeakHashMap<Class<?>, Reference<Class<?>>>();
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String SUPERCLASS = "com/sun/jna/LibraryProxy";
+    private static final String HANDLER = "com/sun/jna/Library$Handler";
+    private static final String CONSTRUCTOR_DESC =
+        "(L" + HANDLER + ";[Ljava/lang/reflect/Method;)V";
+
+    private LibraryProxyGenerator() { }
+
+    /** Create a generated implementation of the handler's interface, or
+     * return <code>null</code> if the interface can't be implemented by a
+     * generated class.
+     */
+    static Object newInstance(Library.Handler handler) {
+        Class<?> cls = getProxyClass(handler.getInterfaceClass());
+        if (cls == null) {
+            return null;
+        }
+        ProxyClassLoader loader = (ProxyClassLoader)cls.getClassLoader();
+        try {
+            Constructor<?> ctor = cls.getConstructor(Library.Handler.class, Method[].class);
+            return ctor.newInstance(handler, loader.methods);
+        } catch(Exception e) {
+            throw new IllegalStateException("Can't instantiate generated library class: " + e, e);
+        }
+    }
+
+    static Class<?> getProxyClass(Class<?> interfaceClass) {
+        synchronized(proxyClasses) {
+            Reference<Class<?>> ref = proxyClasses.get(interfaceClass);
+            Class<?> cls = ref != null ? ref.get() : null;
+            if (cls == null) {
+                Method[] methods = getMethods(interfaceClass);
+                if (methods != null) {
+                    cls = generate(interfaceClass, methods);
+                    proxyClasses.put(interfaceClass, new WeakReference<Class<?>>(cls));
+                }
+            }
+            return cls;
+        }
+    }
+
+    /** Returns the methods to implement, or <code>null</code> if the
+     * interface is not accessible from a generated class.
+     */
+    private static Method[] getMethods(Class<?> interfaceClass) {
+        if (!ClassFileWriter.isAccessible(interfaceClass)) {
+            return null;
+        }
+        Map<String, Method> signatures = new HashMap<String, Method>();
+        List<Method> methods = new ArrayList<Method>();
+        for (Method m : interfaceClass.getMethods()) {
+            if (Modifier.isStatic(m.getModifiers())) {
+                continue;
+            }
+            String name = m.getName() + getParametersDescriptor(m.getParameterTypes());
+            Method existing = signatures.get(name);
+            if (existing != null) {
+                // Same method inherited through several interfaces
+                if (existing.getReturnType() != m.getReturnType()) {
+                    return null;
+                }
+                continue;
+            }
+            signatures.put(name, m);
+            if (isObjectMethod(m)) {
+                // Implemented by LibraryProxy
+                continue;
+            }
+            Class<?> returnType = m.getReturnType();
+            if (!returnType.isPrimitive() && !ClassFileWriter.isAccessible(returnType)) {
+                return null;
+            }
+            methods.add(m);
+        }
+        return methods.toArray(new Method[methods.size()]);
+    }
+
+    private static boolean isObjectMethod(Method m) {
+        try {
+            Object.class.getMethod(m.getName(), m.getParameterTypes());
+            return true;
+        } catch(NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /** Whether the method can be passed its arguments as raw values. */
+    static boolean isPrimitive(Method m) {
+        Class<?>[] types = m.getParameterTypes();
+        if (types.length > Function.MAX_PRIMITIVE_NARGS || m.isVarArgs()
+            || !m.getReturnType().isPrimitive()) {
+            return false;
+        }
+        for (Class<?> type : types) {
+            if (!type.isPrimitive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Class<?> generate(Class<?> interfaceClass, Method[] methods) {
+        String name = ClassFileWriter.newClassName(interfaceClass);
+        byte[] b;
+        try {
+            b = new ClassWriter().write(name.replace('.', '/'),
+                                        interfaceClass.getName().replace('.', '/'),
+                                        methods);
+        } catch(IOException e) {
+            throw new IllegalStateException("Can't write generated library class: " + e, e);
+        }
+        ProxyClassLoader loader = new ProxyClassLoader(interfaceClass.getClassLoader(), methods);
+        return loader.define(name, b);
+    }
+
+    /** Defines a single generated class.  The library interface and the
+     * types it uses are loaded through the interface's class loader, while
+     * the JNA classes the generated code refers to are always those of this
+     * JNA instance.
+     */
+    private static final class ProxyClassLoader extends ClassFileWriter.GeneratedClassLoader {
+        final Method[] methods;
+
+        ProxyClassLoader(ClassLoader parent, Method[] methods) {
+            super(parent, LibraryProxy.class, Library.Handler.class);
+            this.methods = methods;
+        }
+    }
+
+    static String getParametersDescriptor(Class<?>[] types) {
+        StringBuilder sb = new StringBuilder("(");
+        for (Class<?> type : types) {
+            sb.append(ClassFileWriter.getDescriptor(type));
+        }
+        return sb.append(")").toString();
+    }
+
+    /** Writes the generated library classes. */
+    private static final class ClassWriter extends ClassFileWriter {
+
+        byte[] write(String className, String interfaceName, Method[] methods) throws IOException {
+            // Constructor delegating to LibraryProxy
+            Code ctor = new Code();
+            ctor.op(ALOAD, 0).op(ALOAD, 1).op(ALOAD, 2);
+            ctor.op(INVOKESPECIAL).u2(methodRef(SUPERCLASS, "<init>", CONSTRUCTOR_DESC));
+            ctor.op(RETURN);
+            addMethod(ACC_PUBLIC, "<init>", CONSTRUCTOR_DESC, ctor, 3, 3);
+
+            for (int i=0;i < methods.length;i++) {
+                Method m = methods[i];
+                String desc = getParametersDescriptor(m.getParameterTypes())
+                    + getDescriptor(m.getReturnType());
+                Code c = new Code();
+                int maxLocals;
+                if (isPrimitive(m)) {
+                    maxLocals = writePrimitiveCall(c, i, m);
+                } else {
+                    maxLocals = writeCall(c, i, m);
+                }
+                addMethod(ACC_PUBLIC | ACC_FINAL, m.getName(), desc, c, 16, maxLocals);
+            }
+            return toByteArray(className, SUPERCLASS, interfaceName);
+        }
+
+        private static int loadOp(Class<?> type) {
+            if (type == long.class) return LLOAD;
+            if (type == float.class) return FLOAD;
+            if (type == double.class) return DLOAD;
+            if (type.isPrimitive()) return ILOAD;
+            return ALOAD;
+        }
+
+        private static int size(Class<?> type) {
+            return type == long.class || type == double.class ? 2 : 1;
+        }
+
+        /** Pass the arguments as raw values to one of the primitive
+         * <code>LibraryProxy.invoke</code> methods.
+         */
+        private int writePrimitiveCall(Code c, int index, Method m) throws IOException {
+            Class<?>[] types = m.getParameterTypes();
+            c.op(ALOAD, 0);
+            pushInt(c, index);
+            int local = 1;
+            for (Class<?> type : types) {
+                c.op(loadOp(type), local);
+                local += size(type);
+                if (type == boolean.class) {
+                    // Native booleans are passed as -1/0
+                    c.op(INEG).op(I2L);
+                } else if (type == float.class) {
+                    c.op(INVOKESTATIC).u2(methodRef("java/lang/Float", "floatToRawIntBits", "(F)I"));
+                    c.op(I2L);
+                } else if (type == double.class) {
+                    c.op(INVOKESTATIC).u2(methodRef("java/lang/Double", "doubleToRawLongBits", "(D)J"));
+                } else if (type != long.class) {
+                    c.op(I2L);
+                }
+            }
+            for (int i=types.length;i < Function.MAX_PRIMITIVE_NARGS;i++) {
+                c.op(LCONST_0);
+            }
+            Class<?> returnType = m.getReturnType();
+            String invoker;
+            String result;
+            int ret;
+            if (returnType == void.class) {
+                invoker = "invokeVoid"; result = "V"; ret = RETURN;
+            } else if (returnType == boolean.class) {
+                invoker = "invokeBoolean"; result = "Z"; ret = IRETURN;
+            } else if (returnType == long.class) {
+                invoker = "invokeLong"; result = "J"; ret = LRETURN;
+            } else if (returnType == float.class) {
+                invoker = "invokeFloat"; result = "F"; ret = FRETURN;
+            } else if (returnType == double.class) {
+                invoker = "invokeDouble"; result = "D"; ret = DRETURN;
+            } else {
+                invoker = "invokeInt"; result = "I"; ret = IRETURN;
+            }
+            c.op(INVOKEVIRTUAL).u2(methodRef(SUPERCLASS, invoker, "(IJJJJJJ)" + result));
+            if (returnType == byte.class) {
+                c.op(I2B);
+            } else if (returnType == short.class) {
+                c.op(I2S);
+            } else if (returnType == char.class) {
+                c.op(I2C);
+            }
+            c.op(ret);
+            return local;
+        }
+
+        /** Box the arguments into an array passed to
+         * <code>LibraryProxy.invoke</code>, like a
+         * {@link java.lang.reflect.Proxy} does.
+         */
+        private int writeCall(Code c, int index, Method m) throws IOException {
+            Class<?>[] types = m.getParameterTypes();
+            c.op(ALOAD, 0);
+            pushInt(c, index);
+            int local = 1;
+            if (types.length == 0) {
+                c.op(ACONST_NULL);
+            } else {
+                pushInt(c, types.length);
+                c.op(ANEWARRAY).u2(classRef(OBJECT));
+                for (int i=0;i < types.length;i++) {
+                    Class<?> type = types[i];
+                    c.op(DUP);
+                    pushInt(c, i);
+                    c.op(loadOp(type), local);
+                    local += size(type);
+                    if (type.isPrimitive()) {
+                        String box = getInternalName(Function.ArgumentConverter.boxedType(type));
+                        c.op(INVOKESTATIC).u2(methodRef(box, "valueOf", "(" + getDescriptor(type) + ")L" + box + ";"));
+                    }
+                    c.op(AASTORE);
+                }
+            }
+            c.op(INVOKEVIRTUAL).u2(methodRef(SUPERCLASS, "invoke", "(I[Ljava/lang/Object;)Ljava/lang/Object;"));
+            Class<?> returnType = m.getReturnType();
+            if (returnType == void.class) {
+                c.op(POP).op(RETURN);
+            } else if (returnType.isPrimitive()) {
+                String box = getInternalName(Function.ArgumentConverter.boxedType(returnType));
+                String desc = getDescriptor(returnType);
+                c.op(CHECKCAST).u2(classRef(box));
+                c.op(INVOKEVIRTUAL).u2(methodRef(box, returnType.getName() + "Value", "()" + desc));
+                c.op(returnType == long.class ? LRETURN
+                     : returnType == float.class ? FRETURN
+                     : returnType == double.class ? DRETURN : IRETURN);
+            } else {
+                if (returnType != Object.class) {
+                    c.op(CHECKCAST).u2(classRef(getInternalName(returnType)));
+                }
+                c.op(ARETURN);
+            }
+            return local;
+        }
+    }
+}
@@ -21,14 +21,15 @@
  */
 package com.sun.jna;
 
+import java.io.Closeable;
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * A <code>Pointer</code> to memory obtained from the native heap via a
@@ -43,18 +44,18 @@ import java.util.WeakHashMap;
  *		free(buf);
  * </pre>
  *
- * <p>The {@link #finalize} method will free allocated memory when
- * this object is no longer referenced.
+ * <p>Allocated memory is freed when this object is no longer referenced.
+ * Call {@link #close} to free it immediately instead of waiting for GC.
  *
  * @author Sheng Liang, originator
  * @author Todd Fast, suitability modifications
  * @author Timothy Wall
  * @see Pointer
  */
-public class Memory extends Pointer {
+public class Memory extends Pointer implements Closeable {
     /** Keep track of all allocated memory so we can dispose of it before unloading. */
-    private static final Map<Memory, Reference<Memory>> allocatedMemory =
-            Collections.synchronizedMap(new WeakHashMap<Memory, Reference<Memory>>());
+    private static final Map<MemoryDisposer, Reference<Memory>> allocatedMemory =
+            new ConcurrentHashMap<MemoryDisposer, Reference<Memory>>();
 
     private static final WeakMemoryHolder buffers = new WeakMemoryHolder();
 
@@ -68,13 +69,48 @@ public class Memory extends Pointer {
     /** Dispose of all allocated memory. */
     public static void disposeAll() {
         // use a copy since dispose() modifies the map
-        Collection<Memory> refs = new LinkedList<Memory>(allocatedMemory.keySet());
-        for (Memory r : refs) {
-            r.dispose();
+        List<Map.Entry<MemoryDisposer, Reference<Memory>>> entries =
+            new ArrayList<Map.Entry<MemoryDisposer, Reference<Memory>>>(allocatedMemory.entrySet());
+        for (Map.Entry<MemoryDisposer, Reference<Memory>> entry : entries) {
+            Memory m = entry.getValue().get();
+            if (m != null) {
+                m.dispose();
+            }
+            else {
+                // GC'd but not yet processed by the cleaner
+                entry.getKey().run();
+            }
+        }
+    }
+
+    /** Frees a native allocation exactly once, either explicitly or from
+     * the cleaner thread once the owning {@link Memory} is unreachable.
+     * Must not refer to the owning object.
+     */
+    private static final class MemoryDisposer implements Runnable {
+        private static final AtomicLongFieldUpdater<MemoryDisposer> PEER =
+            AtomicLongFieldUpdater.newUpdater(MemoryDisposer.class, "peer");
+        private volatile long peer;
+
+        MemoryDisposer(long peer) {
+            this.peer = peer;
+        }
+
+        @Override
+        public void run() {
+            long p = PEER.getAndSet(this, 0);
+            if (p != 0) {
+                try {
+                    free(p);
+                } finally {
+                    allocatedMemory.remove(this);
+                }
+            }
         }
     }
 
     protected long size; // Size of the malloc'ed space
+    private final Cleaner.Cleanable cleanable;
 
     /** Provide a view into the original memory.  Keeps an implicit reference
      * to the original to prevent GC.
@@ -92,6 +128,9 @@ public class Memory extends Pointer {
         /** Pass bounds check to parent. */
         @Override
         protected void boundsCheck(long off, long sz) {
+            if (!valid() || !Memory.this.valid()) {
+                throw new IllegalStateException("Memory has been closed");
+            }
             Memory.this.boundsCheck(this.peer - Memory.this.peer + off, sz);
         }
         @Override
@@ -114,11 +153,14 @@ public class Memory extends Pointer {
         if (peer == 0)
             throw new OutOfMemoryError("Cannot allocate " + size + " bytes");
 
-        allocatedMemory.put(this, new WeakReference<Memory>(this));
+        MemoryDisposer disposer = new MemoryDisposer(peer);
+        allocatedMemory.put(disposer, new WeakReference<Memory>(this));
+        cleanable = Cleaner.getCleaner().register(this, disposer);
     }
 
     protected Memory() {
         super();
+        cleanable = null;
     }
 
     /** Provide a view of this memory using the given offset as the base address.  The
@@ -175,18 +217,29 @@ public class Memory extends Pointer {
         throw new IllegalArgumentException("Byte boundary must be a power of two");
     }
 
-    /** Properly dispose of native memory when this object is GC'd. */
+    /** Free the native memory immediately rather than waiting for this
+     * object to be GC'd.  Subsequent calls have no effect.  Any views
+     * obtained from {@link #share} become invalid, and accessing this memory
+     * or its views afterwards throws {@link IllegalStateException}.
+     * <p>On Java 7 and later this allows <code>Memory</code> to be used
+     * in a <code>try</code>-with-resources statement.
+     */
     @Override
-    protected void finalize() {
+    public void close() {
         dispose();
     }
 
     /** Free the native memory and set peer to zero */
     protected synchronized void dispose() {
+        if (peer == 0) {
+            // already freed
+            return;
+        }
         try {
-            free(peer);
+            if (cleanable != null) {
+                cleanable.clean();
+            }
         } finally {
-            allocatedMemory.remove(this);
             peer = 0;
         }
     }
@@ -211,6 +264,9 @@ public class Memory extends Pointer {
      *
      */
     protected void boundsCheck(long off, long sz) {
+        if (peer == 0) {
+            throw new IllegalStateException("Memory has been closed");
+        }
         if (off < 0) {
             throw new IndexOutOfBoundsException("Invalid offset: " + off);
         }
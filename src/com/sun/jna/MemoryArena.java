@@ -0,0 +1,230 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Allocates native memory from a small number of large blocks, rather than
+ * with one <code>malloc</code> per allocation.  Allocations are slices of
+ * a block obtained via {@link Memory#share}, so like other shared memory
+ * they are bounds-checked against the block they belong to, but carry no
+ * per-allocation native or GC overhead.  Individual allocations are never
+ * freed; all memory is released at once by {@link #reset} (blocks are kept
+ * for reuse) or {@link #close}.
+ * <p>
+ * Typical use is to allocate all the arguments of a request from one arena:
+ * <pre>
+ * MemoryArena arena = new MemoryArena();
+ * try {
+ *     MyStructure s = arena.allocate(MyStructure.class);
+ *     Pointer name = arena.allocateString("name");
+ *     ...
+ * }
+ * finally {
+ *     arena.close();
+ * }
+ * </pre>
+ * Memory obtained from an arena must not be used after the arena is reset
+ * or closed.  Arenas are not thread-safe.
+ */
+public class MemoryArena implements Closeable {
+
+    /** Default size of the blocks from which memory is allocated. */
+    public static final long DEFAULT_BLOCK_SIZE = 8192;
+    /** Default alignment of allocations, suitable for any primitive type. */
+    public static final int DEFAULT_ALIGNMENT = 8;
+
+    private final long blockSize;
+    /** Blocks of <code>blockSize</code>, retained across {@link #reset}. */
+    private final List<Memory> blocks = new ArrayList<Memory>();
+    /** Allocations too large for a block, freed on {@link #reset}. */
+    private final List<Memory> large = new ArrayList<Memory>();
+    private int blockIndex = -1;
+    private Memory block;
+    private long offset;
+    private boolean closed;
+
+    /** Create an arena using blocks of {@link #DEFAULT_BLOCK_SIZE}. */
+    public MemoryArena() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    /** Create an arena using blocks of the given size.  Allocations larger
+     * than a quarter of the block size are given their own memory.
+     * @param blockSize size in bytes of each native block
+     */
+    public MemoryArena(long blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be greater than zero");
+        }
+        this.blockSize = blockSize;
+    }
+
+    /** Allocate memory aligned to {@link #DEFAULT_ALIGNMENT}.  The contents
+     * of the returned memory are undefined.
+     * @param size number of bytes to allocate
+     * @return bounds-checked memory valid until this arena is reset or closed
+     */
+    public Memory allocate(long size) {
+        return allocate(size, DEFAULT_ALIGNMENT);
+    }
+
+    /** Allocate memory with the given alignment.  The contents of the
+     * returned memory are undefined.
+     * @param size number of bytes to allocate
+     * @param alignment required alignment; must be a power of two
+     * @return bounds-checked memory valid until this arena is reset or closed
+     */
+    public Memory allocate(long size, int alignment) {
+        if (closed) {
+            throw new IllegalStateException("Arena has been closed");
+        }
+        if (size <= 0) {
+            throw new IllegalArgumentException("Allocation size must be greater than zero");
+        }
+        if (alignment <= 0 || (alignment & (alignment - 1)) != 0) {
+            throw new IllegalArgumentException("Alignment must be a positive power of two: " + alignment);
+        }
+        if (size + alignment - 1 > blockSize / 4) {
+            return allocateLarge(size, alignment);
+        }
+        if (block != null) {
+            Memory m = slice(size, alignment);
+            if (m != null) {
+                return m;
+            }
+        }
+        if (++blockIndex < blocks.size()) {
+            block = blocks.get(blockIndex);
+        }
+        else {
+            block = new Memory(blockSize);
+            blocks.add(block);
+        }
+        offset = 0;
+        return slice(size, alignment);
+    }
+
+    private Memory slice(long size, int alignment) {
+        long mask = alignment - 1;
+        long start = ((block.peer + offset + mask) & ~mask) - block.peer;
+        if (start + size > block.size()) {
+            return null;
+        }
+        offset = start + size;
+        return (Memory)block.share(start, size);
+    }
+
+    private Memory allocateLarge(long size, int alignment) {
+        // malloc already provides alignment suitable for any primitive type
+        Memory m = new Memory(alignment > DEFAULT_ALIGNMENT ? size + alignment - 1 : size);
+        large.add(m);
+        return (Memory)m.align(alignment).share(0, size);
+    }
+
+    /** Allocate zeroed memory for a {@link Structure} and create an instance
+     * of the given type using it.
+     * @param type Structure subclass
+     * @return new instance backed by memory from this arena
+     */
+    public <T extends Structure> T allocate(Class<T> type) {
+        Memory m = allocate(Structure.size(type));
+        m.clear();
+        return Structure.newInstance(type, m);
+    }
+
+    /** Copy a NUL-terminated string using the default encoding into memory
+     * from this arena.
+     * @param value string to copy
+     * @return native copy of the string
+     * @see Native#getDefaultStringEncoding
+     */
+    public Memory allocateString(String value) {
+        return allocateString(value, Native.getDefaultStringEncoding());
+    }
+
+    /** Copy a NUL-terminated string using the given encoding into memory
+     * from this arena.
+     * @param value string to copy
+     * @param encoding charset used to encode the string
+     * @return native copy of the string
+     */
+    public Memory allocateString(String value, String encoding) {
+        byte[] data = Native.getBytes(value, encoding);
+        Memory m = allocate(data.length + 1, 1);
+        m.write(0, data, 0, data.length);
+        m.setByte(data.length, (byte)0);
+        return m;
+    }
+
+    /** Copy a NUL-terminated wide string into memory from this arena.
+     * @param value string to copy
+     * @return native copy of the string
+     */
+    public Memory allocateWideString(String value) {
+        Memory m = allocate((value.length() + 1L) * Native.WCHAR_SIZE, Native.WCHAR_SIZE);
+        m.setWideString(0, value);
+        return m;
+    }
+
+    /** Make all memory available for reuse.  Blocks are retained, except
+     * those of allocations too large for a block, which are freed.
+     * All memory previously obtained from this arena becomes invalid.
+     */
+    public void reset() {
+        for (Memory m : large) {
+            m.close();
+        }
+        large.clear();
+        blockIndex = blocks.isEmpty() ? -1 : 0;
+        block = blocks.isEmpty() ? null : blocks.get(0);
+        offset = 0;
+    }
+
+    /** Free all memory held by this arena.  Subsequent calls have no
+     * effect.  All memory previously obtained from this arena becomes
+     * invalid.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        reset();
+        for (Memory m : blocks) {
+            m.close();
+        }
+        blocks.clear();
+        block = null;
+        blockIndex = -1;
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryArena[blocks=" + blocks.size() + ", blockSize=" + blockSize
+            + ", large=" + large.size() + "]";
+    }
+}
@@ -212,6 +212,9 @@ public final class Native implements Version {
         if (Boolean.getBoolean("jna.protected")) {
             setProtected(true);
         }
+        if (Boolean.getBoolean("jna.callback.keepattached")) {
+            setKeepCallbackThreadsAttached(true);
+        }
         MAX_ALIGNMENT = Platform.isSPARC() || Platform.isWindows()
             || (Platform.isLinux() && (Platform.isARM() || Platform.isPPC() || Platform.isMIPS()))
             || Platform.isAIX()
@@ -548,8 +551,14 @@ public final class Native implements Version {
         }
 
         Library.Handler handler = new Library.Handler(name, interfaceClass, options);
-        ClassLoader loader = interfaceClass.getClassLoader();
-        Object proxy = Proxy.newProxyInstance(loader, new Class[] {interfaceClass}, handler);
+        Object proxy = null;
+        if (Boolean.TRUE.equals(options.get(Library.OPTION_GENERATE_PROXY))) {
+            proxy = LibraryProxyGenerator.newInstance(handler);
+        }
+        if (proxy == null) {
+            ClassLoader loader = interfaceClass.getClassLoader();
+            proxy = Proxy.newProxyInstance(loader, new Class[] {interfaceClass}, handler);
+        }
         cacheOptions(interfaceClass, options, proxy);
         return interfaceClass.cast(proxy);
     }
@@ -1094,14 +1103,19 @@ public final class Native implements Version {
      */
     public static Library synchronizedLibrary(final Library library) {
         Class<?> cls = library.getClass();
-        if (!Proxy.isProxyClass(cls)) {
-            throw new IllegalArgumentException("Library must be a proxy class");
-        }
-        InvocationHandler ih = Proxy.getInvocationHandler(library);
-        if (!(ih instanceof Library.Handler)) {
-            throw new IllegalArgumentException("Unrecognized proxy handler: " + ih);
+        final Library.Handler handler;
+        if (library instanceof LibraryProxy) {
+            handler = ((LibraryProxy)library).getHandler();
+        } else {
+            if (!Proxy.isProxyClass(cls)) {
+                throw new IllegalArgumentException("Library must be a proxy class");
+            }
+            InvocationHandler ih = Proxy.getInvocationHandler(library);
+            if (!(ih instanceof Library.Handler)) {
+                throw new IllegalArgumentException("Unrecognized proxy handler: " + ih);
+            }
+            handler = (Library.Handler)ih;
         }
-        final Library.Handler handler = (Library.Handler)ih;
         InvocationHandler newHandler = new InvocationHandler() {
             @Override
             public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
@@ -1870,6 +1884,12 @@ public final class Native implements Version {
     /** Free the given callback trampoline. */
     static synchronized native void freeNativeCallback(long ptr);
 
+    /** Direct the given callback trampoline to a different object, which
+     * has the same callback method as the one it was created for, or to
+     * <code>null</code> to disable it.
+     */
+    static synchronized native void rebindNativeCallback(long ptr, Callback callback);
+
     /** Use direct mapping for callback. */
     static final int CB_OPTION_DIRECT = 1;
     /** Return a DLL-resident fucntion pointer. */
@@ -1893,10 +1913,12 @@ public final class Native implements Version {
      * @param fp        function pointer
      * @param callFlags calling convention to be used
      * @param args      Arguments to pass to the native function
+     * @param callInterface prepared call interface, or zero to prepare one
+     *                  per call (see {@link #prepareCallInterface})
      *
      * @return The value returned by the target native function
      */
-    static  native int invokeInt(Function function, long fp, int callFlags, Object[] args);
+    static native int invokeInt(Function function, long fp, int callFlags, Object[] args, long callInterface);
 
     /**
      * Call the native function.
@@ -1906,10 +1928,12 @@ public final class Native implements Version {
      * @param fp        function pointer
      * @param callFlags calling convention to be used
      * @param args      Arguments to pass to the native function
+     * @param callInterface prepared call interface, or zero to prepare one
+     *                  per call (see {@link #prepareCallInterface})
      *
      * @return The value returned by the target native function
      */
-    static native long invokeLong(Function function, long fp, int callFlags, Object[] args);
+    static native long invokeLong(Function function, long fp, int callFlags, Object[] args, long callInterface);
 
     /**
      * Call the native function.
@@ -1919,8 +1943,10 @@ public final class Native implements Version {
      * @param fp        function pointer
      * @param callFlags calling convention to be used
      * @param args      Arguments to pass to the native function
+     * @param callInterface prepared call interface, or zero to prepare one
+     *                  per call (see {@link #prepareCallInterface})
      */
-    static native void invokeVoid(Function function, long fp, int callFlags, Object[] args);
+    static native void invokeVoid(Function function, long fp, int callFlags, Object[] args, long callInterface);
 
     /**
      * Call the native function.
@@ -1930,10 +1956,12 @@ public final class Native implements Version {
      * @param fp        function pointer
      * @param callFlags calling convention to be used
      * @param args      Arguments to pass to the native function
+     * @param callInterface prepared call interface, or zero to prepare one
+     *                  per call (see {@link #prepareCallInterface})
      *
      * @return The value returned by the target native function
      */
-    static native float invokeFloat(Function function, long fp, int callFlags, Object[] args);
+    static native float invokeFloat(Function function, long fp, int callFlags, Object[] args, long callInterface);
 
     /**
      * Call the native function.
@@ -1943,10 +1971,12 @@ public final class Native implements Version {
      * @param fp        function pointer
      * @param callFlags calling convention to be used
      * @param args      Arguments to pass to the native function
+     * @param callInterface prepared call interface, or zero to prepare one
+     *                  per call (see {@link #prepareCallInterface})
      *
      * @return The value returned by the target native function
      */
-    static native double invokeDouble(Function function, long fp, int callFlags, Object[] args);
+    static native double invokeDouble(Function function, long fp, int callFlags, Object[] args, long callInterface);
 
     /**
      * Call the native function.
@@ -1956,10 +1986,12 @@ public final class Native implements Version {
      * @param fp        function pointer
      * @param callFlags calling convention to be used
      * @param args      Arguments to pass to the native function
+     * @param callInterface prepared call interface, or zero to prepare one
+     *                  per call (see {@link #prepareCallInterface})
      *
      * @return The value returned by the target native function
      */
-    static native long invokePointer(Function function, long fp, int callFlags, Object[] args);
+    static native long invokePointer(Function function, long fp, int callFlags, Object[] args, long callInterface);
 
     /**
      * Call the native function, returning a struct by value.
@@ -1969,12 +2001,14 @@ public final class Native implements Version {
      * @param fp        function pointer
      * @param callFlags calling convention to be used
      * @param args      Arguments to pass to the native function
+     * @param callInterface prepared call interface, or zero to prepare one
+     *                  per call (see {@link #prepareCallInterface})
      * @param memory    Memory for pre-allocated structure to hold the result
-     * @param typeInfo  Native type information for the Structure
+     * @param type_info Native type information for the Structure
      */
     private static native void invokeStructure(Function function, long fp, int callFlags,
                                                Object[] args, long memory,
-                                               long type_info);
+                                               long type_info, long callInterface);
 
     /**
      * Call the native function, returning a struct by value.
@@ -1984,13 +2018,15 @@ public final class Native implements Version {
      * @param fp        function pointer
      * @param callFlags calling convention to be used
      * @param args      Arguments to pass to the native function
+     * @param callInterface prepared call interface, or zero to prepare one
+     *                  per call (see {@link #prepareCallInterface})
      * 
      * @return the passed-in Structure
      */
     static Structure invokeStructure(Function function, long fp, int callFlags, Object[] args,
-                                     Structure s) {
+                                     long callInterface, Structure s) {
         invokeStructure(function, fp, callFlags, args, s.getPointer().peer,
-                        s.getTypeInfo().peer);
+                        s.getTypeInfo().peer, callInterface);
         return s;
     }
 
@@ -2002,10 +2038,74 @@ public final class Native implements Version {
      * @param fp        function pointer
      * @param callFlags calling convention to be used
      * @param args      Arguments to pass to the native function
+     * @param callInterface prepared call interface, or zero to prepare one
+     *                  per call (see {@link #prepareCallInterface})
      *
      * @return  The returned Java <code>Object</code>
      */
-    static native Object invokeObject(Function function, long fp, int callFlags, Object[] args);
+    static native Object invokeObject(Function function, long fp, int callFlags, Object[] args, long callInterface);
+
+    /**
+     * Call the native function with only primitive arguments, using a
+     * prepared call interface.  Unused trailing arguments are ignored.
+     *
+     * @param function  Present to prevent the GC to collect the Function object
+     *                  prematurely
+     * @param fp        function pointer
+     * @param callFlags calling convention to be used
+     * @param callInterface prepared call interface whose argument kinds
+     *                  determine how each argument value is interpreted
+     * @param a0        first argument as raw 64-bit value; <code>float</code>
+     *                  and <code>double</code> values are passed as their
+     *                  raw bit patterns
+     * @param a1        second argument
+     * @param a2        third argument
+     * @param a3        fourth argument
+     * @param a4        fifth argument
+     * @param a5        sixth argument
+     *
+     * @return The value returned by the target native function
+     */
+    static native int invokeIntPrimitive(Function function, long fp, int callFlags, long callInterface,
+                                         long a0, long a1, long a2, long a3, long a4, long a5);
+
+    /** @see #invokeIntPrimitive */
+    static native long invokeLongPrimitive(Function function, long fp, int callFlags, long callInterface,
+                                           long a0, long a1, long a2, long a3, long a4, long a5);
+
+    /** @see #invokeIntPrimitive */
+    static native float invokeFloatPrimitive(Function function, long fp, int callFlags, long callInterface,
+                                             long a0, long a1, long a2, long a3, long a4, long a5);
+
+    /** @see #invokeIntPrimitive */
+    static native double invokeDoublePrimitive(Function function, long fp, int callFlags, long callInterface,
+                                               long a0, long a1, long a2, long a3, long a4, long a5);
+
+    /** @see #invokeIntPrimitive */
+    static native void invokeVoidPrimitive(Function function, long fp, int callFlags, long callInterface,
+                                           long a0, long a1, long a2, long a3, long a4, long a5);
+
+    /**
+     * Prepare a reusable call interface for native calls with the given
+     * calling convention, return type and argument types.  The prepared
+     * interface is only used by {@link #invokeInt} and friends if the
+     * actual arguments of a call match the prepared argument types.
+     *
+     * @param callFlags calling convention and fixed argument count
+     * @param returnType native <code>ffi_type</code> of the return value
+     * @param argTypes  native <code>ffi_type</code> of each argument
+     * @param argKinds  expected kind of Java object for each argument
+     *                  (JNI primitive signature character, <code>'P'</code>
+     *                  for {@link Pointer}, <code>'T'</code> for a
+     *                  {@link Structure} by value, or zero if unknown)
+     * @return native call interface, to be freed with
+     * {@link #freeCallInterface}
+     */
+    static native long prepareCallInterface(int callFlags, long returnType,
+                                            long[] argTypes, char[] argKinds);
+
+    /** Free a call interface obtained from {@link #prepareCallInterface}. */
+    static native void freeCallInterface(long callInterface);
 
     /** Open the requested native library with default options. */
     static long open(String name) {
@@ -2217,6 +2317,46 @@ public final class Native implements Version {
 
     private static native void setDetachState(boolean detach, long terminationFlag);
 
+    /** Set whether native threads which call back into Java stay attached
+     * to the VM after the callback returns, rather than being attached and
+     * detached again on every callback.  A thread kept attached is detached
+     * automatically when it terminates.  This avoids the cost of attaching
+     * for native thread pools or event loops which call back frequently,
+     * without requiring each callback to call {@link #detach detach(false)}.
+     * <p>
+     * The setting applies to callbacks without a
+     * {@link CallbackThreadInitializer}, whose settings take precedence.
+     * Threads kept attached are attached as daemon threads, so that they
+     * do not prevent the VM from exiting.  It is enabled automatically if the
+     * system property <code>jna.callback.keepattached</code> has a value of
+     * "true" when the JNA library is first loaded.
+     * @param keep whether to keep native callback threads attached
+     */
+    public static native void setKeepCallbackThreadsAttached(boolean keep);
+
+    /** Returns whether native callback threads are kept attached.
+     * @see #setKeepCallbackThreadsAttached
+     */
+    public static native boolean isKeepCallbackThreadsAttached();
+
+    /** Returns the number of times a native thread has been attached to the
+     * VM in order to call back into Java.  Compare with
+     * {@link #getCallbackThreadDetachCount} to monitor attach/detach churn.
+     */
+    public static long getCallbackThreadAttachCount() {
+        return getCallbackThreadCount(false);
+    }
+
+    /** Returns the number of times a native thread attached for a callback
+     * has been detached from the VM, either after the callback or when the
+     * thread terminated.
+     */
+    public static long getCallbackThreadDetachCount() {
+        return getCallbackThreadCount(true);
+    }
+
+    private static native long getCallbackThreadCount(boolean detached);
+
     private static class Buffers {
         static boolean isBuffer(Class<?> cls) {
             return Buffer.class.isAssignableFrom(cls);
@@ -0,0 +1,217 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Per-thread native memory used for <code>String</code> and
+ * <code>WString</code> arguments which only need to be valid for the
+ * duration of a single native call.  Allocation is a stack: a call marks the
+ * current position with {@link #enter}, its arguments are allocated above
+ * it, and {@link #exit} releases them once the call has returned.  Calls made
+ * from callbacks during the native call allocate above the arguments of the
+ * outer call, which therefore remain valid.
+ * <p>
+ * Strings which do not fit in the remaining space are not allocated; the
+ * caller falls back to allocating a {@link NativeString}.
+ */
+final class ScratchMemory {
+
+    /** Size of each thread's scratch area. */
+    static final int SIZE = 8192;
+
+    private static final ThreadLocal<ScratchMemory> SCRATCH = new ThreadLocal<ScratchMemory>() {
+        @Override
+        protected ScratchMemory initialValue() {
+            return new ScratchMemory();
+        }
+    };
+
+    /** Returns the scratch memory of the current thread, reallocating it
+     * if it has been freed by {@link Memory#disposeAll}.
+     */
+    static ScratchMemory get() {
+        ScratchMemory scratch = SCRATCH.get();
+        if (!scratch.memory.valid() && scratch.depth == 0) {
+            scratch = new ScratchMemory();
+            SCRATCH.set(scratch);
+        }
+        return scratch;
+    }
+
+    private final Memory memory = new Memory(SIZE);
+    private final ByteBuffer buffer = memory.getByteBuffer(0, SIZE);
+    private int top;
+    private int depth;
+
+    private String encoding;
+    private CharsetEncoder encoder;
+    private boolean asciiCompatible;
+
+    private ScratchMemory() { }
+
+    /** Start a call which may allocate scratch memory.
+     * @return the mark to pass to {@link #exit}
+     */
+    int enter() {
+        ++depth;
+        return top;
+    }
+
+    /** End a call, releasing everything allocated since the matching
+     * {@link #enter}.
+     */
+    void exit(int mark) {
+        --depth;
+        top = mark;
+    }
+
+    /** Copy the given string, NUL-terminated, using the given encoding.
+     * @return pointer to the copy, or <code>null</code> if it does not fit,
+     * no call is in progress or the memory has been freed
+     */
+    Pointer putString(String s, String encoding) {
+        if (depth == 0 || s.length() >= SIZE - top || !memory.valid()) {
+            return null;
+        }
+        if (!encoding.equals(this.encoding) && !setEncoding(encoding)) {
+            return null;
+        }
+        int start = top;
+        int end = asciiCompatible ? putAscii(s, start) : -1;
+        if (end < 0) {
+            end = encode(s, start);
+            if (end < 0) {
+                return null;
+            }
+        }
+        buffer.put(end, (byte)0);
+        top = end + 1;
+        return new Pointer(memory.peer + start);
+    }
+
+    /** Copy the given string as a NUL-terminated <code>wchar_t</code> array.
+     * @return pointer to the copy, or <code>null</code> if it does not fit,
+     * no call is in progress or the memory has been freed
+     */
+    Pointer putWideString(String s) {
+        if (depth == 0 || !memory.valid()) {
+            return null;
+        }
+        int start = (top + Native.WCHAR_SIZE - 1) & ~(Native.WCHAR_SIZE - 1);
+        long len = (s.length() + 1L) * Native.WCHAR_SIZE;
+        if (len > SIZE - start) {
+            return null;
+        }
+        memory.setWideString(start, s);
+        top = start + (int)len;
+        return new Pointer(memory.peer + start);
+    }
+
+    /** Write the string directly if it is all ASCII.
+     * @return the end offset, or -1 if the string is not ASCII
+     */
+    private int putAscii(String s, int offset) {
+        int len = s.length();
+        for (int i=0;i < len;i++) {
+            char ch = s.charAt(i);
+            if (ch >= 0x80) {
+                return -1;
+            }
+            buffer.put(offset + i, (byte)ch);
+        }
+        return offset + len;
+    }
+
+    /** Encode the string, leaving room for the terminating NUL.
+     * @return the end offset, or -1 if the string does not fit
+     */
+    private int encode(String s, int offset) {
+        buffer.limit(SIZE - 1).position(offset);
+        try {
+            encoder.reset();
+            CoderResult result = encoder.encode(CharBuffer.wrap(s), buffer, true);
+            if (!result.isUnderflow()) {
+                return -1;
+            }
+            result = encoder.flush(buffer);
+            if (!result.isUnderflow()) {
+                return -1;
+            }
+            return buffer.position();
+        }
+        finally {
+            buffer.clear();
+        }
+    }
+
+    /** Use the given encoding for subsequent strings, with the same
+     * substitution of unmappable characters as {@link String#getBytes}.
+     * @return false if the encoding is not supported here
+     */
+    private boolean setEncoding(String encoding) {
+        CharsetEncoder e;
+        try {
+            e = Charset.forName(encoding).newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        catch(IllegalArgumentException ex) {
+            // Unsupported; let NativeString report it
+            return false;
+        }
+        catch(UnsupportedOperationException ex) {
+            // Decode-only charset
+            return false;
+        }
+        this.encoding = encoding;
+        this.encoder = e;
+        this.asciiCompatible = isAsciiCompatible(e.charset());
+        return true;
+    }
+
+    /** Whether ASCII characters are encoded as single bytes of the same
+     * value.
+     */
+    private static boolean isAsciiCompatible(Charset charset) {
+        char[] ascii = new char[0x80];
+        for (int i=0;i < ascii.length;i++) {
+            ascii[i] = (char)i;
+        }
+        byte[] bytes = new String(ascii).getBytes(charset);
+        if (bytes.length != ascii.length) {
+            return false;
+        }
+        for (int i=0;i < bytes.length;i++) {
+            if (bytes[i] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
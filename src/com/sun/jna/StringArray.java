@@ -23,18 +23,16 @@
  */
 package com.sun.jna;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 /** Handle native array of <code>char*</code> or <code>wchar_t*</code> type
  * by managing allocation/disposal of native strings within an array of
  * pointers.  An extra NULL pointer is always added to the end of the native
- * pointer array for convenience.
+ * pointer array for convenience.  The strings are stored in the same native
+ * allocation, following the pointer array.
  */
 public class StringArray extends Memory implements Function.PostCallRead {
     private String encoding;
-    private List<NativeString> natives = new ArrayList<NativeString>();
     private Object[] original;
     /** Create a native array of strings. */
     public StringArray(String[] strings) {
@@ -53,20 +51,57 @@ public class StringArray extends Memory implements Function.PostCallRead {
         this(strings, NativeString.WIDE_STRING);
     }
     private StringArray(Object[] strings, String encoding) {
-        super((strings.length + 1) * Native.POINTER_SIZE);
+        this(strings, encoding, encode(strings, encoding));
+    }
+    private StringArray(Object[] strings, String encoding, byte[][] encoded) {
+        super(size(strings, encoded));
         this.original = strings;
         this.encoding = encoding;
+        long offset = (strings.length + 1L) * Native.POINTER_SIZE;
         for (int i=0;i < strings.length;i++) {
             Pointer p = null;
             if (strings[i] != null) {
-                NativeString ns = new NativeString(strings[i].toString(), encoding);
-                natives.add(ns);
-                p = ns.getPointer();
+                p = new Pointer(peer + offset);
+                if (encoded == null) {
+                    String s = strings[i].toString();
+                    setWideString(offset, s);
+                    offset += (s.length() + 1L) * Native.WCHAR_SIZE;
+                } else {
+                    byte[] data = encoded[i];
+                    write(offset, data, 0, data.length);
+                    setByte(offset + data.length, (byte)0);
+                    offset += data.length + 1;
+                }
             }
             setPointer(Native.POINTER_SIZE * i, p);
         }
         setPointer(Native.POINTER_SIZE * strings.length, null);
     }
+    /** Encode the strings, or return <code>null</code> for wide strings. */
+    private static byte[][] encode(Object[] strings, String encoding) {
+        if (NativeString.WIDE_STRING.equals(encoding)) {
+            return null;
+        }
+        byte[][] encoded = new byte[strings.length][];
+        for (int i=0;i < strings.length;i++) {
+            if (strings[i] != null) {
+                encoded[i] = Native.getBytes(strings[i].toString(), encoding);
+            }
+        }
+        return encoded;
+    }
+    /** Size of the pointer array plus all NUL-terminated strings. */
+    private static long size(Object[] strings, byte[][] encoded) {
+        long size = (strings.length + 1L) * Native.POINTER_SIZE;
+        for (int i=0;i < strings.length;i++) {
+            if (strings[i] != null) {
+                size += encoded == null
+                    ? (strings[i].toString().length() + 1L) * Native.WCHAR_SIZE
+                    : encoded[i].length + 1;
+            }
+        }
+        return size;
+    }
     /** Read back from native memory. */
     @Override
     public void read() {
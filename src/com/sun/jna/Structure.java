@@ -29,6 +29,8 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
 import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.AbstractCollection;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -36,6 +38,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -133,8 +136,9 @@ public abstract class Structure {
     //public static final int ALIGN_8 = 6;
 
     protected static final int CALCULATE_SIZE = -1;
-    static final Map<Class<?>, LayoutInfo> layoutInfo = new WeakHashMap<Class<?>, LayoutInfo>();
-    static final Map<Class<?>, List<String>> fieldOrder = new WeakHashMap<Class<?>, List<String>>();
+    static final ClassCache<LayoutInfo> layoutInfo = new ClassCache<LayoutInfo>();
+    static final ClassCache<List<String>> fieldOrder = new ClassCache<List<String>>();
+    private static final ClassCache<Factory> factories = new ClassCache<Factory>();
 
     // This field is accessed by native code
     private Pointer memory;
@@ -144,6 +148,7 @@ public abstract class Structure {
     private int actualAlignType;
     private int structAlignment;
     private Map<String, StructField> structFields;
+    private LayoutInfo layout;
     // Keep track of native C strings which have been allocated,
     // corresponding to String fields of this Structure
     private final Map<String, Object> nativeStrings = new HashMap<String, Object>();
@@ -156,6 +161,15 @@ public abstract class Structure {
     // Keep a reference when this structure is mapped to an array
     private Structure[] array;
     private boolean readCalled;
+    // Field values last synchronized with native memory, if auto-write is
+    // restricted to modified fields
+    private FieldSnapshot snapshot;
+    // Whether fields are accessed in native memory rather than Java fields
+    private boolean directAccess;
+    // View of the native memory, and the address it was created for
+    private ByteBuffer byteBuffer;
+    private Pointer byteBufferMemory;
+    private long byteBufferPeer;
 
     protected Structure() {
         this(ALIGN_DEFAULT);
@@ -344,12 +358,109 @@ public abstract class Structure {
             }
             this.array = null;
             this.readCalled = false;
+            invalidateSnapshot();
         }
         catch(IndexOutOfBoundsException e) {
             throw new IllegalArgumentException("Structure exceeds provided memory bounds", e);
         }
     }
 
+    /** Position this structure at an element of a contiguous native array
+     * of structures of this type, then read it if auto-read is enabled.
+     * Unlike {@link #useMemory(Pointer,int)} or {@link #toArray(int)},
+     * repeated calls reuse this instance and its backing pointer, so that
+     * a large native array can be scanned with a single instance, without
+     * allocating per element:
+     * <pre>
+     * Entry entry = new Entry();
+     * for (int i=0;i &lt; count;i++) {
+     *     entry.useArrayElement(table, i);
+     *     total += entry.value;
+     * }
+     * </pre>
+     * While this structure is positioned this way, {@link #getPointer}
+     * returns a pointer which moves along with it; use
+     * {@link Pointer#share(long)} to keep the address of an element.
+     * @param base start of the native array
+     * @param index index of the element
+     * @throws IndexOutOfBoundsException if the index is negative, or the
+     * element lies beyond the end of the memory when <code>base</code> is
+     * {@link Memory}
+     * @throws IllegalStateException if <code>base</code> is {@link Memory}
+     * which has been closed
+     */
+    public void useArrayElement(Pointer base, int index) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Negative structure array index: " + index);
+        }
+        int size = size();
+        long offset = (long)index * size;
+        if (base instanceof Memory) {
+            try {
+                ((Memory)base).boundsCheck(offset, size);
+            }
+            catch(IndexOutOfBoundsException e) {
+                throw new IndexOutOfBoundsException("Structure array index " + index
+                                                    + " exceeds provided memory bounds");
+            }
+        }
+        CursorPointer cursor = memory instanceof CursorPointer ? (CursorPointer)memory : null;
+        if (cursor == null || cursor.base != base) {
+            cursor = new CursorPointer(base);
+            memory = cursor;
+        }
+        cursor.moveTo(offset);
+        nativeStrings.clear();
+        array = null;
+        readCalled = false;
+        invalidateSnapshot();
+        autoRead();
+    }
+
+    /** Pointer to an element of a native array, moved between elements in
+     * place by {@link Structure#useArrayElement}.
+     */
+    private static final class CursorPointer extends Pointer {
+        private final Pointer base;
+        private long offset;
+        // Reused for reading and writing bulk fields
+        private ByteBuffer buffer;
+
+        CursorPointer(Pointer base) {
+            super(Pointer.nativeValue(base));
+            this.base = base;
+        }
+
+        void moveTo(long offset) {
+            this.offset = offset;
+            peer = Pointer.nativeValue(base) + offset;
+        }
+
+        /** Check that the current element is still within the base
+         * memory, if the base is {@link Memory}.
+         */
+        void check(long size) {
+            if (base instanceof Memory) {
+                ((Memory)base).boundsCheck(offset, size);
+            }
+        }
+
+        ByteBuffer getBuffer(int size) {
+            if (buffer == null || buffer.capacity() != size) {
+                buffer = ByteBuffer.wrap(new byte[size]).order(ByteOrder.nativeOrder());
+            }
+            return buffer;
+        }
+
+        /** Shared views do not move with this pointer, and are bounded by
+         * the base memory.
+         */
+        @Override
+        public Pointer share(long offset, long sz) {
+            return base.share(this.offset + offset, sz);
+        }
+    }
+
     /** Ensure this memory has its size and layout calculated and its
         memory allocated. */
     protected void ensureAllocated() {
@@ -377,6 +488,9 @@ public abstract class Structure {
                 }
             }
         }
+        else if (memory instanceof CursorPointer) {
+            ((CursorPointer)memory).check(size);
+        }
     }
 
     /** Attempt to allocate memory if sufficient information is available.
@@ -567,23 +681,40 @@ public abstract class Structure {
         // allocateMemory in a ctor
         ensureAllocated();
 
-        // Avoid redundant reads
-        if (busy().contains(this)) {
-            return;
-        }
-        busy().add(this);
-        if (this instanceof Structure.ByReference) {
-            reading().put(getPointer(), this);
+        // Avoid redundant reads; only structures whose fields may read
+        // other structures can be read again while being read
+        boolean reentrant = layout.reentrant;
+        if (reentrant) {
+            if (busy().contains(this)) {
+                return;
+            }
+            busy().add(this);
+            if (this instanceof Structure.ByReference) {
+                reading().put(getPointer(), this);
+            }
         }
         try {
-            for (StructField structField : fields().values()) {
-                readField(structField);
+            BulkAccess bulk = layout.bulk;
+            if (bulk != null && canUseBulkAccess(bulk)) {
+                readBulkFields(bulk);
+                for (StructField structField : bulk.otherFields) {
+                    readField(structField);
+                }
+                recordSnapshot(Arrays.asList(bulk.otherFields), true);
+            }
+            else {
+                for (StructField structField : fields().values()) {
+                    readField(structField);
+                }
+                recordSnapshot(fields().values(), false);
             }
         }
         finally {
-            busy().remove(this);
-            if (reading().get(getPointer()) == this) {
-                reading().remove(getPointer());
+            if (reentrant) {
+                busy().remove(this);
+                if (reading().get(getPointer()) == this) {
+                    reading().remove(getPointer());
+                }
             }
         }
     }
@@ -611,6 +742,7 @@ public abstract class Structure {
         StructField f = fields().get(name);
         if (f == null)
             throw new IllegalArgumentException("No such field: " + name);
+        invalidateSnapshot();
         return readField(f);
     }
 
@@ -751,26 +883,356 @@ public abstract class Structure {
         // have to explicitly call allocateMemory in a ctor
         ensureAllocated();
 
-        // Update native FFI type information, if needed
-        if (this instanceof ByValue) {
+        // Update native FFI type information, if needed; it does not
+        // change once set
+        if (typeInfo == 0 && this instanceof ByValue) {
             getTypeInfo();
         }
 
         // Avoid redundant writes
-        if (busy().contains(this)) {
-            return;
+        boolean reentrant = layout.reentrant;
+        if (reentrant) {
+            if (busy().contains(this)) {
+                return;
+            }
+            busy().add(this);
         }
-        busy().add(this);
         try {
             // Write all fields, except those marked 'volatile'
-            for (StructField sf : fields().values()) {
-                if (!sf.isVolatile) {
+            BulkAccess bulk = layout.bulk;
+            if (bulk != null && canUseBulkAccess(bulk)) {
+                writeBulkFields(bulk);
+                for (StructField sf : bulk.otherFields) {
+                    if (!sf.isVolatile) {
+                        writeField(sf);
+                    }
+                }
+                recordSnapshot(Arrays.asList(bulk.otherFields), true);
+            }
+            else {
+                for (StructField sf : fields().values()) {
+                    if (!sf.isVolatile) {
+                        writeField(sf);
+                    }
+                }
+                recordSnapshot(fields().values(), false);
+            }
+        }
+        finally {
+            if (reentrant) {
+                busy().remove(this);
+            }
+        }
+    }
+
+    /** Whether the fields of the layout can be copied in bulk.  This is
+     * not the case when an array field no longer matches the layout.
+     */
+    private boolean canUseBulkAccess(BulkAccess bulk) {
+        for (StructField sf : bulk.fields) {
+            if (sf.type.isArray()) {
+                Object array = getFieldValue(sf.field);
+                if (array == null
+                    || Array.getLength(array) * Native.getNativeSize(sf.type.getComponentType()) != sf.size) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Read all fields handled in bulk with a single copy of native memory. */
+    private void readBulkFields(BulkAccess bulk) {
+        ByteBuffer buffer = getBulkBuffer(bulk);
+        byte[] buf = buffer.array();
+        memory.read(bulk.start, buf, 0, buf.length);
+        if (snapshot != null) {
+            snapshot.setBulk(buf);
+        }
+        if (bulk.accessor != null) {
+            bulk.accessor.read(this, buffer, bulk.accessorOffsets);
+        }
+        for (StructField sf : bulk.fields) {
+            readBulkField(sf, buffer, sf.offset - bulk.start);
+        }
+    }
+
+    /** Write all fields handled in bulk, with one copy to native memory per
+     * run of adjacent fields.
+     */
+    private void writeBulkFields(BulkAccess bulk) {
+        byte[] buf = encodeBulkFields(bulk);
+        int[] ranges = bulk.ranges;
+        for (int i=0;i < ranges.length;i += 2) {
+            memory.write(ranges[i], buf, ranges[i] - bulk.start, ranges[i+1] - ranges[i]);
+        }
+        if (snapshot != null) {
+            snapshot.setBulk(buf);
+        }
+    }
+
+    /** Write the bulk fields, skipping each run of adjacent fields up to
+     * its first byte which differs from the snapshot.
+     */
+    private void writeModifiedBulkFields(BulkAccess bulk) {
+        byte[] old = snapshot.bulk;
+        if (old == null) {
+            writeBulkFields(bulk);
+            return;
+        }
+        byte[] buf = encodeBulkFields(bulk);
+        int[] ranges = bulk.ranges;
+        for (int i=0;i < ranges.length;i += 2) {
+            int from = ranges[i] - bulk.start;
+            int to = ranges[i+1] - bulk.start;
+            while (from < to && buf[from] == old[from]) {
+                ++from;
+            }
+            if (from < to) {
+                memory.write(bulk.start + from, buf, from, to - from);
+                System.arraycopy(buf, from, old, from, to - from);
+            }
+        }
+    }
+
+    /** Encode the current values of the bulk fields.
+     * @return the buffer contents, in native layout relative to the start
+     * of the bulk fields
+     */
+    private byte[] encodeBulkFields(BulkAccess bulk) {
+        ByteBuffer buffer = getBulkBuffer(bulk);
+        if (bulk.accessor != null) {
+            bulk.accessor.write(this, buffer, bulk.accessorOffsets);
+        }
+        for (StructField sf : bulk.fields) {
+            if (!sf.isVolatile && !sf.isReadOnly) {
+                writeBulkField(sf, buffer, sf.offset - bulk.start);
+            }
+        }
+        return buffer.array();
+    }
+
+    /** Returns a buffer for the bulk fields, reused when this structure is
+     * used as a cursor over an array.
+     */
+    private ByteBuffer getBulkBuffer(BulkAccess bulk) {
+        if (memory instanceof CursorPointer) {
+            return ((CursorPointer)memory).getBuffer(bulk.size);
+        }
+        return ByteBuffer.wrap(new byte[bulk.size]).order(ByteOrder.nativeOrder());
+    }
+
+    /** Set a primitive or primitive array field from the buffer. */
+    private void readBulkField(StructField sf, ByteBuffer buffer, int offset) {
+        Class<?> type = sf.type;
+        Field field = sf.field;
+        try {
+            if (type.isArray()) {
+                Object array = field.get(this);
+                buffer.position(offset);
+                type = type.getComponentType();
+                if (type == byte.class) {
+                    buffer.get((byte[])array);
+                }
+                else if (type == short.class) {
+                    buffer.asShortBuffer().get((short[])array);
+                }
+                else if (type == int.class) {
+                    buffer.asIntBuffer().get((int[])array);
+                }
+                else if (type == long.class) {
+                    buffer.asLongBuffer().get((long[])array);
+                }
+                else if (type == float.class) {
+                    buffer.asFloatBuffer().get((float[])array);
+                }
+                else {
+                    buffer.asDoubleBuffer().get((double[])array);
+                }
+            }
+            else if (type == byte.class) {
+                field.setByte(this, buffer.get(offset));
+            }
+            else if (type == short.class) {
+                field.setShort(this, buffer.getShort(offset));
+            }
+            else if (type == int.class) {
+                field.setInt(this, buffer.getInt(offset));
+            }
+            else if (type == long.class) {
+                field.setLong(this, buffer.getLong(offset));
+            }
+            else if (type == float.class) {
+                field.setFloat(this, buffer.getFloat(offset));
+            }
+            else {
+                field.setDouble(this, buffer.getDouble(offset));
+            }
+        }
+        catch(IllegalAccessException e) {
+            throw new Error("Unexpectedly unable to write to field '" + field.getName() + "' within " + getClass(), e);
+        }
+    }
+
+    /** Copy a primitive or primitive array field into the buffer. */
+    private void writeBulkField(StructField sf, ByteBuffer buffer, int offset) {
+        Class<?> type = sf.type;
+        Field field = sf.field;
+        try {
+            if (type.isArray()) {
+                Object array = field.get(this);
+                buffer.position(offset);
+                type = type.getComponentType();
+                if (type == byte.class) {
+                    buffer.put((byte[])array);
+                }
+                else if (type == short.class) {
+                    buffer.asShortBuffer().put((short[])array);
+                }
+                else if (type == int.class) {
+                    buffer.asIntBuffer().put((int[])array);
+                }
+                else if (type == long.class) {
+                    buffer.asLongBuffer().put((long[])array);
+                }
+                else if (type == float.class) {
+                    buffer.asFloatBuffer().put((float[])array);
+                }
+                else {
+                    buffer.asDoubleBuffer().put((double[])array);
+                }
+            }
+            else if (type == byte.class) {
+                buffer.put(offset, field.getByte(this));
+            }
+            else if (type == short.class) {
+                buffer.putShort(offset, field.getShort(this));
+            }
+            else if (type == int.class) {
+                buffer.putInt(offset, field.getInt(this));
+            }
+            else if (type == long.class) {
+                buffer.putLong(offset, field.getLong(this));
+            }
+            else if (type == float.class) {
+                buffer.putFloat(offset, field.getFloat(this));
+            }
+            else {
+                buffer.putDouble(offset, field.getDouble(this));
+            }
+        }
+        catch(IllegalAccessException e) {
+            throw new Error("Exception reading field '" + field.getName() + "' in " + getClass(), e);
+        }
+    }
+
+    /** Write the fields whose values differ from the last snapshot. */
+    private void writeModifiedFields() {
+        if (memory == PLACEHOLDER_MEMORY) {
+            return;
+        }
+        ensureAllocated();
+        if (typeInfo == 0 && this instanceof ByValue) {
+            getTypeInfo();
+        }
+        boolean reentrant = layout.reentrant;
+        if (reentrant) {
+            if (busy().contains(this)) {
+                return;
+            }
+            busy().add(this);
+        }
+        try {
+            Collection<StructField> others;
+            BulkAccess bulk = layout.bulk;
+            if (bulk != null && canUseBulkAccess(bulk)) {
+                writeModifiedBulkFields(bulk);
+                others = Arrays.asList(bulk.otherFields);
+            }
+            else {
+                snapshot.bulk = null;
+                others = fields().values();
+            }
+            Map<StructField, Object> values = snapshot.values;
+            for (StructField sf : others) {
+                if (sf.isVolatile) {
+                    continue;
+                }
+                if (FieldSnapshot.isComparable(sf)) {
+                    Object value = getFieldValue(sf.field);
+                    if (values.containsKey(sf) && FieldSnapshot.equal(value, values.get(sf))) {
+                        continue;
+                    }
+                    writeField(sf);
+                    values.put(sf, value);
+                }
+                else {
                     writeField(sf);
                 }
             }
         }
         finally {
-            busy().remove(this);
+            if (reentrant) {
+                busy().remove(this);
+            }
+        }
+    }
+
+    /** Record the values of the given fields, which have just been read or
+     * written, if auto-write is restricted to modified fields.  Fields
+     * copied in bulk are recorded as they are copied.
+     */
+    private void recordSnapshot(Collection<StructField> fields, boolean bulk) {
+        if (snapshot == null) {
+            return;
+        }
+        if (!bulk) {
+            snapshot.bulk = null;
+        }
+        snapshot.values.clear();
+        for (StructField sf : fields) {
+            if (FieldSnapshot.isComparable(sf)) {
+                snapshot.values.put(sf, getFieldValue(sf.field));
+            }
+        }
+        snapshot.valid = true;
+    }
+
+    private void invalidateSnapshot() {
+        if (snapshot != null) {
+            snapshot.valid = false;
+        }
+    }
+
+    /** Field values of a structure as last read from or written to native
+     * memory.
+     */
+    private static final class FieldSnapshot {
+        // Native contents of the bulk fields, if copied in bulk
+        private byte[] bulk;
+        // Values of other fields which can be compared
+        private final Map<StructField, Object> values = new IdentityHashMap<StructField, Object>();
+        private boolean valid;
+
+        void setBulk(byte[] buf) {
+            if (bulk == null || bulk.length != buf.length) {
+                bulk = new byte[buf.length];
+            }
+            System.arraycopy(buf, 0, bulk, 0, buf.length);
+        }
+
+        /** Whether equal values of the field always have the same native
+         * representation.
+         */
+        static boolean isComparable(StructField sf) {
+            Class<?> type = sf.type;
+            return sf.writeConverter == null
+                && (type.isPrimitive() || type == String.class || type == WString.class
+                    || Pointer.class.isAssignableFrom(type));
+        }
+
+        static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
         }
     }
 
@@ -784,6 +1246,7 @@ public abstract class Structure {
         StructField f = fields().get(name);
         if (f == null)
             throw new IllegalArgumentException("No such field: " + name);
+        invalidateSnapshot();
         writeField(f);
     }
 
@@ -800,6 +1263,7 @@ public abstract class Structure {
         if (structField == null)
             throw new IllegalArgumentException("No such field: " + name);
         setFieldValue(structField.field, value);
+        invalidateSnapshot();
         writeField(structField);
     }
 
@@ -935,14 +1399,11 @@ public abstract class Structure {
      */
     private List<String> fieldOrder() {
         Class<?> clazz = getClass();
-        synchronized(fieldOrder) {
-            List<String> list = fieldOrder.get(clazz);
-            if (list == null) {
-                list = getFieldOrder();
-                fieldOrder.put(clazz, list);
-            }
-            return list;
+        List<String> list = fieldOrder.get(clazz);
+        if (list == null) {
+            list = fieldOrder.putIfAbsent(clazz, getFieldOrder());
         }
+        return list;
     }
 
     public static List<String> createFieldsOrder(List<String> baseFields, String ... extraFields) {
@@ -1052,10 +1513,7 @@ public abstract class Structure {
      * @return native size of the Structure subclass
      */
     static <T extends Structure> int size(Class<T> type, T value) {
-        LayoutInfo info;
-        synchronized(layoutInfo) {
-            info = layoutInfo.get(type);
-        }
+        LayoutInfo info = layoutInfo.get(type);
         int sz = (info != null && !info.variable) ? info.size : CALCULATE_SIZE;
         if (sz == CALCULATE_SIZE) {
             if (value == null) {
@@ -1076,10 +1534,7 @@ public abstract class Structure {
     int calculateSize(boolean force, boolean avoidFFIType) {
         int size = CALCULATE_SIZE;
         Class<?> clazz = getClass();
-        LayoutInfo info;
-        synchronized(layoutInfo) {
-            info = layoutInfo.get(clazz);
-        }
+        LayoutInfo info = layoutInfo.get(clazz);
         if (info == null
             || this.alignType != info.alignType
             || this.typeMapper != info.typeMapper) {
@@ -1088,19 +1543,20 @@ public abstract class Structure {
         if (info != null) {
             this.structAlignment = info.alignment;
             this.structFields = info.fields;
+            this.layout = info;
 
             if (!info.variable) {
-                synchronized(layoutInfo) {
-                    // If we've already cached it, only override layout if
-                    // we're using non-default values for alignment and/or
-                    // type mapper; this way we don't override the cache
-                    // prematurely when processing subclasses that call
-                    // setAlignType() or setTypeMapper() in the constructor
-                    if (!layoutInfo.containsKey(clazz)
-                        || this.alignType != ALIGN_DEFAULT
-                        || this.typeMapper != null) {
-                        layoutInfo.put(clazz, info);
-                    }
+                // If we've already cached it, only override layout if
+                // we're using non-default values for alignment and/or
+                // type mapper; this way we don't override the cache
+                // prematurely when processing subclasses that call
+                // setAlignType() or setTypeMapper() in the constructor
+                if (this.alignType != ALIGN_DEFAULT
+                    || this.typeMapper != null) {
+                    layoutInfo.put(clazz, info);
+                }
+                else {
+                    layoutInfo.putIfAbsent(clazz, info);
                 }
             }
             size = info.size;
@@ -1108,18 +1564,81 @@ public abstract class Structure {
         return size;
     }
 
+    /** Whether this structure's class is marked {@link Const}, so that it
+     * is not read back after being passed to a native function.
+     */
+    boolean isConst() {
+        LayoutInfo info = layout;
+        return info != null ? info.constant : getClass().isAnnotationPresent(Const.class);
+    }
+
     /** Keep track of structure layout information.  Alignment type, type
         mapper, and explicit field order will affect this information.
+        Immutable, so it can be shared between threads without locking.
     */
-    private static class LayoutInfo {
-        private int size = CALCULATE_SIZE;
-        private int alignment = 1;
-        private final Map<String, StructField> fields = Collections.synchronizedMap(new LinkedHashMap<String, StructField>());
-        private int alignType = ALIGN_DEFAULT;
-        private TypeMapper typeMapper;
-        private boolean variable;
+    private static final class LayoutInfo {
+        private final int size;
+        private final int alignment;
+        private final Map<String, StructField> fields;
+        private final int alignType;
+        private final TypeMapper typeMapper;
+        private final boolean variable;
         // For unions only, field on which the union FFI type info is based
-        private StructField typeInfoField;
+        private final StructField typeInfoField;
+        // Fields copied with a single access to native memory, if any
+        private final BulkAccess bulk;
+        // Whether reading or writing the fields may read or write other
+        // structures, including this one, and so needs cycle tracking
+        private final boolean reentrant;
+        // Whether the class is marked {@link Const}
+        private final boolean constant;
+
+        LayoutInfo(int size, int alignment, Map<String, StructField> fields,
+                   int alignType, TypeMapper typeMapper, boolean variable,
+                   StructField typeInfoField, BulkAccess bulk, boolean reentrant,
+                   boolean constant) {
+            this.size = size;
+            this.alignment = alignment;
+            this.fields = Collections.unmodifiableMap(fields);
+            this.alignType = alignType;
+            this.typeMapper = typeMapper;
+            this.variable = variable;
+            this.typeInfoField = typeInfoField;
+            this.bulk = bulk;
+            this.reentrant = reentrant;
+            this.constant = constant;
+        }
+    }
+
+    /** Primitive and primitive array fields of a layout which are copied
+     * with a single access to native memory.
+     */
+    private static final class BulkAccess {
+        // Native offset and size of the memory holding the fields
+        private final int start;
+        private final int size;
+        // Start and end offsets of runs of adjacent writable fields
+        private final int[] ranges;
+        // Generated access to primitive fields, if available
+        private final StructureAccessor accessor;
+        // Buffer offset of each accessor field
+        private final int[] accessorOffsets;
+        // Bulk fields not handled by the accessor
+        private final StructField[] fields;
+        // Fields read and written one by one, in layout order
+        private final StructField[] otherFields;
+
+        BulkAccess(int start, int size, int[] ranges,
+                   StructureAccessor accessor, int[] accessorOffsets,
+                   StructField[] fields, StructField[] otherFields) {
+            this.start = start;
+            this.size = size;
+            this.ranges = ranges;
+            this.accessor = accessor;
+            this.accessorOffsets = accessorOffsets;
+            this.fields = fields;
+            this.otherFields = otherFields;
+        }
     }
 
     private void validateField(String name, Class<?> type) {
@@ -1163,9 +1682,10 @@ public abstract class Structure {
             return null;
         }
 
-        LayoutInfo info = new LayoutInfo();
-        info.alignType = this.alignType;
-        info.typeMapper = this.typeMapper;
+        int alignment = 1;
+        boolean variable = false;
+        Map<String, StructField> layoutFields = new LinkedHashMap<String, StructField>();
+        StructField typeInfoField = null;
 
         boolean firstField = true;
         for (Iterator<Field> i=fields.iterator();i.hasNext();firstField=false) {
@@ -1174,7 +1694,7 @@ public abstract class Structure {
 
             Class<?> type = field.getType();
             if (type.isArray()) {
-                info.variable = true;
+                variable = true;
             }
             StructField structField = new StructField();
             structField.isVolatile = Modifier.isVolatile(modifiers);
@@ -1265,7 +1785,7 @@ public abstract class Structure {
             if (fieldAlignment == 0) {
                 throw new Error("Field alignment is zero for field '" + structField.name + "' within " + getClass());
             }
-            info.alignment = Math.max(info.alignment, fieldAlignment);
+            alignment = Math.max(alignment, fieldAlignment);
             if ((calculatedSize % fieldAlignment) != 0) {
                 calculatedSize += fieldAlignment - (calculatedSize % fieldAlignment);
             }
@@ -1279,24 +1799,27 @@ public abstract class Structure {
             }
 
             // Save the field in our list
-            info.fields.put(structField.name, structField);
+            layoutFields.put(structField.name, structField);
 
-            if (info.typeInfoField == null
-                || info.typeInfoField.size < structField.size
-                || (info.typeInfoField.size == structField.size
+            if (typeInfoField == null
+                || typeInfoField.size < structField.size
+                || (typeInfoField.size == structField.size
                     && Structure.class.isAssignableFrom(structField.type))) {
-                info.typeInfoField = structField;
+                typeInfoField = structField;
             }
         }
 
         if (calculatedSize > 0) {
-            int size = addPadding(calculatedSize, info.alignment);
+            int size = addPadding(calculatedSize, alignment);
             // Update native FFI type information, if needed
             if (this instanceof ByValue && !avoidFFIType) {
                 getTypeInfo();
             }
-            info.size = size;
-            return info;
+            return new LayoutInfo(size, alignment, layoutFields, this.alignType,
+                                  this.typeMapper, variable, typeInfoField,
+                                  deriveBulkAccess(layoutFields),
+                                  isReentrant(layoutFields),
+                                  getClass().isAnnotationPresent(Const.class));
         }
 
         throw new IllegalArgumentException("Structure " + getClass()
@@ -1304,6 +1827,118 @@ public abstract class Structure {
                                            + "all fields are public)");
     }
 
+    /** Determine whether reading or writing the given fields may read or
+     * write other structures: nested structures, structure arrays and
+     * <code>ByReference</code> fields, or fields with arbitrary type
+     * conversion.  Structures for which this is not the case can never be
+     * read or written again while being read or written.
+     */
+    private boolean isReentrant(Map<String, StructField> fields) {
+        if (this instanceof Union || StructureAccessorGenerator.overridesFieldAccess(getClass())) {
+            return true;
+        }
+        for (StructField sf : fields.values()) {
+            Class<?> type = sf.type;
+            while (type.isArray()) {
+                type = type.getComponentType();
+            }
+            if (Structure.class.isAssignableFrom(type)) {
+                return true;
+            }
+            if ((sf.readConverter != null || NativeMapped.class.isAssignableFrom(type))
+                && !IntegerType.class.isAssignableFrom(type)
+                && !PointerType.class.isAssignableFrom(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Determine which fields can be copied with a single bulk access to
+     * native memory: primitive and primitive array fields without type
+     * conversion.  In a flat layout, which has only such fields, one copy
+     * reads or writes the whole structure.  Primitive fields are set by the
+     * generated accessor for this class, if it has one.
+     */
+    private BulkAccess deriveBulkAccess(Map<String, StructField> fields) {
+        if (this instanceof Union || StructureAccessorGenerator.overridesFieldAccess(getClass())) {
+            return null;
+        }
+        StructureAccessor accessor = StructureAccessorGenerator.getAccessor(getClass());
+        Set<String> accessorNames = Collections.emptySet();
+        if (accessor != null) {
+            accessorNames = new HashSet<String>(Arrays.asList(accessor.fieldNames));
+            for (String name : accessor.fieldNames) {
+                StructField sf = fields.get(name);
+                // The field might have been excluded by an overridden
+                // getFieldList()
+                if (sf == null || !isBulkField(sf)) {
+                    accessor = null;
+                    accessorNames = Collections.emptySet();
+                    break;
+                }
+            }
+        }
+        List<StructField> bulk = new ArrayList<StructField>();
+        List<StructField> others = new ArrayList<StructField>();
+        List<Integer> ranges = new ArrayList<Integer>();
+        int start = -1;
+        int end = 0;
+        for (StructField sf : fields.values()) {
+            if (!isBulkField(sf)) {
+                others.add(sf);
+                continue;
+            }
+            if (!accessorNames.contains(sf.name)) {
+                bulk.add(sf);
+            }
+            if (start == -1) {
+                start = sf.offset;
+            }
+            end = sf.offset + sf.size;
+            if (sf.isVolatile || sf.isReadOnly || sf.size == 0) {
+                continue;
+            }
+            if (!ranges.isEmpty() && ranges.get(ranges.size()-1) == sf.offset) {
+                ranges.set(ranges.size()-1, end);
+            }
+            else {
+                ranges.add(sf.offset);
+                ranges.add(end);
+            }
+        }
+        if (start == -1 || end == start) {
+            return null;
+        }
+        int[] accessorOffsets = null;
+        if (accessor != null) {
+            accessorOffsets = new int[accessor.fieldNames.length];
+            for (int i=0;i < accessor.fieldNames.length;i++) {
+                accessorOffsets[i] = fields.get(accessor.fieldNames[i]).offset - start;
+            }
+        }
+        int[] writeRanges = new int[ranges.size()];
+        for (int i=0;i < ranges.size();i++) {
+            writeRanges[i] = ranges.get(i);
+        }
+        return new BulkAccess(start, end - start, writeRanges, accessor, accessorOffsets,
+                              bulk.toArray(new StructField[bulk.size()]),
+                              others.toArray(new StructField[others.size()]));
+    }
+
+    private static boolean isBulkField(StructField sf) {
+        if (sf.readConverter != null || sf.writeConverter != null) {
+            return false;
+        }
+        Class<?> type = sf.type.isArray() ? sf.type.getComponentType() : sf.type;
+        if (type != byte.class && type != short.class && type != int.class
+            && type != long.class && type != float.class && type != double.class) {
+            return false;
+        }
+        int size = Native.getNativeSize(type);
+        return sf.type.isArray() ? sf.size % size == 0 : sf.size == size;
+    }
+
     /**
      * Initialize any null-valued fields that should have a non-null default
      * value.
@@ -1732,6 +2367,95 @@ public abstract class Structure {
         return this.autoWrite;
     }
 
+    /** Set whether writes prior to a native function call are restricted
+     * to the fields modified since the structure was last read or written.
+     * This avoids redundant writes of large structures which are passed
+     * repeatedly with few changes, at the cost of keeping a copy of the
+     * field values.  Primitive and primitive array fields are compared by
+     * native contents, <code>String</code>, {@link WString} and
+     * {@link Pointer} fields by value; other fields are always written.
+     * Changes made to native memory without a subsequent {@link #read} are
+     * not detected, and may or may not be overwritten.  An explicit
+     * {@link #write} always writes all fields.
+     * @param modifiedOnly whether to only write modified fields
+     */
+    public void setAutoWriteModifiedOnly(boolean modifiedOnly) {
+        if (modifiedOnly != (snapshot != null)) {
+            snapshot = modifiedOnly ? new FieldSnapshot() : null;
+        }
+    }
+
+    /** Returns whether writes prior to a native function call are restricted
+     * to modified fields.
+     * @return whether only modified fields are written
+     */
+    public boolean getAutoWriteModifiedOnly() {
+        return snapshot != null;
+    }
+
+    /** Set whether the fields of this structure are accessed directly in
+     * native memory through {@link #getByteBuffer}, instead of through its
+     * Java fields.  Native memory then always holds the current values, so
+     * the structure is neither read nor written automatically around
+     * native function calls (see {@link #setAutoSynch}).  This suits
+     * structures which are shared with native code which keeps modifying
+     * them, such as the header of a shared ring buffer, which would
+     * otherwise have to be read in full on every poll.
+     * <p>
+     * The Java fields still define the layout, and may still be
+     * synchronized explicitly with {@link #read} and {@link #write}, for
+     * instance to display the structure.  Typical accessors use offsets
+     * obtained once from {@link #fieldOffset}:
+     * <pre><code>
+     * public class RingHeader extends Structure {
+     *     public long head, tail;
+     *     private final int tailOffset = fieldOffset("tail");
+     *     public RingHeader(Pointer p) {
+     *         super(p);
+     *         setDirectAccess(true);
+     *     }
+     *     public long getTail() {
+     *         return getByteBuffer().getLong(tailOffset);
+     *     }
+     *     ...
+     * }
+     * </code></pre>
+     * @param direct whether fields are accessed in native memory
+     */
+    public void setDirectAccess(boolean direct) {
+        this.directAccess = direct;
+        setAutoSynch(!direct);
+    }
+
+    /** Returns whether the fields of this structure are accessed directly in
+     * native memory.
+     * @return whether direct access is enabled
+     */
+    public boolean getDirectAccess() {
+        return directAccess;
+    }
+
+    /** Returns a view of the native memory of this structure, in native
+     * byte order, for reading and writing fields in place with absolute
+     * <code>get</code> and <code>put</code> methods at the offsets given by
+     * {@link #fieldOffset}.  The view is created once and reused until the
+     * structure is moved to different memory.  Reads and writes through
+     * the view do not involve the Java fields, so no {@link #read} or
+     * {@link #write} is needed.
+     * @return view of the structure's native memory
+     * @see #setDirectAccess
+     */
+    public ByteBuffer getByteBuffer() {
+        ensureAllocated();
+        Pointer m = memory;
+        if (byteBuffer == null || byteBufferMemory != m || byteBufferPeer != m.peer) {
+            byteBuffer = m.getByteBuffer(0, size());
+            byteBufferMemory = m;
+            byteBufferPeer = m.peer;
+        }
+        return byteBuffer;
+    }
+
     /** Exposed for testing purposes only.
      * @param obj object to query
      * @return native pointer to type information
@@ -1766,28 +2490,24 @@ public abstract class Structure {
      * @throws IllegalArgumentException if the instantiation fails
      */
     public static <T extends Structure> T newInstance(Class<T> type, Pointer init) throws IllegalArgumentException {
-        try {
-            Constructor<T> ctor = type.getConstructor(Pointer.class);
-            return ctor.newInstance(init);
-        }
-        catch(NoSuchMethodException e) {
-            // Not defined, fall back to the default
-        }
-        catch(SecurityException e) {
-            // Might as well try the fallback
-        }
-        catch(InstantiationException e) {
-            String msg = "Can't instantiate " + type;
-            throw new IllegalArgumentException(msg, e);
-        }
-        catch(IllegalAccessException e) {
-            String msg = "Instantiation of " + type + " (Pointer) not allowed, is it public?";
-            throw new IllegalArgumentException(msg, e);
-        }
-        catch(InvocationTargetException e) {
-            String msg = "Exception thrown while instantiating an instance of " + type;
-            e.printStackTrace();
-            throw new IllegalArgumentException(msg, e);
+        Constructor<?> ctor = getFactory(type).pointerConstructor;
+        if (ctor != null) {
+            try {
+                return type.cast(ctor.newInstance(init));
+            }
+            catch(InstantiationException e) {
+                String msg = "Can't instantiate " + type;
+                throw new IllegalArgumentException(msg, e);
+            }
+            catch(IllegalAccessException e) {
+                String msg = "Instantiation of " + type + " (Pointer) not allowed, is it public?";
+                throw new IllegalArgumentException(msg, e);
+            }
+            catch(InvocationTargetException e) {
+                String msg = "Exception thrown while instantiating an instance of " + type;
+                e.printStackTrace();
+                throw new IllegalArgumentException(msg, e);
+            }
         }
         T s = newInstance(type);
         if (init != PLACEHOLDER_MEMORY) {
@@ -1802,8 +2522,13 @@ public abstract class Structure {
      * @throws IllegalArgumentException if the instantiation fails
      */
     public static <T extends Structure> T newInstance(Class<T> type) throws IllegalArgumentException {
+        Constructor<?> ctor = getFactory(type).defaultConstructor;
+        if (ctor == null) {
+            String msg = "Can't instantiate " + type;
+            throw new IllegalArgumentException(msg, new InstantiationException(type.getName()));
+        }
         try {
-            T s = type.newInstance();
+            T s = type.cast(ctor.newInstance());
             if (s instanceof ByValue) {
                 s.allocateMemory();
             }
@@ -1818,6 +2543,55 @@ public abstract class Structure {
                 + " not allowed, is it public?";
             throw new IllegalArgumentException(msg, e);
         }
+        catch(InvocationTargetException e) {
+            // Propagate as Class.newInstance() would
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            String msg = "Exception thrown while instantiating an instance of " + type;
+            throw new IllegalArgumentException(msg, cause);
+        }
+    }
+
+    /** Constructors of a Structure class, looked up once per class rather
+     * than on every instantiation.
+     */
+    private static final class Factory {
+        // Public (Pointer) constructor, if any
+        private final Constructor<?> pointerConstructor;
+        // No-arg constructor, if any; access is checked on use, as for
+        // Class.newInstance()
+        private final Constructor<?> defaultConstructor;
+
+        Factory(Class<?> type) {
+            pointerConstructor = getConstructor(type, false, Pointer.class);
+            defaultConstructor = getConstructor(type, true);
+        }
+
+        private static Constructor<?> getConstructor(Class<?> type, boolean declared, Class<?>... params) {
+            try {
+                return declared ? type.getDeclaredConstructor(params) : type.getConstructor(params);
+            }
+            catch(NoSuchMethodException e) {
+                // Not defined
+            }
+            catch(SecurityException e) {
+                // Treat as not defined
+            }
+            return null;
+        }
+    }
+
+    private static Factory getFactory(Class<?> type) {
+        Factory factory = factories.get(type);
+        if (factory == null) {
+            factory = factories.putIfAbsent(type, new Factory(type));
+        }
+        return factory;
     }
 
     /** Keep track of the largest aggregate field of the union to use for
@@ -1825,8 +2599,8 @@ public abstract class Structure {
      * @return which field to use to obtain FFI type information
      */
     StructField typeInfoField() {
-        LayoutInfo info;
-        synchronized(layoutInfo) {
+        LayoutInfo info = layout;
+        if (info == null) {
             info = layoutInfo.get(getClass());
         }
         if (info != null) {
@@ -1851,19 +2625,14 @@ public abstract class Structure {
             return name + "@" + offset + "[" + size + "] (" + type + ")";
         }
     }
-    /** This class auto-generates an ffi_type structure appropriate for a given
-     * structure for use by libffi.  The lifecycle of this structure is easier
-     * to manage on the Java side than in native code.
+    /** Native <code>ffi_type</code> descriptors, used by libffi to pass
+     * structures and other values by value.  The descriptor of a structure
+     * class is built once, together with those of its fixed-size array
+     * fields, in a single block of native memory.  Descriptors are never
+     * modified from Java, are shared by all instances of a class, and are
+     * freed once the class is unloaded.  Lookups do not lock.
      */
-    static class FFIType extends Structure {
-        public static class size_t extends IntegerType {
-            private static final long serialVersionUID = 1L;
-
-            public size_t() { this(0); }
-            public size_t(long value) { super(Native.SIZE_T_SIZE, value); }
-        }
-
-        private static final Map<Object, Object> typeInfoMap = new WeakHashMap<Object, Object>();
+    static final class FFIType {
 
         // Native.initIDs initializes these fields to their appropriate
         // pointer values.  These are in a separate class from FFIType so that
@@ -1884,83 +2653,55 @@ public abstract class Structure {
             private static Pointer ffi_type_pointer;
         }
 
+        // Descriptors by Java type.  Values do not refer to their class,
+        // and are held strongly since native call interfaces refer to them.
+        private static final ClassCache<Pointer> types = new ClassCache<Pointer>(false);
+        // Descriptors of arrays passed other than as structure fields,
+        // which depend on the array length
+        private static final Map<Object, Pointer> arrayTypes =
+            Collections.synchronizedMap(new WeakHashMap<Object, Pointer>());
+
         static {
             if (Native.POINTER_SIZE == 0)
                 throw new Error("Native library not initialized");
             if (FFITypes.ffi_type_void == null)
                 throw new Error("FFI types not initialized");
-            typeInfoMap.put(void.class, FFITypes.ffi_type_void);
-            typeInfoMap.put(Void.class, FFITypes.ffi_type_void);
-            typeInfoMap.put(float.class, FFITypes.ffi_type_float);
-            typeInfoMap.put(Float.class, FFITypes.ffi_type_float);
-            typeInfoMap.put(double.class, FFITypes.ffi_type_double);
-            typeInfoMap.put(Double.class, FFITypes.ffi_type_double);
-            typeInfoMap.put(long.class, FFITypes.ffi_type_sint64);
-            typeInfoMap.put(Long.class, FFITypes.ffi_type_sint64);
-            typeInfoMap.put(int.class, FFITypes.ffi_type_sint32);
-            typeInfoMap.put(Integer.class, FFITypes.ffi_type_sint32);
-            typeInfoMap.put(short.class, FFITypes.ffi_type_sint16);
-            typeInfoMap.put(Short.class, FFITypes.ffi_type_sint16);
+            types.put(void.class, FFITypes.ffi_type_void);
+            types.put(Void.class, FFITypes.ffi_type_void);
+            types.put(float.class, FFITypes.ffi_type_float);
+            types.put(Float.class, FFITypes.ffi_type_float);
+            types.put(double.class, FFITypes.ffi_type_double);
+            types.put(Double.class, FFITypes.ffi_type_double);
+            types.put(long.class, FFITypes.ffi_type_sint64);
+            types.put(Long.class, FFITypes.ffi_type_sint64);
+            types.put(int.class, FFITypes.ffi_type_sint32);
+            types.put(Integer.class, FFITypes.ffi_type_sint32);
+            types.put(short.class, FFITypes.ffi_type_sint16);
+            types.put(Short.class, FFITypes.ffi_type_sint16);
             Pointer ctype = Native.WCHAR_SIZE == 2
                 ? FFITypes.ffi_type_uint16 : FFITypes.ffi_type_uint32;
-            typeInfoMap.put(char.class, ctype);
-            typeInfoMap.put(Character.class, ctype);
-            typeInfoMap.put(byte.class, FFITypes.ffi_type_sint8);
-            typeInfoMap.put(Byte.class, FFITypes.ffi_type_sint8);
-            typeInfoMap.put(Pointer.class, FFITypes.ffi_type_pointer);
-            typeInfoMap.put(String.class, FFITypes.ffi_type_pointer);
-            typeInfoMap.put(WString.class, FFITypes.ffi_type_pointer);
-            typeInfoMap.put(boolean.class, FFITypes.ffi_type_uint32);
-            typeInfoMap.put(Boolean.class, FFITypes.ffi_type_uint32);
+            types.put(char.class, ctype);
+            types.put(Character.class, ctype);
+            types.put(byte.class, FFITypes.ffi_type_sint8);
+            types.put(Byte.class, FFITypes.ffi_type_sint8);
+            types.put(Pointer.class, FFITypes.ffi_type_pointer);
+            types.put(String.class, FFITypes.ffi_type_pointer);
+            types.put(WString.class, FFITypes.ffi_type_pointer);
+            types.put(boolean.class, FFITypes.ffi_type_uint32);
+            types.put(Boolean.class, FFITypes.ffi_type_uint32);
         }
+
         // From ffi.h
         private static final int FFI_TYPE_STRUCT = 13;
-        // Structure fields
-        public size_t size;
-        public short alignment;
-        public short type = FFI_TYPE_STRUCT;
-        public Pointer elements;
-
-        private FFIType(Structure ref) {
-            Pointer[] els;
-            ref.ensureAllocated(true);
+        // Layout of ffi_type: size_t size; unsigned short alignment;
+        // unsigned short type; ffi_type **elements.  Size and alignment
+        // are left zero and computed by libffi.
+        private static final int TYPE_OFFSET = Native.SIZE_T_SIZE + 2;
+        private static final int ELEMENTS_OFFSET =
+            (TYPE_OFFSET + 2 + Native.POINTER_SIZE - 1) & ~(Native.POINTER_SIZE - 1);
+        private static final int TYPE_SIZE = ELEMENTS_OFFSET + Native.POINTER_SIZE;
 
-            if (ref instanceof Union) {
-                StructField sf = ((Union)ref).typeInfoField();
-                els = new Pointer[] {
-                    get(ref.getFieldValue(sf.field), sf.type),
-                    null,
-                };
-            }
-            else {
-                els = new Pointer[ref.fields().size() + 1];
-                int idx = 0;
-                for (StructField sf : ref.fields().values()) {
-                    els[idx++] = ref.getFieldTypeInfo(sf);
-                }
-            }
-            init(els);
-        }
-        // Represent fixed-size arrays as structures of N identical elements
-        private FFIType(Object array, Class<?> type) {
-            int length = Array.getLength(array);
-            Pointer[] els = new Pointer[length+1];
-            Pointer p = get(null, type.getComponentType());
-            for (int i=0;i < length;i++) {
-                els[i] = p;
-            }
-            init(els);
-        }
-
-        @Override
-        protected List<String> getFieldOrder() {
-            return Arrays.asList(new String[] { "size", "alignment", "type", "elements" });
-        }
-        private void init(Pointer[] els) {
-            elements = new Memory(Native.POINTER_SIZE * els.length);
-            elements.write(0, els, 0, els.length);
-            write();
-        }
+        private FFIType() { }
 
         /** Obtain a pointer to the native FFI type descriptor for the given object. */
         static Pointer get(Object obj) {
@@ -1972,47 +2713,127 @@ public abstract class Structure {
         }
 
         private static Pointer get(Object obj, Class<?> cls) {
+            Pointer p = types.get(cls);
+            if (p != null) {
+                return p;
+            }
+            Class<?> nativeType = cls;
             TypeMapper mapper = Native.getTypeMapper(cls);
             if (mapper != null) {
                 ToNativeConverter nc = mapper.getToNativeConverter(cls);
                 if (nc != null) {
-                    cls = nc.nativeType();
+                    nativeType = nc.nativeType();
                 }
             }
-            synchronized(typeInfoMap) {
-                Object o = typeInfoMap.get(cls);
-                if (o instanceof Pointer) {
-                    return (Pointer)o;
+            if (nativeType.isArray()) {
+                return getArrayType(obj, nativeType);
+            }
+            if (NativeMapped.class.isAssignableFrom(nativeType)) {
+                NativeMappedConverter c = NativeMappedConverter.getInstance(nativeType);
+                p = get(c.toNative(obj, new ToNativeContext()), c.nativeType());
+                return c.nativeType().isArray() ? p : types.putIfAbsent(cls, p);
+            }
+            if (nativeType != cls) {
+                p = types.get(nativeType);
+            }
+            if (p == null) {
+                if ((Platform.HAS_BUFFERS && Buffer.class.isAssignableFrom(nativeType))
+                    || Callback.class.isAssignableFrom(nativeType)
+                    || ByReference.class.isAssignableFrom(nativeType)) {
+                    p = FFITypes.ffi_type_pointer;
                 }
-                if (o instanceof FFIType) {
-                    return ((FFIType)o).getPointer();
+                else if (Structure.class.isAssignableFrom(nativeType)) {
+                    if (obj == null) obj = newInstance((Class<? extends Structure>) nativeType, PLACEHOLDER_MEMORY);
+                    p = build((Structure)obj);
                 }
-                if ((Platform.HAS_BUFFERS && Buffer.class.isAssignableFrom(cls))
-                    || Callback.class.isAssignableFrom(cls)) {
-                    typeInfoMap.put(cls, FFITypes.ffi_type_pointer);
-                    return FFITypes.ffi_type_pointer;
+                else {
+                    throw new IllegalArgumentException("Unsupported type " + cls);
                 }
-                if (Structure.class.isAssignableFrom(cls)) {
-                    if (obj == null) obj = newInstance((Class<? extends Structure>) cls, PLACEHOLDER_MEMORY);
-                    if (ByReference.class.isAssignableFrom(cls)) {
-                        typeInfoMap.put(cls, FFITypes.ffi_type_pointer);
-                        return FFITypes.ffi_type_pointer;
-                    }
-                    FFIType type = new FFIType((Structure)obj);
-                    typeInfoMap.put(cls, type);
-                    return type.getPointer();
+            }
+            // Another thread may have built the same type in the meantime
+            return types.putIfAbsent(cls, p);
+        }
+
+        /** Descriptor of a fixed-size array, represented as a structure of
+         * N identical elements.  Kept as long as the array is in use.
+         */
+        private static Pointer getArrayType(Object array, Class<?> type) {
+            Pointer p = arrayTypes.get(array);
+            if (p == null) {
+                Pointer element = get(null, type.getComponentType());
+                int length = Array.getLength(array);
+                TypeInfoMemory m = new TypeInfoMemory(TYPE_SIZE + (length + 1L) * Native.POINTER_SIZE,
+                                                      new Pointer[] { element });
+                m.setArrayType(0, TYPE_SIZE, element, length);
+                arrayTypes.put(array, m);
+                p = m;
+            }
+            return p;
+        }
+
+        /** Build the descriptor of a structure, followed by those of its
+         * fixed-size array fields, in a single block of native memory.
+         */
+        private static Pointer build(Structure ref) {
+            ref.ensureAllocated(true);
+            Collection<StructField> fields = ref instanceof Union
+                ? Collections.singleton(((Union)ref).typeInfoField())
+                : ref.fields().values();
+            Pointer[] elements = new Pointer[fields.size()];
+            int[] lengths = new int[elements.length];
+            long size = TYPE_SIZE + (elements.length + 1L) * Native.POINTER_SIZE;
+            int idx = 0;
+            for (StructField sf : fields) {
+                if (sf.type.isArray()) {
+                    elements[idx] = get(null, sf.type.getComponentType());
+                    lengths[idx] = Array.getLength(ref.getFieldValue(sf.field));
+                    size += TYPE_SIZE + (lengths[idx] + 1L) * Native.POINTER_SIZE;
                 }
-                if (NativeMapped.class.isAssignableFrom(cls)) {
-                    NativeMappedConverter c = NativeMappedConverter.getInstance(cls);
-                    return get(c.toNative(obj, new ToNativeContext()), c.nativeType());
+                else {
+                    lengths[idx] = -1;
+                    elements[idx] = ref instanceof Union
+                        ? get(ref.getFieldValue(sf.field), sf.type)
+                        : ref.getFieldTypeInfo(sf);
                 }
-                if (cls.isArray()) {
-                    FFIType type = new FFIType(obj, cls);
-                    // Store it in the map to prevent premature GC of type info
-                    typeInfoMap.put(obj, type);
-                    return type.getPointer();
+                ++idx;
+            }
+            TypeInfoMemory m = new TypeInfoMemory(size, elements);
+            long arrayOffset = TYPE_SIZE + (elements.length + 1L) * Native.POINTER_SIZE;
+            m.setShort(TYPE_OFFSET, (short)FFI_TYPE_STRUCT);
+            m.setPointer(ELEMENTS_OFFSET, m.share(TYPE_SIZE));
+            for (int i=0;i < elements.length;i++) {
+                Pointer element = elements[i];
+                if (lengths[i] >= 0) {
+                    m.setArrayType(arrayOffset, arrayOffset + TYPE_SIZE, element, lengths[i]);
+                    element = m.share(arrayOffset);
+                    arrayOffset += TYPE_SIZE + (lengths[i] + 1L) * Native.POINTER_SIZE;
+                }
+                m.setPointer(TYPE_SIZE + (long)i * Native.POINTER_SIZE, element);
+            }
+            return m;
+        }
+
+        /** Zeroed native memory holding type descriptors, which keeps the
+         * descriptors it refers to from being freed.
+         */
+        private static final class TypeInfoMemory extends Memory {
+            private final Pointer[] referenced;
+
+            TypeInfoMemory(long size, Pointer[] referenced) {
+                super(size);
+                this.referenced = referenced;
+                clear();
+            }
+
+            /** Write the descriptor of an array of the given element type,
+             * with its element list at the given offset.
+             */
+            void setArrayType(long offset, long elementsOffset, Pointer element, int length) {
+                setShort(offset + TYPE_OFFSET, (short)FFI_TYPE_STRUCT);
+                setPointer(offset + ELEMENTS_OFFSET, share(elementsOffset));
+                for (int i=0;i < length;i++) {
+                    setPointer(elementsOffset + (long)i * Native.POINTER_SIZE, element);
                 }
-                throw new IllegalArgumentException("Unsupported type " + cls);
             }
         }
     }
@@ -2085,7 +2906,12 @@ public abstract class Structure {
 
     public void autoWrite() {
         if (getAutoWrite()) {
-            write();
+            if (snapshot != null && snapshot.valid) {
+                writeModifiedFields();
+            }
+            else {
+                write();
+            }
             if (array != null) {
                 for (int i=1;i < array.length;i++) {
                     array[i].autoWrite();
@@ -2125,12 +2951,9 @@ public abstract class Structure {
      * @param cls Structure subclass to check
      */
     static void validate(Class<? extends Structure> cls) {
-        try {
-            cls.getConstructor();
+        Constructor<?> ctor = getFactory(cls).defaultConstructor;
+        if (ctor != null && Modifier.isPublic(ctor.getModifiers())) {
             return;
-        }catch(NoSuchMethodException e) {
-        }
-        catch(SecurityException e) {
         }
         throw new IllegalArgumentException("No suitable constructor found for class: " + cls.getName());
     }
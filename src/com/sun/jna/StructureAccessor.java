@@ -0,0 +1,57 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.nio.ByteBuffer;
+
+/** Base class of the field accessors generated for {@link Structure}
+ * subclasses.  A generated accessor copies the primitive fields of a
+ * structure from or to a buffer holding the structure's native contents,
+ * with plain field accesses instead of reflection, so that
+ * {@link Structure#read} and {@link Structure#write} need only a single
+ * bulk copy of native memory for all of those fields.
+ * <p>
+ * This class is an implementation detail and should not be extended.
+ */
+public abstract class StructureAccessor {
+
+    /** Names of the fields handled by this accessor, in the order of the
+     * offsets passed to {@link #read} and {@link #write}.
+     */
+    String[] fieldNames;
+
+    protected StructureAccessor() { }
+
+    /** Set the fields of the structure from the given buffer.
+     * @param s structure to update
+     * @param buffer native contents, in native byte order
+     * @param offsets buffer offset of each field
+     */
+    protected abstract void read(Structure s, ByteBuffer buffer, int[] offsets);
+
+    /** Copy the fields of the structure into the given buffer.
+     * @param s structure to copy
+     * @param buffer native contents, in native byte order
+     * @param offsets buffer offset of each field
+     */
+    protected abstract void write(Structure s, ByteBuffer buffer, int[] offsets);
+}
@@ -0,0 +1,181 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Generates {@link StructureAccessor} subclasses for {@link Structure}
+ * classes.  The generated accessor handles all public, non-final,
+ * non-volatile fields of type <code>byte</code>, <code>short</code>,
+ * <code>int</code>, <code>long</code>, <code>float</code> and
+ * <code>double</code>; other fields are read and written reflectively.
+ */
+final class StructureAccessorGenerator {
+
+    private static final ClassFileWriter.GeneratedCache<Void, StructureAccessor> accessors =
+        new ClassFileWriter.GeneratedCache<Void, StructureAccessor>() {
+            @Override
+            protected StructureAccessor generate(Class<?> type, Void unused) throws Exception {
+                Field[] fields = getFields(type);
+                return fields != null ? StructureAccessorGenerator.generate(type, fields) : null;
+            }
+        };
+
+    private static final String SUPERCLASS = "com/sun/jna/StructureAccessor";
+    private static final String BUFFER = "java/nio/ByteBuffer";
+    private static final String ACCESS_DESC =
+        "(Lcom/sun/jna/Structure;L" + BUFFER + ";[I)V";
+
+    private StructureAccessorGenerator() { }
+
+    /** Returns the accessor for the given class, or <code>null</code> if
+     * its fields can't be accessed by a generated class.
+     */
+    static StructureAccessor getAccessor(Class<? extends Structure> type) {
+        return accessors.get(type, null);
+    }
+
+    /** Returns the fields to access, or <code>null</code> if the class is
+     * not suitable for a generated accessor.
+     */
+    private static Field[] getFields(Class<?> type) {
+        List<Field> fields = new ArrayList<Field>();
+        for (Class<?> cls = type; cls != Structure.class; cls = cls.getSuperclass()) {
+            if (!ClassFileWriter.isAccessible(cls)) {
+                return null;
+            }
+            for (Field f : cls.getDeclaredFields()) {
+                int modifiers = f.getModifiers();
+                if (Modifier.isPublic(modifiers)
+                    && !Modifier.isStatic(modifiers)
+                    && !Modifier.isFinal(modifiers)
+                    && !Modifier.isVolatile(modifiers)
+                    && getSuffix(f.getType()) != null) {
+                    fields.add(f);
+                }
+            }
+        }
+        return fields.isEmpty() ? null : fields.toArray(new Field[fields.size()]);
+    }
+
+    /** Whether the class customizes single field access, and therefore
+     * needs every field to be read and written individually.
+     */
+    static boolean overridesFieldAccess(Class<?> type) {
+        for (Class<?> cls = type; cls != Structure.class; cls = cls.getSuperclass()) {
+            if (overrides(cls, "readField") || overrides(cls, "writeField")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean overrides(Class<?> cls, String name) {
+        try {
+            cls.getDeclaredMethod(name, Structure.StructField.class);
+            return true;
+        } catch(NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /** Returns the suffix of the <code>ByteBuffer</code> methods for the
+     * given type, or <code>null</code> if the type isn't supported.
+     */
+    private static String getSuffix(Class<?> type) {
+        if (type == byte.class) return "";
+        if (type == short.class) return "Short";
+        if (type == int.class) return "Int";
+        if (type == long.class) return "Long";
+        if (type == float.class) return "Float";
+        if (type == double.class) return "Double";
+        return null;
+    }
+
+    private static StructureAccessor generate(Class<?> type, Field[] fields) throws Exception {
+        String name = ClassFileWriter.newClassName(type);
+        byte[] b = new ClassWriter().write(name.replace('.', '/'),
+                                           type.getName().replace('.', '/'),
+                                           fields);
+        ClassFileWriter.GeneratedClassLoader loader = new ClassFileWriter.GeneratedClassLoader(
+            type.getClassLoader(), StructureAccessor.class, Structure.class);
+        StructureAccessor accessor = (StructureAccessor)loader.newInstance(name, b);
+        accessor.fieldNames = new String[fields.length];
+        for (int i=0;i < fields.length;i++) {
+            accessor.fieldNames[i] = fields[i].getName();
+        }
+        return accessor;
+    }
+
+    /** Writes the generated accessor classes. */
+    private static final class ClassWriter extends ClassFileWriter {
+
+        byte[] write(String className, String structName, Field[] fields) throws IOException {
+            Code ctor = new Code();
+            ctor.op(ALOAD, 0);
+            ctor.op(INVOKESPECIAL).u2(methodRef(SUPERCLASS, "<init>", "()V"));
+            ctor.op(RETURN);
+            addMethod(ACC_PUBLIC, "<init>", "()V", ctor, 1, 1);
+
+            // read: s.field = buffer.getXxx(offsets[i]);
+            Code read = new Code();
+            read.op(ALOAD, 1).op(CHECKCAST).u2(classRef(structName)).op(ASTORE, 4);
+            for (int i=0;i < fields.length;i++) {
+                Class<?> type = fields[i].getType();
+                String desc = getDescriptor(type);
+                read.op(ALOAD, 4).op(ALOAD, 2);
+                loadOffset(read, i);
+                read.op(INVOKEVIRTUAL).u2(methodRef(BUFFER, "get" + getSuffix(type), "(I)" + desc));
+                read.op(PUTFIELD).u2(fieldRef(structName, fields[i].getName(), desc));
+            }
+            read.op(RETURN);
+            addMethod(ACC_PUBLIC | ACC_FINAL, "read", ACCESS_DESC, read, 5, 5);
+
+            // write: buffer.putXxx(offsets[i], s.field);
+            Code write = new Code();
+            write.op(ALOAD, 1).op(CHECKCAST).u2(classRef(structName)).op(ASTORE, 4);
+            for (int i=0;i < fields.length;i++) {
+                Class<?> type = fields[i].getType();
+                String desc = getDescriptor(type);
+                write.op(ALOAD, 2);
+                loadOffset(write, i);
+                write.op(ALOAD, 4).op(GETFIELD).u2(fieldRef(structName, fields[i].getName(), desc));
+                write.op(INVOKEVIRTUAL).u2(methodRef(BUFFER, "put" + getSuffix(type), "(I" + desc + ")L" + BUFFER + ";"));
+                write.op(POP);
+            }
+            write.op(RETURN);
+            addMethod(ACC_PUBLIC | ACC_FINAL, "write", ACCESS_DESC, write, 5, 5);
+
+            return toByteArray(className, SUPERCLASS);
+        }
+
+        private void loadOffset(Code c, int index) throws IOException {
+            c.op(ALOAD, 3);
+            pushInt(c, index);
+            c.op(IALOAD);
+        }
+    }
+}
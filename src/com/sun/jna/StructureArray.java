@@ -0,0 +1,217 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * View of a contiguous native array of structures as a fixed-size list.
+ * Unlike {@link Structure#toArray(int)}, which creates and reads every
+ * element up front, elements are created and read only when first
+ * accessed, and at most a bounded number of them are kept.  Use this class
+ * for large native arrays of which only a few elements are used.
+ * <p>
+ * Elements returned by {@link #get} are marked as modified.  When the
+ * array is passed to a native function, only these elements are written to
+ * native memory before the call, and only elements currently kept by the
+ * array are read back after it.  An element dropped from the array once
+ * the bound is exceeded is written first if it is marked as modified.
+ * Changes to an element reference which is kept across calls are only
+ * written if the element is obtained again with {@link #get}, or written
+ * explicitly with {@link Structure#write}.
+ * <pre>
+ * StructureArray&lt;Record&gt; records = new StructureArray&lt;Record&gt;(Record.class, 100000);
+ * lib.fillRecords(records, records.size());
+ * Record r = records.get(42);
+ * r.flags = 0;
+ * lib.updateRecords(records, records.size()); // writes only element 42
+ * </pre>
+ * Structure arrays are not thread-safe.
+ * @param <T> element type
+ */
+public class StructureArray<T extends Structure> extends AbstractList<T> implements RandomAccess {
+
+    /** Default maximum number of elements kept by an array. */
+    public static final int DEFAULT_CACHE_SIZE = 64;
+
+    private final Class<T> type;
+    private final Pointer pointer;
+    private final int length;
+    private final int elementSize;
+    private final Map<Integer, T> elements;
+    private final BitSet modified = new BitSet();
+
+    /** Allocate zeroed native memory for an array of the given length.
+     * @param type element type
+     * @param length number of elements
+     */
+    public StructureArray(Class<T> type, int length) {
+        this(type, allocate(type, length), length, DEFAULT_CACHE_SIZE);
+    }
+
+    /** Create a view of an existing native array.
+     * @param type element type
+     * @param p start of the native array
+     * @param length number of elements
+     */
+    public StructureArray(Class<T> type, Pointer p, int length) {
+        this(type, p, length, DEFAULT_CACHE_SIZE);
+    }
+
+    /** Create a view of an existing native array.
+     * @param type element type
+     * @param p start of the native array
+     * @param length number of elements
+     * @param cacheSize maximum number of elements kept by this array
+     */
+    public StructureArray(Class<T> type, Pointer p, int length, final int cacheSize) {
+        if (p == null) {
+            throw new IllegalArgumentException("Structure array memory may not be null");
+        }
+        if (length < 0) {
+            throw new IllegalArgumentException("Negative structure array length: " + length);
+        }
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be greater than zero");
+        }
+        this.type = type;
+        this.pointer = p;
+        this.length = length;
+        this.elementSize = Structure.size(type);
+        this.elements = new LinkedHashMap<Integer, T>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, T> eldest) {
+                if (size() <= cacheSize) {
+                    return false;
+                }
+                int index = eldest.getKey().intValue();
+                if (modified.get(index)) {
+                    eldest.getValue().autoWrite();
+                    modified.clear(index);
+                }
+                return true;
+            }
+        };
+    }
+
+    private static Pointer allocate(Class<? extends Structure> type, int length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("Structure array must have non-zero length");
+        }
+        Memory m = new Memory((long)length * Structure.size(type));
+        m.clear();
+        return m;
+    }
+
+    /** Returns the start of the native array. */
+    public Pointer getPointer() {
+        return pointer;
+    }
+
+    /** Returns the element type. */
+    public Class<T> getType() {
+        return type;
+    }
+
+    @Override
+    public int size() {
+        return length;
+    }
+
+    /** Returns the element at the given index, reading it from native
+     * memory if it is not currently kept by this array, and marks it as
+     * modified.
+     */
+    @Override
+    public T get(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+        }
+        Integer key = Integer.valueOf(index);
+        T s = elements.get(key);
+        if (s == null) {
+            s = Structure.newInstance(type, pointer.share((long)index * elementSize, elementSize));
+            s.conditionalAutoRead();
+            elements.put(key, s);
+        }
+        modified.set(index);
+        return s;
+    }
+
+    /** Returns the number of elements currently kept by this array. */
+    int cachedCount() {
+        return elements.size();
+    }
+
+    /** Returns the number of elements marked as modified. */
+    int modifiedCount() {
+        return modified.cardinality();
+    }
+
+    /** Write all elements marked as modified to native memory. */
+    public void write() {
+        for (Map.Entry<Integer, T> e : elements.entrySet()) {
+            if (modified.get(e.getKey().intValue())) {
+                e.getValue().write();
+            }
+        }
+        modified.clear();
+    }
+
+    /** Read all elements currently kept by this array from native memory. */
+    public void read() {
+        for (T s : elements.values()) {
+            s.read();
+        }
+    }
+
+    /** Write elements marked as modified, subject to their auto-write
+     * setting, prior to a native call.
+     */
+    void autoWrite() {
+        for (Map.Entry<Integer, T> e : elements.entrySet()) {
+            if (modified.get(e.getKey().intValue())) {
+                e.getValue().autoWrite();
+            }
+        }
+        modified.clear();
+    }
+
+    /** Read elements currently kept by this array, subject to their
+     * auto-read setting, after a native call.
+     */
+    void autoRead() {
+        for (T s : elements.values()) {
+            s.autoRead();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StructureArray<" + type.getName() + ">[" + length + "]@" + pointer;
+    }
+}
@@ -0,0 +1,226 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/** Concurrent map with weakly held keys, compared by identity rather than
+ * <code>equals</code>.  Like a {@link java.util.WeakHashMap}, an entry is
+ * removed once its key is no longer reachable, but lookups do not lock, so
+ * objects passed on every native call may be looked up from many threads
+ * at once.  <code>null</code> keys and values are not supported.
+ */
+final class WeakIdentityMap<K, V> extends AbstractMap<K, V> {
+
+    private final ConcurrentMap<Object, V> map = new ConcurrentHashMap<Object, V>();
+    private final ReferenceQueue<K> queue = new ReferenceQueue<K>();
+
+    @Override
+    public V get(Object key) {
+        expunge();
+        return key != null ? map.get(new LookupKey(key)) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        expunge();
+        return map.put(new WeakKey<K>(key, queue), value);
+    }
+
+    /** Associate the value with the key unless the key already has one.
+     * @return the existing value, or <code>null</code> if the value was
+     * added
+     */
+    public V putIfAbsent(K key, V value) {
+        expunge();
+        return map.putIfAbsent(new WeakKey<K>(key, queue), value);
+    }
+
+    /** Replace the value of the key only if it is currently the given
+     * value.
+     * @return whether the value was replaced
+     */
+    public boolean replace(K key, V oldValue, V newValue) {
+        expunge();
+        return map.replace(new LookupKey(key), oldValue, newValue);
+    }
+
+    @Override
+    public V remove(Object key) {
+        expunge();
+        return key != null ? map.remove(new LookupKey(key)) : null;
+    }
+
+    /** Returns the number of entries, including any whose key has been
+     * collected but not yet removed.
+     */
+    @Override
+    public int size() {
+        expunge();
+        return map.size();
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+    /** Returns the entries whose keys are still reachable.  Iteration does
+     * not lock and reflects the contents of the map at some point at or
+     * after the creation of the iterator.
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new EntryIterator();
+            }
+            @Override
+            public int size() {
+                return WeakIdentityMap.this.size();
+            }
+            @Override
+            public void clear() {
+                WeakIdentityMap.this.clear();
+            }
+        };
+    }
+
+    /** Remove the entries of collected keys. */
+    private void expunge() {
+        Reference<?> ref;
+        while ((ref = queue.poll()) != null) {
+            map.remove(ref);
+        }
+    }
+
+    private static Object referent(Object key) {
+        if (key instanceof LookupKey) {
+            return ((LookupKey)key).key;
+        }
+        if (key instanceof WeakKey) {
+            return ((WeakKey<?>)key).get();
+        }
+        return null;
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        private final Iterator<Map.Entry<Object, V>> entries = map.entrySet().iterator();
+        private Map.Entry<K, V> next;
+        private Object nextKey;
+        private Object lastKey;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean hasNext() {
+            while (next == null && entries.hasNext()) {
+                Map.Entry<Object, V> e = entries.next();
+                // Hold the key while it is being returned
+                K key = (K)referent(e.getKey());
+                if (key != null) {
+                    next = new AbstractMap.SimpleImmutableEntry<K, V>(key, e.getValue());
+                    nextKey = e.getKey();
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<K, V> e = next;
+            lastKey = nextKey;
+            next = null;
+            return e;
+        }
+
+        @Override
+        public void remove() {
+            if (lastKey == null) {
+                throw new IllegalStateException();
+            }
+            map.remove(lastKey);
+            lastKey = null;
+        }
+    }
+
+    /** Key under which a value is stored. */
+    private static final class WeakKey<K> extends WeakReference<K> {
+        private final int hash;
+
+        WeakKey(K key, ReferenceQueue<K> queue) {
+            super(key, queue);
+            hash = System.identityHashCode(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            Object key = get();
+            return key != null && key == referent(o);
+        }
+    }
+
+    /** Key used for lookups, which avoids creating a reference object. */
+    private static final class LookupKey {
+        private final Object key;
+
+        LookupKey(Object key) {
+            this.key = key;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(key);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o == this || key == referent(o);
+        }
+    }
+}
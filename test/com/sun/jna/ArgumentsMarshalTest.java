@@ -155,6 +155,16 @@ public class ArgumentsMarshalTest extends TestCase {
         void setCallbackInStruct(CbStruct cbstruct);
     }
 
+    @Const
+    public static class ConstCheckFieldAlignment extends TestLibrary.CheckFieldAlignment { }
+
+    public static interface ConstTestLibrary extends Library {
+        int returnRotatedArgumentCount(@Const String[] args);
+        void modifyStructureArray(@Const TestLibrary.CheckFieldAlignment[] p, int length);
+        void modifyStructureArray(ConstCheckFieldAlignment p, int length);
+        void modifyStructureArray(TestLibrary.CheckFieldAlignment p, int length);
+    }
+
     TestLibrary lib;
     @Override
     protected void setUp() {
@@ -651,6 +661,64 @@ public class ArgumentsMarshalTest extends TestCase {
                      Arrays.asList(args));
     }
 
+    public void testConstArrayArgumentNotRead() {
+        ConstTestLibrary constLib = Native.loadLibrary("testlib", ConstTestLibrary.class);
+        String[] args = { "one", "two", "three" };
+        assertEquals("Wrong native array count", args.length, constLib.returnRotatedArgumentCount(args));
+        assertEquals("Const array argument should not be re-read",
+                     Arrays.asList(new String[] { "one", "two", "three" }),
+                     Arrays.asList(args));
+
+        TestLibrary.CheckFieldAlignment[] block =
+            (TestLibrary.CheckFieldAlignment[])new TestLibrary.CheckFieldAlignment().toArray(3);
+        constLib.modifyStructureArray(block, block.length);
+        assertEquals("Const structure array argument should not be re-read",
+                     0, block[2].int32Field);
+        block[2].read();
+        assertEquals("Native call should modify memory", 2, block[2].int32Field);
+    }
+
+    public void testConstStructureNotRead() {
+        ConstTestLibrary constLib = Native.loadLibrary("testlib", ConstTestLibrary.class);
+        ConstCheckFieldAlignment s = new ConstCheckFieldAlignment();
+        s.int32Field = 5;
+        constLib.modifyStructureArray(s, 1);
+        assertEquals("Const structure should not be re-read", 5, s.int32Field);
+        s.read();
+        assertEquals("Native call should modify memory", 0, s.int32Field);
+
+        s.int32Field = 5;
+        constLib.modifyStructureArray((TestLibrary.CheckFieldAlignment)s, 1);
+        assertEquals("Const structure passed as non-const type should not be re-read", 5, s.int32Field);
+
+        TestLibrary.CheckFieldAlignment s2 = new TestLibrary.CheckFieldAlignment();
+        s2.int32Field = 5;
+        constLib.modifyStructureArray(s2, 1);
+        assertEquals("Structure should be re-read", 0, s2.int32Field);
+    }
+
+    public void testStringArraySingleAllocation() {
+        String[] args = { "one", null, "three" };
+        StringArray array = new StringArray(args, "UTF-8");
+        long tableSize = (args.length + 1) * Native.POINTER_SIZE;
+        assertEquals("Wrong allocation size", tableSize + 4 + 6, array.size());
+        long base = Pointer.nativeValue(array);
+        assertEquals("First string not packed after pointer array",
+                     base + tableSize, Pointer.nativeValue(array.getPointer(0)));
+        assertNull("Null element should be a NULL pointer",
+                   array.getPointer(Native.POINTER_SIZE));
+        assertEquals("Third string not packed after the first",
+                     base + tableSize + 4, Pointer.nativeValue(array.getPointer(2 * Native.POINTER_SIZE)));
+        assertEquals("three", array.getPointer(2 * Native.POINTER_SIZE).getString(0, "UTF-8"));
+
+        WString[] wargs = { new WString("one"), new WString("three") };
+        StringArray warray = new StringArray(wargs);
+        tableSize = (wargs.length + 1) * Native.POINTER_SIZE;
+        assertEquals("Wrong wide allocation size",
+                     tableSize + (4 + 6) * Native.WCHAR_SIZE, warray.size());
+        assertEquals("three", warray.getPointer(Native.POINTER_SIZE).getWideString(0));
+    }
+
     public void testReadFunctionPointerAsCallback() {
         TestLibrary.CbStruct s = new TestLibrary.CbStruct();
         assertNull("Function pointer field should be null", s.cb);
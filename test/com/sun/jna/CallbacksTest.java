@@ -27,7 +27,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
@@ -35,6 +37,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import com.sun.jna.Callback.UncaughtExceptionHandler;
 import com.sun.jna.CallbacksTest.TestLibrary.CbCallback;
@@ -390,6 +399,29 @@ public class CallbacksTest extends TestCase implements Paths {
                      CallbackReference.findCallbackClass(cb.getClass()));
     }
 
+    interface PrivateInt32Callback extends Callback {
+        int callback(int arg, int arg2);
+    }
+
+    public void testGeneratedCallbackInvoker() throws Throwable {
+        TestLibrary.Int32Callback cb = new TestLibrary.Int32Callback() {
+            @Override
+            public int callback(int arg, int arg2) {
+                return arg + arg2;
+            }
+        };
+        Method m = TestLibrary.Int32Callback.class.getMethod("callback", int.class, int.class);
+        CallbackInvoker invoker = CallbackInvokerGenerator.getInvoker(m);
+        assertNotNull("No generated invoker for public callback interface", invoker);
+        assertSame("Invoker should be cached", invoker, CallbackInvokerGenerator.getInvoker(m));
+        assertEquals("Wrong result from generated invoker", Integer.valueOf(3),
+                     invoker.invoke(cb, new Object[] { Integer.valueOf(1), Integer.valueOf(2) }));
+
+        m = PrivateInt32Callback.class.getMethod("callback", int.class, int.class);
+        assertNull("Inaccessible callback interface should be invoked reflectively",
+                   CallbackInvokerGenerator.getInvoker(m));
+    }
+
     public void testCallVoidCallback() {
         final boolean[] called = { false };
         TestLibrary.VoidCallback cb = new TestLibrary.VoidCallback() {
@@ -422,6 +454,39 @@ public class CallbacksTest extends TestCase implements Paths {
         assertEquals("Wrong callback return", -3, value);
     }
 
+    public void testReleaseCallback() {
+        TestLibrary.Int32Callback cb = new TestLibrary.Int32Callback() {
+            @Override
+            public int callback(int arg, int arg2) {
+                return arg + arg2;
+            }
+        };
+        TestLibrary.Int32Callback cb2 = new TestLibrary.Int32Callback() {
+            @Override
+            public int callback(int arg, int arg2) {
+                return arg * arg2;
+            }
+        };
+        assertEquals("Wrong callback value", 3, lib.callInt32Callback(cb, 1, 2));
+        CallbackReference ref = callbackCache().get(cb);
+        assertNotNull("Callback not cached", ref);
+        Pointer trampoline = ref.getTrampoline();
+
+        assertTrue("Callback should be released", CallbackReference.release(cb));
+        assertFalse("Released callback still cached", callbackCache().containsKey(cb));
+        assertFalse("Callback already released", CallbackReference.release(cb));
+
+        assertEquals("Wrong value from callback reusing a released closure",
+                     6, lib.callInt32Callback(cb2, 2, 3));
+        assertEquals("Released closure should be reused by a callback with the same signature",
+                     trampoline, callbackCache().get(cb2).getTrampoline());
+        assertEquals("Released callback should be usable again", 3, lib.callInt32Callback(cb, 1, 2));
+        assertFalse("Released callback should get a new closure",
+                    trampoline.equals(callbackCache().get(cb).getTrampoline()));
+        CallbackReference.release(cb);
+        CallbackReference.release(cb2);
+    }
+
     public void testCallInt64Callback() {
         final long MAGIC = 0x1111111111111111L;
         final boolean[] called = { false };
@@ -1417,6 +1482,180 @@ public class CallbacksTest extends TestCase implements Paths {
         waitFor(threads.iterator().next());
     }
 
+    // Process-wide policy keeps the native thread attached across callbacks
+    // until it terminates
+    public void testKeepCallbackThreadsAttached() throws Exception {
+    	final int[] called = {0};
+        final boolean[] daemon = {false};
+        final Set<Thread> threads = new HashSet<Thread>();
+        final int COUNT = 5;
+        TestLibrary.VoidCallback cb = new TestLibrary.VoidCallback() {
+            @Override
+            public void callback() {
+                threads.add(Thread.currentThread());
+                daemon[0] = Thread.currentThread().isDaemon();
+                ++called[0];
+            }
+        };
+        boolean keep = Native.isKeepCallbackThreadsAttached();
+        Native.setKeepCallbackThreadsAttached(true);
+        try {
+            assertTrue("Policy not set", Native.isKeepCallbackThreadsAttached());
+            long attached = Native.getCallbackThreadAttachCount();
+            long detached = Native.getCallbackThreadDetachCount();
+            callThreadedCallback(cb, null, COUNT, 10, called);
+
+            assertEquals("Multiple callbacks in the same native thread should use the same Thread mapping: "
+                         + threads, 1, threads.size());
+            assertTrue("Thread kept attached should be a daemon", daemon[0]);
+            assertEquals("Native thread should be attached once",
+                         attached + 1, Native.getCallbackThreadAttachCount());
+
+            waitFor(threads.iterator().next());
+            long start = System.currentTimeMillis();
+            while (Native.getCallbackThreadDetachCount() == detached) {
+                Thread.sleep(10);
+                if (System.currentTimeMillis() - start > THREAD_TIMEOUT) {
+                    fail("Terminated thread not detached");
+                }
+            }
+        }
+        finally {
+            Native.setKeepCallbackThreadsAttached(keep);
+        }
+    }
+
+    public void testAsyncCallback() throws Exception {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                tasks.add(task);
+            }
+        };
+        final int[] called = {0};
+        TestLibrary.VoidCallback cb = new TestLibrary.VoidCallback() {
+            @Override
+            public void callback() {
+                ++called[0];
+            }
+        };
+        Native.setCallbackThreadInitializer(cb, new AsyncCallbackInitializer(executor, 2));
+        lib.callVoidCallback(cb);
+        lib.callVoidCallback(cb);
+        assertEquals("Asynchronous callback should not be called by the native caller", 0, called[0]);
+        assertEquals("Queued calls should be delivered by a single task", 1, tasks.size());
+        tasks.remove(0).run();
+        assertEquals("Queued calls not delivered", 2, called[0]);
+        assertTrue("No more calls to deliver", tasks.isEmpty());
+
+        lib.callVoidCallback(cb);
+        assertEquals("New call should be delivered by a new task", 1, tasks.size());
+        tasks.remove(0).run();
+        assertEquals("Queued call not delivered", 3, called[0]);
+
+        TestLibrary.Int32Callback cb2 = new TestLibrary.Int32Callback() {
+            @Override
+            public int callback(int arg, int arg2) {
+                return arg + arg2;
+            }
+        };
+        Native.setCallbackThreadInitializer(cb2, new AsyncCallbackInitializer(executor));
+        try {
+            lib.callInt32Callback(cb2, 1, 2);
+            fail("Asynchronous callback with a return value should be rejected");
+        }
+        catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testAsyncCallbackRejected() throws Exception {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        final boolean[] reject = { false };
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                if (reject[0]) {
+                    throw new RejectedExecutionException(getName());
+                }
+                tasks.add(task);
+            }
+        };
+        final int[] called = {0};
+        final TestLibrary.VoidCallback[] self = { null };
+        TestLibrary.VoidCallback cb = new TestLibrary.VoidCallback() {
+            @Override
+            public void callback() {
+                if (++called[0] == 1) {
+                    // Queued while this task is delivering
+                    reject[0] = true;
+                    lib.callVoidCallback(self[0]);
+                }
+            }
+        };
+        self[0] = cb;
+        final Throwable CAUGHT[] = { null };
+        final Callback CALLBACK[] = { null };
+        UncaughtExceptionHandler old = Native.getCallbackExceptionHandler();
+        Native.setCallbackExceptionHandler(new UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Callback c, Throwable e) {
+                CALLBACK[0] = c;
+                CAUGHT[0] = e;
+            }
+        });
+        try {
+            Native.setCallbackThreadInitializer(cb, new AsyncCallbackInitializer(executor));
+            lib.callVoidCallback(cb);
+            tasks.remove(0).run();
+            assertEquals("Rejected call should not be delivered", 1, called[0]);
+            assertTrue("Rejection not passed to exception handler",
+                       CAUGHT[0] instanceof RejectedExecutionException);
+            assertEquals("Wrong callback argument to handler", cb, CALLBACK[0]);
+
+            reject[0] = false;
+            lib.callVoidCallback(cb);
+            assertEquals("Calls should be delivered by a single task", 1, tasks.size());
+            tasks.remove(0).run();
+            assertEquals("Rejected call should be delivered by the next task", 3, called[0]);
+        }
+        finally {
+            Native.setCallbackExceptionHandler(old);
+        }
+    }
+
+    public void testAsyncCallbackFromNativeThread() throws Exception {
+        final int COUNT = 5;
+        final CountDownLatch latch = new CountDownLatch(COUNT);
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+        TestLibrary.VoidCallback cb = new TestLibrary.VoidCallback() {
+            @Override
+            public void callback() {
+                threads.add(Thread.currentThread());
+                latch.countDown();
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Native.setCallbackThreadInitializer(cb, new AsyncCallbackInitializer(executor));
+            lib.callVoidCallbackThreaded(cb, COUNT, 10, getName());
+            assertTrue("Asynchronous calls not delivered",
+                       latch.await(THREAD_TIMEOUT, TimeUnit.MILLISECONDS));
+            Thread thread = executor.submit(new Callable<Thread>() {
+                @Override
+                public Thread call() {
+                    return Thread.currentThread();
+                }
+            }).get();
+            assertEquals("Calls should be delivered by the executor",
+                         Collections.singleton(thread), threads);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
     public void testDLLCallback() throws Exception {
         if (!Platform.HAS_DLL_CALLBACKS) {
             return;
@@ -0,0 +1,141 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+public class ClassCacheTest extends TestCase {
+
+    /** Loaded through a separate class loader, so it can be unloaded. */
+    public static class Unloadable { }
+
+    public void testGetAndPut() {
+        ClassCache<String> cache = new ClassCache<String>();
+        assertNull("Nothing cached yet", cache.get(String.class));
+        cache.put(String.class, "string");
+        cache.put(Integer.class, "integer");
+        assertEquals("Wrong cached value", "string", cache.get(String.class));
+        assertEquals("Wrong cached value", "integer", cache.get(Integer.class));
+        cache.put(String.class, "replaced");
+        assertEquals("Value should be replaced", "replaced", cache.get(String.class));
+        assertEquals("Wrong number of entries", 2, cache.size());
+    }
+
+    public void testPutIfAbsent() {
+        ClassCache<String> cache = new ClassCache<String>();
+        assertEquals("Value should be cached", "first", cache.putIfAbsent(String.class, "first"));
+        assertEquals("Existing value should be kept", "first", cache.putIfAbsent(String.class, "second"));
+        assertEquals("Existing value should be kept", "first", cache.get(String.class));
+    }
+
+    public void testConcurrentPutIfAbsent() throws Exception {
+        final ClassCache<Object> cache = new ClassCache<Object>();
+        final int THREADS = 8;
+        final CountDownLatch go = new CountDownLatch(1);
+        final List<Object> results = new ArrayList<Object>();
+        Thread[] threads = new Thread[THREADS];
+        for (int i=0;i < THREADS;i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        go.await();
+                    }
+                    catch(InterruptedException e) {
+                        return;
+                    }
+                    Object value = cache.putIfAbsent(ClassCacheTest.class, new Object());
+                    synchronized(results) {
+                        results.add(value);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        go.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals("All threads should finish", THREADS, results.size());
+        for (Object value : results) {
+            assertSame("All threads should see the same value", results.get(0), value);
+        }
+    }
+
+    public void testClassUnloading() throws Exception {
+        URL location = ClassCacheTest.class.getProtectionDomain().getCodeSource().getLocation();
+        ClassLoader loader = new URLClassLoader(new URL[] { location }, null);
+        Class<?> cls = Class.forName(Unloadable.class.getName(), true, loader);
+        assertNotSame("Class should be loaded separately", Unloadable.class, cls);
+
+        ClassCache<String> cache = new ClassCache<String>();
+        cache.put(cls, "value");
+        assertEquals("Wrong cached value", "value", cache.get(cls));
+        Reference<Class<?>> ref = new WeakReference<Class<?>>(cls);
+        cls = null;
+        loader = null;
+        for (int i=0;i < GCWaits.GC_WAITS && (ref.get() != null || cache.size() != 0);i++) {
+            GCWaits.gcRun();
+        }
+        assertNull("Cached class should be unloaded", ref.get());
+        assertEquals("Entry of unloaded class should be removed", 0, cache.size());
+    }
+
+    public void testStrongValues() throws Exception {
+        URL location = ClassCacheTest.class.getProtectionDomain().getCodeSource().getLocation();
+        ClassLoader loader = new URLClassLoader(new URL[] { location }, null);
+        Class<?> cls = Class.forName(Unloadable.class.getName(), true, loader);
+
+        ClassCache<Object> cache = new ClassCache<Object>(false);
+        Object value = new Object();
+        cache.put(cls, value);
+        Reference<Object> valueRef = new WeakReference<Object>(value);
+        value = null;
+        for (int i=0;i < 3;i++) {
+            GCWaits.gcRun();
+        }
+        assertSame("Value should be held while its class is loaded", valueRef.get(), cache.get(cls));
+        assertNotNull("Value should be held while its class is loaded", valueRef.get());
+
+        Reference<Class<?>> ref = new WeakReference<Class<?>>(cls);
+        cls = null;
+        loader = null;
+        for (int i=0;i < GCWaits.GC_WAITS && (ref.get() != null || cache.size() != 0 || valueRef.get() != null);i++) {
+            GCWaits.gcRun();
+        }
+        assertNull("Cached class should be unloaded", ref.get());
+        assertEquals("Entry of unloaded class should be removed", 0, cache.size());
+        assertNull("Value of unloaded class should be released", valueRef.get());
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(ClassCacheTest.class);
+    }
+}
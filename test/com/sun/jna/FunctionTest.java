@@ -23,6 +23,10 @@
  */
 package com.sun.jna;
 
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+
 import junit.framework.TestCase;
 
 /** Exercise the {@link Function} class.
@@ -58,6 +62,89 @@ public class FunctionTest extends TestCase {
         }
     }
 
+    public interface AbsLibrary extends Library {
+        int abs(int i);
+        int abs(Integer i);
+    }
+
+    public interface OtherAbsLibrary extends Library {
+        int abs(int i);
+        int printf(String fmt, Object... args);
+    }
+
+    public void testCallInterfaceSharedBySignature() throws Exception {
+        NativeLibrary lib = NativeLibrary.getInstance(Platform.C_LIBRARY_NAME);
+        Function f = lib.getFunction("abs");
+        Map<String, ?> options = Collections.emptyMap();
+        Method m1 = AbsLibrary.class.getMethod("abs", int.class);
+        Method m2 = OtherAbsLibrary.class.getMethod("abs", int.class);
+        Function.CallInterface ci = f.getCallInterface(m1, m1.getParameterTypes(), m1.getReturnType(), options);
+        assertNotNull("Call interface should be available for primitive signature", ci);
+        assertSame("Call interface should be shared by identical signatures",
+                   ci, f.getCallInterface(m2, m2.getParameterTypes(), m2.getReturnType(), options));
+        Function.InvocationPlan plan = f.getInvocationPlan(m1, m1.getParameterTypes(), m1.getReturnType(), options);
+        assertSame("Invocation plan should use the shared call interface", ci, plan.callInterface);
+        assertNotNull("All-primitive signature should use the primitive entry points", plan.primitiveKinds);
+        assertEquals("Wrong result with prepared call interface", 42,
+                     f.invoke(m1, m1.getParameterTypes(), int.class, new Object[] { Integer.valueOf(-42) }, options, plan));
+
+        Method varargs = OtherAbsLibrary.class.getMethod("printf", String.class, Object[].class);
+        assertNull("Varargs calls should not use a prepared call interface",
+                   lib.getFunction("printf").getCallInterface(varargs, varargs.getParameterTypes(), int.class, options));
+    }
+
+    public interface PlanLibrary extends Library {
+        class TestStructure extends Structure {
+            public int field;
+            @Override
+            protected java.util.List<String> getFieldOrder() {
+                return java.util.Arrays.asList("field");
+            }
+        }
+        Pointer memset(Pointer p, int value, NativeLong size);
+        int strlen(String s);
+        void fill(TestStructure s, boolean flag);
+    }
+
+    public void testInvocationPlanConverters() throws Exception {
+        NativeLibrary lib = NativeLibrary.getInstance(Platform.C_LIBRARY_NAME);
+        Function f = lib.getFunction("memset");
+        Map<String, ?> options = Collections.emptyMap();
+        Method m = PlanLibrary.class.getMethod("memset", Pointer.class, int.class, NativeLong.class);
+        Function.InvocationPlan plan = f.getInvocationPlan(m, m.getParameterTypes(), m.getReturnType(), options);
+        assertEquals("Wrong number of argument converters", 3, plan.converters.length);
+        assertNull("Non-primitive signature should not use the primitive entry points", plan.primitiveKinds);
+        assertFalse("Pointer argument needs no post-call read", plan.converters[0].postCallRead);
+        assertFalse("Primitive argument needs no post-call read", plan.converters[1].postCallRead);
+
+        Object[] args = { null, Integer.valueOf(0), new NativeLong(0) };
+        assertNull("Wrong Pointer conversion", plan.converters[0].convert(f, args, 0, m));
+        assertSame("Wrong primitive conversion", args[1], plan.converters[1].convert(f, args, 1, m));
+        assertEquals("Wrong NativeMapped conversion", ((NativeLong)args[2]).toNative(),
+                     plan.converters[2].convert(f, args, 2, m));
+
+        // Pointer subclasses are handled by the generic conversion
+        Memory mem = new Memory(16);
+        args[0] = mem;
+        assertSame("Wrong Pointer subclass conversion", mem, plan.converters[0].convert(f, args, 0, m));
+
+        m = PlanLibrary.class.getMethod("fill", PlanLibrary.TestStructure.class, boolean.class);
+        plan = f.getInvocationPlan(m, m.getParameterTypes(), m.getReturnType(), options);
+        assertTrue("Structure argument needs post-call read", plan.converters[0].postCallRead);
+        PlanLibrary.TestStructure s = new PlanLibrary.TestStructure();
+        args = new Object[] { s, Boolean.TRUE };
+        assertEquals("Wrong Structure conversion", s.getPointer(), plan.converters[0].convert(f, args, 0, m));
+        assertEquals("Wrong boolean conversion", Function.INTEGER_TRUE, plan.converters[1].convert(f, args, 1, m));
+    }
+
+    public void testCallInterfaceFallbackOnMismatchedArguments() {
+        AbsLibrary lib = Native.loadLibrary(Platform.C_LIBRARY_NAME, AbsLibrary.class);
+        assertEquals("Wrong result", 42, lib.abs(Integer.valueOf(-42)));
+        // A null argument is passed as a pointer rather than an int
+        assertEquals("Wrong result for null argument", 0, lib.abs((Integer)null));
+        assertEquals("Wrong result", 42, lib.abs(-42));
+    }
+
     public static void main(java.lang.String[] argList) {
         junit.textui.TestRunner.run(FunctionTest.class);
     }
@@ -0,0 +1,142 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/** Exercise libraries implemented by generated classes. */
+public class LibraryProxyTest extends TestCase {
+
+    public static interface TestLibrary extends Library {
+        boolean returnBooleanArgument(boolean arg);
+        byte returnInt8Argument(byte arg);
+        char returnWideCharArgument(char arg);
+        short returnInt16Argument(short arg);
+        int returnInt32Argument(int i);
+        long returnInt64Argument(long l);
+        float returnFloatArgument(float f);
+        double returnDoubleArgument(double d);
+        NativeLong returnLongArgument(NativeLong l);
+        String returnStringArgument(String s);
+        Pointer returnPointerArgument(Pointer p);
+        int addVarArgs(String fmt, Number... args);
+        int fillInt8Buffer(byte[] buf, int len, byte value);
+    }
+
+    static interface PrivateLibrary extends Library {
+        int returnInt32Argument(int i);
+    }
+
+    private static final Map<String, ?> OPTIONS =
+        Collections.singletonMap(Library.OPTION_GENERATE_PROXY, Boolean.TRUE);
+
+    TestLibrary lib;
+    @Override
+    protected void setUp() {
+        lib = Native.loadLibrary("testlib", TestLibrary.class, OPTIONS);
+    }
+    @Override
+    protected void tearDown() {
+        lib = null;
+    }
+
+    public void testGeneratedClass() {
+        assertTrue("Library should be generated", lib instanceof LibraryProxy);
+        assertFalse("Library should not be a proxy", Proxy.isProxyClass(lib.getClass()));
+        TestLibrary lib2 = Native.loadLibrary("testlib", TestLibrary.class, OPTIONS);
+        assertSame("Generated class should be reused", lib.getClass(), lib2.getClass());
+    }
+
+    public void testPrimitiveArguments() {
+        assertTrue("Wrong boolean", lib.returnBooleanArgument(true));
+        assertFalse("Wrong boolean", lib.returnBooleanArgument(false));
+        assertEquals("Wrong byte", (byte)-128, lib.returnInt8Argument((byte)-128));
+        assertEquals("Wrong char", '\u0444', lib.returnWideCharArgument('\u0444'));
+        assertEquals("Wrong short", (short)-32768, lib.returnInt16Argument((short)-32768));
+        assertEquals("Wrong int", Integer.MIN_VALUE, lib.returnInt32Argument(Integer.MIN_VALUE));
+        assertEquals("Wrong long", Long.MAX_VALUE, lib.returnInt64Argument(Long.MAX_VALUE));
+        assertEquals("Wrong float", -1.5f, lib.returnFloatArgument(-1.5f), 0f);
+        assertEquals("Wrong double", Math.PI, lib.returnDoubleArgument(Math.PI), 0d);
+    }
+
+    public void testObjectArguments() {
+        assertEquals("Wrong NativeLong", new NativeLong(42), lib.returnLongArgument(new NativeLong(42)));
+        assertEquals("Wrong String", "value", lib.returnStringArgument("value"));
+        assertNull("Wrong Pointer", lib.returnPointerArgument(null));
+        byte[] buf = new byte[16];
+        assertEquals("Wrong fill count", buf.length, lib.fillInt8Buffer(buf, buf.length, (byte)7));
+        assertEquals("Buffer not filled", 7, buf[buf.length-1]);
+        assertEquals("Wrong varargs sum", 3, lib.addVarArgs("dd", Integer.valueOf(1), Integer.valueOf(2)));
+    }
+
+    public void testObjectMethods() {
+        assertTrue("Wrong toString: " + lib, lib.toString().startsWith("Proxy interface to "));
+        assertEquals("Library should equal itself", lib, lib);
+        TestLibrary lib2 = Native.loadLibrary("testlib", TestLibrary.class, OPTIONS);
+        assertFalse("Separately loaded libraries should differ", lib.equals(lib2));
+    }
+
+    public void testInvocationMapper() {
+        final int MAGIC = 0x12345678;
+        Map<String, Object> options = new HashMap<String, Object>(OPTIONS);
+        options.put(Library.OPTION_INVOCATION_MAPPER, new InvocationMapper() {
+            @Override
+            public InvocationHandler getInvocationHandler(NativeLibrary lib, Method m) {
+                if (!"returnInt32Argument".equals(m.getName())) {
+                    return null;
+                }
+                return new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return Integer.valueOf(MAGIC + ((Integer)args[0]).intValue());
+                    }
+                };
+            }
+        });
+        TestLibrary mapped = Native.loadLibrary("testlib", TestLibrary.class, options);
+        assertTrue("Library should be generated", mapped instanceof LibraryProxy);
+        assertEquals("Invocation mapper not used", MAGIC + 1, mapped.returnInt32Argument(1));
+        assertEquals("Unmapped method broken", 1L, mapped.returnInt64Argument(1));
+    }
+
+    public void testSynchronizedLibrary() {
+        TestLibrary synced = (TestLibrary)Native.synchronizedLibrary(lib);
+        assertEquals("Wrong int", 42, synced.returnInt32Argument(42));
+    }
+
+    public void testFallbackToProxyForInaccessibleInterface() {
+        PrivateLibrary plib = Native.loadLibrary("testlib", PrivateLibrary.class, OPTIONS);
+        assertTrue("Library should be a proxy", Proxy.isProxyClass(plib.getClass()));
+        assertEquals("Wrong int", 42, plib.returnInt32Argument(42));
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(LibraryProxyTest.class);
+    }
+}
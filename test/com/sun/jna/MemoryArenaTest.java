@@ -0,0 +1,200 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class MemoryArenaTest extends TestCase {
+
+    public static class TestStructure extends Structure {
+        public static final List<String> FIELDS = createFieldsOrder("b", "l", "i");
+        public byte b;
+        public long l;
+        public int i;
+        public TestStructure() { }
+        public TestStructure(Pointer p) {
+            super(p);
+            read();
+        }
+        @Override
+        protected List<String> getFieldOrder() {
+            return FIELDS;
+        }
+    }
+
+    public void testAllocationsShareBlock() {
+        MemoryArena arena = new MemoryArena(1024);
+        try {
+            Memory m1 = arena.allocate(10);
+            Memory m2 = arena.allocate(10);
+            assertEquals("Wrong allocation size", 10, m1.size());
+            assertEquals("Allocations should be adjacent after alignment",
+                         Pointer.nativeValue(m1) + 16, Pointer.nativeValue(m2));
+        }
+        finally {
+            arena.close();
+        }
+    }
+
+    public void testAlignment() {
+        MemoryArena arena = new MemoryArena(1024);
+        try {
+            arena.allocate(1, 1);
+            for (int align : new int[] { 1, 2, 4, 8, 16, 32, 64 }) {
+                Memory m = arena.allocate(3, align);
+                assertEquals("Allocation not aligned to " + align,
+                             0, Pointer.nativeValue(m) % align);
+            }
+            Memory large = arena.allocate(4096, 64);
+            assertEquals("Large allocation not aligned", 0, Pointer.nativeValue(large) % 64);
+            assertEquals("Wrong large allocation size", 4096, large.size());
+        }
+        finally {
+            arena.close();
+        }
+    }
+
+    public void testInvalidArguments() {
+        MemoryArena arena = new MemoryArena();
+        try {
+            arena.allocate(0);
+            fail("Zero size should be rejected");
+        }
+        catch(IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            arena.allocate(8, 3);
+            fail("Alignment which is not a power of two should be rejected");
+        }
+        catch(IllegalArgumentException e) {
+            // expected
+        }
+        arena.close();
+        try {
+            arena.allocate(8);
+            fail("Closed arena should not allocate");
+        }
+        catch(IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testBoundsChecked() {
+        MemoryArena arena = new MemoryArena(64);
+        try {
+            arena.allocate(8);
+            Memory m = arena.allocate(8);
+            m.setLong(0, 1);
+            try {
+                m.setInt(62, 0);
+                fail("Write beyond the arena block should fail");
+            }
+            catch(IndexOutOfBoundsException e) {
+                // expected
+            }
+        }
+        finally {
+            arena.close();
+        }
+    }
+
+    public void testAllocateBeyondBlock() {
+        MemoryArena arena = new MemoryArena(64);
+        try {
+            Memory[] mem = new Memory[32];
+            for (int i=0;i < mem.length;i++) {
+                mem[i] = arena.allocate(8);
+                mem[i].setLong(0, i);
+            }
+            for (int i=0;i < mem.length;i++) {
+                assertEquals("Allocation overwritten", i, mem[i].getLong(0));
+            }
+        }
+        finally {
+            arena.close();
+        }
+    }
+
+    public void testResetReusesBlocks() {
+        MemoryArena arena = new MemoryArena(256);
+        try {
+            long first = Pointer.nativeValue(arena.allocate(8));
+            for (int i=0;i < 20;i++) {
+                arena.allocate(8);
+            }
+            arena.reset();
+            assertEquals("Reset should reuse the first block",
+                         first, Pointer.nativeValue(arena.allocate(8)));
+        }
+        finally {
+            arena.close();
+        }
+    }
+
+    public void testAllocateString() {
+        MemoryArena arena = new MemoryArena();
+        try {
+            Memory s = arena.allocateString("arena");
+            assertEquals("Wrong string size", 6, s.size());
+            assertEquals("Wrong string value", "arena", s.getString(0));
+            Memory w = arena.allocateWideString("wide");
+            assertEquals("Wrong wide string value", "wide", w.getWideString(0));
+        }
+        finally {
+            arena.close();
+        }
+    }
+
+    public void testAllocateStructure() {
+        MemoryArena arena = new MemoryArena();
+        try {
+            arena.allocateString("dirty the block");
+            TestStructure s = arena.allocate(TestStructure.class);
+            assertEquals("Wrong structure size", s.size(), ((Memory)s.getPointer()).size());
+            assertEquals("Structure memory should be cleared", 0, s.l);
+            s.l = 42;
+            s.write();
+            assertEquals("Structure not written to arena memory",
+                         42, s.getPointer().getLong(s.fieldOffset("l")));
+        }
+        finally {
+            arena.close();
+        }
+    }
+
+    public void testCloseFreesBlocks() {
+        MemoryArena arena = new MemoryArena();
+        arena.allocate(8);
+        arena.allocate(MemoryArena.DEFAULT_BLOCK_SIZE);
+        arena.close();
+        arena.close();
+        assertEquals("Arena should release its blocks", "MemoryArena[blocks=0, blockSize="
+                     + MemoryArena.DEFAULT_BLOCK_SIZE + ", large=0]", arena.toString());
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(MemoryArenaTest.class);
+    }
+}
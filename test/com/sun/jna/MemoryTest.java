@@ -34,21 +34,15 @@ import junit.framework.TestCase;
 public class MemoryTest extends TestCase {
 
     public void testAutoFreeMemory() throws Exception {
-        final boolean[] flag = { false };
-        Memory core = new Memory(10) {
-            @Override
-            protected void finalize() {
-                super.finalize();
-                flag[0] = true;
-            }
-        };
+        Memory core = new Memory(10);
         Pointer shared = core.share(0, 5);
         Reference<Memory> ref = new WeakReference<Memory>(core);
 
         core = null;
         System.gc();
-        assertFalse("Memory prematurely GC'd", flag[0]);
         assertNotNull("Base memory GC'd while shared memory extant", ref.get());
+        assertTrue("Memory prematurely freed", ref.get().valid());
+        assertTrue("Memory prematurely freed", isTracked(ref.get()));
         // Avoid having IBM J9 prematurely nullify "shared"
         shared.setInt(0, 0);
 
@@ -183,14 +177,18 @@ public class MemoryTest extends TestCase {
             "[0c0d0e]" + ls, m.dump());
     }
     
+    private static Map<?, ?> getAllocatedMemory() throws NoSuchFieldException, IllegalAccessException {
+        Field allocatedMemoryField = Memory.class.getDeclaredField("allocatedMemory");
+        allocatedMemoryField.setAccessible(true);
+        return (Map<?, ?>) allocatedMemoryField.get(null);
+    }
+
     public void testRemoveAllocatedMemoryMap() throws NoSuchFieldException, IllegalArgumentException, IllegalAccessException {
         // Make sure there are no remaining allocations
         Memory.disposeAll();
 
         // get a reference to the allocated memory
-        Field allocatedMemoryField = Memory.class.getDeclaredField("allocatedMemory");
-        allocatedMemoryField.setAccessible(true);
-        Map<Memory, Reference<Memory>> allocatedMemory = (Map<Memory, Reference<Memory>>) allocatedMemoryField.get(null);
+        Map<?, ?> allocatedMemory = getAllocatedMemory();
         assertEquals(0, allocatedMemory.size());
         
         // Test allocation and ensure it is accounted for
@@ -202,6 +200,93 @@ public class MemoryTest extends TestCase {
         assertEquals(0, allocatedMemory.size());
     }
 
+    private static boolean isTracked(Memory m) throws Exception {
+        for (Object ref : getAllocatedMemory().values()) {
+            if (((Reference<?>)ref).get() == m) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void testClose() throws Exception {
+        Memory mem = new Memory(16);
+        Memory shared = (Memory)mem.share(8);
+        assertTrue("Allocation not tracked", isTracked(mem));
+        mem.close();
+        assertFalse("Memory still valid after close", mem.valid());
+        assertFalse("Allocation still tracked after close", isTracked(mem));
+        mem.close();
+        assertFalse("Repeated close should have no effect", mem.valid());
+        assertFalse("Shared memory should not be tracked", isTracked(shared));
+        try {
+            mem.getInt(0);
+            fail("Read from closed memory should fail");
+        }
+        catch(IllegalStateException e) {
+            // expected
+        }
+        try {
+            mem.setInt(0, 1);
+            fail("Write to closed memory should fail");
+        }
+        catch(IllegalStateException e) {
+            // expected
+        }
+        try {
+            shared.getInt(0);
+            fail("Read from a view of closed memory should fail");
+        }
+        catch(IllegalStateException e) {
+            // expected
+        }
+        try {
+            shared.write(0, new byte[4], 0, 4);
+            fail("Write to a view of closed memory should fail");
+        }
+        catch(IllegalStateException e) {
+            // expected
+        }
+        shared.close();
+        assertFalse("Shared memory still valid after close", shared.valid());
+
+        Memory view = new Memory(16);
+        Memory closedView = (Memory)view.share(0, 8);
+        closedView.close();
+        try {
+            closedView.getInt(0);
+            fail("Read from a closed view should fail");
+        }
+        catch(IllegalStateException e) {
+            // expected
+        }
+        view.setInt(0, 7);
+        assertEquals("Closing a view should not affect its parent", 7, view.getInt(0));
+    }
+
+    public void testFreeUnreferencedMemory() throws Exception {
+        Map<?, ?> allocatedMemory = getAllocatedMemory();
+        Memory.disposeAll();
+        Memory mem = new Memory(16);
+        assertEquals(1, allocatedMemory.size());
+        Reference<Memory> ref = new WeakReference<Memory>(mem);
+        mem = null;
+        for (int i=0;i < GCWaits.GC_WAITS && (ref.get() != null || allocatedMemory.size() != 0);i++) {
+            GCWaits.gcRun();
+        }
+        assertNull("Memory not GC'd", ref.get());
+        assertEquals("Native memory not freed after GC", 0, allocatedMemory.size());
+    }
+
+    public void testDisposeAllWithClosedMemory() throws Exception {
+        Memory closed = new Memory(16);
+        Memory open = new Memory(16);
+        closed.close();
+        Memory.disposeAll();
+        assertFalse("Memory not disposed", open.valid());
+        assertEquals(0, getAllocatedMemory().size());
+    }
+
     public static void main(String[] args) {
         junit.textui.TestRunner.run(MemoryTest.class);
     }
@@ -28,8 +28,10 @@ import java.io.File;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
 import java.lang.reflect.Method;
 
 import com.sun.jna.DirectTest.TestInterface;
@@ -55,6 +57,8 @@ public class PerformanceTest extends TestCase implements Paths {
 
     public static void main(java.lang.String[] argList) {
         checkPerformance();
+        checkConcurrentPerformance();
+        checkConcurrentStructurePerformance();
     }
 
     static class MathLibrary {
@@ -66,7 +70,7 @@ public class PerformanceTest extends TestCase implements Paths {
         }
     }
 
-    interface MathInterface extends Library {
+    public interface MathInterface extends Library {
         double cos(double x);
     }
 
@@ -111,12 +115,132 @@ public class PerformanceTest extends TestCase implements Paths {
         }
     }
 
-    static interface CInterface extends Library {
+    public static interface CInterface extends Library {
         int getpid();
         Pointer memset(Pointer p, int v, int len);
         int strlen(String s);
     }
 
+    private static Method getMethod(Class<?> cls, String name, Class<?>... paramTypes) {
+        try {
+            return cls.getMethod(name, paramTypes);
+        } catch(NoSuchMethodException e) {
+            throw new Error(e);
+        }
+    }
+
+    private static CInterface loadCInterface() {
+        return loadCInterface(false);
+    }
+
+    private static CInterface loadCInterface(boolean generated) {
+        Map<String, Object> options = new HashMap<String, Object>();
+        if (generated) {
+            options.put(Library.OPTION_GENERATE_PROXY, Boolean.TRUE);
+        }
+        if (Platform.isWindows()) {
+            options.put(Library.OPTION_FUNCTION_MAPPER, new FunctionMapper() {
+                @Override
+                public String getFunctionName(NativeLibrary library, Method method) {
+                    String name = method.getName();
+                    if ("getpid".equals(name)) {
+                        name = "_getpid";
+                    }
+                    return name;
+                }
+            });
+        }
+        return Native.loadLibrary(Platform.C_LIBRARY_NAME, CInterface.class, options);
+    }
+
+    /** Measure proxy dispatch throughput with increasing numbers of
+     * threads calling into the same library instance.  Throughput should
+     * scale with the number of available processors.
+     */
+    public static void checkConcurrentPerformance() {
+        final int COUNT = 100000;
+        final CInterface clib = loadCInterface();
+        System.out.println("Checking concurrent performance of JNA interface calls ("
+                           + COUNT + " iterations per thread, "
+                           + Runtime.getRuntime().availableProcessors() + " processors)");
+        checkConcurrentPerformance("getpid (JNA interface", COUNT, 64, new Runnable() {
+            @Override
+            public void run() {
+                clib.getpid();
+            }
+        });
+    }
+
+    public static class ConcurrentStructure extends Structure {
+        public int i;
+        public long l;
+        public Pointer p;
+        public double d;
+        @Override
+        protected java.util.List<String> getFieldOrder() {
+            return createFieldsOrder("i", "l", "p", "d");
+        }
+    }
+
+    /** Measure throughput of structure construction, which looks up the
+     * cached structure layout, with increasing numbers of threads.
+     */
+    public static void checkConcurrentStructurePerformance() {
+        final int COUNT = 20000;
+        System.out.println("Checking concurrent performance of Structure construction ("
+                           + COUNT + " iterations per thread, "
+                           + Runtime.getRuntime().availableProcessors() + " processors)");
+        checkConcurrentPerformance("new Structure (" + ConcurrentStructure.class.getSimpleName(), COUNT, 32, new Runnable() {
+            @Override
+            public void run() {
+                new ConcurrentStructure().size();
+            }
+        });
+    }
+
+    private static void checkConcurrentPerformance(String name, final int count, int maxThreads, final Runnable op) {
+        // Warm up
+        for (int i=0;i < count;i++) {
+            op.run();
+        }
+        for (int nthreads=1;nthreads <= maxThreads;nthreads *= 2) {
+            final CountDownLatch ready = new CountDownLatch(nthreads);
+            final CountDownLatch go = new CountDownLatch(1);
+            Thread[] threads = new Thread[nthreads];
+            for (int t=0;t < nthreads;t++) {
+                threads[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        ready.countDown();
+                        try {
+                            go.await();
+                        } catch(InterruptedException e) {
+                            return;
+                        }
+                        for (int i=0;i < count;i++) {
+                            op.run();
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            try {
+                ready.await();
+                long start = System.currentTimeMillis();
+                go.countDown();
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                long delta = Math.max(1, System.currentTimeMillis() - start);
+                System.out.println(name + ", " + nthreads + " threads): "
+                                   + delta + "ms, "
+                                   + ((long)nthreads * count / delta) + " calls/ms");
+            } catch(InterruptedException e) {
+                return;
+            }
+        }
+    }
+
     // Requires java.library.path include testlib
     public static void checkPerformance() {
         if (!Platform.HAS_BUFFERS) return;
@@ -144,6 +268,26 @@ public class PerformanceTest extends TestCase implements Paths {
         long delta = System.currentTimeMillis() - start;
         System.out.println("cos (JNA interface): " + delta + "ms");
 
+        MathInterface mlibGenerated = Native.loadLibrary(mname, MathInterface.class,
+            Collections.singletonMap(Library.OPTION_GENERATE_PROXY, Boolean.TRUE));
+        start = System.currentTimeMillis();
+        for (int i=0;i < COUNT;i++) {
+            dresult = mlibGenerated.cos(0d);
+        }
+        delta = System.currentTimeMillis() - start;
+        System.out.println("cos (JNA generated interface): " + delta + "ms");
+
+        // Same call without the per-method invocation plan and primitive
+        // fast path
+        Map<String, Object> cosOptions = new HashMap<String, Object>();
+        cosOptions.put(Function.OPTION_INVOKING_METHOD, getMethod(MathInterface.class, "cos", double.class));
+        start = System.currentTimeMillis();
+        for (int i=0;i < COUNT;i++) {
+            dresult = ((Double)f.invoke(double.class, args, cosOptions)).doubleValue();
+        }
+        delta = System.currentTimeMillis() - start;
+        System.out.println("cos (JNA interface, generic conversion): " + delta + "ms");
+
         start = System.currentTimeMillis();
         for (int i=0;i < COUNT;i++) {
             dresult = f.invokeDouble(args);
@@ -209,20 +353,7 @@ public class PerformanceTest extends TestCase implements Paths {
         System.out.println("cos (pure java): " + delta + "ms");
 
         String cname = Platform.C_LIBRARY_NAME;
-        Map<String, ?> options = Collections.<String, Object>emptyMap();
-        if (Platform.isWindows()) {
-            options = Collections.singletonMap(Library.OPTION_FUNCTION_MAPPER, new FunctionMapper() {
-                @Override
-                public String getFunctionName(NativeLibrary library, Method method) {
-                    String name = method.getName();
-                    if ("getpid".equals(name)) {
-                        name = "_getpid";
-                    }
-                    return name;
-                }
-            });
-        }
-        CInterface clib = Native.loadLibrary(cname, CInterface.class, options);
+        CInterface clib = loadCInterface();
 
         ///////////////////////////////////////////
         // getpid
@@ -234,6 +365,25 @@ public class PerformanceTest extends TestCase implements Paths {
         delta = System.currentTimeMillis() - start;
         System.out.println("getpid (JNA interface): " + delta + "ms");
 
+        CInterface clibGenerated = loadCInterface(true);
+        start = System.currentTimeMillis();
+        for (int i=0;i < COUNT;i++) {
+            pid = clibGenerated.getpid();
+        }
+        delta = System.currentTimeMillis() - start;
+        System.out.println("getpid (JNA generated interface): " + delta + "ms");
+
+        Function getpid = NativeLibrary.getInstance(cname)
+            .getFunction(Platform.isWindows() ? "_getpid" : "getpid");
+        Map<String, Object> pidOptions = new HashMap<String, Object>();
+        pidOptions.put(Function.OPTION_INVOKING_METHOD, getMethod(CInterface.class, "getpid"));
+        start = System.currentTimeMillis();
+        for (int i=0;i < COUNT;i++) {
+            pid = ((Integer)getpid.invoke(int.class, null, pidOptions)).intValue();
+        }
+        delta = System.currentTimeMillis() - start;
+        System.out.println("getpid (JNA interface, generic conversion): " + delta + "ms");
+
         start = System.currentTimeMillis();
         if (Platform.isWindows()) {
             for (int i=0;i < COUNT;i++) {
@@ -264,6 +414,13 @@ public class PerformanceTest extends TestCase implements Paths {
         delta = System.currentTimeMillis() - start;
         System.out.println("memset (JNA interface): " + delta + "ms");
 
+        start = System.currentTimeMillis();
+        for (int i=0;i < COUNT;i++) {
+            Pointer presult = clibGenerated.memset(null, 0, 0);
+        }
+        delta = System.currentTimeMillis() - start;
+        System.out.println("memset (JNA generated interface): " + delta + "ms");
+
         f = NativeLibrary.getInstance(cname).getFunction("memset");
         args = new Object[] { null, Integer.valueOf(0), Integer.valueOf(0)};
         start = System.currentTimeMillis();
@@ -0,0 +1,191 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class ScratchMemoryTest extends TestCase {
+
+    public interface TestLibrary extends Library {
+        String returnStringArgument(String s);
+        WString returnWStringArgument(WString s);
+        String returnStringArgument(Object s);
+        interface PointerCallback extends Callback {
+            Pointer callback(Pointer arg, Pointer arg2);
+        }
+        Pointer callStringCallback(PointerCallback c, String arg, String arg2);
+    }
+
+    private TestLibrary lib;
+    private String oldEncoding;
+
+    @Override
+    protected void setUp() {
+        // Make sure non-ASCII characters can be represented
+        oldEncoding = System.getProperty("jna.encoding");
+        System.setProperty("jna.encoding", "UTF-8");
+        lib = Native.loadLibrary("testlib", TestLibrary.class);
+    }
+
+    @Override
+    protected void tearDown() {
+        lib = null;
+        if (oldEncoding != null) {
+            System.setProperty("jna.encoding", oldEncoding);
+        }
+        else {
+            System.clearProperty("jna.encoding");
+        }
+    }
+
+    private static String repeat(char ch, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, ch);
+        return new String(chars);
+    }
+
+    public void testStringArguments() {
+        assertEquals("Wrong ASCII string", "ascii", lib.returnStringArgument("ascii"));
+        assertEquals("Wrong empty string", "", lib.returnStringArgument(""));
+        String unicode = "Un\u00efc\u00f8de \u0444\u4e2d";
+        assertEquals("Wrong non-ASCII string", unicode, lib.returnStringArgument(unicode));
+        assertEquals("Wrong string passed as Object", "object", lib.returnStringArgument((Object)"object"));
+    }
+
+    public void testWideStringArguments() {
+        assertEquals("Wrong wide string", "wide", lib.returnWStringArgument(new WString("wide")).toString());
+        String unicode = "Un\u00efc\u00f8de \u0444\u4e2d";
+        assertEquals("Wrong non-ASCII wide string", unicode,
+                     lib.returnWStringArgument(new WString(unicode)).toString());
+    }
+
+    public void testLargeStringArguments() {
+        String large = repeat('x', ScratchMemory.SIZE * 2);
+        assertEquals("Wrong large string", large, lib.returnStringArgument(large));
+        assertEquals("Wrong large wide string", large,
+                     lib.returnWStringArgument(new WString(large)).toString());
+        String unicode = repeat('\u00f8', ScratchMemory.SIZE - 10);
+        assertEquals("Wrong large non-ASCII string", unicode, lib.returnStringArgument(unicode));
+    }
+
+    public void testNestedCallsPreserveArguments() {
+        final String inner = repeat('i', 64);
+        final String[] seen = new String[2];
+        TestLibrary.PointerCallback cb = new TestLibrary.PointerCallback() {
+            @Override
+            public Pointer callback(Pointer arg, Pointer arg2) {
+                assertEquals("Wrong inner result", inner, lib.returnStringArgument(inner));
+                seen[0] = arg.getString(0);
+                seen[1] = arg2.getString(0);
+                return arg;
+            }
+        };
+        lib.callStringCallback(cb, "outer", "outer2");
+        assertEquals("Outer argument overwritten by nested call", "outer", seen[0]);
+        assertEquals("Outer argument overwritten by nested call", "outer2", seen[1]);
+    }
+
+    public void testStringArgumentsAfterDisposeAll() {
+        assertEquals("Wrong string", "before", lib.returnStringArgument("before"));
+        Memory.disposeAll();
+        assertEquals("Wrong string after disposeAll", "after", lib.returnStringArgument("after"));
+        assertEquals("Wrong wide string after disposeAll", "wide",
+                     lib.returnWStringArgument(new WString("wide")).toString());
+
+        ScratchMemory scratch = ScratchMemory.get();
+        int mark = scratch.enter();
+        try {
+            Memory.disposeAll();
+            assertNull("Freed scratch memory should not be used",
+                       scratch.putString("freed", "UTF-8"));
+            assertNull("Freed scratch memory should not be used",
+                       scratch.putWideString("freed"));
+        }
+        finally {
+            scratch.exit(mark);
+        }
+        assertNotSame("Freed scratch memory should be reallocated", scratch, ScratchMemory.get());
+    }
+
+    public void testReleasedAfterCall() {
+        ScratchMemory scratch = ScratchMemory.get();
+        assertNull("Scratch memory should not be used outside of a call",
+                   scratch.putString("no call", "UTF-8"));
+        int mark = scratch.enter();
+        try {
+            Pointer p1 = scratch.putString("first", "UTF-8");
+            Pointer p2 = scratch.putString("second", "UTF-8");
+            assertEquals("first", p1.getString(0, "UTF-8"));
+            assertEquals("second", p2.getString(0, "UTF-8"));
+            assertEquals("Strings should be adjacent", 6, Pointer.nativeValue(p2) - Pointer.nativeValue(p1));
+            int mark2 = scratch.enter();
+            scratch.putString("nested", "UTF-8");
+            scratch.exit(mark2);
+            assertEquals("Nested call should not modify outer strings", "second", p2.getString(0, "UTF-8"));
+            assertEquals("Nested call should be released",
+                         Pointer.nativeValue(p2) + 7, Pointer.nativeValue(scratch.putString("third", "UTF-8")));
+        }
+        finally {
+            scratch.exit(mark);
+        }
+        mark = scratch.enter();
+        try {
+            assertNull("String too large for scratch memory should not be allocated",
+                       scratch.putString(repeat('x', ScratchMemory.SIZE), "UTF-8"));
+        }
+        finally {
+            scratch.exit(mark);
+        }
+    }
+
+    public void testEncodings() throws Exception {
+        ScratchMemory scratch = ScratchMemory.get();
+        String value = "Encod\u00e9";
+        for (String encoding : new String[] { "UTF-8", "ISO-8859-1", "UTF-16LE", "US-ASCII" }) {
+            int mark = scratch.enter();
+            try {
+                Pointer p = scratch.putString(value, encoding);
+                byte[] expected = value.getBytes(encoding);
+                assertTrue("Wrong encoding for " + encoding,
+                           Arrays.equals(expected, p.getByteArray(0, expected.length)));
+                assertEquals("Missing NUL terminator for " + encoding, 0, p.getByte(expected.length));
+            }
+            finally {
+                scratch.exit(mark);
+            }
+        }
+        int mark = scratch.enter();
+        try {
+            assertNull("Unsupported encoding should not be handled",
+                       scratch.putString(value, "unsupported-encoding"));
+        }
+        finally {
+            scratch.exit(mark);
+        }
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(ScratchMemoryTest.class);
+    }
+}
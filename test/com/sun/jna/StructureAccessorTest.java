@@ -0,0 +1,315 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/** Exercise structures read and written through generated accessors. */
+public class StructureAccessorTest extends TestCase {
+
+    public static class PrimitiveStructure extends Structure {
+        public static final List<String> FIELDS = createFieldsOrder("b", "s", "i", "l", "f", "d");
+        public byte b;
+        public short s;
+        public int i;
+        public long l;
+        public float f;
+        public double d;
+        @Override
+        protected List<String> getFieldOrder() {
+            return FIELDS;
+        }
+    }
+
+    public static class MixedStructure extends Structure {
+        public static final List<String> FIELDS =
+            createFieldsOrder("b", "p", "i", "str", "inner", "v", "array", "l");
+        public byte b;
+        public Pointer p;
+        public int i;
+        public String str;
+        public PrimitiveStructure inner;
+        public volatile int v;
+        public int[] array = new int[2];
+        public long l;
+        @Override
+        protected List<String> getFieldOrder() {
+            return FIELDS;
+        }
+    }
+
+    public static class DerivedStructure extends PrimitiveStructure {
+        public static final List<String> FIELDS = createFieldsOrder(PrimitiveStructure.FIELDS, "extra");
+        public int extra;
+        @Override
+        protected List<String> getFieldOrder() {
+            return FIELDS;
+        }
+    }
+
+    public static class ArrayStructure extends Structure {
+        public static final List<String> FIELDS =
+            createFieldsOrder("bytes", "shorts", "ints", "longs", "floats", "doubles", "last");
+        public byte[] bytes = new byte[3];
+        public short[] shorts = new short[3];
+        public int[] ints = new int[3];
+        public long[] longs = new long[2];
+        public float[] floats = new float[2];
+        public double[] doubles = new double[2];
+        public final int last;
+        public ArrayStructure() {
+            last = 0;
+        }
+        @Override
+        protected List<String> getFieldOrder() {
+            return FIELDS;
+        }
+    }
+
+    static class PrivateStructure extends Structure {
+        public int i;
+        public long l;
+        @Override
+        protected List<String> getFieldOrder() {
+            return createFieldsOrder("i", "l");
+        }
+    }
+
+    public static class TestUnion extends Union {
+        public int i;
+        public long l;
+    }
+
+    public static class ConvertedStructure extends Structure {
+        static final DefaultTypeMapper MAPPER = new DefaultTypeMapper();
+        static {
+            // Stores the value plus one as a native long
+            MAPPER.addTypeConverter(int.class, new TypeConverter() {
+                @Override
+                public Class<?> nativeType() { return long.class; }
+                @Override
+                public Object fromNative(Object nativeValue, FromNativeContext c) {
+                    return Integer.valueOf((int)((Long)nativeValue).longValue() - 1);
+                }
+                @Override
+                public Object toNative(Object value, ToNativeContext c) {
+                    return Long.valueOf(((Integer)value).intValue() + 1);
+                }
+            });
+        }
+        public int i;
+        public long l;
+        public ConvertedStructure() {
+            super(MAPPER);
+        }
+        @Override
+        protected List<String> getFieldOrder() {
+            return createFieldsOrder("i", "l");
+        }
+    }
+
+    public void testAccessorGenerated() {
+        StructureAccessor accessor = StructureAccessorGenerator.getAccessor(PrimitiveStructure.class);
+        assertNotNull("Accessor should be generated for a public structure", accessor);
+        assertSame("Accessor should be cached", accessor,
+                   StructureAccessorGenerator.getAccessor(PrimitiveStructure.class));
+        assertEquals("Wrong accessor fields", PrimitiveStructure.FIELDS.size(), accessor.fieldNames.length);
+        assertNull("Non-public structure should not get an accessor",
+                   StructureAccessorGenerator.getAccessor(PrivateStructure.class));
+        assertTrue("Union fields should be accessed individually",
+                   StructureAccessorGenerator.overridesFieldAccess(TestUnion.class));
+    }
+
+    public void testReadPrimitiveFields() {
+        PrimitiveStructure s = new PrimitiveStructure();
+        Pointer p = s.getPointer();
+        p.setByte(s.fieldOffset("b"), (byte)-1);
+        p.setShort(s.fieldOffset("s"), (short)0x1234);
+        p.setInt(s.fieldOffset("i"), 0x12345678);
+        p.setLong(s.fieldOffset("l"), 0x123456789ABCDEFL);
+        p.setFloat(s.fieldOffset("f"), 1.5f);
+        p.setDouble(s.fieldOffset("d"), -2.25);
+        s.read();
+        assertEquals("Wrong byte field", -1, s.b);
+        assertEquals("Wrong short field", 0x1234, s.s);
+        assertEquals("Wrong int field", 0x12345678, s.i);
+        assertEquals("Wrong long field", 0x123456789ABCDEFL, s.l);
+        assertEquals("Wrong float field", 1.5f, s.f);
+        assertEquals("Wrong double field", -2.25, s.d);
+    }
+
+    public void testWritePrimitiveFields() {
+        PrimitiveStructure s = new PrimitiveStructure();
+        s.b = (byte)0x80;
+        s.s = (short)-2;
+        s.i = -3;
+        s.l = Long.MIN_VALUE;
+        s.f = Float.MAX_VALUE;
+        s.d = Double.MIN_VALUE;
+        s.write();
+        Pointer p = s.getPointer();
+        assertEquals("Wrong byte field", (byte)0x80, p.getByte(s.fieldOffset("b")));
+        assertEquals("Wrong short field", -2, p.getShort(s.fieldOffset("s")));
+        assertEquals("Wrong int field", -3, p.getInt(s.fieldOffset("i")));
+        assertEquals("Wrong long field", Long.MIN_VALUE, p.getLong(s.fieldOffset("l")));
+        assertEquals("Wrong float field", Float.MAX_VALUE, p.getFloat(s.fieldOffset("f")));
+        assertEquals("Wrong double field", Double.MIN_VALUE, p.getDouble(s.fieldOffset("d")));
+    }
+
+    public void testPaddingNotWritten() {
+        PrimitiveStructure s = new PrimitiveStructure();
+        int pad = s.fieldOffset("b") + 1;
+        assertTrue("Test requires padding after first field", s.fieldOffset("s") > pad);
+        s.getPointer().setByte(pad, (byte)0x55);
+        s.write();
+        assertEquals("Padding should not be overwritten", 0x55, s.getPointer().getByte(pad));
+    }
+
+    public void testMixedFields() {
+        MixedStructure s = new MixedStructure();
+        s.b = 1;
+        s.p = new Pointer(0x1234);
+        s.i = 2;
+        s.str = "string";
+        s.inner.l = 3;
+        s.v = 4;
+        s.array[1] = 5;
+        s.l = 6;
+        s.write();
+        Pointer p = s.getPointer();
+        assertEquals("Wrong byte field", 1, p.getByte(s.fieldOffset("b")));
+        assertEquals("Wrong pointer field", s.p, p.getPointer(s.fieldOffset("p")));
+        assertEquals("Wrong int field", 2, p.getInt(s.fieldOffset("i")));
+        assertEquals("Wrong string field", "string", p.getPointer(s.fieldOffset("str")).getString(0));
+        assertEquals("Wrong nested field", 3, p.getLong(s.fieldOffset("inner") + s.inner.fieldOffset("l")));
+        assertEquals("Volatile field should not be written", 0, p.getInt(s.fieldOffset("v")));
+        assertEquals("Wrong array field", 5, p.getInt(s.fieldOffset("array") + 4));
+        assertEquals("Wrong long field", 6, p.getLong(s.fieldOffset("l")));
+
+        p.setInt(s.fieldOffset("v"), 7);
+        p.setInt(s.fieldOffset("i"), 8);
+        p.setLong(s.fieldOffset("inner") + s.inner.fieldOffset("i"), 9);
+        s.read();
+        assertEquals("Volatile field should be read", 7, s.v);
+        assertEquals("Wrong int field", 8, s.i);
+        assertEquals("Wrong nested field", 9, s.inner.i);
+        assertEquals("Wrong string field", "string", s.str);
+        assertEquals("Wrong array field", 5, s.array[1]);
+    }
+
+    public void testInheritedFields() {
+        DerivedStructure s = new DerivedStructure();
+        s.i = 1;
+        s.extra = 2;
+        s.write();
+        DerivedStructure s2 = Structure.newInstance(DerivedStructure.class, s.getPointer());
+        s2.read();
+        assertEquals("Wrong inherited field", 1, s2.i);
+        assertEquals("Wrong derived field", 2, s2.extra);
+    }
+
+    public void testConvertedFieldsUseFieldAccess() {
+        ConvertedStructure s = new ConvertedStructure();
+        s.i = 1;
+        s.l = 2;
+        s.write();
+        assertEquals("Converter not applied on write", 2, s.getPointer().getLong(s.fieldOffset("i")));
+        s.getPointer().setLong(s.fieldOffset("i"), 10);
+        s.read();
+        assertEquals("Converter not applied on read", 9, s.i);
+        assertEquals("Wrong unconverted field", 2, s.l);
+    }
+
+    public void testArrayFields() {
+        ArrayStructure s = new ArrayStructure();
+        Pointer p = s.getPointer();
+        p.write(s.fieldOffset("bytes"), new byte[] { 1, 2, 3 }, 0, 3);
+        p.write(s.fieldOffset("shorts"), new short[] { 4, 5, 6 }, 0, 3);
+        p.write(s.fieldOffset("ints"), new int[] { 7, 8, 9 }, 0, 3);
+        p.write(s.fieldOffset("longs"), new long[] { 10, 11 }, 0, 2);
+        p.write(s.fieldOffset("floats"), new float[] { 12, 13 }, 0, 2);
+        p.write(s.fieldOffset("doubles"), new double[] { 14, 15 }, 0, 2);
+        p.setInt(s.fieldOffset("last"), 16);
+        s.read();
+        assertEquals("Wrong byte array", 3, s.bytes[2]);
+        assertEquals("Wrong short array", 6, s.shorts[2]);
+        assertEquals("Wrong int array", 9, s.ints[2]);
+        assertEquals("Wrong long array", 11, s.longs[1]);
+        assertEquals("Wrong float array", 13f, s.floats[1]);
+        assertEquals("Wrong double array", 15d, s.doubles[1]);
+        assertEquals("Wrong final field", 16, s.last);
+
+        s.bytes[0] = -1;
+        s.shorts[0] = -2;
+        s.ints[0] = -3;
+        s.longs[0] = -4;
+        s.floats[0] = -5;
+        s.doubles[0] = -6;
+        p.setInt(s.fieldOffset("last"), 17);
+        s.write();
+        assertEquals("Wrong byte array", -1, p.getByte(s.fieldOffset("bytes")));
+        assertEquals("Wrong short array", -2, p.getShort(s.fieldOffset("shorts")));
+        assertEquals("Wrong int array", -3, p.getInt(s.fieldOffset("ints")));
+        assertEquals("Wrong long array", -4, p.getLong(s.fieldOffset("longs")));
+        assertEquals("Wrong float array", -5f, p.getFloat(s.fieldOffset("floats")));
+        assertEquals("Wrong double array", -6d, p.getDouble(s.fieldOffset("doubles")));
+        assertEquals("Wrong last array element", 15d, p.getDouble(s.fieldOffset("doubles") + 8));
+        assertEquals("Final field should not be written", 17, p.getInt(s.fieldOffset("last")));
+    }
+
+    public void testReplacedArrayField() {
+        ArrayStructure s = new ArrayStructure();
+        s.ints = new int[] { 1, 2, 3, 4 };
+        s.longs[0] = 5;
+        s.write();
+        Pointer p = s.getPointer();
+        assertEquals("Wrong int array", 3, p.getInt(s.fieldOffset("ints") + 8));
+        // Written element by element, overlapping the next field
+        assertEquals("Wrong long array", 5, p.getLong(s.fieldOffset("longs")));
+        s.ints = null;
+        try {
+            s.read();
+            fail("Null array field should not be read");
+        }
+        catch(IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testNonPublicStructure() {
+        PrivateStructure s = new PrivateStructure();
+        s.i = 1;
+        s.l = 2;
+        s.write();
+        s.i = 0;
+        s.l = 0;
+        s.read();
+        assertEquals("Wrong int field", 1, s.i);
+        assertEquals("Wrong long field", 2, s.l);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(StructureAccessorTest.class);
+    }
+}
@@ -0,0 +1,156 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import com.sun.jna.ArgumentsMarshalTest.TestLibrary.CheckFieldAlignment;
+
+import junit.framework.TestCase;
+
+public class StructureArrayTest extends TestCase {
+
+    public interface TestLibrary extends Library {
+        int testStructureArrayInitialization(StructureArray<CheckFieldAlignment> p, int len);
+        void modifyStructureArray(StructureArray<CheckFieldAlignment> p, int length);
+    }
+
+    public interface ConstTestLibrary extends Library {
+        void modifyStructureArray(@Const StructureArray<CheckFieldAlignment> p, int length);
+    }
+
+    private TestLibrary lib;
+    private int size;
+
+    @Override
+    protected void setUp() {
+        lib = Native.loadLibrary("testlib", TestLibrary.class);
+        size = new CheckFieldAlignment().size();
+    }
+
+    @Override
+    protected void tearDown() {
+        lib = null;
+    }
+
+    private int int32Offset() {
+        return new CheckFieldAlignment().fieldOffset("int32Field");
+    }
+
+    public void testElementsCreatedOnAccess() {
+        StructureArray<CheckFieldAlignment> array =
+            new StructureArray<CheckFieldAlignment>(CheckFieldAlignment.class, 1000);
+        assertEquals("Wrong size", 1000, array.size());
+        assertEquals("No elements should be created up front", 0, array.cachedCount());
+        array.getPointer().setInt(500L * size + int32Offset(), 42);
+        CheckFieldAlignment s = array.get(500);
+        assertEquals("Element not read", 42, s.int32Field);
+        assertEquals("Wrong element memory", array.getPointer().share(500L * size), s.getPointer());
+        assertSame("Element should be kept", s, array.get(500));
+        assertEquals("Wrong number of elements created", 1, array.cachedCount());
+    }
+
+    public void testEvictedElementsWritten() {
+        StructureArray<CheckFieldAlignment> array =
+            new StructureArray<CheckFieldAlignment>(CheckFieldAlignment.class,
+                                                    new Memory(10L * size), 10, 3);
+        for (int i=0;i < array.size();i++) {
+            array.get(i).int32Field = i + 1;
+            assertTrue("Too many elements kept", array.cachedCount() <= 3);
+        }
+        for (int i=0;i < 7;i++) {
+            assertEquals("Evicted element " + i + " not written",
+                         i + 1, array.getPointer().getInt((long)i * size + int32Offset()));
+        }
+        array.write();
+        assertEquals("Modified elements not cleared", 0, array.modifiedCount());
+        for (int i=7;i < 10;i++) {
+            assertEquals("Element " + i + " not written",
+                         i + 1, array.getPointer().getInt((long)i * size + int32Offset()));
+        }
+    }
+
+    public void testPassToNativeFunction() {
+        final int LENGTH = 100;
+        StructureArray<CheckFieldAlignment> array =
+            new StructureArray<CheckFieldAlignment>(CheckFieldAlignment.class, LENGTH);
+        for (int i=0;i < LENGTH;i++) {
+            array.get(i).int32Field = i;
+        }
+        assertEquals("Structure array memory not properly initialized",
+                     -1, lib.testStructureArrayInitialization(array, LENGTH));
+        assertEquals("Modified elements not cleared", 0, array.modifiedCount());
+    }
+
+    public void testReadAfterNativeCall() {
+        final int LENGTH = 10;
+        StructureArray<CheckFieldAlignment> array =
+            new StructureArray<CheckFieldAlignment>(CheckFieldAlignment.class, LENGTH);
+        CheckFieldAlignment s = array.get(3);
+        lib.modifyStructureArray(array, LENGTH);
+        assertEquals("Kept element not read after call", 3, s.int32Field);
+        assertEquals("Kept element not read after call", 4, s.int64Field);
+        assertEquals("Wrong value for element created after call", 8, array.get(7).int64Field);
+    }
+
+    public void testOnlyModifiedElementsWritten() {
+        StructureArray<CheckFieldAlignment> array =
+            new StructureArray<CheckFieldAlignment>(CheckFieldAlignment.class, 10);
+        CheckFieldAlignment s1 = array.get(1);
+        array.write();
+        // Not marked as modified; must not be overwritten by the Java value
+        array.getPointer().setInt((long)size + int32Offset(), 77);
+        array.get(2).int32Field = 5;
+        lib.modifyStructureArray(array, 0);
+        assertEquals("Unmodified element should be read, not written", 77, s1.int32Field);
+        assertEquals("Modified element not written",
+                     5, array.getPointer().getInt(2L * size + int32Offset()));
+    }
+
+    public void testConstArgumentNotRead() {
+        StructureArray<CheckFieldAlignment> array =
+            new StructureArray<CheckFieldAlignment>(CheckFieldAlignment.class, 10);
+        CheckFieldAlignment s = array.get(3);
+        ConstTestLibrary constLib = Native.loadLibrary("testlib", ConstTestLibrary.class);
+        constLib.modifyStructureArray(array, 10);
+        assertEquals("Const argument should not be read after call", 0, s.int32Field);
+    }
+
+    public void testIndexOutOfBounds() {
+        StructureArray<CheckFieldAlignment> array =
+            new StructureArray<CheckFieldAlignment>(CheckFieldAlignment.class, 2);
+        try {
+            array.get(2);
+            fail("Index beyond the end of the array should fail");
+        }
+        catch(IndexOutOfBoundsException e) {
+        }
+        try {
+            array.get(-1);
+            fail("Negative index should fail");
+        }
+        catch(IndexOutOfBoundsException e) {
+        }
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(StructureArrayTest.class);
+    }
+}
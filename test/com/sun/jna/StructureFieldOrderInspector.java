@@ -130,11 +130,6 @@ public final class StructureFieldOrderInspector {
         try {
             structConstructor = structureSubType.getDeclaredConstructor();
         } catch (NoSuchMethodException e) {
-            if (structureSubType == Structure.FFIType.class) {
-                // ignore this case
-                // @todo Allow user to pass in list of classes for which to skip construction?
-                return;
-            }
             throw new RuntimeException("Parameterless constructor failed on Structure sub type: " + structureSubType.getName());
         }
 
@@ -23,12 +23,15 @@
  */
 package com.sun.jna;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.TestCase;
@@ -497,6 +500,348 @@ public class StructureTest extends TestCase {
         }
     }
 
+    public static class NoPointerConstructorStructure extends Structure {
+        public int x, y;
+        @Override
+        protected List<String> getFieldOrder() {
+            return Arrays.asList("x", "y");
+        }
+    }
+
+    public static class NoDefaultConstructorStructure extends Structure {
+        public int x;
+        public NoDefaultConstructorStructure(int x) { this.x = x; }
+        @Override
+        protected List<String> getFieldOrder() {
+            return Arrays.asList("x");
+        }
+    }
+
+    public static class FailingConstructorStructure extends Structure {
+        public int x;
+        public FailingConstructorStructure() {
+            throw new UnsupportedOperationException("constructor");
+        }
+        @Override
+        protected List<String> getFieldOrder() {
+            return Arrays.asList("x");
+        }
+    }
+
+    public void testNewInstanceWithPointerConstructor() {
+        Memory m = new Memory(8);
+        m.setInt(0, 3);
+        m.setInt(4, 4);
+        for (int i=0;i < 2;i++) {
+            NonAllocatingTestStructure s = Structure.newInstance(NonAllocatingTestStructure.class, m);
+            assertEquals("Wrong memory", m, s.getPointer());
+            assertEquals("Pointer constructor not used", 3, s.x);
+        }
+    }
+
+    public void testNewInstanceWithoutPointerConstructor() {
+        Memory m = new Memory(8);
+        m.setInt(0, 3);
+        for (int i=0;i < 2;i++) {
+            NoPointerConstructorStructure s = Structure.newInstance(NoPointerConstructorStructure.class, m);
+            assertEquals("Memory not used", m, s.getPointer());
+            s.read();
+            assertEquals("Wrong field value", 3, s.x);
+        }
+        Structure[] array = new NoPointerConstructorStructure().toArray(3);
+        assertEquals("Wrong element type", NoPointerConstructorStructure.class, array[2].getClass());
+    }
+
+    public void testNewInstanceWithoutDefaultConstructor() {
+        for (int i=0;i < 2;i++) {
+            try {
+                Structure.newInstance(NoDefaultConstructorStructure.class, new Memory(4));
+                fail("Structure without a suitable constructor should not be instantiable");
+            }
+            catch(IllegalArgumentException e) {
+            }
+        }
+        try {
+            Structure.validate(NoDefaultConstructorStructure.class);
+            fail("Structure without a default constructor should not validate");
+        }
+        catch(IllegalArgumentException e) {
+        }
+        Structure.validate(NoPointerConstructorStructure.class);
+    }
+
+    public void testNewInstanceConstructorException() {
+        try {
+            Structure.newInstance(FailingConstructorStructure.class);
+            fail("Exception thrown by constructor should propagate");
+        }
+        catch(UnsupportedOperationException e) {
+            assertEquals("Wrong exception", "constructor", e.getMessage());
+        }
+    }
+
+    public static class CursorTestStructure extends Structure {
+        public int id;
+        public double value;
+        public short[] samples = new short[2];
+        public Pointer next;
+        @Override
+        protected List<String> getFieldOrder() {
+            return Arrays.asList("id", "value", "samples", "next");
+        }
+    }
+
+    public void testUseArrayElement() {
+        final int COUNT = 100;
+        CursorTestStructure[] array = (CursorTestStructure[])new CursorTestStructure().toArray(COUNT);
+        for (int i=0;i < COUNT;i++) {
+            array[i].id = i;
+            array[i].value = i / 2.0;
+            array[i].samples[1] = (short)-i;
+        }
+        Structure.autoWrite(array);
+        // Not bounded by the first element's memory
+        Pointer table = new Pointer(Pointer.nativeValue(array[0].getPointer()));
+
+        CursorTestStructure cursor = new CursorTestStructure();
+        cursor.useArrayElement(table, 0);
+        Pointer p = cursor.getPointer();
+        for (int i=COUNT-1;i >= 0;i--) {
+            cursor.useArrayElement(table, i);
+            assertSame("Cursor pointer should be reused", p, cursor.getPointer());
+            assertEquals("Wrong element address", array[i].getPointer(), cursor.getPointer());
+            assertEquals("Wrong id at " + i, i, cursor.id);
+            assertEquals("Wrong value at " + i, i / 2.0, cursor.value, 0);
+            assertEquals("Wrong array field at " + i, -i, cursor.samples[1]);
+        }
+        Pointer element = cursor.getPointer().share(0);
+        cursor.useArrayElement(table, 1);
+        assertEquals("Shared pointer should not move", array[0].getPointer(), element);
+
+        cursor.useArrayElement(table, 7);
+        cursor.id = 1000;
+        cursor.write();
+        array[7].read();
+        assertEquals("Write through cursor failed", 1000, array[7].id);
+        assertEquals("Write through cursor modified next element", 8, array[8].id);
+    }
+
+    public void testUseArrayElementBounds() {
+        Memory table = new Memory(new CursorTestStructure().size() * 3L);
+        table.clear();
+        CursorTestStructure cursor = new CursorTestStructure();
+        cursor.useArrayElement(table, 2);
+        try {
+            cursor.useArrayElement(table, 3);
+            fail("Element beyond the end of the memory should not be usable");
+        }
+        catch(IndexOutOfBoundsException e) {
+        }
+        try {
+            cursor.useArrayElement(table, -1);
+            fail("Negative index should not be usable");
+        }
+        catch(IndexOutOfBoundsException e) {
+        }
+        try {
+            cursor.getPointer().share(0, table.size());
+            fail("View of an element should be bounded by the memory");
+        }
+        catch(IndexOutOfBoundsException e) {
+        }
+    }
+
+    public void testUseArrayElementClosedMemory() {
+        Memory table = new Memory(new CursorTestStructure().size() * 3L);
+        table.clear();
+        CursorTestStructure cursor = new CursorTestStructure();
+        cursor.useArrayElement(table, 1);
+        table.close();
+        try {
+            cursor.read();
+            fail("Element of closed memory should not be readable");
+        }
+        catch(IllegalStateException e) {
+        }
+        try {
+            cursor.write();
+            fail("Element of closed memory should not be writable");
+        }
+        catch(IllegalStateException e) {
+        }
+        try {
+            cursor.useArrayElement(table, 1);
+            fail("Closed memory should not be usable");
+        }
+        catch(IllegalStateException e) {
+        }
+        CursorTestStructure other = new CursorTestStructure();
+        try {
+            other.useArrayElement(table, 0);
+            fail("Closed memory should not be usable");
+        }
+        catch(IllegalStateException e) {
+        }
+    }
+
+    public static class DirectAccessTestStructure extends Structure {
+        public int flags;
+        public long head;
+        public long tail;
+        private final int headOffset = fieldOffset("head");
+        private final int tailOffset = fieldOffset("tail");
+        public DirectAccessTestStructure() {
+            setDirectAccess(true);
+        }
+        public long getHead() {
+            return getByteBuffer().getLong(headOffset);
+        }
+        public void setTail(long tail) {
+            getByteBuffer().putLong(tailOffset, tail);
+        }
+        @Override
+        protected List<String> getFieldOrder() {
+            return Arrays.asList("flags", "head", "tail");
+        }
+    }
+
+    public void testDirectAccess() {
+        DirectAccessTestStructure s = new DirectAccessTestStructure();
+        assertTrue("Direct access should be enabled", s.getDirectAccess());
+        assertFalse("Direct access structure should not be read automatically", s.getAutoRead());
+        assertFalse("Direct access structure should not be written automatically", s.getAutoWrite());
+        ByteBuffer buffer = s.getByteBuffer();
+        assertSame("Buffer should be reused", buffer, s.getByteBuffer());
+        assertEquals("Wrong buffer size", s.size(), buffer.capacity());
+        assertEquals("Buffer should use native byte order", ByteOrder.nativeOrder(), buffer.order());
+
+        s.getPointer().setLong(s.fieldOffset("head"), 42);
+        assertEquals("Native changes should be visible without read", 42, s.getHead());
+        s.setTail(7);
+        assertEquals("Buffer changes should be written to native memory", 7, s.getPointer().getLong(s.fieldOffset("tail")));
+        assertEquals("Java fields should not be updated", 0, s.tail);
+        s.autoRead();
+        assertEquals("Java fields should not be read automatically", 0, s.head);
+        s.read();
+        assertEquals("Explicit read should update Java fields", 42, s.head);
+        assertEquals("Explicit read should update Java fields", 7, s.tail);
+
+        Memory m = new Memory(s.size());
+        m.clear();
+        m.setLong(s.fieldOffset("head"), 99);
+        s.useMemory(m);
+        assertNotSame("Buffer should follow memory changes", buffer, s.getByteBuffer());
+        assertEquals("Wrong value after memory change", 99, s.getHead());
+
+        Memory table = new Memory(s.size() * 2L);
+        table.clear();
+        table.setLong(s.size() + s.fieldOffset("head"), 5);
+        s.useArrayElement(table, 0);
+        assertEquals("Wrong value of first element", 0, s.getHead());
+        s.useArrayElement(table, 1);
+        assertEquals("Buffer should follow array cursor", 5, s.getHead());
+        assertEquals("Array element should not be read", 42, s.head);
+
+        s.setDirectAccess(false);
+        assertTrue("Automatic read should be restored", s.getAutoRead());
+        assertTrue("Automatic write should be restored", s.getAutoWrite());
+    }
+
+    public static class ModifiedOnlyTestStructure extends Structure {
+        public int a;
+        public int b;
+        public long[] c = new long[2];
+        public String s;
+        public Pointer p;
+        @Override
+        protected List<String> getFieldOrder() {
+            return Arrays.asList("a", "b", "c", "s", "p");
+        }
+    }
+
+    public void testAutoWriteModifiedOnly() {
+        ModifiedOnlyTestStructure s = new ModifiedOnlyTestStructure();
+        s.setAutoWriteModifiedOnly(true);
+        assertTrue("Mode not enabled", s.getAutoWriteModifiedOnly());
+        s.a = 1;
+        s.b = 2;
+        s.s = "string";
+        s.p = new Pointer(8);
+        s.autoWrite();
+        Pointer m = s.getPointer();
+        int offsetA = s.fieldOffset("a");
+        int offsetB = s.fieldOffset("b");
+        int offsetC = s.fieldOffset("c");
+        int offsetS = s.fieldOffset("s");
+        int offsetP = s.fieldOffset("p");
+        assertEquals("First auto-write should write all fields", 2, m.getInt(offsetB));
+        assertEquals("First auto-write should write all fields", "string", m.getPointer(offsetS).getString(0));
+
+        // Native changes are not detected; unmodified fields are not written
+        m.setInt(offsetA, 20);
+        m.setPointer(offsetS, null);
+        m.setPointer(offsetP, new Pointer(80));
+        s.b = 10;
+        s.autoWrite();
+        assertEquals("Modified field not written", 10, m.getInt(offsetB));
+        assertEquals("Unmodified field written", 20, m.getInt(offsetA));
+        assertNull("Unmodified String field written", m.getPointer(offsetS));
+        assertEquals("Unmodified Pointer field written", new Pointer(80), m.getPointer(offsetP));
+
+        m.setLong(offsetC, 30);
+        s.c[1] = 5;
+        s.p = new Pointer(16);
+        s.autoWrite();
+        assertEquals("Modified array element not written", 5, m.getLong(offsetC + 8));
+        assertEquals("Unmodified array element written", 30, m.getLong(offsetC));
+        assertEquals("Modified Pointer field not written", new Pointer(16), m.getPointer(offsetP));
+
+        // Explicit writes and reads synchronize everything
+        s.write();
+        assertEquals("Explicit write should write all fields", 1, m.getInt(offsetA));
+        m.setInt(offsetB, 3);
+        s.read();
+        s.b = 2;
+        s.autoWrite();
+        assertEquals("Field modified since read not written", 2, m.getInt(offsetB));
+
+        // Single field access invalidates the snapshot
+        s.writeField("b", Integer.valueOf(4));
+        s.b = 2;
+        s.autoWrite();
+        assertEquals("Auto-write after single field write should write all fields", 2, m.getInt(offsetB));
+
+        s.setAutoWriteModifiedOnly(false);
+        m.setInt(offsetB, 20);
+        s.autoWrite();
+        assertEquals("All fields should be written when disabled", 2, m.getInt(offsetB));
+    }
+
+    public void testAutoWriteModifiedOnlyWithoutBulkAccess() {
+        class TestStructure extends Structure {
+            public char ch;
+            public int i;
+            @Override
+            protected List<String> getFieldOrder() {
+                return Arrays.asList("ch", "i");
+            }
+            @Override
+            protected void writeField(StructField structField) {
+                super.writeField(structField);
+            }
+        }
+        TestStructure s = new TestStructure();
+        s.setAutoWriteModifiedOnly(true);
+        s.ch = 'a';
+        s.i = 1;
+        s.autoWrite();
+        s.getPointer().setInt(s.fieldOffset("i"), 10);
+        s.ch = 'b';
+        s.autoWrite();
+        assertEquals("Modified field not written", 'b', s.getPointer().getChar(s.fieldOffset("ch")));
+        assertEquals("Unmodified field written", 10, s.getPointer().getInt(s.fieldOffset("i")));
+    }
+
     // TODO: add'l newInstance(Pointer) tests:
     // NOTE: ensure structure-by-value respected (no more flag on newjavastructure)
     // native call (direct mode)
@@ -1277,6 +1622,43 @@ public class StructureTest extends TestCase {
         assertEquals("FFIType info size mismatch", s.size(), ffi_type.size.intValue());
     }
 
+    public static class ArrayByValueTestStructure extends Structure implements Structure.ByValue {
+        public static final List<String> FIELDS = createFieldsOrder("value", "inner");
+        public int value;
+        public short[] inner = new short[3];
+        @Override
+        protected List<String> getFieldOrder() {
+            return FIELDS;
+        }
+    }
+
+    public void testTypeInfoSharedByInstances() {
+        ArrayByValueTestStructure s1 = new ArrayByValueTestStructure();
+        ArrayByValueTestStructure s2 = new ArrayByValueTestStructure();
+        Pointer p = s1.getTypeInfo();
+        assertSame("Type information should be shared by instances", p, s2.getTypeInfo());
+        assertSame("Type information should be shared with the class", p,
+                   Structure.getTypeInfo(ArrayByValueTestStructure.class));
+
+        TestFFIType ffi_type = new TestFFIType(p);
+        assertEquals("FFIType size mismatch", s1.size(), ffi_type.size.intValue());
+        Pointer els = ffi_type.elements;
+        assertEquals("Wrong type information for integer field",
+                     Structure.getTypeInfo(int.class), els.getPointer(0));
+        Pointer inner = els.getPointer(Native.POINTER_SIZE);
+        assertNull("Type element list should be null-terminated",
+                   els.getPointer(Native.POINTER_SIZE*2));
+        TestFFIType array_type = new TestFFIType(inner);
+        assertEquals("Wrong array type size", 6, array_type.size.intValue());
+        for (int i=0;i < 3;i++) {
+            assertEquals("Wrong array element type",
+                         Structure.getTypeInfo(short.class),
+                         array_type.elements.getPointer(Native.POINTER_SIZE*i));
+        }
+        assertNull("Array element list should be null-terminated",
+                   array_type.elements.getPointer(Native.POINTER_SIZE*3));
+    }
+
     public void testTypeInfoForNull() {
         assertEquals("Wrong type information for 'null'",
                      Structure.getTypeInfo(new Pointer(0)),
@@ -2098,4 +2480,45 @@ public class StructureTest extends TestCase {
     	structureSet.remove(ts2);
     	assertNull(structureSet.elements[0]);
     }
+
+    public static class LeafTestStructure extends Structure {
+        public static final List<String> FIELDS = createFieldsOrder("value", "next");
+        public int value;
+        public Pointer next;
+        @Override
+        protected List<String> getFieldOrder() {
+            return FIELDS;
+        }
+    }
+
+    public static class NestingTestStructure extends Structure {
+        public static final List<String> FIELDS = createFieldsOrder("value", "inner");
+        public int value;
+        public LeafTestStructure inner;
+        @Override
+        protected List<String> getFieldOrder() {
+            return FIELDS;
+        }
+    }
+
+    public void testReentrancyTrackedOnlyForNestingStructures() {
+        LeafTestStructure leaf = new LeafTestStructure();
+        leaf.getPointer().setInt(0, 42);
+        NestingTestStructure nesting = new NestingTestStructure();
+        nesting.getPointer().setInt(0, 42);
+        Set<Structure> busy = Structure.busy();
+        busy.add(leaf);
+        busy.add(nesting);
+        try {
+            leaf.read();
+            nesting.read();
+        }
+        finally {
+            busy.remove(leaf);
+            busy.remove(nesting);
+        }
+        assertEquals("Structure without nested structures should always be read", 42, leaf.value);
+        assertEquals("Structure with nested structures should not be read while busy", 0, nesting.value);
+        assertTrue("Temporary storage should be cleared", Structure.busy().isEmpty());
+    }
 }
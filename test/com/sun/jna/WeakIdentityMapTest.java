@@ -0,0 +1,95 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class WeakIdentityMapTest extends TestCase {
+
+    public void testGetPutRemove() {
+        Map<Object, String> map = new WeakIdentityMap<Object, String>();
+        Object key = new Object();
+        Object key2 = new Object();
+        assertNull("Nothing mapped yet", map.get(key));
+        assertNull("No previous value", map.put(key, "value"));
+        map.put(key2, "value2");
+        assertEquals("Wrong value", "value", map.get(key));
+        assertEquals("Wrong value", "value2", map.get(key2));
+        assertTrue("Key should be mapped", map.containsKey(key));
+        assertEquals("Previous value should be returned", "value", map.put(key, "replaced"));
+        assertEquals("Value should be replaced", "replaced", map.get(key));
+        assertEquals("Wrong number of entries", 2, map.size());
+        assertEquals("Removed value should be returned", "replaced", map.remove(key));
+        assertNull("Key should no longer be mapped", map.get(key));
+        assertEquals("Wrong number of entries", 1, map.size());
+        assertNull("Null key is never mapped", map.get(null));
+    }
+
+    public void testIdentityKeys() {
+        Map<String, String> map = new WeakIdentityMap<String, String>();
+        String key = new String("key");
+        String equalKey = new String("key");
+        map.put(key, "value");
+        assertNull("Equal key should not match", map.get(equalKey));
+        map.put(equalKey, "other");
+        assertEquals("Equal keys should be mapped separately", 2, map.size());
+        assertEquals("Wrong value", "value", map.get(key));
+    }
+
+    public void testEntries() {
+        Map<Object, String> map = new WeakIdentityMap<Object, String>();
+        Object key = new Object();
+        Object key2 = new Object();
+        map.put(key, "value");
+        map.put(key2, "value2");
+        Map<Object, String> copy = new HashMap<Object, String>(map);
+        assertEquals("Wrong entries", 2, copy.size());
+        assertEquals("Wrong value", "value", copy.get(key));
+        assertTrue("Value should be found", map.containsValue("value2"));
+        map.keySet().remove(key2);
+        assertNull("Key should be removed through key set", map.get(key2));
+        map.clear();
+        assertEquals("Map should be empty", 0, map.size());
+    }
+
+    public void testCollectedKeysRemoved() {
+        Map<Object, Object> map = new WeakIdentityMap<Object, Object>();
+        Object key = new Object();
+        map.put(key, new Object());
+        Reference<Object> ref = new WeakReference<Object>(key);
+        key = null;
+        for (int i=0;i < GCWaits.GC_WAITS && (ref.get() != null || map.size() != 0);i++) {
+            GCWaits.gcRun();
+        }
+        assertNull("Key should be collected", ref.get());
+        assertEquals("Entry of collected key should be removed", 0, map.size());
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(WeakIdentityMapTest.class);
+    }
+}
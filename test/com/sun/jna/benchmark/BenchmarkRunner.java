@@ -0,0 +1,284 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import com.sun.jna.Native;
+
+/** Runs the JNA micro benchmarks and optionally writes the results as JSON
+ * in the format produced by JMH (<code>-rf json</code>), so existing JMH
+ * tooling can be used to compare results across JNA releases.
+ * <p>
+ * A benchmark is any public method named <code>bench*</code> taking the
+ * number of operations to perform as its only <code>int</code> argument
+ * and returning a value depending on the work done, which is consumed to
+ * keep the JIT from eliminating it.  Benchmark classes set up their state
+ * in a public no-argument constructor.
+ * <p>
+ * Usage: <code>BenchmarkRunner [-wi warmups] [-i iterations] [-r millis]
+ * [-json file] [regexp]</code>, where the optional regular expression
+ * selects benchmarks by <code>Class.method</code> name.
+ */
+public class BenchmarkRunner {
+
+    static final Class<?>[] BENCHMARKS = {
+        CallBenchmarks.class,
+        ConversionBenchmarks.class,
+        StructureBenchmarks.class,
+        CallbackBenchmarks.class,
+        StringBenchmarks.class,
+        MemoryBenchmarks.class,
+        LoadBenchmarks.class,
+    };
+
+    // Two-sided 99.9% Student's t quantiles for 1..20 degrees of freedom,
+    // the confidence level reported by JMH
+    private static final double[] T_999 = {
+        636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+        4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+    };
+
+    /** Sink for benchmark results. */
+    static volatile long sink;
+
+    private int warmupIterations = 5;
+    private int measurementIterations = 10;
+    private long iterationMillis = 500;
+
+    /** Result of a single benchmark. */
+    static class Result {
+        final String benchmark;
+        final double[] scores;
+
+        Result(String benchmark, double[] scores) {
+            this.benchmark = benchmark;
+            this.scores = scores;
+        }
+
+        double mean() {
+            double sum = 0;
+            for (double s : scores) {
+                sum += s;
+            }
+            return sum / scores.length;
+        }
+
+        double error() {
+            if (scores.length < 2) {
+                return Double.NaN;
+            }
+            double mean = mean();
+            double sum = 0;
+            for (double s : scores) {
+                sum += (s - mean) * (s - mean);
+            }
+            double stddev = Math.sqrt(sum / (scores.length - 1));
+            double t = T_999[Math.min(scores.length - 1, T_999.length) - 1];
+            return t * stddev / Math.sqrt(scores.length);
+        }
+    }
+
+    /** Run a benchmark method for the given number of operations and
+     * return the elapsed time in nanoseconds.
+     */
+    private static long time(Object target, Method m, int ops) throws Exception {
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = m.invoke(target, Integer.valueOf(ops));
+        } catch(InvocationTargetException e) {
+            Throwable t = e.getTargetException();
+            throw t instanceof Exception ? (Exception)t : new RuntimeException(t);
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += result instanceof Number ? ((Number)result).longValue() : System.identityHashCode(result);
+        return elapsed;
+    }
+
+    Result run(Object target, Method m) throws Exception {
+        // Find an operation count which takes roughly the iteration time
+        long targetNanos = iterationMillis * 1000000L;
+        int ops = 1;
+        long elapsed = time(target, m, ops);
+        while (elapsed < targetNanos / 10 && ops < Integer.MAX_VALUE / 2) {
+            ops *= 2;
+            elapsed = time(target, m, ops);
+        }
+        ops = (int)Math.max(1, Math.min(Integer.MAX_VALUE, (long)ops * targetNanos / Math.max(1, elapsed)));
+        for (int i=0;i < warmupIterations;i++) {
+            time(target, m, ops);
+        }
+        double[] scores = new double[measurementIterations];
+        for (int i=0;i < scores.length;i++) {
+            scores[i] = (double)time(target, m, ops) / ops;
+        }
+        return new Result(m.getDeclaringClass().getName() + "." + m.getName(), scores);
+    }
+
+    static List<Method> getBenchmarkMethods(Class<?> cls) {
+        List<Method> methods = new ArrayList<Method>();
+        for (Method m : cls.getMethods()) {
+            if (m.getName().startsWith("bench")
+                && !Modifier.isStatic(m.getModifiers())
+                && Arrays.equals(m.getParameterTypes(), new Class<?>[] { int.class })) {
+                methods.add(m);
+            }
+        }
+        Collections.sort(methods, new Comparator<Method>() {
+            @Override
+            public int compare(Method m1, Method m2) {
+                return m1.getName().compareTo(m2.getName());
+            }
+        });
+        return methods;
+    }
+
+    List<Result> runAll(Pattern filter) throws Exception {
+        List<Result> results = new ArrayList<Result>();
+        for (Class<?> cls : BENCHMARKS) {
+            List<Method> methods = new ArrayList<Method>();
+            for (Method m : getBenchmarkMethods(cls)) {
+                String name = cls.getSimpleName() + "." + m.getName();
+                if (filter == null || filter.matcher(name).find()) {
+                    methods.add(m);
+                }
+            }
+            if (methods.isEmpty()) {
+                continue;
+            }
+            Object target = cls.newInstance();
+            for (Method m : methods) {
+                Result r = run(target, m);
+                System.out.println(String.format(Locale.ROOT, "%-60s %12.3f +- %9.3f ns/op",
+                                                 cls.getSimpleName() + "." + m.getName(),
+                                                 r.mean(), r.error()));
+                results.add(r);
+            }
+        }
+        return results;
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char ch : s.toCharArray()) {
+            if (ch == '"' || ch == '\\') {
+                sb.append('\\').append(ch);
+            } else if (ch < ' ') {
+                sb.append(String.format(Locale.ROOT, "\\u%04x", Integer.valueOf(ch)));
+            } else {
+                sb.append(ch);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String number(double d) {
+        return Double.isNaN(d) ? "\"NaN\"" : String.format(Locale.ROOT, "%.6f", Double.valueOf(d));
+    }
+
+    /** Write results using the layout of JMH's JSON result format. */
+    void writeJSON(List<Result> results, File file) throws IOException {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            out.println("[");
+            for (int i=0;i < results.size();i++) {
+                Result r = results.get(i);
+                double mean = r.mean();
+                double error = r.error();
+                out.println("    {");
+                out.println("        \"benchmark\" : " + quote(r.benchmark) + ",");
+                out.println("        \"mode\" : \"avgt\",");
+                out.println("        \"threads\" : 1,");
+                out.println("        \"forks\" : 0,");
+                out.println("        \"jdkVersion\" : " + quote(System.getProperty("java.version")) + ",");
+                out.println("        \"vmName\" : " + quote(System.getProperty("java.vm.name")) + ",");
+                out.println("        \"vmVersion\" : " + quote(System.getProperty("java.vm.version")) + ",");
+                out.println("        \"jnaVersion\" : " + quote(Native.VERSION) + ",");
+                out.println("        \"jnaNativeVersion\" : " + quote(Native.VERSION_NATIVE) + ",");
+                out.println("        \"warmupIterations\" : " + warmupIterations + ",");
+                out.println("        \"warmupTime\" : \"" + iterationMillis + " ms\",");
+                out.println("        \"measurementIterations\" : " + measurementIterations + ",");
+                out.println("        \"measurementTime\" : \"" + iterationMillis + " ms\",");
+                out.println("        \"primaryMetric\" : {");
+                out.println("            \"score\" : " + number(mean) + ",");
+                out.println("            \"scoreError\" : " + number(error) + ",");
+                out.println("            \"scoreConfidence\" : [ " + number(mean - error) + ", " + number(mean + error) + " ],");
+                out.println("            \"scoreUnit\" : \"ns/op\",");
+                StringBuilder raw = new StringBuilder();
+                for (int j=0;j < r.scores.length;j++) {
+                    if (j > 0) raw.append(", ");
+                    raw.append(number(r.scores[j]));
+                }
+                out.println("            \"rawData\" : [ [ " + raw + " ] ]");
+                out.println("        },");
+                out.println("        \"secondaryMetrics\" : {");
+                out.println("        }");
+                out.println(i < results.size() - 1 ? "    }," : "    }");
+            }
+            out.println("]");
+        } finally {
+            out.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        File json = null;
+        Pattern filter = null;
+        for (int i=0;i < args.length;i++) {
+            if ("-wi".equals(args[i])) {
+                runner.warmupIterations = Integer.parseInt(args[++i]);
+            } else if ("-i".equals(args[i])) {
+                runner.measurementIterations = Integer.parseInt(args[++i]);
+            } else if ("-r".equals(args[i])) {
+                runner.iterationMillis = Long.parseLong(args[++i]);
+            } else if ("-json".equals(args[i])) {
+                json = new File(args[++i]);
+            } else if (args[i].length() > 0) {
+                filter = Pattern.compile(args[i]);
+            }
+        }
+        System.out.println("JNA " + Native.VERSION + " (native " + Native.VERSION_NATIVE + "), "
+                           + runner.warmupIterations + " warmup and " + runner.measurementIterations
+                           + " measurement iterations of " + runner.iterationMillis + "ms");
+        List<Result> results = runner.runAll(filter);
+        if (json != null) {
+            runner.writeJSON(results, json);
+            System.out.println("Results written to " + json);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna.benchmark;
+
+import java.util.Collections;
+
+import com.sun.jna.Function;
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLibrary;
+
+/** Cost of a simple native call through each of the JNA call paths. */
+public class CallBenchmarks {
+
+    public interface TestLibrary extends Library {
+        int returnInt32Argument(int arg);
+        long returnInt64Argument(long arg);
+        double returnDoubleArgument(double arg);
+        int addVarArgs(String fmt, Number... args);
+    }
+
+    public static class DirectTestLibrary {
+        public static native int returnInt32Argument(int arg);
+        public static native long returnInt64Argument(long arg);
+        public static native double returnDoubleArgument(double arg);
+        static {
+            Native.register("testlib");
+        }
+    }
+
+    private final TestLibrary proxy;
+    private final TestLibrary generated;
+    private final TestLibrary synchronizedProxy;
+    private final Function function;
+
+    public CallBenchmarks() {
+        proxy = Native.loadLibrary("testlib", TestLibrary.class);
+        generated = Native.loadLibrary("testlib", TestLibrary.class,
+                                       Collections.singletonMap(Library.OPTION_GENERATE_PROXY, Boolean.TRUE));
+        synchronizedProxy = (TestLibrary)Native.synchronizedLibrary(proxy);
+        function = NativeLibrary.getInstance("testlib").getFunction("returnInt32Argument");
+    }
+
+    public long benchInterface(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += proxy.returnInt32Argument(i);
+        }
+        return sum;
+    }
+
+    public long benchInterfaceGenerated(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += generated.returnInt32Argument(i);
+        }
+        return sum;
+    }
+
+    public long benchInterfaceSynchronized(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += synchronizedProxy.returnInt32Argument(i);
+        }
+        return sum;
+    }
+
+    public long benchInterfaceInt64(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += proxy.returnInt64Argument(i);
+        }
+        return sum;
+    }
+
+    public long benchInterfaceDouble(int ops) {
+        double sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += proxy.returnDoubleArgument(i);
+        }
+        return (long)sum;
+    }
+
+    public long benchInterfaceVarArgs(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += proxy.addVarArgs("dd", Integer.valueOf(i), Integer.valueOf(1));
+        }
+        return sum;
+    }
+
+    public long benchFunction(int ops) {
+        long sum = 0;
+        Object[] args = new Object[1];
+        for (int i=0;i < ops;i++) {
+            args[0] = Integer.valueOf(i);
+            sum += function.invokeInt(args);
+        }
+        return sum;
+    }
+
+    public long benchDirect(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.returnInt32Argument(i);
+        }
+        return sum;
+    }
+
+    public long benchDirectInt64(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.returnInt64Argument(i);
+        }
+        return sum;
+    }
+
+    public long benchDirectDouble(int ops) {
+        double sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.returnDoubleArgument(i);
+        }
+        return (long)sum;
+    }
+}
@@ -0,0 +1,255 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.sun.jna.AsyncCallbackInitializer;
+import com.sun.jna.Callback;
+import com.sun.jna.CallbackReference;
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+/** Cost of passing callbacks to native code (<code>CVT_CALLBACK</code>),
+ * of calling back into Java, and of converting native function pointers
+ * into callback proxies.
+ */
+public class CallbackBenchmarks {
+
+    public interface Int32Callback extends Callback {
+        int callback(int arg, int arg2);
+    }
+
+    public interface CountdownCallback extends Callback {
+        void callback();
+    }
+
+    public interface TestLibrary extends Library {
+        int callInt32Callback(Int32Callback c, int arg, int arg2);
+        int callInt32CallbackRepeatedly(Int32Callback c, int arg, int arg2, int count);
+    }
+
+    public static class DirectTestLibrary {
+        public static native int callInt32Callback(Int32Callback c, int arg, int arg2);
+        public static native int callInt32CallbackRepeatedly(Int32Callback c, int arg, int arg2, int count);
+        public static native void callVoidCallbackThreaded(CountdownCallback c, int count, int ms, String name);
+        static {
+            Native.register("testlib");
+        }
+    }
+
+    static final int CONTENDED_THREADS = 32;
+
+    private final TestLibrary lib;
+    private final Int32Callback callback = new Int32Callback() {
+        @Override
+        public int callback(int arg, int arg2) {
+            return arg + arg2;
+        }
+    };
+    private final Pointer callbackPointer;
+    private volatile CountDownLatch latch;
+    private final CountdownCallback countdown = new CountdownCallback() {
+        @Override
+        public void callback() {
+            latch.countDown();
+        }
+    };
+
+    private final CountdownCallback asyncCountdown = new CountdownCallback() {
+        @Override
+        public void callback() {
+            latch.countDown();
+        }
+    };
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "async-callbacks");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    public CallbackBenchmarks() {
+        lib = Native.loadLibrary("testlib", TestLibrary.class);
+        callbackPointer = CallbackReference.getFunctionPointer(callback);
+        Native.setCallbackThreadInitializer(asyncCountdown, new AsyncCallbackInitializer(executor));
+    }
+
+    /** Native call passing a callback, plus one call back into Java. */
+    public long benchInterfaceCallback(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.callInt32Callback(callback, i, 1);
+        }
+        return sum;
+    }
+
+    public long benchDirectCallback(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.callInt32Callback(callback, i, 1);
+        }
+        return sum;
+    }
+
+    /** Calls from native code into Java only. */
+    public long benchCallbackInvocation(int ops) {
+        return DirectTestLibrary.callInt32CallbackRepeatedly(callback, 1, 2, ops);
+    }
+
+    /** Calls from native code into Java through a library interface
+     * callback, which converts its arguments from an array.
+     */
+    public long benchInterfaceCallbackInvocation(int ops) {
+        return lib.callInt32CallbackRepeatedly(callback, 1, 2, ops);
+    }
+
+    /** Lookup of the native function pointer of an existing callback. */
+    public long benchFunctionPointer(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += Pointer.nativeValue(CallbackReference.getFunctionPointer(callback));
+        }
+        return sum;
+    }
+
+    /** Lookup of the native function pointer of an existing callback from
+     * {@link #CONTENDED_THREADS} threads at once, as when many threads pass
+     * the same callbacks to native code.
+     */
+    public long benchFunctionPointerContended(final int ops) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[] sums = new long[CONTENDED_THREADS];
+        Thread[] threads = new Thread[CONTENDED_THREADS];
+        for (int t=0;t < threads.length;t++) {
+            final int index = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    }
+                    catch(InterruptedException e) {
+                        return;
+                    }
+                    long sum = 0;
+                    for (int i=index;i < ops;i+=CONTENDED_THREADS) {
+                        sum += Pointer.nativeValue(CallbackReference.getFunctionPointer(callback));
+                    }
+                    sums[index] = sum;
+                }
+            };
+            threads[t].start();
+        }
+        start.countDown();
+        long sum = 0;
+        for (int t=0;t < threads.length;t++) {
+            threads[t].join();
+            sum += sums[t];
+        }
+        return sum;
+    }
+
+    /** A new callback per operation, whose native closure is freed once
+     * the callback has been garbage collected.
+     */
+    public long benchNewCallback(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += Pointer.nativeValue(CallbackReference.getFunctionPointer(newCallback(i)));
+        }
+        return sum;
+    }
+
+    /** A new callback per operation, released explicitly so that its
+     * native closure is reused by the next one.
+     */
+    public long benchNewCallbackReleased(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            Int32Callback cb = newCallback(i);
+            sum += Pointer.nativeValue(CallbackReference.getFunctionPointer(cb));
+            CallbackReference.release(cb);
+        }
+        return sum;
+    }
+
+    private static Int32Callback newCallback(final int value) {
+        return new Int32Callback() {
+            @Override
+            public int callback(int arg, int arg2) {
+                return value;
+            }
+        };
+    }
+
+    /** Lookup of the callback for a native function pointer. */
+    public long benchCallbackFromPointer(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += System.identityHashCode(CallbackReference.getCallback(Int32Callback.class, callbackPointer));
+        }
+        return sum;
+    }
+
+    /** Calls into Java from a native thread, which is attached to and
+     * detached from the VM on every callback.
+     */
+    public long benchNativeThreadCallback(int ops) throws InterruptedException {
+        return callFromNativeThread(ops, false);
+    }
+
+    /** Calls into Java from a native thread which stays attached. */
+    public long benchNativeThreadCallbackKeepAttached(int ops) throws InterruptedException {
+        return callFromNativeThread(ops, true);
+    }
+
+    /** Calls from a native thread queued for delivery by an executor
+     * thread, until all have been delivered.
+     */
+    public long benchNativeThreadCallbackAsync(int ops) throws InterruptedException {
+        latch = new CountDownLatch(ops);
+        DirectTestLibrary.callVoidCallbackThreaded(asyncCountdown, ops, 0, "benchmark");
+        latch.await();
+        return Native.getCallbackThreadAttachCount();
+    }
+
+    private long callFromNativeThread(int ops, boolean keepAttached) throws InterruptedException {
+        latch = new CountDownLatch(ops);
+        boolean keep = Native.isKeepCallbackThreadsAttached();
+        Native.setKeepCallbackThreadsAttached(keepAttached);
+        try {
+            DirectTestLibrary.callVoidCallbackThreaded(countdown, ops, 0, "benchmark");
+            latch.await();
+        }
+        finally {
+            Native.setKeepCallbackThreadsAttached(keep);
+        }
+        return Native.getCallbackThreadAttachCount();
+    }
+}
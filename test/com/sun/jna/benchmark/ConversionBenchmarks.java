@@ -0,0 +1,675 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sun.jna.DefaultTypeMapper;
+import com.sun.jna.FromNativeContext;
+import com.sun.jna.JNIEnv;
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLibrary;
+import com.sun.jna.NativeLong;
+import com.sun.jna.NativeMapped;
+import com.sun.jna.Pointer;
+import com.sun.jna.PointerType;
+import com.sun.jna.ToNativeContext;
+import com.sun.jna.TypeConverter;
+import com.sun.jna.WString;
+
+/** Cost of each argument conversion supported by JNA, through interface
+ * mapping and through direct mapping.  Each benchmark is named after the
+ * conversion class (<code>CVT_*</code>) it exercises in direct mapping.
+ * Results are returned as the plain native type, so only the argument
+ * conversion differs between benchmarks of the same function.
+ * Structure and callback conversions are covered by
+ * {@link StructureBenchmarks} and {@link CallbackBenchmarks}.
+ */
+public class ConversionBenchmarks {
+
+    static final int SIZE = 16;
+
+    /** Converted by the type mapper to an <code>int</code>. */
+    public static class MappedInt {
+        final int value;
+        public MappedInt(int value) { this.value = value; }
+    }
+
+    /** Converted by the type mapper to a {@link String}. */
+    public static class MappedString {
+        final String value;
+        public MappedString(String value) { this.value = value; }
+    }
+
+    /** Converted by the type mapper to a {@link WString}. */
+    public static class MappedWString {
+        final String value;
+        public MappedWString(String value) { this.value = value; }
+    }
+
+    public static class NativeMappedInt implements NativeMapped {
+        final int value;
+        public NativeMappedInt() { this(0); }
+        public NativeMappedInt(int value) { this.value = value; }
+        @Override
+        public Object fromNative(Object nativeValue, FromNativeContext context) {
+            return new NativeMappedInt(((Integer)nativeValue).intValue());
+        }
+        @Override
+        public Object toNative() { return Integer.valueOf(value); }
+        @Override
+        public Class<?> nativeType() { return Integer.class; }
+    }
+
+    public static class NativeMappedString implements NativeMapped {
+        final String value;
+        public NativeMappedString() { this(""); }
+        public NativeMappedString(String value) { this.value = value; }
+        @Override
+        public Object fromNative(Object nativeValue, FromNativeContext context) {
+            return new NativeMappedString((String)nativeValue);
+        }
+        @Override
+        public Object toNative() { return value; }
+        @Override
+        public Class<?> nativeType() { return String.class; }
+    }
+
+    public static class NativeMappedWString implements NativeMapped {
+        final String value;
+        public NativeMappedWString() { this(""); }
+        public NativeMappedWString(String value) { this.value = value; }
+        @Override
+        public Object fromNative(Object nativeValue, FromNativeContext context) {
+            return new NativeMappedWString(String.valueOf(nativeValue));
+        }
+        @Override
+        public Object toNative() { return new WString(value); }
+        @Override
+        public Class<?> nativeType() { return WString.class; }
+    }
+
+    public static class TestPointerType extends PointerType {
+        public TestPointerType() { }
+        public TestPointerType(Pointer p) { super(p); }
+    }
+
+    static final Map<String, Object> OPTIONS = new HashMap<String, Object>();
+    static {
+        DefaultTypeMapper mapper = new DefaultTypeMapper();
+        mapper.addTypeConverter(MappedInt.class, new TypeConverter() {
+            @Override
+            public Object fromNative(Object nativeValue, FromNativeContext context) {
+                return new MappedInt(((Integer)nativeValue).intValue());
+            }
+            @Override
+            public Class<?> nativeType() { return Integer.class; }
+            @Override
+            public Object toNative(Object value, ToNativeContext context) {
+                return Integer.valueOf(((MappedInt)value).value);
+            }
+        });
+        mapper.addTypeConverter(MappedString.class, new TypeConverter() {
+            @Override
+            public Object fromNative(Object nativeValue, FromNativeContext context) {
+                return new MappedString((String)nativeValue);
+            }
+            @Override
+            public Class<?> nativeType() { return String.class; }
+            @Override
+            public Object toNative(Object value, ToNativeContext context) {
+                return ((MappedString)value).value;
+            }
+        });
+        mapper.addTypeConverter(MappedWString.class, new TypeConverter() {
+            @Override
+            public Object fromNative(Object nativeValue, FromNativeContext context) {
+                return new MappedWString(String.valueOf(nativeValue));
+            }
+            @Override
+            public Class<?> nativeType() { return WString.class; }
+            @Override
+            public Object toNative(Object value, ToNativeContext context) {
+                return new WString(((MappedWString)value).value);
+            }
+        });
+        OPTIONS.put(Library.OPTION_TYPE_MAPPER, mapper);
+        OPTIONS.put(Library.OPTION_ALLOW_OBJECTS, Boolean.TRUE);
+    }
+
+    public interface TestLibrary extends Library {
+        int returnInt32Argument(int arg);
+        boolean returnBooleanArgument(boolean arg);
+        float returnFloatArgument(float arg);
+        Pointer returnPointerArgument(Pointer arg);
+        String returnStringArgument(String arg);
+        WString returnWStringArgument(WString arg);
+        int fillInt8Buffer(ByteBuffer buf, int len, byte value);
+        int fillInt8Buffer(byte[] buf, int len, byte value);
+        int fillInt16Buffer(short[] buf, int len, short value);
+        int fillInt16Buffer(char[] buf, int len, short value);
+        int fillInt32Buffer(int[] buf, int len, int value);
+        int fillInt64Buffer(long[] buf, int len, long value);
+        int fillFloatBuffer(float[] buf, int len, float value);
+        int fillDoubleBuffer(double[] buf, int len, double value);
+        int fillInt8Buffer(boolean[] buf, int len, byte value);
+        int returnInt32Argument(NativeMappedInt arg);
+        String returnStringArgument(NativeMappedString arg);
+        WString returnWStringArgument(NativeMappedWString arg);
+        NativeLong returnLongArgument(NativeLong arg);
+        TestPointerType returnPointerArgument(TestPointerType arg);
+        int returnInt32Argument(MappedInt arg);
+        String returnStringArgument(MappedString arg);
+        WString returnWStringArgument(MappedWString arg);
+        Pointer returnPointerArgument(Object arg);
+    }
+
+    public static class DirectTestLibrary {
+        public static native int returnInt32Argument(int arg);
+        public static native boolean returnBooleanArgument(boolean arg);
+        public static native float returnFloatArgument(float arg);
+        public static native Pointer returnPointerArgument(Pointer arg);
+        public static native String returnStringArgument(String arg);
+        public static native WString returnWStringArgument(WString arg);
+        public static native int fillInt8Buffer(ByteBuffer buf, int len, byte value);
+        public static native int fillInt8Buffer(byte[] buf, int len, byte value);
+        public static native int fillInt16Buffer(short[] buf, int len, short value);
+        public static native int fillInt16Buffer(char[] buf, int len, short value);
+        public static native int fillInt32Buffer(int[] buf, int len, int value);
+        public static native int fillInt64Buffer(long[] buf, int len, long value);
+        public static native int fillFloatBuffer(float[] buf, int len, float value);
+        public static native int fillDoubleBuffer(double[] buf, int len, double value);
+        public static native int fillInt8Buffer(boolean[] buf, int len, byte value);
+        public static native int returnInt32Argument(NativeMappedInt arg);
+        public static native String returnStringArgument(NativeMappedString arg);
+        public static native WString returnWStringArgument(NativeMappedWString arg);
+        public static native NativeLong returnLongArgument(NativeLong arg);
+        public static native TestPointerType returnPointerArgument(TestPointerType arg);
+        public static native int returnInt32Argument(MappedInt arg);
+        public static native String returnStringArgument(MappedString arg);
+        public static native WString returnWStringArgument(MappedWString arg);
+        public static native Pointer returnPointerArgument(Object arg);
+        public static native Pointer returnPointerArgument(JNIEnv arg);
+        static {
+            Native.register(DirectTestLibrary.class, NativeLibrary.getInstance("testlib", OPTIONS));
+        }
+    }
+
+    private final TestLibrary lib;
+    private final Pointer pointer;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(SIZE);
+    private final byte[] bytes = new byte[SIZE];
+    private final short[] shorts = new short[SIZE];
+    private final char[] chars = new char[SIZE];
+    private final int[] ints = new int[SIZE];
+    private final long[] longs = new long[SIZE];
+    private final float[] floats = new float[SIZE];
+    private final double[] doubles = new double[SIZE];
+    private final boolean[] booleans = new boolean[SIZE];
+    private final WString wstring = new WString("benchmark");
+    private final NativeMappedInt nativeMappedInt = new NativeMappedInt(1);
+    private final NativeMappedString nativeMappedString = new NativeMappedString("benchmark");
+    private final NativeMappedWString nativeMappedWString = new NativeMappedWString("benchmark");
+    private final NativeLong nativeLong = new NativeLong(1);
+    private final TestPointerType pointerType;
+    private final MappedInt mappedInt = new MappedInt(1);
+    private final MappedString mappedString = new MappedString("benchmark");
+    private final MappedWString mappedWString = new MappedWString("benchmark");
+    private final Object object = new Object();
+
+    public ConversionBenchmarks() {
+        lib = Native.loadLibrary("testlib", TestLibrary.class, OPTIONS);
+        pointer = new Pointer(0x1000);
+        pointerType = new TestPointerType(pointer);
+    }
+
+    private static long hash(Object o) {
+        return o != null ? o.hashCode() : 0;
+    }
+
+    // CVT_DEFAULT
+
+    public long benchInterfaceDefault(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.returnInt32Argument(i);
+        }
+        return sum;
+    }
+
+    public long benchDirectDefault(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.returnInt32Argument(i);
+        }
+        return sum;
+    }
+
+    // CVT_BOOLEAN
+
+    public long benchInterfaceBoolean(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            if (lib.returnBooleanArgument((i & 1) == 0)) {
+                sum++;
+            }
+        }
+        return sum;
+    }
+
+    public long benchDirectBoolean(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            if (DirectTestLibrary.returnBooleanArgument((i & 1) == 0)) {
+                sum++;
+            }
+        }
+        return sum;
+    }
+
+    // CVT_FLOAT
+
+    public long benchInterfaceFloat(int ops) {
+        float sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.returnFloatArgument(i);
+        }
+        return (long)sum;
+    }
+
+    public long benchDirectFloat(int ops) {
+        float sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.returnFloatArgument(i);
+        }
+        return (long)sum;
+    }
+
+    // CVT_POINTER
+
+    public long benchInterfacePointer(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += hash(lib.returnPointerArgument(pointer));
+        }
+        return sum;
+    }
+
+    public long benchDirectPointer(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += hash(DirectTestLibrary.returnPointerArgument(pointer));
+        }
+        return sum;
+    }
+
+    // CVT_STRING
+
+    public long benchInterfaceString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.returnStringArgument("benchmark").length();
+        }
+        return sum;
+    }
+
+    public long benchDirectString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.returnStringArgument("benchmark").length();
+        }
+        return sum;
+    }
+
+    // CVT_WSTRING
+
+    public long benchInterfaceWString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.returnWStringArgument(wstring).length();
+        }
+        return sum;
+    }
+
+    public long benchDirectWString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.returnWStringArgument(wstring).length();
+        }
+        return sum;
+    }
+
+    // CVT_BUFFER
+
+    public long benchInterfaceBuffer(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.fillInt8Buffer(buffer, SIZE, (byte)i);
+        }
+        return sum;
+    }
+
+    public long benchDirectBuffer(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.fillInt8Buffer(buffer, SIZE, (byte)i);
+        }
+        return sum;
+    }
+
+    // CVT_ARRAY_*
+
+    public long benchInterfaceArrayByte(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.fillInt8Buffer(bytes, SIZE, (byte)i);
+        }
+        return sum;
+    }
+
+    public long benchDirectArrayByte(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.fillInt8Buffer(bytes, SIZE, (byte)i);
+        }
+        return sum;
+    }
+
+    public long benchInterfaceArrayShort(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.fillInt16Buffer(shorts, SIZE, (short)i);
+        }
+        return sum;
+    }
+
+    public long benchDirectArrayShort(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.fillInt16Buffer(shorts, SIZE, (short)i);
+        }
+        return sum;
+    }
+
+    public long benchInterfaceArrayChar(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.fillInt16Buffer(chars, SIZE, (short)i);
+        }
+        return sum;
+    }
+
+    public long benchDirectArrayChar(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.fillInt16Buffer(chars, SIZE, (short)i);
+        }
+        return sum;
+    }
+
+    public long benchInterfaceArrayInt(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.fillInt32Buffer(ints, SIZE, i);
+        }
+        return sum;
+    }
+
+    public long benchDirectArrayInt(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.fillInt32Buffer(ints, SIZE, i);
+        }
+        return sum;
+    }
+
+    public long benchInterfaceArrayLong(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.fillInt64Buffer(longs, SIZE, i);
+        }
+        return sum;
+    }
+
+    public long benchDirectArrayLong(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.fillInt64Buffer(longs, SIZE, i);
+        }
+        return sum;
+    }
+
+    public long benchInterfaceArrayFloat(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.fillFloatBuffer(floats, SIZE, i);
+        }
+        return sum;
+    }
+
+    public long benchDirectArrayFloat(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.fillFloatBuffer(floats, SIZE, i);
+        }
+        return sum;
+    }
+
+    public long benchInterfaceArrayDouble(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.fillDoubleBuffer(doubles, SIZE, i);
+        }
+        return sum;
+    }
+
+    public long benchDirectArrayDouble(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.fillDoubleBuffer(doubles, SIZE, i);
+        }
+        return sum;
+    }
+
+    public long benchInterfaceArrayBoolean(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.fillInt8Buffer(booleans, SIZE, (byte)(i & 1));
+        }
+        return sum;
+    }
+
+    public long benchDirectArrayBoolean(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.fillInt8Buffer(booleans, SIZE, (byte)(i & 1));
+        }
+        return sum;
+    }
+
+    // CVT_NATIVE_MAPPED, CVT_NATIVE_MAPPED_STRING, CVT_NATIVE_MAPPED_WSTRING
+
+    public long benchInterfaceNativeMapped(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.returnInt32Argument(nativeMappedInt);
+        }
+        return sum;
+    }
+
+    public long benchDirectNativeMapped(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.returnInt32Argument(nativeMappedInt);
+        }
+        return sum;
+    }
+
+    public long benchInterfaceNativeMappedString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.returnStringArgument(nativeMappedString).length();
+        }
+        return sum;
+    }
+
+    public long benchDirectNativeMappedString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.returnStringArgument(nativeMappedString).length();
+        }
+        return sum;
+    }
+
+    public long benchInterfaceNativeMappedWString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.returnWStringArgument(nativeMappedWString).length();
+        }
+        return sum;
+    }
+
+    public long benchDirectNativeMappedWString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.returnWStringArgument(nativeMappedWString).length();
+        }
+        return sum;
+    }
+
+    // CVT_INTEGER_TYPE
+
+    public long benchInterfaceIntegerType(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.returnLongArgument(nativeLong).longValue();
+        }
+        return sum;
+    }
+
+    public long benchDirectIntegerType(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.returnLongArgument(nativeLong).longValue();
+        }
+        return sum;
+    }
+
+    // CVT_POINTER_TYPE
+
+    public long benchInterfacePointerType(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += hash(lib.returnPointerArgument(pointerType));
+        }
+        return sum;
+    }
+
+    public long benchDirectPointerType(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += hash(DirectTestLibrary.returnPointerArgument(pointerType));
+        }
+        return sum;
+    }
+
+    // CVT_TYPE_MAPPER, CVT_TYPE_MAPPER_STRING, CVT_TYPE_MAPPER_WSTRING
+
+    public long benchInterfaceTypeMapper(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.returnInt32Argument(mappedInt);
+        }
+        return sum;
+    }
+
+    public long benchDirectTypeMapper(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.returnInt32Argument(mappedInt);
+        }
+        return sum;
+    }
+
+    public long benchInterfaceTypeMapperString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.returnStringArgument(mappedString).length();
+        }
+        return sum;
+    }
+
+    public long benchDirectTypeMapperString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.returnStringArgument(mappedString).length();
+        }
+        return sum;
+    }
+
+    public long benchInterfaceTypeMapperWString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.returnWStringArgument(mappedWString).length();
+        }
+        return sum;
+    }
+
+    public long benchDirectTypeMapperWString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.returnWStringArgument(mappedWString).length();
+        }
+        return sum;
+    }
+
+    // CVT_OBJECT
+
+    public long benchInterfaceObject(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += hash(lib.returnPointerArgument(object));
+        }
+        return sum;
+    }
+
+    public long benchDirectObject(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += hash(DirectTestLibrary.returnPointerArgument(object));
+        }
+        return sum;
+    }
+
+    // CVT_JNIENV (direct mapping only)
+
+    public long benchDirectJNIEnv(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += hash(DirectTestLibrary.returnPointerArgument(JNIEnv.CURRENT));
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,103 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna.benchmark;
+
+import java.util.Collections;
+import java.util.Map;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLibrary;
+
+/** Cost of loading native libraries and creating library interfaces. */
+public class LoadBenchmarks {
+
+    public interface TestLibrary extends Library {
+        int returnInt32Argument(int arg);
+        long returnInt64Argument(long arg);
+        double returnDoubleArgument(double arg);
+        String returnStringArgument(String arg);
+    }
+
+    private static final Map<String, ?> GENERATED =
+        Collections.singletonMap(Library.OPTION_GENERATE_PROXY, Boolean.TRUE);
+
+    public LoadBenchmarks() {
+        NativeLibrary.getInstance("testlib");
+    }
+
+    /** Lookup of an already loaded library. */
+    public long benchGetInstance(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += System.identityHashCode(NativeLibrary.getInstance("testlib"));
+        }
+        return sum;
+    }
+
+    /** Loading and unloading a library which is not otherwise in use. */
+    public long benchLoadAndDispose(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            NativeLibrary lib = NativeLibrary.getInstance("testlib2");
+            sum += System.identityHashCode(lib);
+            lib.dispose();
+        }
+        return sum;
+    }
+
+    public long benchLoadLibrary(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += System.identityHashCode(Native.loadLibrary("testlib", TestLibrary.class));
+        }
+        return sum;
+    }
+
+    public long benchLoadLibraryGenerated(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += System.identityHashCode(Native.loadLibrary("testlib", TestLibrary.class, GENERATED));
+        }
+        return sum;
+    }
+
+    /** Loading a library interface and making the first call through it,
+     * which resolves the native function.
+     */
+    public long benchLoadLibraryFirstCall(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += Native.loadLibrary("testlib", TestLibrary.class).returnInt32Argument(i);
+        }
+        return sum;
+    }
+
+    public long benchGetFunction(int ops) {
+        NativeLibrary lib = NativeLibrary.getInstance("testlib");
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += System.identityHashCode(lib.getFunction("returnInt32Argument"));
+        }
+        return sum;
+    }
+}
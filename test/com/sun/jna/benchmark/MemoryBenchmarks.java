@@ -0,0 +1,158 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna.benchmark;
+
+import java.nio.ByteBuffer;
+
+import com.sun.jna.Memory;
+import com.sun.jna.MemoryArena;
+
+/** Cost of native memory allocation and of single and bulk accesses. */
+public class MemoryBenchmarks {
+
+    static final int SIZE = 4096;
+
+    private final Memory memory = new Memory(SIZE);
+    private final byte[] bytes = new byte[SIZE];
+    private final int[] ints = new int[SIZE / 4];
+    private final long[] longs = new long[SIZE / 8];
+    private final double[] doubles = new double[SIZE / 8];
+    private final ByteBuffer buffer;
+
+    public MemoryBenchmarks() {
+        memory.clear();
+        buffer = memory.getByteBuffer(0, SIZE);
+    }
+
+    public long benchAllocate(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += new Memory(64).size();
+        }
+        return sum;
+    }
+
+    /** Allocation of the same size from a {@link MemoryArena}, reset
+     * every 64 allocations.
+     */
+    public long benchArenaAllocate(int ops) {
+        MemoryArena arena = new MemoryArena();
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            if ((i & 63) == 0) {
+                arena.reset();
+            }
+            sum += arena.allocate(64).size();
+        }
+        arena.close();
+        return sum;
+    }
+
+    public long benchGetInt(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += memory.getInt((i & 0xFF) * 4);
+        }
+        return sum;
+    }
+
+    public long benchSetInt(int ops) {
+        for (int i=0;i < ops;i++) {
+            memory.setInt((i & 0xFF) * 4, i);
+        }
+        return memory.getInt(0);
+    }
+
+    public long benchGetDouble(int ops) {
+        double sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += memory.getDouble((i & 0xFF) * 8);
+        }
+        return (long)sum;
+    }
+
+    /** Bulk reads and writes, one operation per {@link #SIZE} bytes. */
+    public long benchReadBytes(int ops) {
+        for (int i=0;i < ops;i++) {
+            memory.read(0, bytes, 0, bytes.length);
+        }
+        return bytes[0];
+    }
+
+    public long benchWriteBytes(int ops) {
+        for (int i=0;i < ops;i++) {
+            memory.write(0, bytes, 0, bytes.length);
+        }
+        return memory.getByte(0);
+    }
+
+    public long benchReadInts(int ops) {
+        for (int i=0;i < ops;i++) {
+            memory.read(0, ints, 0, ints.length);
+        }
+        return ints[0];
+    }
+
+    public long benchWriteInts(int ops) {
+        for (int i=0;i < ops;i++) {
+            memory.write(0, ints, 0, ints.length);
+        }
+        return memory.getInt(0);
+    }
+
+    public long benchReadLongs(int ops) {
+        for (int i=0;i < ops;i++) {
+            memory.read(0, longs, 0, longs.length);
+        }
+        return longs[0];
+    }
+
+    public long benchWriteDoubles(int ops) {
+        for (int i=0;i < ops;i++) {
+            memory.write(0, doubles, 0, doubles.length);
+        }
+        return memory.getByte(0);
+    }
+
+    public long benchGetByteArray(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += memory.getByteArray(0, SIZE).length;
+        }
+        return sum;
+    }
+
+    public long benchByteBufferGetInt(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += buffer.getInt((i & 0xFF) * 4);
+        }
+        return sum;
+    }
+
+    public long benchClear(int ops) {
+        for (int i=0;i < ops;i++) {
+            memory.clear();
+        }
+        return memory.getByte(0);
+    }
+}
@@ -0,0 +1,159 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna.benchmark;
+
+import java.util.Arrays;
+
+import com.sun.jna.Library;
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.sun.jna.WString;
+
+/** Cost of marshalling strings to and from native code. */
+public class StringBenchmarks {
+
+    static final String SHORT = "benchmark";
+    static final String LONG;
+    static {
+        char[] chars = new char[4096];
+        Arrays.fill(chars, 'x');
+        LONG = new String(chars);
+    }
+
+    public interface TestLibrary extends Library {
+        String returnStringArgument(String arg);
+        WString returnWStringArgument(WString arg);
+        Pointer returnPointerArgument(String[] arg);
+    }
+
+    public static class DirectTestLibrary {
+        public static native String returnStringArgument(String arg);
+        public static native WString returnWStringArgument(WString arg);
+        static {
+            Native.register("testlib");
+        }
+    }
+
+    private final TestLibrary lib;
+    private final WString wshort = new WString(SHORT);
+    private final WString wlong = new WString(LONG);
+    private final String[] array = { "one", "two", "three", "four", "five", "six", "seven", "eight" };
+    private final Memory memory = new Memory(LONG.length() + 1);
+    private final Memory wideMemory = new Memory((LONG.length() + 1) * Native.WCHAR_SIZE);
+    private final Memory scratch = new Memory(SHORT.length() + 1);
+
+    public StringBenchmarks() {
+        lib = Native.loadLibrary("testlib", TestLibrary.class);
+        memory.setString(0, LONG);
+        wideMemory.setWideString(0, LONG);
+    }
+
+    public long benchInterfaceString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.returnStringArgument(SHORT).length();
+        }
+        return sum;
+    }
+
+    public long benchInterfaceLongString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.returnStringArgument(LONG).length();
+        }
+        return sum;
+    }
+
+    public long benchDirectString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.returnStringArgument(SHORT).length();
+        }
+        return sum;
+    }
+
+    public long benchDirectLongString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.returnStringArgument(LONG).length();
+        }
+        return sum;
+    }
+
+    public long benchInterfaceWString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.returnWStringArgument(wshort).length();
+        }
+        return sum;
+    }
+
+    public long benchInterfaceLongWString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.returnWStringArgument(wlong).length();
+        }
+        return sum;
+    }
+
+    public long benchDirectWString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.returnWStringArgument(wshort).length();
+        }
+        return sum;
+    }
+
+    public long benchInterfaceStringArray(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += Pointer.nativeValue(lib.returnPointerArgument(array));
+        }
+        return sum;
+    }
+
+    public long benchGetString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += memory.getString(0).length();
+        }
+        return sum;
+    }
+
+    public long benchGetWideString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += wideMemory.getWideString(0).length();
+        }
+        return sum;
+    }
+
+    public long benchSetString(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            scratch.setString(0, SHORT);
+            sum += scratch.getByte(0);
+        }
+        return sum;
+    }
+}
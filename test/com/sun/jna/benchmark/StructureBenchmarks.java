@@ -0,0 +1,457 @@
+/* The contents of this file is dual-licensed under 2
+ * alternative Open Source/Free licenses: LGPL 2.1 or later and
+ * Apache License 2.0. (starting with JNA version 4.0.0).
+ *
+ * You can freely decide which license you want to apply to
+ * the project.
+ *
+ * You may obtain a copy of the LGPL License at:
+ *
+ * http://www.gnu.org/licenses/licenses.html
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "LGPL2.1".
+ *
+ * You may obtain a copy of the Apache License at:
+ *
+ * http://www.apache.org/licenses/
+ *
+ * A copy is also included in the downloadable source code package
+ * containing JNA, in file "AL2.0".
+ */
+package com.sun.jna.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.sun.jna.Const;
+import com.sun.jna.Library;
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+import com.sun.jna.StructureArray;
+
+/** Cost of passing structures by reference (<code>CVT_STRUCTURE</code>)
+ * and by value (<code>CVT_STRUCTURE_BYVAL</code>), and of the structure
+ * operations involved: allocation, reading and writing.
+ */
+public class StructureBenchmarks {
+
+    public static class CheckFieldAlignment extends Structure {
+        public static class ByValue extends CheckFieldAlignment
+            implements Structure.ByValue { }
+
+        public byte int8Field;
+        public short int16Field;
+        public int int32Field;
+        public long int64Field;
+        public float floatField;
+        public double doubleField;
+
+        @Override
+        protected List<String> getFieldOrder() {
+            return Arrays.asList("int8Field", "int16Field", "int32Field", "int64Field", "floatField", "doubleField");
+        }
+        public CheckFieldAlignment() {
+            int8Field = (byte)fieldOffset("int8Field");
+            int16Field = (short)fieldOffset("int16Field");
+            int32Field = fieldOffset("int32Field");
+            int64Field = fieldOffset("int64Field");
+            floatField = fieldOffset("floatField");
+            doubleField = fieldOffset("doubleField");
+        }
+    }
+
+    /** Record with many primitive fields, as read from a telemetry feed. */
+    public static class Record extends Structure {
+        public int i0, i1, i2, i3, i4, i5, i6, i7;
+        public long l0, l1, l2, l3, l4, l5, l6, l7;
+        public double d0, d1, d2, d3, d4, d5, d6, d7;
+        public short s0, s1, s2, s3, s4, s5, s6, s7;
+
+        @Override
+        protected List<String> getFieldOrder() {
+            return Arrays.asList("i0", "i1", "i2", "i3", "i4", "i5", "i6", "i7",
+                                 "l0", "l1", "l2", "l3", "l4", "l5", "l6", "l7",
+                                 "d0", "d1", "d2", "d3", "d4", "d5", "d6", "d7",
+                                 "s0", "s1", "s2", "s3", "s4", "s5", "s6", "s7");
+        }
+    }
+
+    /** Record accessed in native memory, as when polling a shared header. */
+    public static class PolledRecord extends Record {
+        private final int l7Offset = fieldOffset("l7");
+
+        public PolledRecord() {
+            setDirectAccess(true);
+        }
+
+        public long getL7() {
+            return getByteBuffer().getLong(l7Offset);
+        }
+    }
+
+    /** Configuration passed by reference on every call, mostly unchanged. */
+    public static class Settings extends Structure {
+        public int i0, i1, i2, i3, i4, i5, i6, i7;
+        public String name = "name", path = "/path", host = "localhost", user = "user";
+        public Pointer p0, p1, p2, p3;
+        public char c0, c1;
+
+        @Override
+        protected List<String> getFieldOrder() {
+            return Arrays.asList("i0", "i1", "i2", "i3", "i4", "i5", "i6", "i7",
+                                 "name", "path", "host", "user",
+                                 "p0", "p1", "p2", "p3", "c0", "c1");
+        }
+    }
+
+    /** Settings which are never modified by native code. */
+    @Const
+    public static class ConstSettings extends Settings { }
+
+    /** Ring buffer entry made of primitives and primitive arrays. */
+    public static class Sample extends Structure {
+        public long timestamp;
+        public int channel;
+        public int flags;
+        public short[] levels = new short[8];
+        public double[] values = new double[8];
+
+        @Override
+        protected List<String> getFieldOrder() {
+            return Arrays.asList("timestamp", "channel", "flags", "levels", "values");
+        }
+    }
+
+    /** Linked list node, as materialized when following struct pointers. */
+    public static class Node extends Structure {
+        public int value;
+        public Pointer next;
+
+        public Node() { }
+        public Node(Pointer p) { super(p); }
+
+        @Override
+        protected List<String> getFieldOrder() {
+            return Arrays.asList("value", "next");
+        }
+    }
+
+    /** Small structure without nested structures. */
+    public static class Point extends Structure {
+        public static class ByReference extends Point implements Structure.ByReference { }
+        public int x, y;
+
+        @Override
+        protected List<String> getFieldOrder() {
+            return Arrays.asList("x", "y");
+        }
+    }
+
+    /** Pair of 64-bit values passed by value, like a point or complex number. */
+    public static class Pair extends Structure implements Structure.ByValue {
+        public long data, data1;
+
+        @Override
+        protected List<String> getFieldOrder() {
+            return Arrays.asList("data", "data1");
+        }
+    }
+
+    public interface TestLibrary extends Library {
+        Pointer testStructurePointerArgument(CheckFieldAlignment arg);
+        Pointer testStructurePointerArgument(Settings arg);
+        int testStructureByValueArgument(CheckFieldAlignment.ByValue arg);
+        long testStructureByValueArgument128(Pair arg);
+        int testStructureArrayInitialization(CheckFieldAlignment[] arg, int len);
+        int testStructureArrayInitialization(StructureArray<CheckFieldAlignment> arg, int len);
+    }
+
+    public static class DirectTestLibrary {
+        public static native Pointer testStructurePointerArgument(CheckFieldAlignment arg);
+        public static native int testStructureByValueArgument(CheckFieldAlignment.ByValue arg);
+        public static native long testStructureByValueArgument128(Pair arg);
+        static {
+            Native.register("testlib");
+        }
+    }
+
+    static final int ARRAY_SIZE = 8;
+    static final int LARGE_ARRAY_SIZE = 10000;
+    static final int TABLE_SIZE = 1024;
+
+    private final TestLibrary lib;
+    private final CheckFieldAlignment struct = new CheckFieldAlignment();
+    private final CheckFieldAlignment.ByValue byValue = new CheckFieldAlignment.ByValue();
+    private final Pair pair = new Pair();
+    private final CheckFieldAlignment[] array;
+    private final CheckFieldAlignment[] largeArray;
+    private final StructureArray<CheckFieldAlignment> structureArray;
+    private final Record record = new Record();
+    private final Sample sample = new Sample();
+    private final Settings settings = new Settings();
+    private final Settings modifiedOnlySettings = new Settings();
+    private final ConstSettings constSettings = new ConstSettings();
+    private final Node node = new Node();
+    private final Memory table = new Memory((long)TABLE_SIZE * record.size());
+    private final Record cursor = new Record();
+    private final PolledRecord polledRecord = new PolledRecord();
+    private final Point point = new Point();
+    private final Point.ByReference pointByReference = new Point.ByReference();
+
+    public StructureBenchmarks() {
+        lib = Native.loadLibrary("testlib", TestLibrary.class);
+        array = (CheckFieldAlignment[])new CheckFieldAlignment().toArray(ARRAY_SIZE);
+        largeArray = (CheckFieldAlignment[])new CheckFieldAlignment().toArray(LARGE_ARRAY_SIZE);
+        structureArray = new StructureArray<CheckFieldAlignment>(CheckFieldAlignment.class, LARGE_ARRAY_SIZE);
+        table.clear();
+        modifiedOnlySettings.setAutoWriteModifiedOnly(true);
+        constSettings.setAutoWriteModifiedOnly(true);
+    }
+
+    public long benchInterfaceByReference(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            struct.int32Field = i;
+            sum += Pointer.nativeValue(lib.testStructurePointerArgument(struct));
+        }
+        return sum;
+    }
+
+    public long benchDirectByReference(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            struct.int32Field = i;
+            sum += Pointer.nativeValue(DirectTestLibrary.testStructurePointerArgument(struct));
+        }
+        return sum;
+    }
+
+    public long benchInterfaceSettings(int ops) {
+        return passSettings(settings, ops);
+    }
+
+    public long benchInterfaceSettingsModifiedOnly(int ops) {
+        return passSettings(modifiedOnlySettings, ops);
+    }
+
+    public long benchInterfaceConstSettings(int ops) {
+        return passSettings(constSettings, ops);
+    }
+
+    private long passSettings(Settings s, int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            s.i0 = i;
+            sum += Pointer.nativeValue(lib.testStructurePointerArgument(s));
+        }
+        return sum;
+    }
+
+    public long benchInterfaceByValue(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.testStructureByValueArgument(byValue);
+        }
+        return sum;
+    }
+
+    public long benchDirectByValue(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += DirectTestLibrary.testStructureByValueArgument(byValue);
+        }
+        return sum;
+    }
+
+    public long benchInterfaceSmallByValue(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            pair.data = i;
+            sum += lib.testStructureByValueArgument128(pair);
+        }
+        return sum;
+    }
+
+    public long benchDirectSmallByValue(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            pair.data = i;
+            sum += DirectTestLibrary.testStructureByValueArgument128(pair);
+        }
+        return sum;
+    }
+
+    public long benchInterfaceArray(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += lib.testStructureArrayInitialization(array, ARRAY_SIZE);
+        }
+        return sum;
+    }
+
+    public long benchInterfaceLargeArray(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            largeArray[0].int32Field = 0;
+            sum += lib.testStructureArrayInitialization(largeArray, 1);
+        }
+        return sum;
+    }
+
+    public long benchInterfaceStructureArray(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            structureArray.get(0).int32Field = 0;
+            sum += lib.testStructureArrayInitialization(structureArray, 1);
+        }
+        return sum;
+    }
+
+    public long benchAllocate(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += new CheckFieldAlignment().size();
+        }
+        return sum;
+    }
+
+    public long benchWrite(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            struct.int32Field = i;
+            struct.write();
+            sum += struct.int8Field;
+        }
+        return sum;
+    }
+
+    public long benchRead(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            struct.read();
+            sum += struct.int32Field;
+        }
+        return sum;
+    }
+
+    public long benchWriteRecord(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            record.i0 = i;
+            record.write();
+            sum += record.s7;
+        }
+        return sum;
+    }
+
+    public long benchReadRecord(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            record.read();
+            sum += record.l7;
+        }
+        return sum;
+    }
+
+    public long benchPollRecordByteBuffer(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += polledRecord.getL7();
+        }
+        return sum;
+    }
+
+    public long benchWriteSample(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sample.values[0] = i;
+            sample.write();
+            sum += sample.channel;
+        }
+        return sum;
+    }
+
+    public long benchReadSample(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sample.read();
+            sum += sample.levels[7];
+        }
+        return sum;
+    }
+
+    public long benchWritePoint(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            point.x = i;
+            point.write();
+            sum += point.y;
+        }
+        return sum;
+    }
+
+    public long benchReadPoint(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            point.read();
+            sum += point.x;
+        }
+        return sum;
+    }
+
+    public long benchReadPointByReference(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            pointByReference.read();
+            sum += pointByReference.x;
+        }
+        return sum;
+    }
+
+    public long benchScanNewInstance(int ops) {
+        int size = record.size();
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            long offset = (long)(i % TABLE_SIZE) * size;
+            sum += Structure.newInstance(Record.class, table.share(offset, size)).l7;
+        }
+        return sum;
+    }
+
+    public long benchScanCursor(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            cursor.useArrayElement(table, i % TABLE_SIZE);
+            sum += cursor.l7;
+        }
+        return sum;
+    }
+
+    public long benchReadField(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += ((Integer)struct.readField("int32Field")).intValue();
+        }
+        return sum;
+    }
+
+    public long benchNewInstance(int ops) {
+        Pointer p = node.getPointer();
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += Structure.newInstance(Node.class, p).size();
+        }
+        return sum;
+    }
+
+    public long benchToArray(int ops) {
+        long sum = 0;
+        for (int i=0;i < ops;i++) {
+            sum += new CheckFieldAlignment().toArray(ARRAY_SIZE).length;
+        }
+        return sum;
+    }
+}